@@ -22,6 +22,7 @@ package org.neo4j.graphalgo;
 import org.neo4j.graphalgo.impl.path.AStar;
 import org.neo4j.graphalgo.impl.path.AllPaths;
 import org.neo4j.graphalgo.impl.path.AllSimplePaths;
+import org.neo4j.graphalgo.impl.path.CompactShortestPath;
 import org.neo4j.graphalgo.impl.path.Dijkstra;
 import org.neo4j.graphalgo.impl.path.ShortestPath;
 import org.neo4j.graphalgo.impl.util.DoubleEvaluator;
@@ -109,6 +110,43 @@ public abstract class GraphAlgoFactory
     {
         return new ShortestPath( maxDepth, expander, maxHitCount );
     }
+
+    /**
+     * Returns an algorithm which finds the same paths as
+     * {@link #shortestPath(RelationshipExpander, int)}, but keeps its state
+     * as primitive ids and builds the returned paths lazily. It is suited for
+     * searching large graphs, where the number of visited nodes is high.
+     *
+     * @see CompactShortestPath
+     * @param expander the {@link RelationshipExpander} to use for expanding
+     *            {@link Relationship}s for each {@link Node}.
+     * @param maxDepth the max {@link Path#length()} returned paths are allowed
+     *            to have.
+     * @return an algorithm which finds shortest paths between two nodes.
+     */
+    public static PathFinder<Path> compactShortestPath( RelationshipExpander expander, int maxDepth )
+    {
+        return new CompactShortestPath( maxDepth, expander );
+    }
+
+    /**
+     * Returns an algorithm which finds the same paths as
+     * {@link #shortestPath(RelationshipExpander, int, int)}, but keeps its
+     * state as primitive ids and builds the returned paths lazily.
+     *
+     * @see CompactShortestPath
+     * @param expander the {@link RelationshipExpander} to use for expanding
+     *            {@link Relationship}s for each {@link Node}.
+     * @param maxDepth the max {@link Path#length()} returned paths are allowed
+     *            to have.
+     * @param maxResultCount the maximum number of {@link Path}s to return.
+     * @return an algorithm which finds shortest paths between two nodes.
+     */
+    public static PathFinder<Path> compactShortestPath( RelationshipExpander expander, int maxDepth,
+            int maxResultCount )
+    {
+        return new CompactShortestPath( maxDepth, expander, maxResultCount );
+    }
     
     /**
      * Returns an algorithm which can find simple all paths of a certain length
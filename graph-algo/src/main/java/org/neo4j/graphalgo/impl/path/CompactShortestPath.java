@@ -0,0 +1,374 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.impl.path;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+
+import org.neo4j.graphalgo.PathFinder;
+import org.neo4j.graphalgo.impl.util.PathImpl;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipExpander;
+import org.neo4j.helpers.collection.PrefetchingIterator;
+import org.neo4j.kernel.impl.util.PrimitiveLongMap;
+
+/**
+ * Finds (all or one) shortest paths between two nodes, like
+ * {@link ShortestPath}, but keeps its state as primitive ids instead of
+ * {@link Node}s mapped to objects, so that it can search large graphs
+ * without allocating much per visited node.
+ * <p>
+ * It searches from both ends, one whole depth at a time. The side to go one
+ * depth deeper is the one which is expected to expand the fewest
+ * relationships, estimated from the size of its frontier and the number of
+ * relationships per node it has seen so far. That keeps the search away from
+ * hub nodes on one side as long as the other side is cheaper. For each
+ * visited node only its depth and the ids of the relationships leading to it
+ * on that depth are kept. The paths are built from those, one at a time, as
+ * they are iterated.
+ * <p>
+ * Relationships are traversed in the specified directions from the start
+ * node, but in the reverse direction ( {@link
+ * org.neo4j.graphdb.Direction#reverse()} ) from the end node.
+ */
+public class CompactShortestPath implements PathFinder<Path>
+{
+    private final int maxDepth;
+    private final int maxResultCount;
+    private final RelationshipExpander expander;
+
+    /**
+     * @param maxDepth the maximum depth for the traversal. Returned paths
+     * will never have a greater {@link Path#length()} than {@code maxDepth}.
+     * @param expander the {@link RelationshipExpander} to use for deciding
+     * which relationships to expand for each {@link Node}.
+     */
+    public CompactShortestPath( int maxDepth, RelationshipExpander expander )
+    {
+        this( maxDepth, expander, Integer.MAX_VALUE );
+    }
+
+    /**
+     * @param maxDepth the maximum depth for the traversal. Returned paths
+     * will never have a greater {@link Path#length()} than {@code maxDepth}.
+     * @param expander the {@link RelationshipExpander} to use for deciding
+     * which relationships to expand for each {@link Node}.
+     * @param maxResultCount the maximum number of paths to return.
+     */
+    public CompactShortestPath( int maxDepth, RelationshipExpander expander, int maxResultCount )
+    {
+        this.maxDepth = maxDepth;
+        this.expander = expander;
+        this.maxResultCount = maxResultCount;
+    }
+
+    public Iterable<Path> findAllPaths( Node start, Node end )
+    {
+        return internalPaths( start, end, false, maxResultCount );
+    }
+
+    public Path findSinglePath( Node start, Node end )
+    {
+        Iterator<Path> paths = internalPaths( start, end, true, 1 ).iterator();
+        return paths.hasNext() ? paths.next() : null;
+    }
+
+    private Iterable<Path> internalPaths( Node start, Node end, boolean stopAsap, int maxCount )
+    {
+        if ( start.equals( end ) )
+        {
+            return Arrays.asList( PathImpl.singular( start ) );
+        }
+
+        GraphDatabaseService graphDb = start.getGraphDatabase();
+        Side startSide = new Side( graphDb, start, expander );
+        Side endSide = new Side( graphDb, end, expander.reversed() );
+        while ( startSide.depth + endSide.depth < maxDepth )
+        {
+            Side side = startSide.estimatedCost() <= endSide.estimatedCost() ? startSide : endSide;
+            Side otherSide = side == startSide ? endSide : startSide;
+            long[] hits = side.expandOneDepth( otherSide, stopAsap );
+            if ( hits.length > 0 )
+            {
+                return new Paths( startSide, endSide, hits, maxCount );
+            }
+            if ( side.frontierSize == 0 )
+            {
+                // everything reachable from this side has been visited
+                break;
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * The nodes visited from one of the ends. For each node a long[] is kept
+     * with the depth it was found at first, followed by the ids of the
+     * relationships leading to it from the depth before.
+     */
+    private static class Side
+    {
+        private final GraphDatabaseService graphDb;
+        private final Node root;
+        private final RelationshipExpander expander;
+        private final PrimitiveLongMap<long[]> visited = new PrimitiveLongMap<long[]>();
+        private long[] frontier;
+        private int frontierSize;
+        private int depth;
+        private long expandedNodes;
+        private long expandedRelationships;
+
+        Side( GraphDatabaseService graphDb, Node root, RelationshipExpander expander )
+        {
+            this.graphDb = graphDb;
+            this.root = root;
+            this.expander = expander;
+            this.visited.put( root.getId(), new long[] { 0 } );
+            this.frontier = new long[] { root.getId() };
+            this.frontierSize = 1;
+        }
+
+        /**
+         * @return the number of relationships going one depth deeper on this
+         *         side is expected to expand.
+         */
+        double estimatedCost()
+        {
+            double relationshipsPerNode = expandedNodes == 0 ? 1 :
+                (double) expandedRelationships / expandedNodes;
+            return frontierSize * relationshipsPerNode;
+        }
+
+        /**
+         * Visits the nodes one depth deeper than the ones visited so far.
+         *
+         * @return the ids of the newly visited nodes which are visited by
+         *         {@code otherSide} as well, on the shortest combined depth.
+         */
+        long[] expandOneDepth( Side otherSide, boolean stopAsap )
+        {
+            int nextDepth = depth + 1;
+            long[] nextFrontier = new long[Math.max( 8, frontierSize )];
+            int nextFrontierSize = 0;
+            long[] hits = new long[0];
+            int hitCount = 0;
+            int hitDepth = Integer.MAX_VALUE;
+            for ( int i = 0; i < frontierSize; i++ )
+            {
+                Node node = graphDb.getNodeById( frontier[i] );
+                expandedNodes++;
+                for ( Relationship relationship : expander.expand( node ) )
+                {
+                    expandedRelationships++;
+                    long otherId = relationship.getOtherNode( node ).getId();
+                    long[] otherData = visited.get( otherId );
+                    if ( otherData == null )
+                    {
+                        visited.put( otherId, new long[] { nextDepth, relationship.getId() } );
+                        if ( nextFrontierSize == nextFrontier.length )
+                        {
+                            nextFrontier = Arrays.copyOf( nextFrontier, nextFrontierSize * 2 );
+                        }
+                        nextFrontier[nextFrontierSize++] = otherId;
+                    }
+                    else if ( otherData[0] == nextDepth )
+                    {
+                        long[] newData = Arrays.copyOf( otherData, otherData.length + 1 );
+                        newData[otherData.length] = relationship.getId();
+                        visited.put( otherId, newData );
+                        continue;
+                    }
+                    else
+                    {
+                        continue;
+                    }
+
+                    long[] hit = otherSide.visited.get( otherId );
+                    if ( hit == null )
+                    {
+                        continue;
+                    }
+                    int combinedDepth = nextDepth + (int) hit[0];
+                    if ( combinedDepth < hitDepth )
+                    {
+                        hitDepth = combinedDepth;
+                        hitCount = 0;
+                    }
+                    if ( combinedDepth == hitDepth )
+                    {
+                        if ( hitCount == hits.length )
+                        {
+                            hits = Arrays.copyOf( hits, Math.max( 4, hitCount * 2 ) );
+                        }
+                        hits[hitCount++] = otherId;
+                        if ( stopAsap && hit[0] == otherSide.depth )
+                        {
+                            // nothing found before this depth, so no path
+                            // can be shorter than this one
+                            depth = nextDepth;
+                            return Arrays.copyOf( hits, hitCount );
+                        }
+                    }
+                }
+            }
+            frontier = nextFrontier;
+            frontierSize = nextFrontierSize;
+            depth = nextDepth;
+            return Arrays.copyOf( hits, hitCount );
+        }
+    }
+
+    /**
+     * Builds the paths through the hit nodes as they are iterated, combining
+     * each way from the start node to a hit with each way from the hit to the
+     * end node.
+     */
+    private static class Paths implements Iterable<Path>
+    {
+        private final Side startSide;
+        private final Side endSide;
+        private final long[] hits;
+        private final int maxCount;
+
+        Paths( Side startSide, Side endSide, long[] hits, int maxCount )
+        {
+            this.startSide = startSide;
+            this.endSide = endSide;
+            this.hits = hits;
+            this.maxCount = maxCount;
+        }
+
+        public Iterator<Path> iterator()
+        {
+            return new PrefetchingIterator<Path>()
+            {
+                private int hitIndex = -1;
+                private WaysToHit startWays;
+                private PathImpl.Builder startBuilder;
+                private WaysToHit endWays;
+                private int returned;
+
+                @Override
+                protected Path fetchNextOrNull()
+                {
+                    if ( returned >= maxCount )
+                    {
+                        return null;
+                    }
+                    while ( endWays == null || !endWays.hasNext() )
+                    {
+                        if ( startWays == null || !startWays.hasNext() )
+                        {
+                            if ( ++hitIndex >= hits.length )
+                            {
+                                return null;
+                            }
+                            startWays = new WaysToHit( startSide, hits[hitIndex] );
+                        }
+                        startBuilder = startWays.next();
+                        endWays = new WaysToHit( endSide, hits[hitIndex] );
+                    }
+                    returned++;
+                    return startBuilder.build( endWays.next() );
+                }
+            };
+        }
+    }
+
+    /**
+     * Goes through all the ways from the root of a {@link Side} to one of its
+     * visited nodes, following the relationships kept for each node back to
+     * the root, depth first.
+     */
+    private static class WaysToHit extends PrefetchingIterator<PathImpl.Builder>
+    {
+        private final Side side;
+        private final Node[] nodes;
+        private final long[][] candidates;
+        private final int[] choices;
+        private final Relationship[] relationships;
+        private boolean first = true;
+
+        WaysToHit( Side side, long hitId )
+        {
+            this.side = side;
+            int depth = (int) side.visited.get( hitId )[0];
+            this.nodes = new Node[depth + 1];
+            this.candidates = new long[depth][];
+            this.choices = new int[depth];
+            this.relationships = new Relationship[depth];
+            nodes[0] = side.graphDb.getNodeById( hitId );
+        }
+
+        @Override
+        protected PathImpl.Builder fetchNextOrNull()
+        {
+            if ( first )
+            {
+                first = false;
+                descendFrom( 0 );
+            }
+            else
+            {
+                int level = choices.length - 1;
+                while ( level >= 0 && choices[level] + 2 >= candidates[level].length )
+                {
+                    level--;
+                }
+                if ( level < 0 )
+                {
+                    return null;
+                }
+                choices[level]++;
+                follow( level );
+                descendFrom( level + 1 );
+            }
+            PathImpl.Builder builder = new PathImpl.Builder( side.root );
+            for ( int level = relationships.length - 1; level >= 0; level-- )
+            {
+                builder = builder.push( relationships[level] );
+            }
+            return builder;
+        }
+
+        private void descendFrom( int level )
+        {
+            for ( ; level < choices.length; level++ )
+            {
+                candidates[level] = side.visited.get( nodes[level].getId() );
+                choices[level] = 0;
+                follow( level );
+            }
+        }
+
+        private void follow( int level )
+        {
+            // the first element of the visited data is the depth
+            Relationship relationship = side.graphDb.getRelationshipById(
+                    candidates[level][choices[level] + 1] );
+            relationships[level] = relationship;
+            nodes[level + 1] = relationship.getOtherNode( nodes[level] );
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.graphalgo.path;
+
+import static common.Neo4jAlgoTestCase.MyRelTypes.R1;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.neo4j.graphalgo.GraphAlgoFactory.compactShortestPath;
+import static org.neo4j.graphdb.Direction.INCOMING;
+import static org.neo4j.graphdb.Direction.OUTGOING;
+import static org.neo4j.helpers.collection.IteratorUtil.count;
+import static org.neo4j.kernel.Traversal.expanderForTypes;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.neo4j.graphalgo.PathFinder;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipExpander;
+
+/**
+ * Runs the {@link TestShortestPath} tests against the compact shortest path
+ * finder as well.
+ */
+public class TestCompactShortestPath extends TestShortestPath
+{
+    @Override
+    protected PathFinder<Path> instantiatePathFinder( RelationshipExpander expander, int maxDepth )
+    {
+        return compactShortestPath( expander, maxDepth );
+    }
+
+    @Test
+    public void makeSureAMaxResultCountIsObeyedByCompact()
+    {
+        graph.makeEdgeChain( "a,b,c,d,e" );
+        graph.makeEdgeChain( "a,f,g,h,e" );
+        graph.makeEdgeChain(   "f,i,j,e" );
+        graph.makeEdgeChain(     "i,k,e" );
+
+        RelationshipExpander expander = expanderForTypes( R1, OUTGOING );
+        Node a = graph.getNode( "a" );
+        Node e = graph.getNode( "e" );
+        assertEquals( 4, count( compactShortestPath( expander, 10, 10 ).findAllPaths( a, e ) ) );
+        assertEquals( 4, count( compactShortestPath( expander, 10, 4 ).findAllPaths( a, e ) ) );
+        assertEquals( 3, count( compactShortestPath( expander, 10, 3 ).findAllPaths( a, e ) ) );
+        assertEquals( 1, count( compactShortestPath( expander, 10, 1 ).findAllPaths( a, e ) ) );
+    }
+
+    @Test
+    public void unfortunateRelationshipOrderingInTriangleWithCompact()
+    {
+        graph.makeEdgeChain( "a,b,c" );
+        graph.makeEdgeChain( "a,c" );
+        Node a = graph.getNode( "a" );
+        Node c = graph.getNode( "c" );
+
+        assertPathDef( compactShortestPath( expanderForTypes( R1, OUTGOING ), 2 ).findSinglePath( a, c ), "a", "c" );
+        assertPathDef( compactShortestPath( expanderForTypes( R1, INCOMING ), 2 ).findSinglePath( c, a ), "c", "a" );
+    }
+
+    @Test
+    public void expandsTheSideWithFewerRelationshipsAroundAHub()
+    {
+        // Layout:
+        //
+        //   (a)--(b)--(c)--(d)
+        //    |\
+        //   (h1)..(h20)
+        //
+        graph.makeEdgeChain( "a,b,c,d" );
+        for ( int i = 0; i < 20; i++ )
+        {
+            graph.makeEdge( "a", "h" + i );
+        }
+
+        Node a = graph.getNode( "a" );
+        Node d = graph.getNode( "d" );
+        // Once the hub has been expanded its side has 21 nodes to expand
+        // next, so the rest of the path is found from the other side
+        RecordingExpander expander = new RecordingExpander( expanderForTypes( R1, Direction.BOTH ) );
+        assertPathDef( compactShortestPath( expander, 3 ).findSinglePath( a, d ), "a", "b", "c", "d" );
+        assertEquals( new HashSet<String>( asList( "a", "c", "d" ) ), expander.expandedNodes() );
+        assertEquals( 3, expander.expanded.size() );
+
+        expander = new RecordingExpander( expanderForTypes( R1, Direction.BOTH ) );
+        assertPaths( compactShortestPath( expander, 3 ).findAllPaths( d, a ), "d,c,b,a" );
+        assertEquals( new HashSet<String>( asList( "a", "c", "d" ) ), expander.expandedNodes() );
+
+        assertNull( compactShortestPath( expanderForTypes( R1, Direction.BOTH ), 2 ).findSinglePath( a, d ) );
+    }
+
+    private class RecordingExpander implements RelationshipExpander
+    {
+        private final RelationshipExpander source;
+        // shared with the reversed expander, used for the other side
+        private final List<String> expanded;
+
+        RecordingExpander( RelationshipExpander source )
+        {
+            this( source, new ArrayList<String>() );
+        }
+
+        private RecordingExpander( RelationshipExpander source, List<String> expanded )
+        {
+            this.source = source;
+            this.expanded = expanded;
+        }
+
+        public Iterable<Relationship> expand( Node node )
+        {
+            expanded.add( graph.getNodeId( node ) );
+            return source.expand( node );
+        }
+
+        public RelationshipExpander reversed()
+        {
+            return new RecordingExpander( source.reversed(), expanded );
+        }
+
+        Set<String> expandedNodes()
+        {
+            return new HashSet<String>( expanded );
+        }
+    }
+}
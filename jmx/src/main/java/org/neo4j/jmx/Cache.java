@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.jmx;
+
+@ManagementInterface( name = Cache.NAME )
+@Description( "Information about the caching of nodes and relationships in Neo4j" )
+public interface Cache
+{
+    final String NAME = "Cache";
+
+    @Description( "The type of cache used by Neo4j" )
+    String getCacheType();
+
+    @Description( "The number of nodes currently in the node cache" )
+    int getNodeCacheSize();
+
+    @Description( "The number of relationships currently in the relationship cache" )
+    int getRelationshipCacheSize();
+
+    @Description( "The number of times a node was found in the node cache" )
+    long getNodeCacheHitCount();
+
+    @Description( "The number of times a node had to be loaded since it wasn't in the node cache" )
+    long getNodeCacheMissCount();
+
+    @Description( "The number of times a relationship was found in the relationship cache" )
+    long getRelationshipCacheHitCount();
+
+    @Description( "The number of times a relationship had to be loaded since it wasn't in the relationship cache" )
+    long getRelationshipCacheMissCount();
+
+    @Description( "The number of nodes evicted from the node cache to stay within its memory budget, "
+                  + "only tracked by the bounded cache type" )
+    long getNodeCacheEvictionCount();
+
+    @Description( "The number of relationships evicted from the relationship cache to stay within its memory "
+                  + "budget, only tracked by the bounded cache type" )
+    long getRelationshipCacheEvictionCount();
+
+    @Description( "The estimated number of bytes the cached nodes take up, "
+                  + "only tracked by the bounded cache type (-1 otherwise)" )
+    long getNodeCacheUsedBytes();
+
+    @Description( "The estimated number of bytes the cached relationships take up, "
+                  + "only tracked by the bounded cache type (-1 otherwise)" )
+    long getRelationshipCacheUsedBytes();
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.jmx.impl;
+
+import javax.management.NotCompliantMBeanException;
+
+import org.neo4j.helpers.Service;
+import org.neo4j.jmx.Cache;
+import org.neo4j.kernel.impl.cache.SizeBoundedCache;
+import org.neo4j.kernel.impl.core.NodeManager;
+
+@Service.Implementation( ManagementBeanProvider.class )
+public final class CacheBean extends ManagementBeanProvider
+{
+    public CacheBean()
+    {
+        super( Cache.class );
+    }
+
+    @Override
+    protected Neo4jMBean createMBean( ManagementData management ) throws NotCompliantMBeanException
+    {
+        return new CacheImpl( management );
+    }
+
+    private static class CacheImpl extends Neo4jMBean implements Cache
+    {
+        CacheImpl( ManagementData management ) throws NotCompliantMBeanException
+        {
+            super( management );
+            this.nodeManager = management.getKernelData().getConfig().getGraphDbModule().getNodeManager();
+        }
+
+        private final NodeManager nodeManager;
+
+        public String getCacheType()
+        {
+            return nodeManager.getCacheType().name();
+        }
+
+        public int getNodeCacheSize()
+        {
+            return nodeManager.getNodeCache().size();
+        }
+
+        public int getRelationshipCacheSize()
+        {
+            return nodeManager.getRelationshipCache().size();
+        }
+
+        public long getNodeCacheHitCount()
+        {
+            return nodeManager.getNodeCache().hitCount();
+        }
+
+        public long getNodeCacheMissCount()
+        {
+            return nodeManager.getNodeCache().missCount();
+        }
+
+        public long getRelationshipCacheHitCount()
+        {
+            return nodeManager.getRelationshipCache().hitCount();
+        }
+
+        public long getRelationshipCacheMissCount()
+        {
+            return nodeManager.getRelationshipCache().missCount();
+        }
+
+        public long getNodeCacheEvictionCount()
+        {
+            return evictionCount( nodeManager.getNodeCache() );
+        }
+
+        public long getRelationshipCacheEvictionCount()
+        {
+            return evictionCount( nodeManager.getRelationshipCache() );
+        }
+
+        public long getNodeCacheUsedBytes()
+        {
+            return usedBytes( nodeManager.getNodeCache() );
+        }
+
+        public long getRelationshipCacheUsedBytes()
+        {
+            return usedBytes( nodeManager.getRelationshipCache() );
+        }
+
+        private static long evictionCount( org.neo4j.kernel.impl.cache.Cache<?, ?> cache )
+        {
+            return cache instanceof SizeBoundedCache ? ( (SizeBoundedCache<?>) cache ).evictionCount() : 0;
+        }
+
+        private static long usedBytes( org.neo4j.kernel.impl.cache.Cache<?, ?> cache )
+        {
+            return cache instanceof SizeBoundedCache ? ( (SizeBoundedCache<?>) cache ).usedBytes() : -1;
+        }
+    }
+}
@@ -102,6 +102,62 @@ public class Config implements DiagnosticsProvider
      */
     @Documented
     public static final String REBUILD_IDGENERATORS_FAST = "rebuild_idgenerators_fast";
+    /**
+     * The implementation used for handing out persistence windows to the
+     * stores, one of [standard, concurrent, shared]. The concurrent pool looks
+     * up windows without taking a pool wide lock, the shared pool keeps the
+     * records of all stores in one page cache instead of using the per store
+     * mapped memory settings.
+     */
+    @Documented
+    public static final String WINDOW_POOL_TYPE = "window_pool_type";
+    /**
+     * The amount of memory for the page cache shared by all stores when
+     * window_pool_type is shared. Defaults to the sum of the mapped memory
+     * settings of the stores.
+     */
+    @Documented
+    public static final String PAGE_CACHE_MEMORY = "page_cache_memory";
+    /** The size of each page in the shared page cache, 8k by default. */
+    @Documented
+    public static final String PAGE_CACHE_PAGE_SIZE = "page_cache_page_size";
+    /**
+     * The number of bytes per second (e.g. 8M) a background thread writes out
+     * of store windows that have been modified, so that flushing the stores
+     * on log rotation has less to do. Off by default.
+     */
+    @Documented
+    public static final String BACKGROUND_FLUSH_RATE = "background_flush_rate";
+    /**
+     * Let transactions committing at the same time share one force of the
+     * logical logs and the transaction manager log instead of forcing once
+     * each. Off by default.
+     */
+    @Documented
+    public static final String GROUP_COMMIT = "group_commit";
+    /**
+     * The number of milliseconds a committer that is about to force the logs
+     * in group commit mode waits for other transactions to join the batch,
+     * 0 by default.
+     */
+    @Documented
+    public static final String GROUP_COMMIT_MAX_WAIT = "group_commit_max_wait";
+    /**
+     * Recover the logical logs after a non clean shutdown with more than one
+     * thread: commands are read from the log by a thread of their own while
+     * the recovered transactions are committed, and the records of the
+     * different stores are written in parallel. Off by default.
+     */
+    @Documented
+    public static final String PARALLEL_RECOVERY = "parallel_recovery";
+    /**
+     * Write the commands of each transaction to the logical logs as one
+     * compressed block instead of one entry per command. Logs are written
+     * with log format version 3 either way, so versions from before command
+     * blocks refuse to read them. Off by default.
+     */
+    @Documented
+    public static final String LOGICAL_LOG_COMPRESSION = "logical_log_compression";
     /** The size to allocate for memory mapping the node store */
     @Documented
     public static final String NODE_STORE_MMAP_SIZE = "neostore.nodestore.db.mapped_memory";
@@ -138,10 +194,68 @@ public class Config implements DiagnosticsProvider
 
     /**
      * The type of cache to use for nodes and relationships, one of [weak, soft,
-     * none]
+     * none, old, strong, primitive, bounded]
      */
     @Documented
     public static final String CACHE_TYPE = "cache_type";
+    /**
+     * The max number of nodes in the node cache for cache types with a fixed
+     * size, such as primitive. Defaults to one per kilobyte of max heap size.
+     */
+    @Documented
+    public static final String NODE_CACHE_SIZE = "node_cache_size";
+    /**
+     * The max number of relationships in the relationship cache for cache
+     * types with a fixed size, such as primitive. Defaults to one per kilobyte
+     * of max heap size.
+     */
+    @Documented
+    public static final String RELATIONSHIP_CACHE_SIZE = "relationship_cache_size";
+    /**
+     * The amount of heap (e.g. 200M) the nodes in the node cache may take up
+     * when cache_type is bounded. Defaults to a quarter of the max heap size.
+     */
+    @Documented
+    public static final String NODE_CACHE_MEMORY = "node_cache_memory";
+    /**
+     * The amount of heap (e.g. 100M) the relationships in the relationship
+     * cache may take up when cache_type is bounded. Defaults to an eighth of
+     * the max heap size.
+     */
+    @Documented
+    public static final String RELATIONSHIP_CACHE_MEMORY = "relationship_cache_memory";
+    /**
+     * The number of relationships from which a node keeps its relationship
+     * ids outside of the java heap, delta encoded, instead of in int arrays
+     * on the heap. 0, which is the default, turns it off.
+     */
+    @Documented
+    public static final String DENSE_NODE_THRESHOLD = "dense_node_threshold";
+    /**
+     * The amount of off heap memory (e.g. 100M) used for keeping the
+     * relationship ids of dense nodes which have been evicted from the node
+     * cache, so that they don't have to be read from the store again.
+     * Defaults to a sixteenth of the max heap size. Only used if
+     * dense_node_threshold is set.
+     */
+    @Documented
+    public static final String DENSE_NODE_CACHE_MEMORY = "dense_node_cache_memory";
+    /**
+     * The number of relationships from which a node gets its relationships
+     * grouped by type and direction in the store, so that relationships of
+     * one type can be loaded without reading all of them. Also used when
+     * upgrading a store. 0 (the default) turns it off.
+     */
+    @Documented
+    public static final String RELATIONSHIP_GROUPING_THRESHOLD = "relationship_grouping_threshold";
+    /**
+     * Look up the properties of nodes and relationships one key at a time,
+     * reading the property chain only as far as needed, instead of loading
+     * all of them the first time any property is read. Only the properties
+     * that have been read are kept in the cache. Off by default.
+     */
+    @Documented
+    public static final String LAZY_PROPERTY_LOADING = "lazy_property_loading";
 
     /**
      * The name of the Transaction Manager service to use as defined in the TM
@@ -225,6 +339,34 @@ public class Config implements DiagnosticsProvider
     @Documented
     public static final String LUCENE_WRITER_CACHE_SIZE = "lucene_writer_cache_size";
 
+    /**
+     * Integer value that sets the maximum number of milliseconds it may take
+     * before changes committed to a lucene index are seen by queries in other
+     * transactions. With a value above 0 searchers are refreshed in the
+     * background instead of by the first query after each commit. A
+     * transaction always sees its own changes.
+     * The default is 0
+     */
+    @Documented
+    public static final String LUCENE_SEARCHER_MAX_STALENESS = "lucene_searcher_max_staleness";
+
+    /**
+     * The amount of heap (e.g. 20M) the ids cached for exact lucene index
+     * lookups may take up, across all indexes. Defaults to a sixty-fourth of
+     * the max heap size.
+     */
+    @Documented
+    public static final String LUCENE_LOOKUP_CACHE_MEMORY = "lucene_lookup_cache_memory";
+
+    /**
+     * Integer value that sets the number of lookups of a key in a lucene
+     * index after which the ids found for its values get cached, 0 means that
+     * caching only is enabled explicitly for a key.
+     * The default is 1000
+     */
+    @Documented
+    public static final String LUCENE_LOOKUP_CACHE_AUTO_ENABLE = "lucene_lookup_cache_auto_enable";
+
     static final String LOAD_EXTENSIONS = "load_kernel_extensions";
 
     private final AdaptiveCacheManager cacheManager;
@@ -222,7 +222,8 @@ class EmbeddedGraphDbImpl
     {
         return Boolean.parseBoolean( inputParams.get( Config.READ_ONLY ) ) ? new TxModule( true,
                 kernelPanicEventGenerator ) : new TxModule( this.storeDir,
-                kernelPanicEventGenerator, rollbackHook, msgLog, fileSystem, inputParams.get( Config.TXMANAGER_IMPLEMENTATION ) );
+                kernelPanicEventGenerator, rollbackHook, msgLog, fileSystem, inputParams.get( Config.TXMANAGER_IMPLEMENTATION ),
+                inputParams );
     }
 
     <T> Collection<T> getManagementBeans( Class<T> beanClass )
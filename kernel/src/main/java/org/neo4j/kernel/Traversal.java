@@ -20,6 +20,7 @@
 package org.neo4j.kernel;
 
 import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
 
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.Expander;
@@ -36,6 +37,7 @@ import org.neo4j.graphdb.traversal.TraversalBranch;
 import org.neo4j.graphdb.traversal.TraversalDescription;
 import org.neo4j.helpers.Predicate;
 import org.neo4j.kernel.impl.traversal.FinalTraversalBranch;
+import org.neo4j.kernel.impl.traversal.ParallelBreadthFirstOrdering;
 import org.neo4j.kernel.impl.traversal.TraversalDescriptionImpl;
 
 /**
@@ -348,6 +350,30 @@ public class Traversal
         return CommonBranchOrdering.POSTORDER_BREADTH_FIRST;
     }
 
+    /**
+     * Returns a "parallel breadth first" ordering policy. Like the preorder
+     * breadth first selector it selects all positions on the current depth
+     * before advancing to the next depth, but the positions of the next depth
+     * are found by expanding all positions of the current depth concurrently,
+     * using the threads of {@code workers}.
+     * <p>
+     * The expanders, evaluators and uniqueness (which is synchronized) are
+     * called from the worker threads, so the expanders and evaluators must be
+     * thread safe. Since the worker threads don't take part in the
+     * transaction of the thread using the traverser they don't see changes
+     * made in that transaction. Which of several paths of the same length to
+     * a node is returned is decided by which thread gets there first.
+     *
+     * @param workers the {@link ExecutorService} to expand the positions
+     *            with, it's not shut down by the traversal.
+     * @return a {@link BranchOrderingPolicy} for a parallel breadth first
+     *         selector.
+     */
+    public static BranchOrderingPolicy parallelBreadthFirst( ExecutorService workers )
+    {
+        return new ParallelBreadthFirstOrdering( workers );
+    }
+
     /**
      * Provides hooks to help build a string representation of a {@link Path}.
      * @param <T> the type of {@link Path}.
@@ -115,6 +115,33 @@ public enum Uniqueness implements UniquenessFactory
             acceptNull( optionalParameter );
             return instance;
         }
+    },
+    /**
+     * Same as {@link Uniqueness#NODE_GLOBAL}, but keeps track of the visited
+     * nodes as one bit per node id in the ranges of ids it has visited. Uses
+     * much less memory than {@link Uniqueness#NODE_GLOBAL} for traversals
+     * visiting a large part of the graph, but more for traversals visiting
+     * a few nodes scattered over a large id space.
+     */
+    NODE_GLOBAL_BITMAP
+    {
+        public UniquenessFilter create( Object optionalParameter )
+        {
+            acceptNull( optionalParameter );
+            return new BitmapUnique( PrimitiveTypeFetcher.NODE );
+        }
+    },
+    /**
+     * Same as for {@link Uniqueness#NODE_GLOBAL_BITMAP}, but for
+     * relationships.
+     */
+    RELATIONSHIP_GLOBAL_BITMAP
+    {
+        public UniquenessFilter create( Object optionalParameter )
+        {
+            acceptNull( optionalParameter );
+            return new BitmapUnique( PrimitiveTypeFetcher.RELATIONSHIP );
+        }
     };
     
     private static void acceptNull( Object optionalParameter )
@@ -59,12 +59,15 @@ import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyStore;
 import org.neo4j.kernel.impl.nioneo.store.PropertyType;
 import org.neo4j.kernel.impl.nioneo.store.Record;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupStore;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipStore;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeStore;
 import org.neo4j.kernel.impl.nioneo.store.UnderlyingStorageException;
 import org.neo4j.kernel.impl.util.FileUtils;
+import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
 import org.neo4j.kernel.impl.util.StringLogger;
 
 public class BatchInserterImpl implements BatchInserter
@@ -457,21 +460,45 @@ public class BatchInserterImpl implements BatchInserter
     private void connectRelationship( NodeRecord firstNode,
             NodeRecord secondNode, RelationshipRecord rel )
     {
-        assert firstNode.getNextRel() != rel.getId();
-        assert secondNode.getNextRel() != rel.getId();
-        rel.setFirstNextRel( firstNode.getNextRel() );
-        rel.setSecondNextRel( secondNode.getNextRel() );
         connect( firstNode, rel );
-        connect( secondNode, rel );
-        firstNode.setNextRel( rel.getId() );
-        secondNode.setNextRel( rel.getId() );
+        if ( secondNode.getId() != firstNode.getId() )
+        {
+            connect( secondNode, rel );
+        }
+        else
+        {
+            // a loop, both records of the node get written
+            secondNode.setNextRel( firstNode.getNextRel() );
+        }
     }
 
     private void connect( NodeRecord node, RelationshipRecord rel )
     {
-        if ( node.getNextRel() != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        RelationshipGroupRecord group = null;
+        DirectionWrapper direction = null;
+        long first;
+        if ( node.isDense() )
+        {
+            group = getOrCreateRelationshipGroup( node, rel.getType() );
+            direction = RelationshipGroupRecord.directionOf( node.getId(), rel );
+            first = group.getFirst( direction );
+        }
+        else
+        {
+            first = node.getNextRel();
+        }
+        assert first != rel.getId();
+        if ( rel.getFirstNode() == node.getId() )
+        {
+            rel.setFirstNextRel( first );
+        }
+        if ( rel.getSecondNode() == node.getId() )
+        {
+            rel.setSecondNextRel( first );
+        }
+        if ( first != Record.NO_NEXT_RELATIONSHIP.intValue() )
         {
-            RelationshipRecord nextRel = getRelationshipStore().getRecord( node.getNextRel() );
+            RelationshipRecord nextRel = getRelationshipStore().getRecord( first );
             boolean changed = false;
             if ( nextRel.getFirstNode() == node.getId() )
             {
@@ -489,6 +516,36 @@ public class BatchInserterImpl implements BatchInserter
             }
             getRelationshipStore().updateRecord( nextRel );
         }
+        if ( group != null )
+        {
+            group.setFirst( direction, rel.getId() );
+            group.setCount( direction, group.getCount( direction ) + 1 );
+            getRelationshipGroupStore().updateRecord( group );
+        }
+        else
+        {
+            node.setNextRel( rel.getId() );
+        }
+    }
+
+    private RelationshipGroupRecord getOrCreateRelationshipGroup( NodeRecord node, int type )
+    {
+        long groupId = node.getNextRel();
+        while ( groupId != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            RelationshipGroupRecord group = getRelationshipGroupStore().getRecord( groupId );
+            if ( group.getType() == type )
+            {
+                return group;
+            }
+            groupId = group.getNext();
+        }
+        RelationshipGroupRecord group = new RelationshipGroupRecord(
+                getRelationshipGroupStore().nextId(), type, node.getId() );
+        group.setInUse( true );
+        group.setNext( node.getNextRel() );
+        node.setNextRel( group.getId() );
+        return group;
     }
 
     public void setNodeProperties( long node, Map<String,Object> properties )
@@ -548,45 +605,54 @@ public class BatchInserterImpl implements BatchInserter
 
     public Iterable<Long> getRelationshipIds( long nodeId )
     {
-        NodeRecord nodeRecord = getNodeRecord( nodeId );
-        long nextRel = nodeRecord.getNextRel();
         List<Long> ids = new ArrayList<Long>();
-        while ( nextRel != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        for ( RelationshipRecord relRecord : getRelationshipRecords( nodeId ) )
         {
-            RelationshipRecord relRecord = getRelationshipRecord( nextRel );
             ids.add( relRecord.getId() );
-            long firstNode = relRecord.getFirstNode();
-            long secondNode = relRecord.getSecondNode();
-            if ( firstNode == nodeId )
-            {
-                nextRel = relRecord.getFirstNextRel();
-            }
-            else if ( secondNode == nodeId )
-            {
-                nextRel = relRecord.getSecondNextRel();
-            }
-            else
-            {
-                throw new InvalidRecordException( "Node[" + nodeId +
-                    "] not part of firstNode[" + firstNode +
-                    "] or secondNode[" + secondNode + "]" );
-            }
         }
         return ids;
     }
 
     public Iterable<SimpleRelationship> getRelationships( long nodeId )
     {
-        NodeRecord nodeRecord = getNodeRecord( nodeId );
-        long nextRel = nodeRecord.getNextRel();
         List<SimpleRelationship> rels = new ArrayList<SimpleRelationship>();
-        while ( nextRel != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        for ( RelationshipRecord relRecord : getRelationshipRecords( nodeId ) )
         {
-            RelationshipRecord relRecord = getRelationshipRecord( nextRel );
             RelationshipType type = new RelationshipTypeImpl(
                 typeHolder.getName( relRecord.getType() ) );
             rels.add( new SimpleRelationship( relRecord.getId(),
                 relRecord.getFirstNode(), relRecord.getSecondNode(), type ) );
+        }
+        return rels;
+    }
+
+    private List<RelationshipRecord> getRelationshipRecords( long nodeId )
+    {
+        NodeRecord nodeRecord = getNodeRecord( nodeId );
+        List<RelationshipRecord> rels = new ArrayList<RelationshipRecord>();
+        if ( !nodeRecord.isDense() )
+        {
+            addRelationshipChain( nodeId, nodeRecord.getNextRel(), rels );
+            return rels;
+        }
+        long groupId = nodeRecord.getNextRel();
+        while ( groupId != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            RelationshipGroupRecord group = getRelationshipGroupStore().getRecord( groupId );
+            addRelationshipChain( nodeId, group.getFirstOut(), rels );
+            addRelationshipChain( nodeId, group.getFirstIn(), rels );
+            addRelationshipChain( nodeId, group.getFirstLoop(), rels );
+            groupId = group.getNext();
+        }
+        return rels;
+    }
+
+    private void addRelationshipChain( long nodeId, long nextRel, List<RelationshipRecord> rels )
+    {
+        while ( nextRel != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            RelationshipRecord relRecord = getRelationshipRecord( nextRel );
+            rels.add( relRecord );
             long firstNode = relRecord.getFirstNode();
             long secondNode = relRecord.getSecondNode();
             if ( firstNode == nodeId )
@@ -604,7 +670,6 @@ public class BatchInserterImpl implements BatchInserter
                     "] or secondNode[" + secondNode + "]" );
             }
         }
-        return rels;
     }
 
     public SimpleRelationship getRelationshipById( long relId )
@@ -834,6 +899,11 @@ public class BatchInserterImpl implements BatchInserter
         return neoStore.getRelationshipStore();
     }
 
+    private RelationshipGroupStore getRelationshipGroupStore()
+    {
+        return neoStore.getRelationshipGroupStore();
+    }
+
     private RelationshipTypeStore getRelationshipTypeStore()
     {
         return neoStore.getRelationshipTypeStore();
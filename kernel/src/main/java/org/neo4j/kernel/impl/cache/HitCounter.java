@@ -23,12 +23,18 @@ import org.neo4j.helpers.Counter;
 
 final class HitCounter
 {
-    private final Counter hits, miss;
+    private final Counter hits, miss, evictions;
 
     public HitCounter( Counter hits, Counter miss )
+    {
+        this( hits, miss, Counter.atomic() );
+    }
+
+    public HitCounter( Counter hits, Counter miss, Counter evictions )
     {
         this.hits = hits;
         this.miss = miss;
+        this.evictions = evictions;
     }
 
     public <T> T count( T item )
@@ -47,8 +53,21 @@ final class HitCounter
         return miss.count();
     }
 
+    public void evicted( int count )
+    {
+        for ( int i = 0; i < count; i++ )
+        {
+            evictions.inc();
+        }
+    }
+
+    public long getEvictionCount()
+    {
+        return evictions.count();
+    }
+
     public static HitCounter create()
     {
-        return new HitCounter( Counter.atomic(), Counter.atomic() );
+        return new HitCounter( Counter.atomic(), Counter.atomic(), Counter.atomic() );
     }
 }
@@ -0,0 +1,277 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.cache;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.neo4j.kernel.impl.util.PrimitiveLongHashing;
+
+/**
+ * A cache with a fixed number of slots that keeps its keys as primitive longs,
+ * without any map entries or reference objects per cached element.
+ * <p>
+ * The slots are grouped into buckets of {@link #BUCKET_SIZE} slots and a key
+ * can only be stored in the bucket it hashes to. When the bucket is full the
+ * slot that was least recently used gets replaced, which approximates LRU
+ * eviction for the whole cache.
+ * <p>
+ * Lookups don't lock anything. A slot is read value, key, value and the key
+ * only counts if the value didn't change in between, which works since
+ * writers clear the value before they change the key of a slot. Writers lock
+ * a stripe of buckets.
+ */
+public class PrimitiveLongCache<V> implements Cache<Long,V>
+{
+    static final int BUCKET_SIZE = 8;
+    private static final int LOCK_STRIPES = 64;
+
+    private final String name;
+    private final int bucketMask;
+    private final AtomicLongArray keys;
+    private final AtomicReferenceArray<V> values;
+    // when each slot was last used, racy on purpose
+    private final int[] usedAt;
+    private volatile int clock;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    private final AtomicInteger size = new AtomicInteger();
+    private final HitCounter counter = HitCounter.create();
+
+    /**
+     * @param maxSize the number of elements to make room for, rounded up so
+     *            that the number of buckets is a power of two.
+     */
+    public PrimitiveLongCache( String name, int maxSize )
+    {
+        if ( maxSize < 1 )
+        {
+            throw new IllegalArgumentException( "Illegal max size " + maxSize );
+        }
+        this.name = name;
+        int buckets = 1;
+        while ( buckets * BUCKET_SIZE < maxSize )
+        {
+            buckets <<= 1;
+        }
+        this.bucketMask = buckets - 1;
+        int slots = buckets * BUCKET_SIZE;
+        this.keys = new AtomicLongArray( slots );
+        this.values = new AtomicReferenceArray<V>( slots );
+        this.usedAt = new int[slots];
+        for ( int i = 0; i < locks.length; i++ )
+        {
+            locks[i] = new Object();
+        }
+    }
+
+    private int bucket( long key )
+    {
+        return PrimitiveLongHashing.slotFor( key, bucketMask );
+    }
+
+    private Object lockFor( int bucket )
+    {
+        return locks[bucket & ( LOCK_STRIPES - 1 )];
+    }
+
+    private static long checkKey( Long key )
+    {
+        if ( key == null )
+        {
+            throw new IllegalArgumentException( "Null key" );
+        }
+        return key.longValue();
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public V get( Long key )
+    {
+        return get( checkKey( key ) );
+    }
+
+    public V get( long key )
+    {
+        int start = bucket( key ) * BUCKET_SIZE;
+        for ( int slot = start; slot < start + BUCKET_SIZE; slot++ )
+        {
+            V value = values.get( slot );
+            if ( value != null && keys.get( slot ) == key && values.get( slot ) == value )
+            {
+                int now = clock;
+                if ( usedAt[slot] != now )
+                {
+                    usedAt[slot] = now;
+                }
+                return counter.count( value );
+            }
+        }
+        return counter.<V>count( null );
+    }
+
+    public void put( Long key, V value )
+    {
+        put( checkKey( key ), value );
+    }
+
+    public void put( long key, V value )
+    {
+        if ( value == null )
+        {
+            throw new IllegalArgumentException( "Null value" );
+        }
+        int bucket = bucket( key );
+        int start = bucket * BUCKET_SIZE;
+        synchronized ( lockFor( bucket ) )
+        {
+            int time = ++clock;
+            int free = -1;
+            int victim = start;
+            for ( int slot = start; slot < start + BUCKET_SIZE; slot++ )
+            {
+                V existing = values.get( slot );
+                if ( existing == null )
+                {
+                    if ( free == -1 )
+                    {
+                        free = slot;
+                    }
+                }
+                else if ( keys.get( slot ) == key )
+                {
+                    values.set( slot, value );
+                    usedAt[slot] = time;
+                    return;
+                }
+                else if ( usedAt[slot] - usedAt[victim] < 0 )
+                {
+                    victim = slot;
+                }
+            }
+            if ( free != -1 )
+            {
+                size.incrementAndGet();
+            }
+            else
+            {
+                free = victim;
+                V evicted = values.get( free );
+                values.set( free, null );
+                elementCleaned( evicted );
+            }
+            keys.set( free, key );
+            values.set( free, value );
+            usedAt[free] = time;
+        }
+    }
+
+    public void putAll( Map<Long,V> map )
+    {
+        for ( Map.Entry<Long,V> entry : map.entrySet() )
+        {
+            put( checkKey( entry.getKey() ), entry.getValue() );
+        }
+    }
+
+    public V remove( Long key )
+    {
+        return remove( checkKey( key ) );
+    }
+
+    public V remove( long key )
+    {
+        int bucket = bucket( key );
+        int start = bucket * BUCKET_SIZE;
+        synchronized ( lockFor( bucket ) )
+        {
+            for ( int slot = start; slot < start + BUCKET_SIZE; slot++ )
+            {
+                V value = values.get( slot );
+                if ( value != null && keys.get( slot ) == key )
+                {
+                    values.set( slot, null );
+                    size.decrementAndGet();
+                    return value;
+                }
+            }
+        }
+        return null;
+    }
+
+    public void clear()
+    {
+        for ( int bucket = 0; bucket <= bucketMask; bucket++ )
+        {
+            int start = bucket * BUCKET_SIZE;
+            synchronized ( lockFor( bucket ) )
+            {
+                for ( int slot = start; slot < start + BUCKET_SIZE; slot++ )
+                {
+                    if ( values.getAndSet( slot, null ) != null )
+                    {
+                        size.decrementAndGet();
+                    }
+                }
+            }
+        }
+    }
+
+    public int size()
+    {
+        return size.get();
+    }
+
+    public void elementCleaned( V value )
+    {
+    }
+
+    public int maxSize()
+    {
+        return values.length();
+    }
+
+    public void resize( int newSize )
+    {
+    }
+
+    public boolean isAdaptive()
+    {
+        return false;
+    }
+
+    public void setAdaptiveStatus( boolean status )
+    {
+    }
+
+    public long hitCount()
+    {
+        return counter.getHitsCount();
+    }
+
+    public long missCount()
+    {
+        return counter.getMissCount();
+    }
+}
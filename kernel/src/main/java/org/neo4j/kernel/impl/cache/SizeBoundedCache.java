@@ -0,0 +1,302 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache which keeps the estimated heap size of its entities within a fixed
+ * number of bytes, evicting the least recently used entities when it grows
+ * beyond that. Unlike the reference based caches it never leaves it to the
+ * garbage collector to decide what to throw out, so the amount of heap used
+ * for caching stays predictable.
+ * <p>
+ * The cache is split up in segments with a share of the budget each, guarded
+ * by their own lock, so that concurrent lookups of different ids seldom
+ * contend. Since an entity can grow after it has been cached, for example
+ * when more of its relationships are loaded, {@link #updateSize(EntityWithSize)}
+ * should be called when that happens.
+ */
+public class SizeBoundedCache<E extends EntityWithSize> implements Cache<Long,E>
+{
+    private static final int SEGMENT_COUNT = 16;
+
+    private final String name;
+    private final long maxBytes;
+    private final Segment<E>[] segments;
+    private final HitCounter counter = HitCounter.create();
+
+    @SuppressWarnings( "unchecked" )
+    public SizeBoundedCache( String name, long maxBytes )
+    {
+        if ( maxBytes <= 0 )
+        {
+            throw new IllegalArgumentException( "Illegal max bytes " + maxBytes
+                + " for " + name );
+        }
+        this.name = name;
+        this.maxBytes = maxBytes;
+        this.segments = new Segment[SEGMENT_COUNT];
+        for ( int i = 0; i < segments.length; i++ )
+        {
+            segments[i] = new Segment<E>( Math.max( 1, maxBytes / SEGMENT_COUNT ) );
+        }
+    }
+
+    private Segment<E> segment( long id )
+    {
+        int hash = (int) ( id ^ ( id >>> 32 ) );
+        hash ^= ( hash >>> 16 ) ^ ( hash >>> 8 );
+        return segments[hash & ( SEGMENT_COUNT - 1 )];
+    }
+
+    private static Long checkKey( Long key )
+    {
+        if ( key == null )
+        {
+            throw new IllegalArgumentException( "Null key" );
+        }
+        return key;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public E get( Long key )
+    {
+        return counter.count( segment( checkKey( key ) ).get( key ) );
+    }
+
+    public void put( Long key, E value )
+    {
+        if ( value == null )
+        {
+            throw new IllegalArgumentException( "Null value" );
+        }
+        counter.evicted( segment( checkKey( key ) ).put( key, value, value.size() ) );
+    }
+
+    public void putAll( Map<Long,E> map )
+    {
+        for ( Map.Entry<Long,E> entry : map.entrySet() )
+        {
+            put( entry.getKey(), entry.getValue() );
+        }
+    }
+
+    /**
+     * Measures <CODE>entity</CODE> again if it is in this cache, evicting
+     * other entities if it has grown beyond what fits the budget.
+     *
+     * @param entity the entity which may have changed in size
+     */
+    public void updateSize( E entity )
+    {
+        long id = entity.getId();
+        counter.evicted( segment( id ).updateSize( id, entity, entity.size() ) );
+    }
+
+    public E remove( Long key )
+    {
+        return segment( checkKey( key ) ).remove( key );
+    }
+
+    public void clear()
+    {
+        for ( Segment<E> segment : segments )
+        {
+            segment.clear();
+        }
+    }
+
+    public int size()
+    {
+        int size = 0;
+        for ( Segment<E> segment : segments )
+        {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return the estimated number of bytes the cached entities take up.
+     */
+    public long usedBytes()
+    {
+        long used = 0;
+        for ( Segment<E> segment : segments )
+        {
+            used += segment.usedBytes();
+        }
+        return used;
+    }
+
+    public long maxBytes()
+    {
+        return maxBytes;
+    }
+
+    public void elementCleaned( E value )
+    {
+    }
+
+    public int maxSize()
+    {
+        return Integer.MAX_VALUE;
+    }
+
+    public void resize( int newSize )
+    {
+    }
+
+    public boolean isAdaptive()
+    {
+        return false;
+    }
+
+    public void setAdaptiveStatus( boolean status )
+    {
+    }
+
+    public long hitCount()
+    {
+        return counter.getHitsCount();
+    }
+
+    public long missCount()
+    {
+        return counter.getMissCount();
+    }
+
+    public long evictionCount()
+    {
+        return counter.getEvictionCount();
+    }
+
+    @Override
+    public String toString()
+    {
+        return getClass().getSimpleName() + "[" + name + ", " + size() + " entities, "
+            + usedBytes() + "/" + maxBytes + " bytes]";
+    }
+
+    private static class Entry<E>
+    {
+        private final E value;
+        private int size;
+
+        Entry( E value, int size )
+        {
+            this.value = value;
+            this.size = size;
+        }
+    }
+
+    private static class Segment<E>
+    {
+        private final long maxBytes;
+        private final LinkedHashMap<Long,Entry<E>> map =
+            new LinkedHashMap<Long,Entry<E>>( 16, 0.75f, true );
+        private long usedBytes;
+
+        Segment( long maxBytes )
+        {
+            this.maxBytes = maxBytes;
+        }
+
+        synchronized E get( Long key )
+        {
+            Entry<E> entry = map.get( key );
+            return entry != null ? entry.value : null;
+        }
+
+        /**
+         * @return the number of entities evicted to make room.
+         */
+        synchronized int put( Long key, E value, int size )
+        {
+            Entry<E> previous = map.put( key, new Entry<E>( value, size ) );
+            if ( previous != null )
+            {
+                usedBytes -= previous.size;
+            }
+            usedBytes += size;
+            return evict();
+        }
+
+        synchronized int updateSize( Long key, E value, int size )
+        {
+            Entry<E> entry = map.get( key );
+            if ( entry == null || entry.value != value )
+            {
+                return 0;
+            }
+            usedBytes += size - entry.size;
+            entry.size = size;
+            return evict();
+        }
+
+        synchronized E remove( Long key )
+        {
+            Entry<E> entry = map.remove( key );
+            if ( entry == null )
+            {
+                return null;
+            }
+            usedBytes -= entry.size;
+            return entry.value;
+        }
+
+        synchronized void clear()
+        {
+            map.clear();
+            usedBytes = 0;
+        }
+
+        synchronized int size()
+        {
+            return map.size();
+        }
+
+        synchronized long usedBytes()
+        {
+            return usedBytes;
+        }
+
+        private int evict()
+        {
+            int evicted = 0;
+            Iterator<Entry<E>> entries = map.values().iterator();
+            while ( usedBytes > maxBytes && entries.hasNext() )
+            {
+                Entry<E> eldest = entries.next();
+                entries.remove();
+                usedBytes -= eldest.size;
+                evicted++;
+            }
+            return evicted;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.cache;
+
+import java.lang.reflect.Array;
+
+/**
+ * Rough estimates of how many bytes of heap objects take up, assuming a 64 bit
+ * JVM without compressed references. Used by {@link SizeBoundedCache} to keep
+ * the cached entities within a byte budget, the numbers only have to be good
+ * enough to make the budget meaningful.
+ */
+public final class SizeOfs
+{
+    public static final int REFERENCE_SIZE = 8;
+    public static final int OBJECT_OVERHEAD = 16;
+    public static final int ARRAY_OVERHEAD = 24;
+
+    private SizeOfs()
+    {
+    }
+
+    /**
+     * @param fieldBytes the total size of the fields of an object
+     * @return the size of the object, including the object header
+     */
+    public static int withObjectOverhead( int fieldBytes )
+    {
+        return align( OBJECT_OVERHEAD + fieldBytes );
+    }
+
+    /**
+     * @param elementBytes the total size of the elements of an array
+     * @return the size of the array, including the array header
+     */
+    public static int withArrayOverhead( int elementBytes )
+    {
+        return align( ARRAY_OVERHEAD + elementBytes );
+    }
+
+    public static int sizeOfReferenceArray( int length )
+    {
+        return withArrayOverhead( length * REFERENCE_SIZE );
+    }
+
+    public static int sizeOf( String string )
+    {
+        // value reference, hash and the char[]
+        return withObjectOverhead( REFERENCE_SIZE + 4 )
+               + withArrayOverhead( string.length() * 2 );
+    }
+
+    /**
+     * Estimates the size of a property value, a boxed primitive, a
+     * <CODE>String</CODE> or an array of either.
+     *
+     * @param value the property value, may be <CODE>null</CODE>
+     * @return the estimated size of <CODE>value</CODE> in bytes
+     */
+    public static int sizeOfValue( Object value )
+    {
+        if ( value == null )
+        {
+            return 0;
+        }
+        if ( value instanceof String )
+        {
+            return sizeOf( (String) value );
+        }
+        Class<?> type = value.getClass();
+        if ( !type.isArray() )
+        {
+            return withObjectOverhead( 8 );
+        }
+        int length = Array.getLength( value );
+        Class<?> componentType = type.getComponentType();
+        if ( !componentType.isPrimitive() )
+        {
+            int size = sizeOfReferenceArray( length );
+            for ( int i = 0; i < length; i++ )
+            {
+                size += sizeOfValue( Array.get( value, i ) );
+            }
+            return size;
+        }
+        return withArrayOverhead( length * sizeOfPrimitive( componentType ) );
+    }
+
+    private static int sizeOfPrimitive( Class<?> type )
+    {
+        if ( type == long.class || type == double.class )
+        {
+            return 8;
+        }
+        if ( type == int.class || type == float.class )
+        {
+            return 4;
+        }
+        if ( type == short.class || type == char.class )
+        {
+            return 2;
+        }
+        return 1;
+    }
+
+    private static int align( int size )
+    {
+        return ( size + 7 ) & ~7;
+    }
+}
@@ -19,6 +19,11 @@
  */
 package org.neo4j.kernel.impl.core;
 
+import static org.neo4j.kernel.impl.cache.SizeOfs.REFERENCE_SIZE;
+import static org.neo4j.kernel.impl.cache.SizeOfs.sizeOfReferenceArray;
+import static org.neo4j.kernel.impl.cache.SizeOfs.sizeOfValue;
+import static org.neo4j.kernel.impl.cache.SizeOfs.withObjectOverhead;
+
 import org.neo4j.kernel.impl.nioneo.store.PropertyData;
 import org.neo4j.kernel.impl.util.ArrayMap;
 
@@ -31,6 +36,8 @@ import org.neo4j.kernel.impl.util.ArrayMap;
 abstract class ArrayBasedPrimitive extends Primitive
 {
     private volatile PropertyData[] properties;
+    // the properties looked up one key at a time while not all are loaded
+    private volatile PropertyData[] loadedProperties;
     
     ArrayBasedPrimitive( boolean newPrimitive )
     {
@@ -63,6 +70,78 @@ abstract class ArrayBasedPrimitive extends Primitive
     public void setProperties( ArrayMap<Integer, PropertyData> properties )
     {
         this.properties = toPropertyArray( properties );
+        this.loadedProperties = null;
+    }
+
+    /**
+     * Reads the committed property with the given key id from the store,
+     * without loading any other properties.
+     */
+    protected abstract PropertyData loadProperty( NodeManager nodeManager, int keyId );
+
+    @Override
+    protected boolean supportsLazyProperties()
+    {
+        return true;
+    }
+
+    @Override
+    protected PropertyData getLazyProperty( NodeManager nodeManager, int keyId )
+    {
+        if ( properties != null )
+        {
+            return getPropertyForIndex( keyId );
+        }
+        PropertyData property = findProperty( loadedProperties, keyId );
+        if ( property != null )
+        {
+            return property;
+        }
+        property = loadProperty( nodeManager, keyId );
+        if ( property == null )
+        {
+            return null;
+        }
+        synchronized ( this )
+        {
+            // all properties may have been loaded, or this one looked up by
+            // some other thread, meanwhile
+            if ( properties != null )
+            {
+                return getPropertyForIndex( keyId );
+            }
+            PropertyData[] loaded = loadedProperties;
+            PropertyData existing = findProperty( loaded, keyId );
+            if ( existing != null )
+            {
+                return existing;
+            }
+            int length = loaded != null ? loaded.length : 0;
+            PropertyData[] newLoaded = new PropertyData[length + 1];
+            if ( loaded != null )
+            {
+                System.arraycopy( loaded, 0, newLoaded, 0, length );
+            }
+            newLoaded[length] = property;
+            loadedProperties = newLoaded;
+        }
+        updateSize( nodeManager );
+        return property;
+    }
+
+    private static PropertyData findProperty( PropertyData[] properties, int keyId )
+    {
+        if ( properties != null )
+        {
+            for ( PropertyData property : properties )
+            {
+                if ( property.getIndex() == keyId )
+                {
+                    return property;
+                }
+            }
+        }
+        return null;
     }
 
     @Override
@@ -71,17 +150,39 @@ abstract class ArrayBasedPrimitive extends Primitive
         return properties;
     }
 
-    @Override
-    protected PropertyData getPropertyForIndex( int keyId )
+    /**
+     * @return an estimate of the number of bytes the cached properties take
+     * up on the heap, values included.
+     */
+    protected int sizeOfProperties()
+    {
+        return sizeOf( properties ) + sizeOf( loadedProperties );
+    }
+
+    private static int sizeOf( PropertyData[] properties )
     {
+        if ( properties == null || properties.length == 0 )
+        {
+            return 0;
+        }
+        int size = sizeOfReferenceArray( properties.length );
         for ( PropertyData property : properties )
         {
-            if ( property.getIndex() == keyId )
+            // id, index and the value, either inlined or a reference
+            size += withObjectOverhead( 8 + 4 + REFERENCE_SIZE );
+            Object value = property.getValue();
+            if ( value instanceof String || ( value != null && value.getClass().isArray() ) )
             {
-                return property;
+                size += sizeOfValue( value );
             }
         }
-        return null;
+        return size;
+    }
+
+    @Override
+    protected PropertyData getPropertyForIndex( int keyId )
+    {
+        return findProperty( properties, keyId );
     }
 
     @Override
@@ -91,7 +192,9 @@ abstract class ArrayBasedPrimitive extends Primitive
     {
         if ( properties == null )
         {
-            // we will load full in some other tx
+            // we will load full in some other tx, and look up the
+            // properties read one at a time again
+            loadedProperties = null;
             return;
         }
 
@@ -0,0 +1,62 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import org.neo4j.kernel.impl.cache.EntityWithSize;
+import org.neo4j.kernel.impl.util.OffHeapRelIdArray;
+import org.neo4j.kernel.impl.util.RelIdArray;
+
+/**
+ * The fully loaded, off heap, relationship ids of a dense node. Kept in a
+ * cache of their own so that a dense node evicted from the node cache can get
+ * its relationships back without reading its whole relationship chain again.
+ * The size is the number of bytes kept outside of the heap.
+ */
+class DenseRelationships implements EntityWithSize
+{
+    private final long nodeId;
+    private final RelIdArray[] relationships;
+
+    DenseRelationships( long nodeId, RelIdArray[] relationships )
+    {
+        this.nodeId = nodeId;
+        this.relationships = relationships;
+    }
+
+    public long getId()
+    {
+        return nodeId;
+    }
+
+    RelIdArray[] getRelationships()
+    {
+        return relationships.clone();
+    }
+
+    public int size()
+    {
+        int size = 0;
+        for ( RelIdArray array : relationships )
+        {
+            size += ( (OffHeapRelIdArray) array ).offHeapBytes();
+        }
+        return size;
+    }
+}
@@ -105,13 +105,13 @@ public class GraphDbModule
         {
             nodeManager = new NodeManager( graphDbService, cacheManager,
                     lockManager, lockReleaser, transactionManager,
-                    persistenceManager, idGenerator, relTypeCreator, cacheType );
+                    persistenceManager, idGenerator, relTypeCreator, cacheType, params );
         }
         else
         {
             nodeManager = new ReadOnlyNodeManager( graphDbService,
                     cacheManager, lockManager, lockReleaser,
-                    transactionManager, persistenceManager, idGenerator, cacheType );
+                    transactionManager, persistenceManager, idGenerator, cacheType, params );
         }
         // load and verify from PS
         NameData[] relTypes = null;
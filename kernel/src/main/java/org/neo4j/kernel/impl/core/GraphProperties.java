@@ -174,6 +174,20 @@ public class GraphProperties extends Primitive implements PropertyContainer
         return properties.get( keyId );
     }
 
+    @Override
+    protected boolean supportsLazyProperties()
+    {
+        return false;
+    }
+
+    @Override
+    protected PropertyData getLazyProperty( NodeManager nodeManager, int keyId )
+    {
+        // graph properties are few, so they are always loaded all together
+        ensureFullProperties( nodeManager );
+        return getPropertyForIndex( keyId );
+    }
+
     @Override
     protected void setProperties( ArrayMap<Integer, PropertyData> loadedProperties )
     {
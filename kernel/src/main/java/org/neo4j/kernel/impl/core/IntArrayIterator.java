@@ -42,6 +42,8 @@ class IntArrayIterator extends PrefetchingIterator<Relationship> implements Iter
     private final NodeManager nodeManager;
     private final RelationshipType types[];
     private final List<RelIdIterator> rels;
+    // false if rels already are all there is, not only what fromNode has loaded
+    private final boolean loadMore;
     
     // This is just for optimization
     private boolean isFullyLoaded;
@@ -49,8 +51,16 @@ class IntArrayIterator extends PrefetchingIterator<Relationship> implements Iter
     IntArrayIterator( List<RelIdIterator> rels, NodeImpl fromNode,
         DirectionWrapper direction, NodeManager nodeManager, RelationshipType[] types,
         boolean isFullyLoaded )
+    {
+        this( rels, fromNode, direction, nodeManager, types, isFullyLoaded, true );
+    }
+
+    IntArrayIterator( List<RelIdIterator> rels, NodeImpl fromNode,
+        DirectionWrapper direction, NodeManager nodeManager, RelationshipType[] types,
+        boolean isFullyLoaded, boolean loadMore )
     {
         this.rels = rels;
+        this.loadMore = loadMore;
         this.isFullyLoaded = isFullyLoaded;
         this.typeIterator = rels.iterator();
         this.currentTypeIterator = typeIterator.hasNext() ? typeIterator.next() : RelIdArray.EMPTY.iterator( direction );
@@ -88,13 +98,13 @@ class IntArrayIterator extends PrefetchingIterator<Relationship> implements Iter
                 {
                     currentTypeIterator = typeIterator.next();
                 }
-                else if ( fromNode.getMoreRelationships( nodeManager ) ||
+                else if ( loadMore && ( fromNode.getMoreRelationships( nodeManager ) ||
                         // This is here to guard for that someone else might have loaded
                         // stuff in this relationship chain (and exhausted it) while I
                         // iterated over my batch of relationships. It will only happen
                         // for nodes which have more than <grab size> relationships and
                         // isn't fully loaded when starting iterating.
-                        !isFullyLoaded )
+                        !isFullyLoaded ) )
                 {
                     Map<String,RelIdIterator> newRels = new HashMap<String,RelIdIterator>();
                     for ( RelIdIterator itr : rels )
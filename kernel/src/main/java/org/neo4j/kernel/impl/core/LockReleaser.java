@@ -23,8 +23,8 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map.Entry;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -43,6 +43,7 @@ import org.neo4j.kernel.impl.nioneo.store.Record;
 import org.neo4j.kernel.impl.transaction.LockManager;
 import org.neo4j.kernel.impl.transaction.LockType;
 import org.neo4j.kernel.impl.util.ArrayMap;
+import org.neo4j.kernel.impl.util.PrimitiveLongMap;
 import org.neo4j.kernel.impl.util.RelIdArray;
 import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
 import org.neo4j.kernel.impl.util.RelIdArrayWithLoops;
@@ -50,15 +51,25 @@ import org.neo4j.kernel.impl.util.RelIdIterator;
 
 /**
  * Manages object version diffs and locks for each transaction.
+ * <p>
+ * The state of each transaction is kept in objects of its own, found through
+ * concurrent maps so that looking it up, which is done for most reads inside
+ * a transaction, doesn't contend with other transactions. The diffs are kept
+ * in maps keyed by primitive node and relationship ids.
+ * <p>
+ * The state is keyed by the {@link Transaction} instead of being kept on it,
+ * since the transaction manager is pluggable (see
+ * {@link org.neo4j.kernel.Config#TXMANAGER_IMPLEMENTATION}) and its
+ * transactions can't be assumed to have room for it.
  */
 public class LockReleaser
 {
     private static Logger log = Logger.getLogger( LockReleaser.class.getName() );
 
-    private final ArrayMap<Transaction,List<LockElement>> lockMap =
-        new ArrayMap<Transaction,List<LockElement>>( 5, true, true );
-    private final ArrayMap<Transaction,PrimitiveElement> cowMap =
-        new ArrayMap<Transaction,PrimitiveElement>( 5, true, true );
+    private final ConcurrentMap<Transaction,List<LockElement>> lockMap =
+        new ConcurrentHashMap<Transaction,List<LockElement>>();
+    private final ConcurrentMap<Transaction,PrimitiveElement> cowMap =
+        new ConcurrentHashMap<Transaction,PrimitiveElement>();
 
     private NodeManager nodeManager;
     private final LockManager lockManager;
@@ -69,10 +80,10 @@ public class LockReleaser
     {
         PrimitiveElement() {}
         
-        private final ArrayMap<Long,CowNodeElement> nodes =
-            new ArrayMap<Long,CowNodeElement>();
-        private final ArrayMap<Long,CowRelElement> relationships =
-            new ArrayMap<Long,CowRelElement>();
+        private final PrimitiveLongMap<CowNodeElement> nodes =
+            new PrimitiveLongMap<CowNodeElement>();
+        private final PrimitiveLongMap<CowRelElement> relationships =
+            new PrimitiveLongMap<CowRelElement>();
         private CowGraphElement graph;
         
         public CowNodeElement nodeElement( long id, boolean create )
@@ -272,7 +283,7 @@ public class LockReleaser
         throws NotInTransactionException
     {
         Transaction tx = getTransaction();
-        List<LockElement> lockElements = lockMap.get( tx );
+        List<LockElement> lockElements = tx != null ? lockMap.get( tx ) : null;
         if ( lockElements != null )
         {
             LockElement element = new LockElement( resource, type );
@@ -322,14 +333,18 @@ public class LockReleaser
         }
     }
     
+    private PrimitiveElement getPrimitiveElementIfAny()
+    {
+        Transaction tx = getTransaction();
+        return tx != null ? cowMap.get( tx ) : null;
+    }
+
     public Collection<Long> getCowRelationshipRemoveMap( NodeImpl node, String type )
     {
-        PrimitiveElement primitiveElement = cowMap.get( getTransaction() );
+        PrimitiveElement primitiveElement = getPrimitiveElementIfAny();
         if ( primitiveElement != null )
         {
-            ArrayMap<Long,CowNodeElement> cowElements =
-                primitiveElement.nodes;
-            CowNodeElement element = cowElements.get( node.getId() );
+            CowNodeElement element = primitiveElement.nodes.get( node.getId() );
             if ( element != null && element.relationshipRemoveMap != null )
             {
                 return element.relationshipRemoveMap.get( type );
@@ -394,13 +409,13 @@ public class LockReleaser
 
     public boolean hasLocks( Transaction tx )
     {
-        List<LockElement> lockElements = lockMap.get( tx );
+        List<LockElement> lockElements = tx != null ? lockMap.get( tx ) : null;
         return lockElements != null && !lockElements.isEmpty();
     }
 
     void releaseLocks( Transaction tx )
     {
-        List<LockElement> lockElements = lockMap.remove( tx );
+        List<LockElement> lockElements = tx != null ? lockMap.remove( tx ) : null;
         if ( lockElements != null )
         {
             for ( LockElement lockElement : lockElements )
@@ -420,26 +435,27 @@ public class LockReleaser
 
     void releaseCows( Transaction cowTxId, int param )
     {
-        PrimitiveElement element = cowMap.remove( cowTxId );
+        PrimitiveElement element = cowTxId != null ? cowMap.remove( cowTxId ) : null;
         if ( element == null )
         {
             return;
         }
-        ArrayMap<Long,CowNodeElement> cowNodeElements = element.nodes;
-        Set<Entry<Long,CowNodeElement>> nodeEntrySet =
-            cowNodeElements.entrySet();
-        for ( Entry<Long,CowNodeElement> entry : nodeEntrySet )
+        for ( CowNodeElement nodeElement : element.nodes.values() )
         {
-            NodeImpl node = nodeManager.getNodeIfCached( entry.getKey() );
+            NodeImpl node = nodeManager.getNodeIfCached( nodeElement.id );
             if ( node != null )
             {
-                CowNodeElement nodeElement = entry.getValue();
                 if ( param == Status.STATUS_COMMITTED )
                 {
                     node.commitRelationshipMaps( nodeElement.relationshipAddMap,
                         nodeElement.relationshipRemoveMap, nodeElement.firstRel );
                     node.commitPropertyMaps( nodeElement.propertyAddMap,
                         nodeElement.propertyRemoveMap, nodeElement.firstProp );
+                    if ( nodeElement.relationshipAddMap != null || nodeElement.relationshipRemoveMap != null )
+                    {
+                        node.relationshipsCommitted( nodeManager );
+                    }
+                    nodeManager.updateCacheSize( node );
                 }
                 else if ( param != Status.STATUS_ROLLEDBACK )
                 {
@@ -447,20 +463,24 @@ public class LockReleaser
                         "Unknown transaction status: " + param );
                 }
             }
+            else if ( param == Status.STATUS_COMMITTED && ( nodeElement.relationshipAddMap != null
+                    || nodeElement.relationshipRemoveMap != null ) )
+            {
+                // Relationships kept for the node since it was evicted are
+                // now out of date
+                nodeManager.removeDenseRelationships( nodeElement.id );
+            }
         }
-        ArrayMap<Long,CowRelElement> cowRelElements = element.relationships;
-        Set<Entry<Long,CowRelElement>> relEntrySet =
-            cowRelElements.entrySet();
-        for ( Entry<Long,CowRelElement> entry : relEntrySet )
+        for ( CowRelElement relElement : element.relationships.values() )
         {
-            RelationshipImpl rel = nodeManager.getRelIfCached( entry.getKey() );
+            RelationshipImpl rel = nodeManager.getRelIfCached( relElement.id );
             if ( rel != null )
             {
-                CowRelElement relElement = entry.getValue();
                 if ( param == Status.STATUS_COMMITTED )
                 {
                     rel.commitPropertyMaps( relElement.getPropertyAddMap( false ),
                         relElement.getPropertyRemoveMap( false ), Record.NO_NEXT_PROPERTY.intValue() );
+                    nodeManager.updateCacheSize( rel );
                 }
                 else if ( param != Status.STATUS_ROLLEDBACK )
                 {
@@ -474,7 +494,6 @@ public class LockReleaser
             nodeManager.getGraphProperties().commitPropertyMaps( element.graph.getPropertyAddMap( false ),
                     element.graph.getPropertyRemoveMap( false ), Record.NO_NEXT_PROPERTY.intValue() );
         }
-        cowMap.remove( cowTxId );
     }
 
     // non thread safe but let exception be thrown instead of risking deadlock
@@ -493,15 +512,16 @@ public class LockReleaser
         while ( itr.hasNext() )
         {
             Transaction transaction = (Transaction) itr.next();
+            List<LockElement> lockElements = lockMap.get( transaction );
             System.out.println( "" + transaction + "->" +
-                lockMap.get( transaction ).size() );
+                (lockElements != null ? lockElements.size() : 0) );
         }
     }
 
     public ArrayMap<Integer,PropertyData> getCowPropertyRemoveMap(
         Primitive primitive )
     {
-        PrimitiveElement primitiveElement = cowMap.get( getTransaction() );
+        PrimitiveElement primitiveElement = getPrimitiveElementIfAny();
         if ( primitiveElement == null ) return null;
         CowEntityElement element = primitive.getEntityElement( primitiveElement, false );
         return element != null ? element.getPropertyRemoveMap( false ) : null;
@@ -510,7 +530,7 @@ public class LockReleaser
     public ArrayMap<Integer,PropertyData> getCowPropertyAddMap(
         Primitive primitive )
     {
-        PrimitiveElement primitiveElement = cowMap.get( getTransaction() );
+        PrimitiveElement primitiveElement = getPrimitiveElementIfAny();
         if ( primitiveElement == null ) return null;
         CowEntityElement element = primitive.getEntityElement( primitiveElement, false );
         return element != null ? element.getPropertyAddMap( false ) : null;
@@ -531,7 +551,11 @@ public class LockReleaser
         if ( primitiveElement == null && create )
         {
             primitiveElement = new PrimitiveElement();
-            cowMap.put( tx, primitiveElement );
+            PrimitiveElement existing = cowMap.putIfAbsent( tx, primitiveElement );
+            if ( existing != null )
+            {
+                primitiveElement = existing;
+            }
         }
         return primitiveElement;
     }
@@ -631,7 +655,7 @@ public class LockReleaser
     public TransactionData getTransactionData()
     {
         TransactionDataImpl result = new TransactionDataImpl();
-        PrimitiveElement element = cowMap.get( getTransaction() );
+        PrimitiveElement element = getPrimitiveElementIfAny();
         populateCreatedNodes( element, result );
         if ( element == null )
         {
@@ -651,9 +675,9 @@ public class LockReleaser
     private void populateRelationshipPropertyEvents( PrimitiveElement element,
             TransactionDataImpl result )
     {
-        for ( long relId : element.relationships.keySet() )
+        for ( CowRelElement relElement : element.relationships.values() )
         {
-            CowRelElement relElement = element.relationships.get( relId );
+            long relId = relElement.id;
             RelationshipProxy rel = new RelationshipProxy( relId, nodeManager );
             RelationshipImpl relImpl = nodeManager.getRelForProxy( relId );
             if ( relElement.deleted )
@@ -694,9 +718,9 @@ public class LockReleaser
     private void populateNodeRelEvent( PrimitiveElement element,
             TransactionDataImpl result )
     {
-        for ( long nodeId : element.nodes.keySet() )
+        for ( CowNodeElement nodeElement : element.nodes.values() )
         {
-            CowNodeElement nodeElement = element.nodes.get( nodeId );
+            long nodeId = nodeElement.id;
             NodeProxy node = new NodeProxy( nodeId, nodeManager );
             NodeImpl nodeImpl = nodeManager.getNodeForProxy( nodeId );
             if ( nodeElement.deleted )
@@ -800,17 +824,10 @@ public class LockReleaser
 
     boolean hasRelationshipModifications( NodeImpl node )
     {
-        Transaction tx = getTransaction();
-        if ( tx == null )
-        {
-            return false;
-        }
-        PrimitiveElement primitiveElement = cowMap.get( tx );
+        PrimitiveElement primitiveElement = getPrimitiveElementIfAny();
         if ( primitiveElement != null )
         {
-            ArrayMap<Long,CowNodeElement> cowElements =
-                primitiveElement.nodes;
-            CowNodeElement element = cowElements.get( node.getId() );
+            CowNodeElement element = primitiveElement.nodes.get( node.getId() );
             if ( element != null && (element.relationshipAddMap != null || element.relationshipRemoveMap != null) )
             {
                 return true;
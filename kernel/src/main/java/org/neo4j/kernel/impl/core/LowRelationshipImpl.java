@@ -19,6 +19,9 @@
  */
 package org.neo4j.kernel.impl.core;
 
+import static org.neo4j.kernel.impl.cache.SizeOfs.REFERENCE_SIZE;
+import static org.neo4j.kernel.impl.cache.SizeOfs.withObjectOverhead;
+
 import org.neo4j.graphdb.RelationshipType;
 
 /**
@@ -61,6 +64,12 @@ class LowRelationshipImpl extends RelationshipImpl
         throw new UnsupportedOperationException();
     }
 
+    public int size()
+    {
+        // properties, idAndMore and the two ints
+        return withObjectOverhead( REFERENCE_SIZE + 8 + 4 + 4 ) + sizeOfProperties();
+    }
+
     @Override
     long getStartNodeId()
     {
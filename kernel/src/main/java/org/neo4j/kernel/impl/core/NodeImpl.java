@@ -19,6 +19,9 @@
  */
 package org.neo4j.kernel.impl.core;
 
+import static org.neo4j.kernel.impl.cache.SizeOfs.REFERENCE_SIZE;
+import static org.neo4j.kernel.impl.cache.SizeOfs.sizeOfReferenceArray;
+import static org.neo4j.kernel.impl.cache.SizeOfs.withObjectOverhead;
 import static org.neo4j.kernel.impl.util.RelIdArray.empty;
 
 import java.util.Collection;
@@ -38,6 +41,7 @@ import org.neo4j.graphdb.StopEvaluator;
 import org.neo4j.graphdb.Traverser;
 import org.neo4j.graphdb.Traverser.Order;
 import org.neo4j.helpers.Triplet;
+import org.neo4j.kernel.impl.cache.EntityWithSize;
 import org.neo4j.kernel.impl.core.LockReleaser.CowEntityElement;
 import org.neo4j.kernel.impl.core.LockReleaser.PrimitiveElement;
 import org.neo4j.kernel.impl.nioneo.store.PropertyData;
@@ -46,11 +50,12 @@ import org.neo4j.kernel.impl.transaction.LockType;
 import org.neo4j.kernel.impl.traversal.OldTraverserWrapper;
 import org.neo4j.kernel.impl.util.ArrayMap;
 import org.neo4j.kernel.impl.util.CombinedRelIdIterator;
+import org.neo4j.kernel.impl.util.OffHeapRelIdArray;
 import org.neo4j.kernel.impl.util.RelIdArray;
 import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
 import org.neo4j.kernel.impl.util.RelIdIterator;
 
-class NodeImpl extends ArrayBasedPrimitive
+class NodeImpl extends ArrayBasedPrimitive implements EntityWithSize
 {
     private static final long TWO_POWER_36 = (long) Math.pow( 2, 36 )-1;
     private static final RelIdArray[] NO_RELATIONSHIPS = new RelIdArray[0];
@@ -85,6 +90,28 @@ class NodeImpl extends ArrayBasedPrimitive
     {
         return idAndMore & 0xFFFFFFFFFL;
     }
+
+    public int size()
+    {
+        // relationships, properties and the two longs
+        int size = withObjectOverhead( 2*REFERENCE_SIZE + 16 ) + sizeOfProperties();
+        RelIdArray[] relationships = this.relationships;
+        if ( relationships != null && relationships.length > 0 )
+        {
+            size += sizeOfReferenceArray( relationships.length );
+            for ( RelIdArray array : relationships )
+            {
+                size += array.size();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    protected void updateSize( NodeManager nodeManager )
+    {
+        nodeManager.updateCacheSize( this );
+    }
     
     @Override
     protected long getFirstProp()
@@ -139,6 +166,12 @@ class NodeImpl extends ArrayBasedPrimitive
         return nodeManager.loadProperties( this, getFirstProp(), light );
     }
 
+    @Override
+    protected PropertyData loadProperty( NodeManager nodeManager, int keyId )
+    {
+        return nodeManager.loadProperty( this, getFirstProp(), keyId );
+    }
+
     List<RelIdIterator> getAllRelationships( NodeManager nodeManager, DirectionWrapper direction )
     {
         ensureRelationshipMapNotNull( nodeManager );
@@ -230,23 +263,92 @@ class NodeImpl extends ArrayBasedPrimitive
     public Iterable<Relationship> getRelationships( NodeManager nodeManager, RelationshipType type )
     {
         RelationshipType types[] = new RelationshipType[] { type };
-        return new IntArrayIterator( getAllRelationshipsOfType( nodeManager, DirectionWrapper.BOTH, types ),
-            this, DirectionWrapper.BOTH, nodeManager, types, !hasMoreRelationshipsToLoad() );
+        return getRelationshipsOfType( nodeManager, DirectionWrapper.BOTH, types );
     }
 
     public Iterable<Relationship> getRelationships( NodeManager nodeManager,
             RelationshipType... types )
     {
-        return new IntArrayIterator( getAllRelationshipsOfType( nodeManager, DirectionWrapper.BOTH, types ),
-            this, DirectionWrapper.BOTH, nodeManager, types, !hasMoreRelationshipsToLoad() );
+        return getRelationshipsOfType( nodeManager, DirectionWrapper.BOTH, types );
     }
 
     public Iterable<Relationship> getRelationships( NodeManager nodeManager,
             Direction direction, RelationshipType... types )
     {
         DirectionWrapper dir = RelIdArray.wrap( direction );
-        return new IntArrayIterator( getAllRelationshipsOfType( nodeManager, dir, types ),
-            this, dir, nodeManager, types, !hasMoreRelationshipsToLoad() );
+        return getRelationshipsOfType( nodeManager, dir, types );
+    }
+
+    private IntArrayIterator getRelationshipsOfType( NodeManager nodeManager,
+            DirectionWrapper direction, RelationshipType... types )
+    {
+        if ( relationships == null && hasMoreRelationshipsToLoad() )
+        {
+            // Only the asked for types need to be read if this node has its
+            // relationships grouped by type, but then they aren't kept here
+            List<RelIdIterator> grouped = getGroupedRelationshipsOfType( nodeManager, direction, types );
+            if ( grouped != null )
+            {
+                return new IntArrayIterator( grouped, this, direction, nodeManager, types, true, false );
+            }
+        }
+        return new IntArrayIterator( getAllRelationshipsOfType( nodeManager, direction, types ),
+            this, direction, nodeManager, types, !hasMoreRelationshipsToLoad() );
+    }
+
+    private List<RelIdIterator> getGroupedRelationshipsOfType( NodeManager nodeManager,
+            DirectionWrapper direction, RelationshipType... types )
+    {
+        ArrayMap<String,RelIdArray> grouped = nodeManager.loadGroupedRelationships( this, direction, types );
+        if ( grouped == null )
+        {
+            return null;
+        }
+        List<RelIdIterator> relTypeList = new LinkedList<RelIdIterator>();
+        boolean hasModifications = nodeManager.getLockReleaser().hasRelationshipModifications( this );
+        for ( RelationshipType type : types )
+        {
+            String typeName = type.name();
+            RelIdArray src = grouped.get( typeName );
+            if ( hasModifications )
+            {
+                relTypeList.add( new CombinedRelIdIterator( typeName, direction, src,
+                        nodeManager.getCowRelationshipAddMap( this, typeName ),
+                        nodeManager.getCowRelationshipRemoveMap( this, typeName ) ) );
+            }
+            else
+            {
+                relTypeList.add( src != null ? src.iterator( direction ) : empty( typeName ).iterator( direction ) );
+            }
+        }
+        return relTypeList;
+    }
+
+    /**
+     * @return the number of relationships of this node, including the ones
+     * added in the current transaction, or -1 if not all of them are loaded.
+     */
+    int getKnownDegree( NodeManager nodeManager )
+    {
+        RelIdArray[] relationships = this.relationships;
+        if ( relationships == null || hasMoreRelationshipsToLoad() )
+        {
+            return -1;
+        }
+        int degree = 0;
+        for ( RelIdArray array : relationships )
+        {
+            degree += array.length();
+        }
+        ArrayMap<String,RelIdArray> addMap = nodeManager.getCowRelationshipAddMap( this );
+        if ( addMap != null )
+        {
+            for ( RelIdArray array : addMap.values() )
+            {
+                degree += array.length();
+            }
+        }
+        return degree;
     }
 
     public Relationship getSingleRelationship( NodeManager nodeManager, RelationshipType type,
@@ -254,8 +356,7 @@ class NodeImpl extends ArrayBasedPrimitive
     {
         DirectionWrapper direction = RelIdArray.wrap( dir );
         RelationshipType types[] = new RelationshipType[] { type };
-        Iterator<Relationship> rels = new IntArrayIterator( getAllRelationshipsOfType( nodeManager,
-                direction, types ), this, direction, nodeManager, types, !hasMoreRelationshipsToLoad() );
+        Iterator<Relationship> rels = getRelationshipsOfType( nodeManager, direction, types );
         if ( !rels.hasNext() )
         {
             return null;
@@ -274,8 +375,7 @@ class NodeImpl extends ArrayBasedPrimitive
     {
         RelationshipType types[] = new RelationshipType[] { type };
         DirectionWrapper direction = RelIdArray.wrap( dir );
-        return new IntArrayIterator( getAllRelationshipsOfType( nodeManager, direction, types ),
-            this, direction, nodeManager, types, !hasMoreRelationshipsToLoad() );
+        return getRelationshipsOfType( nodeManager, direction, types );
     }
 
     public void delete( NodeManager nodeManager, Node proxy )
@@ -353,19 +453,32 @@ class NodeImpl extends ArrayBasedPrimitive
         synchronized ( this )
         {
             if ( relationships == null )
-            {   // We got the relChainPosition in the constructor
+            {
+                RelIdArray[] dense = nodeManager.getDenseRelationships( getId() );
+                if ( dense != null )
+                {
+                    // Kept since this node was evicted, all of them are loaded
+                    this.relationships = dense;
+                    setRelChainPosition( Record.NO_NEXT_RELATIONSHIP.intValue() );
+                    return;
+                }
+                
+                // We got the relChainPosition in the constructor
                 ArrayMap<String,RelIdArray> tmpRelMap = new ArrayMap<String,RelIdArray>();
                 rels = getMoreRelationships( nodeManager, tmpRelMap );
                 this.relationships = toRelIdArray( tmpRelMap );
+                moveRelationshipsOffHeapIfDense( nodeManager );
                 if ( rels != null )
                 {
                     setRelChainPosition( rels.third() );
                 }
+                putDenseRelationships( nodeManager );
             }
         }
         if ( rels != null )
         {
             nodeManager.putAllInRelCache( rels.second() );
+            updateSize( nodeManager );
         }
     }
 
@@ -466,12 +579,88 @@ class NodeImpl extends ArrayBasedPrimitive
                 }
             }
 
+            moveRelationshipsOffHeapIfDense( nodeManager );
             setRelChainPosition( rels.third() );
+            putDenseRelationships( nodeManager );
         }
         nodeManager.putAllInRelCache( rels.second() );
+        updateSize( nodeManager );
         return true;
     }
 
+    /**
+     * Moves the relationship ids off heap if this node has at least
+     * {@link NodeManager#getDenseNodeThreshold()} relationships. Must be
+     * called while holding the lock on this node.
+     */
+    private void moveRelationshipsOffHeapIfDense( NodeManager nodeManager )
+    {
+        int threshold = nodeManager.getDenseNodeThreshold();
+        if ( threshold <= 0 )
+        {
+            return;
+        }
+        RelIdArray[] relationships = this.relationships;
+        int count = 0;
+        boolean allOffHeap = true;
+        for ( RelIdArray array : relationships )
+        {
+            count += array.length();
+            allOffHeap &= array.isOffHeap();
+        }
+        if ( allOffHeap || count < threshold )
+        {
+            return;
+        }
+        RelIdArray[] offHeap = new RelIdArray[relationships.length];
+        for ( int i = 0; i < relationships.length; i++ )
+        {
+            offHeap[i] = relationships[i].isOffHeap() ? relationships[i] :
+                    OffHeapRelIdArray.copyOf( relationships[i] );
+        }
+        this.relationships = offHeap;
+    }
+
+    /**
+     * Hands the relationship ids of this node over to the cache of dense
+     * relationships if they are all loaded and kept off heap, so that they
+     * outlive this node in the node cache.
+     */
+    private void putDenseRelationships( NodeManager nodeManager )
+    {
+        RelIdArray[] relationships = this.relationships;
+        if ( relationships == null || relationships.length == 0 || hasMoreRelationshipsToLoad() )
+        {
+            return;
+        }
+        for ( RelIdArray array : relationships )
+        {
+            if ( !array.isOffHeap() )
+            {
+                return;
+            }
+        }
+        nodeManager.putDenseRelationships( getId(), relationships );
+    }
+
+    /**
+     * Called after a transaction changing the relationships of this node has
+     * committed them to this node.
+     */
+    void relationshipsCommitted( NodeManager nodeManager )
+    {
+        nodeManager.removeDenseRelationships( getId() );
+        if ( relationships == null )
+        {
+            return;
+        }
+        synchronized ( this )
+        {
+            moveRelationshipsOffHeapIfDense( nodeManager );
+            putDenseRelationships( nodeManager );
+        }
+    }
+
     private RelIdArray getRelIdArray( String type )
     {
         // Concurrency-wise it's ok even if the relationships variable
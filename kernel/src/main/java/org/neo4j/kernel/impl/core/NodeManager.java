@@ -42,14 +42,18 @@ import org.neo4j.graphdb.event.TransactionData;
 import org.neo4j.helpers.Pair;
 import org.neo4j.helpers.Triplet;
 import org.neo4j.helpers.collection.PrefetchingIterator;
+import org.neo4j.kernel.Config;
 import org.neo4j.kernel.PropertyTracker;
 import org.neo4j.kernel.impl.cache.AdaptiveCacheManager;
 import org.neo4j.kernel.impl.cache.Cache;
 import org.neo4j.kernel.impl.cache.LruCache;
 import org.neo4j.kernel.impl.cache.NoCache;
+import org.neo4j.kernel.impl.cache.PrimitiveLongCache;
+import org.neo4j.kernel.impl.cache.SizeBoundedCache;
 import org.neo4j.kernel.impl.cache.SoftLruCache;
 import org.neo4j.kernel.impl.cache.StrongReferenceCache;
 import org.neo4j.kernel.impl.cache.WeakLruCache;
+import org.neo4j.kernel.impl.nioneo.store.CommonAbstractStore;
 import org.neo4j.kernel.impl.nioneo.store.NameData;
 import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyData;
@@ -74,6 +78,13 @@ public class NodeManager
     private final GraphDatabaseService graphDbService;
     private final Cache<Long,NodeImpl> nodeCache;
     private final Cache<Long,RelationshipImpl> relCache;
+    // the same caches when they take primitive ids, so that ids aren't boxed
+    private final PrimitiveLongCache<NodeImpl> primitiveNodeCache;
+    private final PrimitiveLongCache<RelationshipImpl> primitiveRelCache;
+    private final SizeBoundedCache<DenseRelationships> denseRelationshipsCache;
+    private final int denseNodeThreshold;
+    private final int groupingThreshold;
+    private final boolean lazyPropertyLoading;
     private final AdaptiveCacheManager cacheManager;
     private final CacheType cacheType;
     private final LockManager lockManager;
@@ -103,7 +114,8 @@ public class NodeManager
             AdaptiveCacheManager cacheManager, LockManager lockManager,
             LockReleaser lockReleaser, TransactionManager transactionManager,
             PersistenceManager persistenceManager, EntityIdGenerator idGenerator,
-            RelationshipTypeCreator relTypeCreator, CacheType cacheType )
+            RelationshipTypeCreator relTypeCreator, CacheType cacheType,
+            Map<Object,Object> params )
     {
         this.graphDbService = graphDb;
         this.cacheManager = cacheManager;
@@ -120,8 +132,17 @@ public class NodeManager
             persistenceManager, idGenerator, relTypeCreator );
 
         this.cacheType = cacheType;
-        this.nodeCache = cacheType.node( cacheManager );
-        this.relCache = cacheType.relationship( cacheManager );
+        this.nodeCache = cacheType.node( cacheManager, params );
+        this.relCache = cacheType.relationship( cacheManager, params );
+        this.primitiveNodeCache = primitiveCache( nodeCache );
+        this.primitiveRelCache = primitiveCache( relCache );
+        this.denseNodeThreshold = denseNodeThreshold( params );
+        this.groupingThreshold = groupingThreshold( params );
+        this.lazyPropertyLoading = params != null
+                && Boolean.parseBoolean( (String) params.get( Config.LAZY_PROPERTY_LOADING ) );
+        this.denseRelationshipsCache = denseNodeThreshold > 0 ?
+                new SizeBoundedCache<DenseRelationships>( "DenseRelationshipsCache",
+                        CacheType.cacheMemory( params, Config.DENSE_NODE_CACHE_MEMORY, 16 ) ) : null;
         for ( int i = 0; i < loadLocks.length; i++ )
         {
             loadLocks[i] = new ReentrantLock();
@@ -131,6 +152,53 @@ public class NodeManager
         this.graphProperties = instantiateGraphProperties();
     }
 
+    private static int denseNodeThreshold( Map<Object,Object> params )
+    {
+        Object threshold = params != null ? params.get( Config.DENSE_NODE_THRESHOLD ) : null;
+        return threshold != null ? Integer.parseInt( ( (String) threshold ).trim() ) : 0;
+    }
+
+    private static int groupingThreshold( Map<Object,Object> params )
+    {
+        Object threshold = params != null ? params.get( Config.RELATIONSHIP_GROUPING_THRESHOLD ) : null;
+        return threshold != null ? Integer.parseInt( ( (String) threshold ).trim() ) : 0;
+    }
+
+    /**
+     * @return the number of relationships from which a node keeps its
+     *         relationship ids off heap, or 0 if that is turned off.
+     */
+    int getDenseNodeThreshold()
+    {
+        return denseNodeThreshold;
+    }
+
+    RelIdArray[] getDenseRelationships( long nodeId )
+    {
+        if ( denseRelationshipsCache == null )
+        {
+            return null;
+        }
+        DenseRelationships dense = denseRelationshipsCache.get( nodeId );
+        return dense != null ? dense.getRelationships() : null;
+    }
+
+    void putDenseRelationships( long nodeId, RelIdArray[] relationships )
+    {
+        if ( denseRelationshipsCache != null )
+        {
+            denseRelationshipsCache.put( nodeId, new DenseRelationships( nodeId, relationships.clone() ) );
+        }
+    }
+
+    void removeDenseRelationships( long nodeId )
+    {
+        if ( denseRelationshipsCache != null )
+        {
+            denseRelationshipsCache.remove( nodeId );
+        }
+    }
+
     public GraphDatabaseService getGraphDbService()
     {
         return graphDbService;
@@ -267,7 +335,7 @@ public class NodeManager
         try
         {
             persistenceManager.nodeCreate( id );
-            nodeCache.put( id, node );
+            putNodeInCache( id, node );
             success = true;
             return proxy;
         }
@@ -317,6 +385,11 @@ public class NodeManager
             firstNodeTaken = true;
             acquireLock( endNode, LockType.WRITE );
             secondNodeTaken = true;
+            groupRelationshipsIfDense( startNode );
+            if ( startNodeId != endNodeId )
+            {
+                groupRelationshipsIfDense( secondNode );
+            }
             persistenceManager.relationshipCreate( id, typeId, startNodeId,
                 endNodeId );
             if ( startNodeId == endNodeId )
@@ -328,7 +401,7 @@ public class NodeManager
                 startNode.addRelationship( this, type, id, DirectionWrapper.OUTGOING );
                 secondNode.addRelationship( this, type, id, DirectionWrapper.INCOMING );
             }
-            relCache.put( rel.getId(), rel );
+            putRelationshipInCache( rel.getId(), rel );
             success = true;
             return proxy;
         }
@@ -373,6 +446,19 @@ public class NodeManager
         }
     }
 
+    /*
+     * Only nodes which have all their relationships loaded are considered,
+     * the degree of other nodes isn't known without reading their whole
+     * relationship chain. Caller must hold the write lock on node.
+     */
+    private void groupRelationshipsIfDense( NodeImpl node )
+    {
+        if ( groupingThreshold > 0 && node.getKnownDegree( this ) >= groupingThreshold )
+        {
+            persistenceManager.groupRelationships( node.getId() );
+        }
+    }
+
     private RelationshipImpl newRelationshipImpl( long id, long startNodeId, long endNodeId,
             RelationshipType type, int typeId, boolean newRel )
     {
@@ -402,7 +488,7 @@ public class NodeManager
 
     private Node getNodeByIdOrNull( long nodeId )
     {
-        NodeImpl node = nodeCache.get( nodeId );
+        NodeImpl node = getCachedNode( nodeId );
         if ( node != null )
         {
             return new NodeProxy( nodeId, this );
@@ -410,14 +496,14 @@ public class NodeManager
         ReentrantLock loadLock = lockId( nodeId );
         try
         {
-            if ( nodeCache.get( nodeId ) != null )
+            if ( getCachedNode( nodeId ) != null )
             {
                 return new NodeProxy( nodeId, this );
             }
             NodeRecord record = persistenceManager.loadLightNode( nodeId );
             if ( record == null ) return null;
             node = new NodeImpl( nodeId, record.getCommittedNextRel(), record.getCommittedNextProp() );
-            nodeCache.put( nodeId, node );
+            putNodeInCache( nodeId, node );
             return new NodeProxy( nodeId, this );
         }
         finally
@@ -468,7 +554,7 @@ public class NodeManager
 
     NodeImpl getLightNode( long nodeId )
     {
-        NodeImpl node = nodeCache.get( nodeId );
+        NodeImpl node = getCachedNode( nodeId );
         if ( node != null )
         {
             return node;
@@ -476,7 +562,7 @@ public class NodeManager
         ReentrantLock loadLock = lockId( nodeId );
         try
         {
-            node = nodeCache.get( nodeId );
+            node = getCachedNode( nodeId );
             if ( node != null )
             {
                 return node;
@@ -484,7 +570,7 @@ public class NodeManager
             NodeRecord record = persistenceManager.loadLightNode( nodeId );
             if ( record == null ) return null;
             node = new NodeImpl( nodeId, record.getCommittedNextRel(), record.getCommittedNextProp() );
-            nodeCache.put( nodeId, node );
+            putNodeInCache( nodeId, node );
             return node;
         }
         finally
@@ -516,7 +602,7 @@ public class NodeManager
 
     private Relationship getRelationshipByIdOrNull( long relId )
     {
-        RelationshipImpl relationship = relCache.get( relId );
+        RelationshipImpl relationship = getCachedRelationship( relId );
         if ( relationship != null )
         {
             return new RelationshipProxy( relId, this );
@@ -524,7 +610,7 @@ public class NodeManager
         ReentrantLock loadLock = lockId( relId );
         try
         {
-            relationship = relCache.get( relId );
+            relationship = getCachedRelationship( relId );
             if ( relationship != null )
             {
                 return new RelationshipProxy( relId, this );
@@ -545,7 +631,7 @@ public class NodeManager
             final long startNodeId = data.getFirstNode();
             final long endNodeId = data.getSecondNode();
             relationship = newRelationshipImpl( relId, startNodeId, endNodeId, type, typeId, false );
-            relCache.put( relId, relationship );
+            putRelationshipInCache( relId, relationship );
             return new RelationshipProxy( relId, this );
         }
         finally
@@ -593,6 +679,91 @@ public class NodeManager
             }
         };
     }
+
+    /**
+     * Returns the nodes in use with ids from <CODE>fromId</CODE> (inclusive)
+     * to <CODE>toId</CODE> (exclusive). The node store is read in chunks of
+     * ids and the nodes aren't loaded into the cache, nor do they need the
+     * load locks. Nodes created or deleted in the current transaction aren't
+     * reflected.
+     */
+    public Iterator<Node> scanNodes( long fromId, long toId )
+    {
+        return new IdScanIterator<Node>( fromId, toId )
+        {
+            @Override
+            protected long[] idsInUse( long fromId, long toId )
+            {
+                return persistenceManager.getNodeIdsInUse( fromId, toId );
+            }
+
+            @Override
+            protected Node proxy( long id )
+            {
+                return new NodeProxy( id, NodeManager.this );
+            }
+        };
+    }
+
+    /**
+     * Returns the relationships in use with ids from <CODE>fromId</CODE>
+     * (inclusive) to <CODE>toId</CODE> (exclusive), the same way as
+     * {@link #scanNodes(long, long)}.
+     */
+    public Iterator<Relationship> scanRelationships( long fromId, long toId )
+    {
+        return new IdScanIterator<Relationship>( fromId, toId )
+        {
+            @Override
+            protected long[] idsInUse( long fromId, long toId )
+            {
+                return persistenceManager.getRelationshipIdsInUse( fromId, toId );
+            }
+
+            @Override
+            protected Relationship proxy( long id )
+            {
+                return new RelationshipProxy( id, NodeManager.this );
+            }
+        };
+    }
+
+    private static abstract class IdScanIterator<T> extends PrefetchingIterator<T>
+    {
+        private static final int CHUNK_SIZE = 8192;
+
+        private final long toId;
+        private long nextChunk;
+        private long[] ids = new long[0];
+        private int index;
+
+        IdScanIterator( long fromId, long toId )
+        {
+            this.nextChunk = fromId;
+            this.toId = toId;
+        }
+
+        @Override
+        protected T fetchNextOrNull()
+        {
+            while ( index >= ids.length )
+            {
+                if ( nextChunk >= toId )
+                {
+                    return null;
+                }
+                long chunkEnd = Math.min( toId, nextChunk + CHUNK_SIZE );
+                ids = idsInUse( nextChunk, chunkEnd );
+                index = 0;
+                nextChunk = chunkEnd;
+            }
+            return proxy( ids[index++] );
+        }
+
+        protected abstract long[] idsInUse( long fromId, long toId );
+
+        protected abstract T proxy( long id );
+    }
     
     RelationshipType getRelationshipTypeById( int id )
     {
@@ -601,7 +772,7 @@ public class NodeManager
 
     RelationshipImpl getRelForProxy( long relId )
     {
-        RelationshipImpl relationship = relCache.get( relId );
+        RelationshipImpl relationship = getCachedRelationship( relId );
         if ( relationship != null )
         {
             return relationship;
@@ -609,7 +780,7 @@ public class NodeManager
         ReentrantLock loadLock = lockId( relId );
         try
         {
-            relationship = relCache.get( relId );
+            relationship = getCachedRelationship( relId );
             if ( relationship != null )
             {
                 return relationship;
@@ -630,7 +801,7 @@ public class NodeManager
             }
             relationship = newRelationshipImpl( relId, data.getFirstNode(), data.getSecondNode(),
                     type, typeId, false );
-            relCache.put( relId, relationship );
+            putRelationshipInCache( relId, relationship );
             return relationship;
         }
         finally
@@ -641,12 +812,67 @@ public class NodeManager
 
     public void removeNodeFromCache( long nodeId )
     {
-        nodeCache.remove( nodeId );
+        if ( primitiveNodeCache != null )
+        {
+            primitiveNodeCache.remove( nodeId );
+        }
+        else
+        {
+            nodeCache.remove( nodeId );
+        }
+        removeDenseRelationships( nodeId );
     }
 
     public void removeRelationshipFromCache( long id )
     {
-        relCache.remove( id );
+        if ( primitiveRelCache != null )
+        {
+            primitiveRelCache.remove( id );
+        }
+        else
+        {
+            relCache.remove( id );
+        }
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private static <V> PrimitiveLongCache<V> primitiveCache( Cache<Long,V> cache )
+    {
+        return cache instanceof PrimitiveLongCache ? (PrimitiveLongCache<V>) cache : null;
+    }
+
+    private NodeImpl getCachedNode( long nodeId )
+    {
+        return primitiveNodeCache != null ? primitiveNodeCache.get( nodeId ) : nodeCache.get( nodeId );
+    }
+
+    private void putNodeInCache( long nodeId, NodeImpl node )
+    {
+        if ( primitiveNodeCache != null )
+        {
+            primitiveNodeCache.put( nodeId, node );
+        }
+        else
+        {
+            nodeCache.put( nodeId, node );
+        }
+    }
+
+    private RelationshipImpl getCachedRelationship( long relId )
+    {
+        return primitiveRelCache != null ? primitiveRelCache.get( relId ) : relCache.get( relId );
+    }
+
+    private void putRelationshipInCache( long relId, RelationshipImpl relationship )
+    {
+        if ( primitiveRelCache != null )
+        {
+            primitiveRelCache.put( relId, relationship );
+        }
+        else
+        {
+            relCache.put( relId, relationship );
+        }
     }
 
     Object loadPropertyValue( PropertyData property )
@@ -684,6 +910,48 @@ public class NodeManager
         return Triplet.of( newRelationshipMap, relsMap, rels.other() );
     }
 
+    /**
+     * Loads the committed relationships of the given types of a node which
+     * has its relationships grouped by type, without loading the rest of them.
+     *
+     * @return the relationship ids per type, or <code>null</code> if the
+     *         relationships of the node aren't grouped.
+     */
+    ArrayMap<String,RelIdArray> loadGroupedRelationships( NodeImpl node, DirectionWrapper direction,
+            RelationshipType[] types )
+    {
+        int[] typeIds = new int[types.length];
+        int count = 0;
+        for ( RelationshipType type : types )
+        {
+            Integer typeId = relTypeHolder.getIdFor( type.name() );
+            if ( typeId != null )
+            {
+                typeIds[count++] = typeId;
+            }
+        }
+        Map<DirectionWrapper, Iterable<RelationshipRecord>> rels =
+            persistenceManager.getRelationshipsOfTypes( node.getId(), Arrays.copyOf( typeIds, count ), direction );
+        if ( rels == null )
+        {
+            return null;
+        }
+        ArrayMap<String,RelIdArray> newRelationshipMap = new ArrayMap<String,RelIdArray>();
+        Map<Long,RelationshipImpl> relsMap = new HashMap<Long,RelationshipImpl>();
+        Iterable<RelationshipRecord> loops = rels.get( DirectionWrapper.BOTH );
+        boolean hasLoops = loops != null;
+        if ( hasLoops )
+        {
+            receiveRelationships( loops, newRelationshipMap, relsMap, DirectionWrapper.BOTH, true );
+        }
+        receiveRelationships( rels.get( DirectionWrapper.OUTGOING ), newRelationshipMap,
+                relsMap, DirectionWrapper.OUTGOING, hasLoops );
+        receiveRelationships( rels.get( DirectionWrapper.INCOMING ), newRelationshipMap,
+                relsMap, DirectionWrapper.INCOMING, hasLoops );
+        putAllInRelCache( relsMap );
+        return newRelationshipMap;
+    }
+
     private void receiveRelationships(
             Iterable<RelationshipRecord> rels, ArrayMap<String, RelIdArray> newRelationshipMap,
             Map<Long, RelationshipImpl> relsMap, DirectionWrapper dir, boolean hasLoops )
@@ -691,7 +959,7 @@ public class NodeManager
         for ( RelationshipRecord rel : rels )
         {
             long relId = rel.getId();
-            RelationshipImpl relImpl = relCache.get( relId );
+            RelationshipImpl relImpl = getCachedRelationship( relId );
             RelationshipType type = null;
             if ( relImpl == null )
             {
@@ -737,10 +1005,24 @@ public class NodeManager
         return persistenceManager.loadRelProperties( relationship.getId(), light );
     }
 
+    PropertyData loadProperty( NodeImpl node, long firstProp, int keyId )
+    {
+        return persistenceManager.loadNodeProperty( node.getId(), firstProp, keyId );
+    }
+
+    PropertyData loadProperty( RelationshipImpl relationship, int keyId )
+    {
+        return persistenceManager.loadRelProperty( relationship.getId(), keyId );
+    }
+
     public void clearCache()
     {
         nodeCache.clear();
         relCache.clear();
+        if ( denseRelationshipsCache != null )
+        {
+            denseRelationshipsCache.clear();
+        }
         graphProperties = instantiateGraphProperties();
     }
 
@@ -750,6 +1032,16 @@ public class NodeManager
         return Arrays.asList( nodeCache, relCache );
     }
 
+    public Cache<?, ?> getNodeCache()
+    {
+        return nodeCache;
+    }
+
+    public Cache<?, ?> getRelationshipCache()
+    {
+        return relCache;
+    }
+
     void setRollbackOnly()
     {
         try
@@ -836,6 +1128,15 @@ public class NodeManager
         return propertyIndexManager.hasAll();
     }
 
+    /**
+     * @return whether properties are looked up one key at a time instead of
+     *         loading all the properties of a primitive at once.
+     */
+    boolean isLazyPropertyLoading()
+    {
+        return lazyPropertyLoading;
+    }
+
     boolean hasIndexFor( int keyId )
     {
         return propertyIndexManager.hasIndexFor( keyId );
@@ -1009,12 +1310,28 @@ public class NodeManager
 
     public NodeImpl getNodeIfCached( long nodeId )
     {
-        return nodeCache.get( nodeId );
+        return getCachedNode( nodeId );
     }
 
     public RelationshipImpl getRelIfCached( long nodeId )
     {
-        return relCache.get( nodeId );
+        return getCachedRelationship( nodeId );
+    }
+
+    void updateCacheSize( NodeImpl node )
+    {
+        if ( nodeCache instanceof SizeBoundedCache )
+        {
+            ( (SizeBoundedCache<NodeImpl>) nodeCache ).updateSize( node );
+        }
+    }
+
+    void updateCacheSize( RelationshipImpl relationship )
+    {
+        if ( relCache instanceof SizeBoundedCache )
+        {
+            ( (SizeBoundedCache<RelationshipImpl>) relCache ).updateSize( relationship );
+        }
     }
 
     public ArrayMap<Integer,PropertyData> getCowPropertyRemoveMap(
@@ -1102,13 +1419,13 @@ public class NodeManager
         weak( false, "weak reference cache" )
         {
             @Override
-            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager )
+            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager, Map<Object,Object> params )
             {
                 return new WeakLruCache<Long,NodeImpl>( NODE_CACHE_NAME );
             }
 
             @Override
-            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager )
+            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager, Map<Object,Object> params )
             {
                 return new WeakLruCache<Long,RelationshipImpl>( RELATIONSHIP_CACHE_NAME );
             }
@@ -1116,13 +1433,13 @@ public class NodeManager
         soft( false, "soft reference cache" )
         {
             @Override
-            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager )
+            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager, Map<Object,Object> params )
             {
                 return new SoftLruCache<Long,NodeImpl>( NODE_CACHE_NAME );
             }
 
             @Override
-            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager )
+            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager, Map<Object,Object> params )
             {
                 return new SoftLruCache<Long,RelationshipImpl>( RELATIONSHIP_CACHE_NAME );
             }
@@ -1130,13 +1447,13 @@ public class NodeManager
         old( true, "lru cache" )
         {
             @Override
-            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager )
+            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager, Map<Object,Object> params )
             {
                 return new LruCache<Long,NodeImpl>( NODE_CACHE_NAME, 1500, cacheManager );
             }
 
             @Override
-            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager )
+            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager, Map<Object,Object> params )
             {
                 return new LruCache<Long,RelationshipImpl>(
                         RELATIONSHIP_CACHE_NAME, 3500, cacheManager );
@@ -1145,13 +1462,13 @@ public class NodeManager
         none( false, "no cache" )
         {
             @Override
-            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager )
+            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager, Map<Object,Object> params )
             {
                 return new NoCache<Long, NodeImpl>( NODE_CACHE_NAME );
             }
 
             @Override
-            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager )
+            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager, Map<Object,Object> params )
             {
                 return new NoCache<Long, RelationshipImpl>( RELATIONSHIP_CACHE_NAME );
             }
@@ -1159,16 +1476,48 @@ public class NodeManager
         strong( false, "strong reference cache" )
         {
             @Override
-            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager )
+            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager, Map<Object,Object> params )
             {
                 return new StrongReferenceCache<Long,NodeImpl>( NODE_CACHE_NAME );
             }
 
             @Override
-            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager )
+            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager, Map<Object,Object> params )
             {
                 return new StrongReferenceCache<Long,RelationshipImpl>( RELATIONSHIP_CACHE_NAME );
             }
+        },
+        primitive( false, "primitive long keyed cache" )
+        {
+            @Override
+            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager, Map<Object,Object> params )
+            {
+                return new PrimitiveLongCache<NodeImpl>( NODE_CACHE_NAME,
+                        cacheSize( params, Config.NODE_CACHE_SIZE ) );
+            }
+
+            @Override
+            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager, Map<Object,Object> params )
+            {
+                return new PrimitiveLongCache<RelationshipImpl>( RELATIONSHIP_CACHE_NAME,
+                        cacheSize( params, Config.RELATIONSHIP_CACHE_SIZE ) );
+            }
+        },
+        bounded( false, "size bounded cache" )
+        {
+            @Override
+            Cache<Long, NodeImpl> node( AdaptiveCacheManager cacheManager, Map<Object,Object> params )
+            {
+                return new SizeBoundedCache<NodeImpl>( NODE_CACHE_NAME,
+                        cacheMemory( params, Config.NODE_CACHE_MEMORY, 4 ) );
+            }
+
+            @Override
+            Cache<Long, RelationshipImpl> relationship( AdaptiveCacheManager cacheManager, Map<Object,Object> params )
+            {
+                return new SizeBoundedCache<RelationshipImpl>( RELATIONSHIP_CACHE_NAME,
+                        cacheMemory( params, Config.RELATIONSHIP_CACHE_MEMORY, 8 ) );
+            }
         };
 
         private static final String NODE_CACHE_NAME = "NodeCache";
@@ -1183,14 +1532,40 @@ public class NodeManager
             this.description = description;
         }
 
-        abstract Cache<Long,NodeImpl> node( AdaptiveCacheManager cacheManager );
+        abstract Cache<Long,NodeImpl> node( AdaptiveCacheManager cacheManager, Map<Object,Object> params );
 
-        abstract Cache<Long,RelationshipImpl> relationship( AdaptiveCacheManager cacheManager );
+        abstract Cache<Long,RelationshipImpl> relationship( AdaptiveCacheManager cacheManager, Map<Object,Object> params );
 
         public String getDescription()
         {
             return this.description;
         }
+
+        private static int cacheSize( Map<Object,Object> params, String key )
+        {
+            Object size = params != null ? params.get( key ) : null;
+            if ( size != null )
+            {
+                return Integer.parseInt( ( (String) size ).trim() );
+            }
+            // one element per kilobyte of heap
+            return (int) Math.min( Integer.MAX_VALUE / 2,
+                    Math.max( 1024, Runtime.getRuntime().maxMemory() / 1024 ) );
+        }
+
+        static long cacheMemory( Map<Object,Object> params, String key, int heapDivisor )
+        {
+            Object memory = params != null ? params.get( key ) : null;
+            if ( memory != null )
+            {
+                long bytes = CommonAbstractStore.parseMemorySize( ( (String) memory ).trim(), key );
+                if ( bytes > 0 )
+                {
+                    return bytes;
+                }
+            }
+            return Math.max( 1024 * 1024, Runtime.getRuntime().maxMemory() / heapDivisor );
+        }
     }
 
     public void addNodePropertyTracker(
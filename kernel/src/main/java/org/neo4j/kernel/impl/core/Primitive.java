@@ -60,6 +60,18 @@ abstract class Primitive
     protected abstract PropertyData[] allProperties();
 
     protected abstract PropertyData getPropertyForIndex( int keyId );
+
+    /**
+     * @return whether this primitive can look up its committed properties one
+     *         key at a time, see {@link #getLazyProperty(NodeManager, int)}.
+     */
+    protected abstract boolean supportsLazyProperties();
+
+    /**
+     * Returns the committed property with the given key id, reading only that
+     * property from the store if the properties aren't loaded already.
+     */
+    protected abstract PropertyData getLazyProperty( NodeManager nodeManager, int keyId );
     
     protected abstract void setProperties( ArrayMap<Integer, PropertyData> properties );
     
@@ -151,7 +163,11 @@ abstract class Primitive
         ArrayMap<Integer,PropertyData> addMap =
             nodeManager.getCowPropertyAddMap( this );
 
-        ensureFullProperties( nodeManager );
+        boolean lazy = loadsPropertiesLazily( nodeManager );
+        if ( !lazy )
+        {
+            ensureFullProperties( nodeManager );
+        }
         for ( PropertyIndex index : nodeManager.index( key ) )
         {
             if ( skipMap != null && skipMap.get( index.getKeyId() ) != null )
@@ -166,7 +182,7 @@ abstract class Primitive
                     return getPropertyValue( nodeManager, property );
                 }
             }
-            PropertyData property = getPropertyForIndex( index.getKeyId() );
+            PropertyData property = getCommittedProperty( nodeManager, index.getKeyId(), lazy );
             if ( property != null )
             {
                 return getPropertyValue( nodeManager, property );
@@ -180,6 +196,22 @@ abstract class Primitive
         throw newPropertyNotFoundException( key );
     }
 
+    /**
+     * Properties are looked up lazily only when all property indexes are
+     * known, otherwise a key may be stored under an index which isn't loaded
+     * and the whole chain has to be searched anyway.
+     */
+    private boolean loadsPropertiesLazily( NodeManager nodeManager )
+    {
+        return nodeManager.isLazyPropertyLoading() && supportsLazyProperties()
+               && nodeManager.hasAllPropertyIndexes();
+    }
+
+    private PropertyData getCommittedProperty( NodeManager nodeManager, int keyId, boolean lazy )
+    {
+        return lazy ? getLazyProperty( nodeManager, keyId ) : getPropertyForIndex( keyId );
+    }
+
     private NotFoundException newPropertyNotFoundException( String key )
     {
         return new NotFoundException( "'" + key + "' property not found for " + this + "." );
@@ -193,6 +225,7 @@ abstract class Primitive
         {
             return null;
         }
+        ensureFullProperties( nodeManager );
         if ( addMap != null )
         {
             for ( int keyId : addMap.keySet() )
@@ -251,7 +284,11 @@ abstract class Primitive
         ArrayMap<Integer,PropertyData> addMap =
             nodeManager.getCowPropertyAddMap( this );
 
-        ensureFullProperties( nodeManager );
+        boolean lazy = loadsPropertiesLazily( nodeManager );
+        if ( !lazy )
+        {
+            ensureFullProperties( nodeManager );
+        }
         for ( PropertyIndex index : nodeManager.index( key ) )
         {
             if ( skipMap != null && skipMap.get( index.getKeyId() ) != null )
@@ -266,7 +303,7 @@ abstract class Primitive
                     return getPropertyValue( nodeManager, property );
                 }
             }
-            PropertyData property = getPropertyForIndex( index.getKeyId() );
+            PropertyData property = getCommittedProperty( nodeManager, index.getKeyId(), lazy );
             if ( property != null )
             {
                 return getPropertyValue( nodeManager, property );
@@ -292,7 +329,11 @@ abstract class Primitive
         ArrayMap<Integer,PropertyData> addMap =
             nodeManager.getCowPropertyAddMap( this );
 
-        ensureFullProperties( nodeManager );
+        boolean lazy = loadsPropertiesLazily( nodeManager );
+        if ( !lazy )
+        {
+            ensureFullProperties( nodeManager );
+        }
         for ( PropertyIndex index : nodeManager.index( key ) )
         {
             if ( skipMap != null && skipMap.get( index.getKeyId() ) != null )
@@ -307,7 +348,7 @@ abstract class Primitive
                     return true;
                 }
             }
-            PropertyData property = getPropertyForIndex( index.getKeyId() );
+            PropertyData property = getCommittedProperty( nodeManager, index.getKeyId(), lazy );
             if ( property != null )
             {
                 return true;
@@ -559,28 +600,45 @@ abstract class Primitive
              */
             value = nodeManager.loadPropertyValue( property );
             property.setNewValue( value );
+            updateSize( nodeManager );
         }
         return value;
     }
 
-    private void ensureFullProperties( NodeManager nodeManager )
+    protected void ensureFullProperties( NodeManager nodeManager )
     {
         // double checked locking
-        if ( allProperties() == null ) synchronized ( this )
+        if ( allProperties() == null )
         {
-            if ( allProperties() == null ) setProperties( loadProperties( nodeManager, false ) );
+            synchronized ( this )
+            {
+                if ( allProperties() == null ) setProperties( loadProperties( nodeManager, false ) );
+            }
+            updateSize( nodeManager );
         }
     }
 
     private void ensureFullLightProperties( NodeManager nodeManager )
     {
         // double checked locking
-        if ( allProperties() == null ) synchronized ( this )
+        if ( allProperties() == null )
         {
-            if ( allProperties() == null ) setProperties( loadProperties( nodeManager, true ) );
+            synchronized ( this )
+            {
+                if ( allProperties() == null ) setProperties( loadProperties( nodeManager, true ) );
+            }
+            updateSize( nodeManager );
         }
     }
 
+    /**
+     * Called when this primitive may have grown in size, so that a cache
+     * keeping track of the size of its elements can measure it again.
+     */
+    protected void updateSize( NodeManager nodeManager )
+    {
+    }
+
     protected List<PropertyEventData> getAllCommittedProperties( NodeManager nodeManager )
     {
         ensureFullLightProperties( nodeManager );
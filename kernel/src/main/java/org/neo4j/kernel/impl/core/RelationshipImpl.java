@@ -24,6 +24,7 @@ import org.neo4j.graphdb.NotFoundException;
 import org.neo4j.graphdb.PropertyContainer;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.kernel.impl.cache.EntityWithSize;
 import org.neo4j.kernel.impl.core.LockReleaser.CowEntityElement;
 import org.neo4j.kernel.impl.core.LockReleaser.PrimitiveElement;
 import org.neo4j.kernel.impl.nioneo.store.PropertyData;
@@ -31,13 +32,19 @@ import org.neo4j.kernel.impl.transaction.LockException;
 import org.neo4j.kernel.impl.transaction.LockType;
 import org.neo4j.kernel.impl.util.ArrayMap;
 
-abstract class RelationshipImpl extends ArrayBasedPrimitive
+abstract class RelationshipImpl extends ArrayBasedPrimitive implements EntityWithSize
 {
     RelationshipImpl( long startNodeId, long endNodeId, boolean newRel )
     {
         super( newRel );
     }
 
+    @Override
+    protected void updateSize( NodeManager nodeManager )
+    {
+        nodeManager.updateCacheSize( this );
+    }
+
     protected RelationshipType assertTypeNotNull( RelationshipType type )
     {
         if ( type == null )
@@ -81,6 +88,12 @@ abstract class RelationshipImpl extends ArrayBasedPrimitive
         return nodeManager.loadProperties( this, light );
     }
 
+    @Override
+    protected PropertyData loadProperty( NodeManager nodeManager, int keyId )
+    {
+        return nodeManager.loadProperty( this, keyId );
+    }
+
     public Node[] getNodes( NodeManager nodeManager )
     {
         return new Node[] { new NodeProxy( getStartNodeId(), nodeManager ),
@@ -116,6 +116,13 @@ public abstract class AbstractNameStore<T extends AbstractNameRecord> extends Ab
         super.flushAll();
     }
 
+    @Override
+    public long flushDirtyWindows( long maxBytes )
+    {
+        long flushed = nameStore.flushDirtyWindows( maxBytes );
+        return flushed + super.flushDirtyWindows( maxBytes - flushed );
+    }
+
     public NameData[] getNames( int maxCount )
     {
         LinkedList<NameData> recordList = new LinkedList<NameData>();
@@ -64,6 +64,58 @@ public abstract class AbstractStore extends CommonAbstractStore
         }
     }
 
+    /**
+     * Returns the ids between <CODE>fromId</CODE> (inclusive) and
+     * <CODE>toId</CODE> (exclusive) whose records are in use, as marked by
+     * the lowest bit of the first byte in each record. Records are read a
+     * whole persistence window at a time, so this is much cheaper than
+     * loading the records one by one when scanning the store.
+     *
+     * @param fromId the first id to check
+     * @param toId the id after the last one to check
+     * @return the ids of the records in use, in ascending order
+     */
+    public long[] getIdsInUse( long fromId, long toId )
+    {
+        toId = Math.min( toId, getHighId() );
+        long[] ids = new long[(int) Math.max( 0, Math.min( toId - fromId, 1024 ) )];
+        int count = 0;
+        long id = fromId;
+        while ( id < toId )
+        {
+            PersistenceWindow window = acquireWindow( id, OperationType.READ );
+            try
+            {
+                long windowEnd = Math.max( id + 1, Math.min( toId, window.position() + window.size() ) );
+                for ( ; id < windowEnd; id++ )
+                {
+                    Buffer buffer = window.getOffsettedBuffer( id );
+                    if ( (buffer.get() & 0x1) == Record.IN_USE.intValue() )
+                    {
+                        if ( count == ids.length )
+                        {
+                            long[] newIds = new long[ids.length * 2];
+                            System.arraycopy( ids, 0, newIds, 0, count );
+                            ids = newIds;
+                        }
+                        ids[count++] = id;
+                    }
+                }
+            }
+            finally
+            {
+                releaseWindow( window );
+            }
+        }
+        if ( count < ids.length )
+        {
+            long[] trimmed = new long[count];
+            System.arraycopy( ids, 0, trimmed, 0, count );
+            ids = trimmed;
+        }
+        return ids;
+    }
+
     /**
      * Creates a new empty store. The factory method returning an implementation
      * of some store type should make use of this method to initialize an empty
@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.OverlappingFileLockException;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -40,7 +41,7 @@ import org.neo4j.kernel.impl.util.StringLogger;
  */
 public abstract class CommonAbstractStore
 {
-    public static final String ALL_STORES_VERSION = "v0.A.0";
+    public static final String ALL_STORES_VERSION = "v0.A.1";
     public static final String UNKNOWN_VERSION = "Uknown";
 
     protected static final Logger logger = Logger
@@ -51,7 +52,7 @@ public abstract class CommonAbstractStore
     private IdGeneratorFactory idGeneratorFactory = null;
     private IdGenerator idGenerator = null;
     private FileChannel fileChannel = null;
-    private PersistenceWindowPool windowPool;
+    private WindowPool windowPool;
     private boolean storeOk = true;
     private Throwable causeOfStoreNotOk;
     private FileLock fileLock;
@@ -221,9 +222,9 @@ public abstract class CommonAbstractStore
         }
         loadIdGenerator();
 
-        setWindowPool( new PersistenceWindowPool( getStorageFileName(),
+        setWindowPool( getWindowPoolType().create( getStorageFileName(),
             getEffectiveRecordSize(), getFileChannel(), calculateMappedMemory( getConfig(), storageFileName ),
-            getIfMemoryMapped(), isReadOnly() && !isBackupSlave() ) );
+            getIfMemoryMapped(), isReadOnly() && !isBackupSlave(), getConfig() ) );
     }
 
     protected abstract int getEffectiveRecordSize();
@@ -364,7 +365,7 @@ public abstract class CommonAbstractStore
     }
 
     /**
-     * Sets the {@link PersistenceWindowPool} for this store to use. Normally
+     * Sets the {@link WindowPool} for this store to use. Normally
      * this is set in the {@link #loadStorage()} method. This method must be
      * invoked with a valid "pool" before any of the
      * {@link #acquireWindow(long, OperationType)}
@@ -376,7 +377,7 @@ public abstract class CommonAbstractStore
      * @param pool
      *            The window pool this store should use
      */
-    protected void setWindowPool( PersistenceWindowPool pool )
+    protected void setWindowPool( WindowPool pool )
     {
         this.windowPool = pool;
     }
@@ -439,6 +440,22 @@ public abstract class CommonAbstractStore
         return configValue == null || Boolean.parseBoolean( configValue );
     }
 
+    protected WindowPoolType getWindowPoolType()
+    {
+        String typeName = getConfig() != null ?
+                (String) getConfig().get( Config.WINDOW_POOL_TYPE ) : null;
+        try
+        {
+            return typeName != null ? WindowPoolType.valueOf( typeName ) : WindowPoolType.DEFAULT;
+        }
+        catch ( IllegalArgumentException e )
+        {
+            throw new IllegalArgumentException( "Invalid window pool type, please use one of: " +
+                    Arrays.asList( WindowPoolType.values() ) + " or keep empty for default (" +
+                    WindowPoolType.DEFAULT + ")", e );
+        }
+    }
+
     /**
      * Returns memory assigned for
      * {@link MappedPersistenceWindow memory mapped windows} in bytes. The
@@ -459,36 +476,50 @@ public abstract class CommonAbstractStore
             String mem = (String) config.get( realName + ".mapped_memory" );
             if ( mem != null )
             {
-                long multiplier = 1;
-                if ( mem.endsWith( "M" ) )
-                {
-                    multiplier = 1024 * 1024;
-                    mem = mem.substring( 0, mem.length() - 1 );
-                }
-                else if ( mem.endsWith( "k" ) )
-                {
-                    multiplier = 1024;
-                    mem = mem.substring( 0, mem.length() - 1 );
-                }
-                else if ( mem.endsWith( "G" ) )
-                {
-                    multiplier = 1024*1024*1024;
-                    mem = mem.substring( 0, mem.length() - 1 );
-                }
-                try
-                {
-                    return Integer.parseInt( mem ) * multiplier;
-                }
-                catch ( NumberFormatException e )
-                {
-                    logger.info( "Unable to parse mapped memory[" + mem
-                        + "] string for " + storageFileName );
-                }
+                return parseMemorySize( mem, storageFileName );
             }
         }
         return 0;
     }
 
+    /**
+     * Parses a memory size such as "20M" into a number of bytes, the suffixes
+     * k, M and G are understood.
+     *
+     * @param mem the memory size to parse
+     * @param whatFor what the memory is for, used when logging a parse error
+     * @return the number of bytes, or 0 if <CODE>mem</CODE> couldn't be parsed
+     */
+    public static long parseMemorySize( String mem, String whatFor )
+    {
+        long multiplier = 1;
+        if ( mem.endsWith( "M" ) )
+        {
+            multiplier = 1024 * 1024;
+            mem = mem.substring( 0, mem.length() - 1 );
+        }
+        else if ( mem.endsWith( "k" ) )
+        {
+            multiplier = 1024;
+            mem = mem.substring( 0, mem.length() - 1 );
+        }
+        else if ( mem.endsWith( "G" ) )
+        {
+            multiplier = 1024*1024*1024;
+            mem = mem.substring( 0, mem.length() - 1 );
+        }
+        try
+        {
+            return Integer.parseInt( mem ) * multiplier;
+        }
+        catch ( NumberFormatException e )
+        {
+            logger.info( "Unable to parse mapped memory[" + mem
+                + "] string for " + whatFor );
+        }
+        return 0;
+    }
+
     /**
      * If store is not ok a call to this method will rebuild the {@link
      * IdGenerator} used by this store and if successful mark it as
@@ -575,6 +606,18 @@ public abstract class CommonAbstractStore
         windowPool.flushAll();
     }
 
+    /**
+     * Writes out some of the windows written to since they were last
+     * flushed, see {@link WindowPool#flushDirtyWindows(long)}.
+     *
+     * @param maxBytes the number of bytes to write before returning
+     * @return the number of bytes written
+     */
+    public long flushDirtyWindows( long maxBytes )
+    {
+        return windowPool.flushDirtyWindows( maxBytes );
+    }
+
     private boolean isRecovered = false;
 
     public boolean isInRecoveryMode()
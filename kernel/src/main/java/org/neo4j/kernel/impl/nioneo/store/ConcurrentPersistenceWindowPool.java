@@ -0,0 +1,663 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A {@link WindowPool} that divides the store into bricks the same way as
+ * {@link PersistenceWindowPool}, but keeps them in a page table that is read
+ * without taking any pool wide lock. Each page carries a pin count which is
+ * incremented by threads using its window and which must be zero for the page
+ * to be remapped, so readers of different bricks never contend with each
+ * other and a refresh of the mapped bricks only skips the pages that are in
+ * use at that moment instead of blocking all threads. Records outside of the
+ * mapped bricks are handed out as {@link ConcurrentRowWindows rows}.
+ */
+public class ConcurrentPersistenceWindowPool implements WindowPool
+{
+    private static final int MAX_BRICK_COUNT = 100000;
+    private static final int REFRESH_BRICK_COUNT = 50000;
+
+    private static Logger log = Logger.getLogger( ConcurrentPersistenceWindowPool.class
+        .getName() );
+
+    private final String storeName;
+    // == recordSize
+    private final int blockSize;
+    private final FileChannel fileChannel;
+    private final FileChannel.MapMode mapMode;
+    private final boolean useMemoryMapped;
+    private final boolean readOnly;
+    private final ConcurrentRowWindows rows;
+
+    private long availableMem = 0;
+    private int brickSize = 0;
+    private final AtomicLong memUsed = new AtomicLong();
+    private volatile Page[] pages = new Page[0];
+    private final Object expandLock = new Object();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private final AtomicInteger brickMiss = new AtomicInteger();
+    private final AtomicInteger hit = new AtomicInteger();
+    private final AtomicInteger miss = new AtomicInteger();
+    private final AtomicInteger switches = new AtomicInteger();
+    private final AtomicInteger ooe = new AtomicInteger();
+
+    private final WindowFlushCounter flushCounter = new WindowFlushCounter();
+    // only touched by the thread flushing dirty windows
+    private int flushCursor = 0;
+
+    /**
+     * Create new pool for a store.
+     *
+     * @param storeName
+     *            Name of store that use this pool
+     * @param blockSize
+     *            The size of each record/block in the store
+     * @param fileChannel
+     *            A fileChannel to the store
+     * @param mappedMem
+     *            Number of bytes dedicated to memory mapped windows
+     */
+    public ConcurrentPersistenceWindowPool( String storeName, int blockSize,
+        FileChannel fileChannel, long mappedMem,
+        boolean useMemoryMappedBuffers, boolean readOnly )
+    {
+        this.storeName = storeName;
+        this.blockSize = blockSize;
+        this.fileChannel = fileChannel;
+        this.availableMem = mappedMem;
+        this.useMemoryMapped = useMemoryMappedBuffers;
+        this.readOnly = readOnly;
+        this.rows = new ConcurrentRowWindows( blockSize, fileChannel );
+        this.mapMode = readOnly ? FileChannel.MapMode.READ_ONLY :
+            FileChannel.MapMode.READ_WRITE;
+        setupBricks();
+        dumpStatus();
+    }
+
+    public PersistenceWindow acquire( long position, OperationType operationType )
+    {
+        if ( brickMiss.get() >= REFRESH_BRICK_COUNT )
+        {
+            refreshBricks();
+        }
+        LockableWindow window = null;
+        if ( brickSize > 0 )
+        {
+            int brickIndex = (int) (position * blockSize / brickSize);
+            Page[] table = pages;
+            if ( brickIndex >= table.length )
+            {
+                table = expandBricks( brickIndex + 1 );
+            }
+            Page page = table[brickIndex];
+            page.setHit();
+            if ( page.pin() )
+            {
+                // optimistic: the window may have been unmapped between our
+                // read of the table and the pin, in which case it's null now
+                window = page.window;
+                if ( window == null )
+                {
+                    page.unpin();
+                }
+            }
+        }
+        if ( window == null )
+        {
+            miss.incrementAndGet();
+            brickMiss.incrementAndGet();
+            return rows.acquire( position, operationType );
+        }
+        hit.incrementAndGet();
+        window.mark();
+        window.lock();
+        window.setOperationType( operationType );
+        return window;
+    }
+
+    public void release( PersistenceWindow window )
+    {
+        if ( window instanceof PersistenceRow )
+        {
+            rows.release( (PersistenceRow) window );
+        }
+        else
+        {
+            LockableWindow lockable = (LockableWindow) window;
+            Page page = pages[(int) (lockable.position() * blockSize / brickSize)];
+            if ( lockable.getOperationType() == OperationType.WRITE )
+            {
+                lockable.markDirty();
+            }
+            lockable.unLock();
+            page.unpin();
+        }
+    }
+
+    public void close()
+    {
+        flushAll();
+        for ( Page page : pages )
+        {
+            LockableWindow window = page.window;
+            if ( window != null )
+            {
+                window.close();
+                page.window = null;
+            }
+        }
+        rows.clear();
+        dumpStatistics();
+    }
+
+    public void flushAll()
+    {
+        if ( readOnly ) return;
+
+        for ( Page page : pages )
+        {
+            // a page being evicted is written out by the evicting thread
+            if ( page.pin() )
+            {
+                try
+                {
+                    LockableWindow window = page.window;
+                    if ( window != null )
+                    {
+                        flushCounter.forceIfDirty( window, blockSize );
+                    }
+                }
+                finally
+                {
+                    page.unpin();
+                }
+            }
+        }
+        try
+        {
+            fileChannel.force( false );
+        }
+        catch ( IOException e )
+        {
+            throw new UnderlyingStorageException(
+                "Failed to flush file channel " + storeName, e );
+        }
+    }
+
+    public long flushDirtyWindows( long maxBytes )
+    {
+        if ( readOnly ) return 0;
+
+        Page[] table = pages;
+        long flushed = 0;
+        for ( int i = 0; i < table.length && flushed < maxBytes; i++ )
+        {
+            if ( flushCursor >= table.length )
+            {
+                flushCursor = 0;
+            }
+            Page page = table[flushCursor++];
+            LockableWindow window = page.window;
+            if ( window == null || !window.isDirty() || !page.pin() )
+            {
+                continue;
+            }
+            try
+            {
+                window = page.window;
+                if ( window != null )
+                {
+                    window.mark();
+                    flushed += flushCounter.flushIfDirty( window, blockSize );
+                }
+            }
+            finally
+            {
+                page.unpin();
+            }
+        }
+        return flushed;
+    }
+
+    public WindowPoolStats getStats()
+    {
+        int dirtyCount = 0;
+        for ( Page page : pages )
+        {
+            LockableWindow window = page.window;
+            if ( window != null && window.isDirty() )
+            {
+                dirtyCount++;
+            }
+        }
+        return new WindowPoolStats( storeName, availableMem, memUsed.get(),
+                pages.length, brickSize, hit.get(), miss.get(), ooe.get(), dirtyCount,
+                flushCounter.getFlushCount(), flushCounter.getFlushedBytes(),
+                flushCounter.getFlushTimeMillis() );
+    }
+
+    void dumpStatistics()
+    {
+        log.finest( storeName + " hit=" + hit + " miss=" + miss + " switches="
+            + switches + " ooe=" + ooe );
+    }
+
+    private static class Page
+    {
+        private static final int EVICTING = -1;
+
+        private final int index;
+        private final AtomicInteger pins = new AtomicInteger();
+        private volatile LockableWindow window = null;
+        // updated without synchronization, a lost update only skews the
+        // refresh heuristics slightly
+        private int hitCount;
+        private int sortHitCount;
+
+        Page( int index )
+        {
+            this.index = index;
+        }
+
+        boolean pin()
+        {
+            while ( true )
+            {
+                int current = pins.get();
+                if ( current == EVICTING )
+                {
+                    return false;
+                }
+                if ( pins.compareAndSet( current, current + 1 ) )
+                {
+                    return true;
+                }
+            }
+        }
+
+        void unpin()
+        {
+            pins.decrementAndGet();
+        }
+
+        boolean lockForRemap()
+        {
+            return pins.compareAndSet( 0, EVICTING );
+        }
+
+        void unlockAfterRemap()
+        {
+            pins.set( 0 );
+        }
+
+        void setHit()
+        {
+            int count = hitCount + 10;
+            if ( count > 0 )
+            {
+                hitCount = count;
+            }
+        }
+
+        void refresh()
+        {
+            if ( window == null )
+            {
+                hitCount /= 1.25;
+            }
+            else
+            {
+                hitCount /= 1.15;
+            }
+            sortHitCount = hitCount;
+        }
+
+        @Override
+        public String toString()
+        {
+            return "" + hitCount + (window == null ? "x" : "o") + "/" + pins.get();
+        }
+    }
+
+    private void setupBricks()
+    {
+        long fileSize = -1;
+        try
+        {
+            fileSize = fileChannel.size();
+        }
+        catch ( IOException e )
+        {
+            throw new UnderlyingStorageException(
+                "Unable to get file size for " + storeName, e );
+        }
+        if ( blockSize == 0 )
+        {
+            return;
+        }
+        int brickCount = 0;
+        if ( availableMem > 0 && availableMem < blockSize * 10l )
+        {
+            logWarn( "Unable to use " + availableMem
+                + "b as memory mapped windows, need at least " + blockSize * 10
+                + "b (block size * 10)" );
+            logWarn( "Memory mapped windows have been turned off" );
+            availableMem = 0;
+            return;
+        }
+        if ( availableMem > 0 && fileSize > 0 )
+        {
+            double ratio = (availableMem + 0.0d) / fileSize;
+            if ( ratio >= 1 )
+            {
+                brickSize = (int) (availableMem / 1000);
+                if ( brickSize < 0 )
+                {
+                    brickSize = Integer.MAX_VALUE;
+                }
+                brickSize = (brickSize / blockSize) * blockSize;
+                brickCount = (int) (fileSize / brickSize);
+            }
+            else
+            {
+                brickCount = (int) (1000.0d / ratio);
+                if ( brickCount > MAX_BRICK_COUNT )
+                {
+                    brickCount = MAX_BRICK_COUNT;
+                }
+                if ( fileSize / brickCount > availableMem )
+                {
+                    logWarn( "Unable to use " + (availableMem / 1024)
+                        + "kb as memory mapped windows, need at least "
+                        + (fileSize / brickCount / 1024) + "kb" );
+                    logWarn( "Memory mapped windows have been turned off" );
+                    availableMem = 0;
+                    brickSize = 0;
+                    return;
+                }
+                brickSize = (int) (fileSize / brickCount);
+                if ( brickSize < 0 )
+                {
+                    brickSize = Integer.MAX_VALUE;
+                    brickSize = (brickSize / blockSize) * blockSize;
+                    brickCount = (int) (fileSize / brickSize);
+                }
+                else
+                {
+                    brickSize = (brickSize / blockSize) * blockSize;
+                }
+                assert brickSize > blockSize;
+            }
+        }
+        else if ( availableMem > 0 )
+        {
+            brickSize = (int) (availableMem / 100);
+            if ( brickSize < 0 )
+            {
+                brickSize = Integer.MAX_VALUE;
+            }
+            brickSize = (brickSize / blockSize) * blockSize;
+        }
+        Page[] table = new Page[brickCount];
+        for ( int i = 0; i < brickCount; i++ )
+        {
+            table[i] = new Page( i );
+        }
+        pages = table;
+    }
+
+    private Page[] expandBricks( int newBrickCount )
+    {
+        synchronized ( expandLock )
+        {
+            Page[] table = pages;
+            if ( newBrickCount <= table.length )
+            {
+                return table;
+            }
+            Page[] expanded = new Page[newBrickCount];
+            System.arraycopy( table, 0, expanded, 0, table.length );
+            for ( int i = table.length; i < expanded.length; i++ )
+            {
+                Page page = new Page( i );
+                // not published yet so no one else can pin it
+                if ( memUsed.get() + brickSize <= availableMem )
+                {
+                    map( page );
+                }
+                expanded[i] = page;
+            }
+            pages = expanded;
+            return expanded;
+        }
+    }
+
+    /**
+     * Only one thread at a time refreshes the bricks, other threads that
+     * reach the refresh threshold in the meantime just carry on. Pages that
+     * are pinned are left as they are until the next refresh.
+     */
+    private void refreshBricks()
+    {
+        if ( brickSize <= 0 || !refreshing.compareAndSet( false, true ) )
+        {
+            return;
+        }
+        try
+        {
+            if ( brickMiss.get() < REFRESH_BRICK_COUNT )
+            {
+                return;
+            }
+            brickMiss.set( 0 );
+            List<Page> nonMappedPages = new ArrayList<Page>();
+            List<Page> mappedPages = new ArrayList<Page>();
+            for ( Page page : pages )
+            {
+                if ( page.window != null )
+                {
+                    mappedPages.add( page );
+                }
+                else
+                {
+                    nonMappedPages.add( page );
+                }
+                page.refresh();
+            }
+            Collections.sort( nonMappedPages, new PageSorter() );
+            Collections.sort( mappedPages, new PageSorter() );
+            int mappedIndex = 0;
+            int nonMappedIndex = nonMappedPages.size() - 1;
+            // fill up unused memory
+            while ( memUsed.get() + brickSize <= availableMem && nonMappedIndex >= 0 )
+            {
+                Page nonMappedPage = nonMappedPages.get( nonMappedIndex-- );
+                if ( nonMappedPage.sortHitCount == 0 )
+                {
+                    return;
+                }
+                if ( nonMappedPage.lockForRemap() )
+                {
+                    try
+                    {
+                        map( nonMappedPage );
+                    }
+                    finally
+                    {
+                        nonMappedPage.unlockAfterRemap();
+                    }
+                }
+            }
+
+            // switch bad mappings
+            while ( nonMappedIndex >= 0 && mappedIndex < mappedPages.size() )
+            {
+                Page mappedPage = mappedPages.get( mappedIndex++ );
+                Page nonMappedPage = nonMappedPages.get( nonMappedIndex-- );
+                if ( mappedPage.sortHitCount >= nonMappedPage.sortHitCount )
+                {
+                    break;
+                }
+                if ( !mappedPage.lockForRemap() )
+                {
+                    // in use right now, leave it mapped
+                    continue;
+                }
+                try
+                {
+                    unmap( mappedPage );
+                }
+                finally
+                {
+                    mappedPage.unlockAfterRemap();
+                }
+                if ( nonMappedPage.lockForRemap() )
+                {
+                    try
+                    {
+                        if ( map( nonMappedPage ) )
+                        {
+                            switches.incrementAndGet();
+                        }
+                    }
+                    finally
+                    {
+                        nonMappedPage.unlockAfterRemap();
+                    }
+                }
+            }
+        }
+        finally
+        {
+            refreshing.set( false );
+        }
+    }
+
+    private boolean map( Page page )
+    {
+        try
+        {
+            page.window = allocateNewWindow( page.index );
+            memUsed.addAndGet( brickSize );
+            return true;
+        }
+        catch ( MappedMemException e )
+        {
+            ooe.incrementAndGet();
+            logWarn( "Unable to memory map", e );
+        }
+        catch ( OutOfMemoryError e )
+        {
+            ooe.incrementAndGet();
+            logWarn( "Unable to allocate direct buffer", e );
+        }
+        return false;
+    }
+
+    private void unmap( Page page )
+    {
+        LockableWindow window = page.window;
+        if ( window instanceof MappedPersistenceWindow )
+        {
+            ((MappedPersistenceWindow) window).unmap();
+        }
+        else if ( !readOnly && window instanceof PlainPersistenceWindow )
+        {
+            ((PlainPersistenceWindow) window).writeOut();
+        }
+        page.window = null;
+        memUsed.addAndGet( -brickSize );
+    }
+
+    private LockableWindow allocateNewWindow( long brick )
+    {
+        if ( useMemoryMapped )
+        {
+             return new MappedPersistenceWindow(
+                brick * brickSize / blockSize, blockSize,
+                brickSize, fileChannel, mapMode );
+        }
+        PlainPersistenceWindow dpw =
+            new PlainPersistenceWindow(
+                brick * brickSize / blockSize,
+                blockSize, brickSize, fileChannel );
+        dpw.readPosition();
+        return dpw;
+    }
+
+    private static class PageSorter implements Comparator<Page>, Serializable
+    {
+        public int compare( Page o1, Page o2 )
+        {
+            return o1.sortHitCount - o2.sortHitCount;
+        }
+
+        @Override
+        public boolean equals( Object o )
+        {
+            return o instanceof PageSorter;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 7373;
+        }
+    }
+
+    private void dumpStatus()
+    {
+        try
+        {
+            log.fine( "[" + storeName + "] brickCount=" + pages.length
+                + " brickSize=" + brickSize + "b mappedMem=" + availableMem
+                + "b (storeSize=" + fileChannel.size() + "b)" );
+        }
+        catch ( IOException e )
+        {
+            throw new UnderlyingStorageException(
+                "Unable to get file size for " + storeName, e );
+        }
+    }
+
+    private void logWarn( String logMessage )
+    {
+        log.warning( "[" + storeName + "] " + logMessage );
+    }
+
+    private void logWarn( String logMessage, Throwable cause )
+    {
+        log.log( Level.WARNING, "[" + storeName + "] " + logMessage, cause );
+    }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The {@link PersistenceRow rows} handed out by a window pool for records
+ * that aren't covered by any of its larger windows. Rows for the same
+ * position are shared between threads so that they serialize on the row
+ * lock, but no pool wide lock is taken to find them.
+ */
+class ConcurrentRowWindows
+{
+    private final ConcurrentMap<Long,PersistenceRow> activeRowWindows =
+        new ConcurrentHashMap<Long,PersistenceRow>();
+    private final int blockSize;
+    private final FileChannel fileChannel;
+
+    ConcurrentRowWindows( int blockSize, FileChannel fileChannel )
+    {
+        this.blockSize = blockSize;
+        this.fileChannel = fileChannel;
+    }
+
+    PersistenceRow acquire( long position, OperationType operationType )
+    {
+        PersistenceRow row = markRow( position );
+        row.lock();
+        if ( operationType == OperationType.READ )
+        {
+            row.readPosition();
+        }
+        row.setOperationType( operationType );
+        return row;
+    }
+
+    private PersistenceRow markRow( long position )
+    {
+        while ( true )
+        {
+            PersistenceRow row = activeRowWindows.get( position );
+            if ( row == null )
+            {
+                PersistenceRow created = new PersistenceRow( position, blockSize,
+                    fileChannel );
+                row = activeRowWindows.putIfAbsent( position, created );
+                if ( row == null )
+                {
+                    row = created;
+                }
+            }
+            row.mark();
+            if ( activeRowWindows.get( position ) == row )
+            {
+                return row;
+            }
+            // released and removed before we marked it, try again
+            row.unmark();
+        }
+    }
+
+    void release( PersistenceRow row )
+    {
+        row.writeOut();
+        synchronized ( row )
+        {
+            if ( row.getWaitingThreadsCount() == 0 && !row.isMarked() )
+            {
+                activeRowWindows.remove( row.position(), row );
+            }
+        }
+        row.unLock();
+    }
+
+    void clear()
+    {
+        activeRowWindows.clear();
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Background thread that keeps writing out dirty windows of a
+ * {@link NeoStore} at a limited rate, so that the flush done on log rotation
+ * and shutdown only has a small remainder left to write.
+ */
+class DirtyWindowFlusher extends Thread
+{
+    private static final long INTERVAL_MILLIS = 100;
+
+    private static Logger log = Logger.getLogger( DirtyWindowFlusher.class.getName() );
+
+    private final NeoStore neoStore;
+    private final long bytesPerInterval;
+    private volatile boolean running = true;
+
+    DirtyWindowFlusher( NeoStore neoStore, long bytesPerSecond )
+    {
+        super( "Dirty window flusher[" + neoStore.getStorageFileName() + "]" );
+        this.neoStore = neoStore;
+        this.bytesPerInterval = Math.max( 1, bytesPerSecond * INTERVAL_MILLIS / 1000 );
+        setDaemon( true );
+    }
+
+    @Override
+    public void run()
+    {
+        while ( running )
+        {
+            try
+            {
+                neoStore.flushDirtyWindows( bytesPerInterval );
+            }
+            catch ( RuntimeException e )
+            {
+                log.log( Level.WARNING, "Unable to flush dirty windows", e );
+            }
+            try
+            {
+                Thread.sleep( INTERVAL_MILLIS );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.interrupted();
+            }
+        }
+    }
+
+    void shutdown()
+    {
+        running = false;
+        interrupt();
+        try
+        {
+            join();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.interrupted();
+        }
+    }
+}
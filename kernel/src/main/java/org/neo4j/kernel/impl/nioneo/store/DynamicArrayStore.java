@@ -35,9 +35,9 @@ import org.neo4j.kernel.impl.util.Bits;
  */
 public class DynamicArrayStore extends AbstractDynamicStore
 {
-    // store version, each store ends with this string (byte encoded)
-    static final String VERSION = "ArrayPropertyStore v0.A.0";
     public static final String TYPE_DESCRIPTOR = "ArrayPropertyStore";
+    // store version, each store ends with this string (byte encoded)
+    static final String VERSION = buildTypeDescriptorAndVersion( TYPE_DESCRIPTOR );
 
     public DynamicArrayStore( String fileName, Map<?,?> config, IdType idType )
     {
@@ -29,9 +29,9 @@ import org.neo4j.kernel.IdType;
  */
 public class DynamicStringStore extends AbstractDynamicStore
 {
-    // store version, each store ends with this string (byte encoded)
-    static final String VERSION = "StringPropertyStore v0.A.0";
     public static final String TYPE_DESCRIPTOR = "StringPropertyStore";
+    // store version, each store ends with this string (byte encoded)
+    static final String VERSION = buildTypeDescriptorAndVersion( TYPE_DESCRIPTOR );
 
     public DynamicStringStore( String fileName, Map<?,?> config, IdType idType )
     {
@@ -27,9 +27,10 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
-import java.util.LinkedList;
 import java.util.concurrent.atomic.AtomicLong;
 
+import org.neo4j.kernel.impl.util.LongArrayQueue;
+
 /**
  * This class generates unique ids for a resource type. For example, nodes in a
  * nodes space are connected to each other via relationships. On nodes and
@@ -58,6 +59,10 @@ import java.util.concurrent.atomic.AtomicLong;
  * "sticky" and unusable next time you try to initialize a generator using the
  * same file. There can only be one id generator instance per id generator file.
  * <p>
+ * New ids that have never been used are handed out without locking, using
+ * compare-and-set on the high id, as long as there are no defragged ids in
+ * memory. Reusing defragged ids and freeing ids synchronize on the generator.
+ * <p>
  * In case of disk/file I/O failure an <CODE>IOException</CODE> is thrown.
  */
 public class IdGeneratorImpl implements IdGenerator
@@ -85,13 +90,14 @@ public class IdGeneratorImpl implements IdGenerator
     private long defraggedIdCount = -1;
 
     private final String fileName;
-    private FileChannel fileChannel = null;
+    private volatile FileChannel fileChannel = null;
     // in memory defragged ids read from file (and from freeId)
-    private final LinkedList<Long> defragedIdList =
-        new LinkedList<Long>();
+    private final LongArrayQueue defragedIdList = new LongArrayQueue();
     // in memory newly free defragged ids that havn't been flushed to disk yet
-    private final LinkedList<Long> releasedIdList =
-        new LinkedList<Long>();
+    private final LongArrayQueue releasedIdList = new LongArrayQueue();
+    // whether nextId may find an id in the lists above, read without locking
+    // so that new ids can be handed out without synchronization
+    private volatile boolean haveDefragedIds = false;
 
     private final long max;
     private final boolean aggressiveReuse;
@@ -145,22 +151,34 @@ public class IdGeneratorImpl implements IdGenerator
      *             If the capacity is exceeded
      * @throws IllegalStateException if this id generator has been closed
      */
-    public synchronized long nextId()
+    public long nextId()
     {
         assertStillOpen();
-        long nextDefragId = nextIdFromDefragList();
-        if ( nextDefragId != -1 ) return nextDefragId;
+        if ( haveDefragedIds )
+        {
+            synchronized ( this )
+            {
+                long nextDefragId = nextIdFromDefragList();
+                if ( nextDefragId != -1 ) return nextDefragId;
+            }
+        }
 
-        long id = nextFreeId.get();
-        if ( id == INTEGER_MINUS_ONE )
+        while ( true )
         {
-            // Skip the integer -1 (0xFFFFFFFF) because it represents
-            // special values, f.ex. the end of a relationships/property chain.
-            id = nextFreeId.incrementAndGet();
+            long id = nextFreeId.get();
+            if ( id == INTEGER_MINUS_ONE )
+            {
+                // Skip the integer -1 (0xFFFFFFFF) because it represents
+                // special values, f.ex. the end of a relationships/property chain.
+                nextFreeId.compareAndSet( id, id + 1 );
+                continue;
+            }
+            assertIdWithinCapacity( id );
+            if ( nextFreeId.compareAndSet( id, id + 1 ) )
+            {
+                return id;
+            }
         }
-        assertIdWithinCapacity( id );
-        nextFreeId.incrementAndGet();
-        return id;
     }
 
     private void assertIdWithinCapacity( long id )
@@ -173,27 +191,35 @@ public class IdGeneratorImpl implements IdGenerator
 
     private long nextIdFromDefragList()
     {
-        if ( aggressiveReuse )
+        try
         {
-            Long id = releasedIdList.poll();
-            if ( id != null )
+            if ( aggressiveReuse && !releasedIdList.isEmpty() )
             {
                 defraggedIdCount--;
-                return id.longValue();
+                return releasedIdList.removeFirst();
             }
-        }
 
-        if ( defragedIdList.size() > 0 )
-        {
-            long id = defragedIdList.removeFirst();
-            if ( haveMore && defragedIdList.size() == 0 )
+            if ( !defragedIdList.isEmpty() )
             {
-                readIdBatch();
+                long id = defragedIdList.removeFirst();
+                if ( haveMore && defragedIdList.isEmpty() )
+                {
+                    readIdBatch();
+                }
+                defraggedIdCount--;
+                return id;
             }
-            defraggedIdCount--;
-            return id;
+            return -1;
         }
-        return -1;
+        finally
+        {
+            updateHaveDefragedIds();
+        }
+    }
+
+    private void updateHaveDefragedIds()
+    {
+        haveDefragedIds = !defragedIdList.isEmpty() || (aggressiveReuse && !releasedIdList.isEmpty());
     }
 
     private void assertStillOpen()
@@ -227,10 +253,13 @@ public class IdGeneratorImpl implements IdGenerator
         System.arraycopy( tmpArray, 0, defragIds, 0, count );
 
         int sizeLeftForRange = size-count;
-        long start = nextFreeId.get();
-        long newHighId = start + sizeLeftForRange;
-        assertIdWithinCapacity( newHighId );
-        nextFreeId.set( newHighId );
+        long start;
+        do
+        {
+            start = nextFreeId.get();
+            assertIdWithinCapacity( start + sizeLeftForRange );
+        }
+        while ( !nextFreeId.compareAndSet( start, start + sizeLeftForRange ) );
         return new IdRange( defragIds, start, sizeLeftForRange );
     }
 
@@ -294,6 +323,7 @@ public class IdGeneratorImpl implements IdGenerator
         {
             writeIdBatch( ByteBuffer.allocate( grabSize*8 ) );
         }
+        updateHaveDefragedIds();
     }
 
     /**
@@ -329,6 +359,7 @@ public class IdGeneratorImpl implements IdGenerator
             }
             writeIdBatch( writeBuffer );
         }
+        haveDefragedIds = false;
 
         // write header
         try
@@ -465,6 +496,7 @@ public class IdGeneratorImpl implements IdGenerator
             readBlocksTo = fileChannel.size();
             defraggedIdCount = (int) (readBlocksTo - HEADER_SIZE) / 8;
             readIdBatch();
+            updateHaveDefragedIds();
         }
         catch ( IOException e )
         {
@@ -571,10 +603,9 @@ public class IdGeneratorImpl implements IdGenerator
         {
             readIdBatch();
         }
-        java.util.Iterator<Long> itr = defragedIdList.iterator();
-        while ( itr.hasNext() )
+        for ( int i = 0; i < defragedIdList.size(); i++ )
         {
-            System.out.print( " " + itr.next() );
+            System.out.print( " " + defragedIdList.get( i ) );
         }
         System.out.println( "\nNext free id: " + nextFreeId );
         close( true );
@@ -590,10 +621,11 @@ public class IdGeneratorImpl implements IdGenerator
         return defraggedIdCount;
     }
     
-    public void clearFreeIds()
+    public synchronized void clearFreeIds()
     {
         releasedIdList.clear();
         defragedIdList.clear();
+        haveDefragedIds = false;
         defraggedIdCount = -1;
         try
         {
@@ -49,6 +49,7 @@ abstract class LockableWindow implements PersistenceWindow
         new LinkedList<LockElement>();
     private int lockCount = 0;
     private int marked = 0;
+    private volatile boolean dirty = false;
 
     LockableWindow( FileChannel fileChannel )
     {
@@ -73,6 +74,55 @@ abstract class LockableWindow implements PersistenceWindow
     void setOperationType( OperationType type )
     {
         this.type = type;
+        if ( type == OperationType.WRITE )
+        {
+            dirty = true;
+        }
+    }
+
+    void markDirty()
+    {
+        dirty = true;
+    }
+
+    boolean isDirty()
+    {
+        return dirty;
+    }
+
+    /**
+     * @return whether the window was dirty
+     */
+    boolean clearDirty()
+    {
+        boolean wasDirty = dirty;
+        dirty = false;
+        return wasDirty;
+    }
+
+    /**
+     * Writes this window out if it has been written to since it was last
+     * flushed, holding the window lock so that no other thread modifies it
+     * meanwhile. The caller must have {@link #mark() marked} the window.
+     *
+     * @return whether the window was written out
+     */
+    boolean flushIfDirty()
+    {
+        lock();
+        try
+        {
+            if ( !clearDirty() )
+            {
+                return false;
+            }
+            force();
+            return true;
+        }
+        finally
+        {
+            unLock();
+        }
     }
 
     synchronized void mark()
@@ -80,6 +130,11 @@ abstract class LockableWindow implements PersistenceWindow
         this.marked++;
     }
 
+    synchronized void unmark()
+    {
+        this.marked--;
+    }
+
     synchronized boolean isMarked()
     {
         return marked > 0;
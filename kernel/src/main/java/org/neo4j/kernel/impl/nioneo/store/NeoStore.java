@@ -30,6 +30,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 
+import org.neo4j.kernel.Config;
 import org.neo4j.kernel.IdGeneratorFactory;
 import org.neo4j.kernel.IdType;
 import org.neo4j.kernel.impl.core.LastCommittedTxIdSetter;
@@ -64,14 +65,18 @@ public class NeoStore extends AbstractStore
     private NodeStore nodeStore;
     private PropertyStore propStore;
     private RelationshipStore relStore;
+    private RelationshipGroupStore relGroupStore;
     private RelationshipTypeStore relTypeStore;
     private final LastCommittedTxIdSetter lastCommittedTxIdSetter;
     private final IdGeneratorFactory idGeneratorFactory;
     private final TxHook txHook;
     private boolean isStarted;
     private long lastCommittedTx = -1;
+    private DirtyWindowFlusher flusher;
+    private int flushStartStore = 0;
 
     private final int REL_GRAB_SIZE;
+    private final int relGroupingThreshold;
 
     public NeoStore( Map<?,?> config )
     {
@@ -86,10 +91,38 @@ public class NeoStore extends AbstractStore
             }
         }
         REL_GRAB_SIZE = relGrabSize;
+        relGroupingThreshold = parseGroupingThreshold( getConfig() );
         lastCommittedTxIdSetter = (LastCommittedTxIdSetter)
                 config.get( LastCommittedTxIdSetter.class );
         idGeneratorFactory = (IdGeneratorFactory) config.get( IdGeneratorFactory.class );
         txHook = (TxHook) config.get( TxHook.class );
+        startDirtyWindowFlusher();
+    }
+
+    /**
+     * @return the {@link Config#RELATIONSHIP_GROUPING_THRESHOLD} in
+     * <CODE>config</CODE>, or 0 if not set.
+     */
+    public static int parseGroupingThreshold( Map<?,?> config )
+    {
+        Object threshold = config != null ? config.get( Config.RELATIONSHIP_GROUPING_THRESHOLD ) : null;
+        return threshold != null ? Integer.parseInt( threshold.toString() ) : 0;
+    }
+
+    private void startDirtyWindowFlusher()
+    {
+        String rate = getConfig() != null ?
+                (String) getConfig().get( Config.BACKGROUND_FLUSH_RATE ) : null;
+        if ( rate == null || (isReadOnly() && !isBackupSlave()) )
+        {
+            return;
+        }
+        long bytesPerSecond = parseMemorySize( rate, Config.BACKGROUND_FLUSH_RATE );
+        if ( bytesPerSecond > 0 )
+        {
+            flusher = new DirtyWindowFlusher( this, bytesPerSecond );
+            flusher.start();
+        }
     }
 
     @Override
@@ -175,6 +208,8 @@ public class NeoStore extends AbstractStore
         propStore = new PropertyStore( getStorageFileName() + ".propertystore.db", getConfig() );
         relStore = new RelationshipStore( getStorageFileName() + ".relationshipstore.db", getConfig() );
         nodeStore = new NodeStore( getStorageFileName() + ".nodestore.db", getConfig() );
+        relGroupStore = new RelationshipGroupStore( getStorageFileName() + ".relationshipgroupstore.db",
+                getConfig() );
     }
 
     private void tryToUpgradeStores()
@@ -223,6 +258,11 @@ public class NeoStore extends AbstractStore
     @Override
     protected void closeStorage()
     {
+        if ( flusher != null )
+        {
+            flusher.shutdown();
+            flusher = null;
+        }
         if ( lastCommittedTxIdSetter != null ) lastCommittedTxIdSetter.close();
         if ( relTypeStore != null )
         {
@@ -239,6 +279,11 @@ public class NeoStore extends AbstractStore
             relStore.close();
             relStore = null;
         }
+        if ( relGroupStore != null )
+        {
+            relGroupStore.close();
+            relGroupStore = null;
+        }
         if ( nodeStore != null )
         {
             nodeStore.close();
@@ -250,16 +295,43 @@ public class NeoStore extends AbstractStore
     public void flushAll()
     {
         if ( relTypeStore == null || propStore == null || relStore == null ||
-                nodeStore == null )
+                relGroupStore == null || nodeStore == null )
         {
             return;
         }
         relTypeStore.flushAll();
         propStore.flushAll();
         relStore.flushAll();
+        relGroupStore.flushAll();
         nodeStore.flushAll();
     }
 
+    /**
+     * Writes out dirty windows of all the stores, starting with a different
+     * store each time so that all of them get their share of
+     * <CODE>maxBytes</CODE>.
+     */
+    @Override
+    public long flushDirtyWindows( long maxBytes )
+    {
+        CommonAbstractStore[] stores = { nodeStore, relStore, relGroupStore, propStore, relTypeStore };
+        for ( CommonAbstractStore store : stores )
+        {
+            if ( store == null )
+            {
+                return 0;
+            }
+        }
+        long flushed = 0;
+        for ( int i = 0; i < stores.length; i++ )
+        {
+            CommonAbstractStore store = stores[(flushStartStore + i) % stores.length];
+            flushed += store.flushDirtyWindows( maxBytes - flushed );
+        }
+        flushStartStore = (flushStartStore + 1) % stores.length;
+        return flushed + super.flushDirtyWindows( maxBytes - flushed );
+    }
+
     @Override
     public String getTypeDescriptor()
     {
@@ -301,6 +373,7 @@ public class NeoStore extends AbstractStore
         createEmptyStore( fileName, buildTypeDescriptorAndVersion( TYPE_DESCRIPTOR ), idGeneratorFactory, fileSystem );
         NodeStore.createStore( fileName + ".nodestore.db", config );
         RelationshipStore.createStore( fileName + ".relationshipstore.db", idGeneratorFactory, fileSystem );
+        RelationshipGroupStore.createStore( fileName + ".relationshipgroupstore.db", idGeneratorFactory, fileSystem );
         PropertyStore.createStore( fileName + ".propertystore.db", config );
         RelationshipTypeStore.createStore( fileName
             + ".relationshiptypestore.db", config );
@@ -578,6 +651,16 @@ public class NeoStore extends AbstractStore
         return relStore;
     }
 
+    /**
+     * The relationship group store.
+     *
+     * @return The relationship group store
+     */
+    public RelationshipGroupStore getRelationshipGroupStore()
+    {
+        return relGroupStore;
+    }
+
     /**
      * Returns the relationship type store.
      *
@@ -604,6 +687,7 @@ public class NeoStore extends AbstractStore
         relTypeStore.makeStoreOk();
         propStore.makeStoreOk();
         relStore.makeStoreOk();
+        relGroupStore.makeStoreOk();
         nodeStore.makeStoreOk();
         super.makeStoreOk();
         isStarted = true;
@@ -615,6 +699,7 @@ public class NeoStore extends AbstractStore
         relTypeStore.rebuildIdGenerators();
         propStore.rebuildIdGenerators();
         relStore.rebuildIdGenerators();
+        relGroupStore.rebuildIdGenerators();
         nodeStore.rebuildIdGenerators();
         super.rebuildIdGenerators();
     }
@@ -625,6 +710,7 @@ public class NeoStore extends AbstractStore
         relTypeStore.updateIdGenerators();
         propStore.updateIdGenerators();
         relStore.updateHighId();
+        relGroupStore.updateHighId();
         nodeStore.updateHighId();
     }
 
@@ -633,6 +719,15 @@ public class NeoStore extends AbstractStore
         return REL_GRAB_SIZE;
     }
 
+    /**
+     * @return the number of relationships from which a node gets its
+     * relationships grouped by type, 0 if grouping is turned off.
+     */
+    public int getRelationshipGroupingThreshold()
+    {
+        return relGroupingThreshold;
+    }
+
     @Override
     public List<WindowPoolStats> getAllWindowPoolStats()
     {
@@ -640,6 +735,7 @@ public class NeoStore extends AbstractStore
         list.addAll( nodeStore.getAllWindowPoolStats() );
         list.addAll( propStore.getAllWindowPoolStats() );
         list.addAll( relStore.getAllWindowPoolStats() );
+        list.addAll( relGroupStore.getAllWindowPoolStats() );
         list.addAll( relTypeStore.getAllWindowPoolStats() );
         return list;
     }
@@ -647,7 +743,8 @@ public class NeoStore extends AbstractStore
     public boolean isStoreOk()
     {
         return getStoreOk() && relTypeStore.getStoreOk() &&
-            propStore.getStoreOk() && relStore.getStoreOk() && nodeStore.getStoreOk();
+            propStore.getStoreOk() && relStore.getStoreOk() && relGroupStore.getStoreOk() &&
+            nodeStore.getStoreOk();
     }
 
     @Override
@@ -656,6 +753,7 @@ public class NeoStore extends AbstractStore
         super.logVersions( logger );
         nodeStore.logVersions( logger );
         relStore.logVersions( logger );
+        relGroupStore.logVersions( logger );
         relTypeStore.logVersions( logger );
         propStore.logVersions( logger );
     }
@@ -664,6 +762,7 @@ public class NeoStore extends AbstractStore
     {
         nodeStore.logIdUsage( msgLog );
         relStore.logIdUsage( msgLog );
+        relGroupStore.logIdUsage( msgLog );
         relTypeStore.logIdUsage( msgLog );
         propStore.logIdUsage( msgLog );
     }
@@ -23,6 +23,7 @@ public class NodeRecord extends PrimitiveRecord
 {
     private long committedNextRel;
     private long nextRel;
+    private boolean dense;
 
     public NodeRecord( long id, long nextRel, long nextProp )
     {
@@ -45,10 +46,25 @@ public class NodeRecord extends PrimitiveRecord
         return isCreated() ? Record.NO_NEXT_RELATIONSHIP.intValue() : committedNextRel;
     }
 
+    /**
+     * @return whether the relationships of this node are grouped by type,
+     * in which case {@link #getNextRel()} is the id of its first
+     * {@link RelationshipGroupRecord} and not of a relationship.
+     */
+    public boolean isDense()
+    {
+        return dense;
+    }
+
+    public void setDense( boolean dense )
+    {
+        this.dense = dense;
+    }
+
     @Override
     public String toString()
     {
-        return new StringBuilder( "Node[" ).append( getId() ).append( ",used=" ).append( inUse() ).append( ",rel=" ).append(
+        return new StringBuilder( "Node[" ).append( getId() ).append( ",used=" ).append( inUse() ).append( dense ? ",group=" : ",rel=" ).append(
                 nextRel ).append( ",prop=" ).append( getNextProp() ).append( "]" ).toString();
     }
 }
\ No newline at end of file
@@ -34,8 +34,11 @@ public class NodeStore extends AbstractStore implements Store, RecordStore<NodeR
 {
     public static final String TYPE_DESCRIPTOR = "NodeStore";
 
-    // in_use(byte)+next_rel_id(int)+next_prop_id(int)
-    public static final int RECORD_SIZE = 9;
+    // in_use(byte)+next_rel_id(int)+next_prop_id(int)+extra(byte)
+    public static final int RECORD_SIZE = 10;
+
+    // bits of the extra byte
+    private static final int DENSE = 0x1;
 
     public NodeStore( String fileName, Map<?,?> config )
     {
@@ -222,12 +225,15 @@ public class NodeStore extends AbstractStore implements Store, RecordStore<NodeR
 
         long nextRel = buffer.getUnsignedInt();
         long nextProp = buffer.getUnsignedInt();
+        // [    ,   x] relationships grouped by type (dense)
+        long extra = buffer.get();
 
         long relModifier = (inUseByte & 0xEL) << 31;
         long propModifier = (inUseByte & 0xF0L) << 28;
 
         NodeRecord nodeRecord = new NodeRecord( id, longFromIntAndMod( nextRel, relModifier ), longFromIntAndMod( nextProp, propModifier ) );
         nodeRecord.setInUse( inUse );
+        nodeRecord.setDense( (extra & DENSE) != 0 );
         return nodeRecord;
     }
 
@@ -248,7 +254,8 @@ public class NodeStore extends AbstractStore implements Store, RecordStore<NodeR
             // [xxxx,    ] higher bits for prop id
             short inUseUnsignedByte = ( record.inUse() ? Record.IN_USE : Record.NOT_IN_USE ).byteValue();
             inUseUnsignedByte = (short) ( inUseUnsignedByte | relModifier | propModifier );
-            buffer.put( (byte) inUseUnsignedByte ).putInt( (int) nextRel ).putInt( (int) nextProp );
+            byte extra = (byte) ( record.isDense() ? DENSE : 0 );
+            buffer.put( (byte) inUseUnsignedByte ).putInt( (int) nextRel ).putInt( (int) nextProp ).put( extra );
         }
         else
         {
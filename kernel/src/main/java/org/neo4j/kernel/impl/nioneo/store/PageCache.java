@@ -0,0 +1,233 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.neo4j.kernel.Config;
+
+/**
+ * A fixed number of equally sized off heap pages shared by all stores of a
+ * database, as opposed to each store having its own mapped memory. Every
+ * store has a {@link PageCachedWindowPool} which loads its records into pages
+ * taken from this cache, so pages of all stores compete for the same memory.
+ * <p>
+ * Pages are evicted using CLOCK (second chance): a page that has been used
+ * since the clock hand last passed it gets its reference bit cleared and
+ * is skipped, the first unreferenced page that isn't pinned by any thread
+ * is evicted and handed out.
+ */
+public class PageCache
+{
+    public static final int DEFAULT_PAGE_SIZE = 8192;
+
+    private static Logger log = Logger.getLogger( PageCache.class.getName() );
+
+    private final int pageSize;
+    private final Frame[] frames;
+    private final AtomicInteger clockHand = new AtomicInteger();
+    private final AtomicInteger evictions = new AtomicInteger();
+
+    public PageCache( long memory, int pageSize )
+    {
+        if ( pageSize <= 0 )
+        {
+            throw new IllegalArgumentException( "Invalid page size " + pageSize );
+        }
+        this.pageSize = pageSize;
+        this.frames = new Frame[(int) Math.min( memory / pageSize, Integer.MAX_VALUE )];
+        for ( int i = 0; i < frames.length; i++ )
+        {
+            frames[i] = new Frame();
+        }
+        log.fine( "Page cache of " + frames.length + " pages of " + pageSize + "b" );
+    }
+
+    /**
+     * Returns the page cache for the database that <CODE>config</CODE>
+     * belongs to, creating it the first time a store asks for it. The
+     * memory used is {@link Config#PAGE_CACHE_MEMORY} if set, otherwise the
+     * sum of all <CODE>*.mapped_memory</CODE> settings.
+     *
+     * @param config the configuration of the stores
+     * @return the page cache shared by all stores opened with <CODE>config</CODE>
+     */
+    @SuppressWarnings( "unchecked" )
+    static PageCache getOrCreate( Map<?,?> config )
+    {
+        synchronized ( config )
+        {
+            PageCache cache = (PageCache) config.get( PageCache.class );
+            if ( cache == null )
+            {
+                cache = new PageCache( memory( config ), pageSize( config ) );
+                ((Map<Object,Object>) config).put( PageCache.class, cache );
+            }
+            return cache;
+        }
+    }
+
+    private static long memory( Map<?,?> config )
+    {
+        String memory = (String) config.get( Config.PAGE_CACHE_MEMORY );
+        if ( memory != null )
+        {
+            return CommonAbstractStore.parseMemorySize( memory, "page cache" );
+        }
+        long total = 0;
+        for ( Map.Entry<?,?> entry : config.entrySet() )
+        {
+            if ( entry.getKey() instanceof String &&
+                    ((String) entry.getKey()).endsWith( ".mapped_memory" ) )
+            {
+                total += CommonAbstractStore.parseMemorySize(
+                        (String) entry.getValue(), (String) entry.getKey() );
+            }
+        }
+        return total;
+    }
+
+    private static int pageSize( Map<?,?> config )
+    {
+        String pageSize = (String) config.get( Config.PAGE_CACHE_PAGE_SIZE );
+        return pageSize != null ? (int) CommonAbstractStore.parseMemorySize(
+                pageSize, "page cache page size" ) : DEFAULT_PAGE_SIZE;
+    }
+
+    public int getPageSize()
+    {
+        return pageSize;
+    }
+
+    public int getPageCount()
+    {
+        return frames.length;
+    }
+
+    public long getMemory()
+    {
+        return (long) frames.length * pageSize;
+    }
+
+    public int getEvictionCount()
+    {
+        return evictions.get();
+    }
+
+    /**
+     * Runs the clock until a page that can be evicted is found, evicts it and
+     * returns it pinned by the caller. Gives up after two laps, which only
+     * happens if nearly all pages are pinned.
+     *
+     * @return a free pinned page, or <CODE>null</CODE> if none was available
+     */
+    Frame pinFreeFrame()
+    {
+        int laps = frames.length * 2;
+        for ( int i = 0; i < laps; i++ )
+        {
+            Frame frame = frames[(clockHand.getAndIncrement() & Integer.MAX_VALUE) % frames.length];
+            if ( frame.referenced )
+            {
+                frame.referenced = false;
+                continue;
+            }
+            if ( !frame.lockForEviction() )
+            {
+                continue;
+            }
+            try
+            {
+                PageCacheWindow window = frame.window;
+                if ( window != null )
+                {
+                    window.getPool().pageEvicted( window );
+                    frame.window = null;
+                    evictions.incrementAndGet();
+                }
+                if ( frame.buffer == null )
+                {
+                    frame.buffer = ByteBuffer.allocateDirect( pageSize );
+                }
+            }
+            catch ( OutOfMemoryError e )
+            {
+                frame.unlockAfterEviction( 0 );
+                throw e;
+            }
+            frame.unlockAfterEviction( 1 );
+            return frame;
+        }
+        return null;
+    }
+
+    /**
+     * One page of the cache. The pin count is -1 while the page is being
+     * evicted, which keeps any other thread from pinning it.
+     */
+    static class Frame
+    {
+        private static final int EVICTING = -1;
+
+        private final AtomicInteger pins = new AtomicInteger();
+        private ByteBuffer buffer;
+        volatile PageCacheWindow window;
+        volatile boolean referenced;
+
+        ByteBuffer getBuffer()
+        {
+            return buffer;
+        }
+
+        boolean pin()
+        {
+            while ( true )
+            {
+                int current = pins.get();
+                if ( current == EVICTING )
+                {
+                    return false;
+                }
+                if ( pins.compareAndSet( current, current + 1 ) )
+                {
+                    return true;
+                }
+            }
+        }
+
+        void unpin()
+        {
+            pins.decrementAndGet();
+        }
+
+        boolean lockForEviction()
+        {
+            return pins.compareAndSet( 0, EVICTING );
+        }
+
+        void unlockAfterEviction( int pinCount )
+        {
+            pins.set( pinCount );
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Window over the records of one store that currently occupy a
+ * {@link PageCache} page.
+ */
+class PageCacheWindow extends AbstractPersistenceWindow
+{
+    private final PageCachedWindowPool pool;
+    private final PageCache.Frame frame;
+    private final long pageId;
+
+    PageCacheWindow( PageCachedWindowPool pool, PageCache.Frame frame, long pageId,
+        int recordSize, int recordsPerPage, FileChannel channel )
+    {
+        super( pageId * recordsPerPage, recordSize, recordsPerPage * recordSize,
+            channel, slice( frame.getBuffer(), recordsPerPage * recordSize ) );
+        this.pool = pool;
+        this.frame = frame;
+        this.pageId = pageId;
+    }
+
+    private static ByteBuffer slice( ByteBuffer pageBuffer, int size )
+    {
+        ByteBuffer duplicate = pageBuffer.duplicate();
+        duplicate.clear();
+        duplicate.limit( size );
+        return duplicate.slice();
+    }
+
+    PageCachedWindowPool getPool()
+    {
+        return pool;
+    }
+
+    PageCache.Frame getFrame()
+    {
+        return frame;
+    }
+
+    long getPageId()
+    {
+        return pageId;
+    }
+
+    @Override
+    void readPosition()
+    {
+        ByteBuffer byteBuffer = getBuffer().getBuffer();
+        byteBuffer.clear();
+        long filePosition = position() * getRecordSize();
+        try
+        {
+            while ( byteBuffer.hasRemaining() )
+            {
+                if ( getFileChannel().read( byteBuffer,
+                    filePosition + byteBuffer.position() ) <= 0 )
+                {
+                    break;
+                }
+            }
+        }
+        catch ( IOException e )
+        {
+            throw new UnderlyingStorageException( "Unable to load position["
+                + position() + "] @[" + filePosition + "]", e );
+        }
+        // the page still holds whatever was evicted from it, the part
+        // beyond the end of the file must read as zeros
+        while ( byteBuffer.hasRemaining() )
+        {
+            byteBuffer.put( (byte) 0 );
+        }
+        byteBuffer.clear();
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PageCacheWindow[" + pageId + "@" + position() + "]";
+    }
+}
@@ -0,0 +1,376 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A {@link WindowPool} that keeps the records of a store in pages of the
+ * {@link PageCache} shared by all stores of the database instead of in
+ * memory of its own. Each page holds as many whole records as fit in the
+ * page size. Pages written to are marked dirty and written back when
+ * evicted or flushed. Records that can't get a page, because all pages are
+ * pinned or the records are larger than a page, are handed out as
+ * {@link ConcurrentRowWindows rows}. Rows are read from and written to the
+ * file directly, so a page is never loaded while there are rows of it and
+ * the other way around.
+ */
+public class PageCachedWindowPool implements WindowPool
+{
+    private static final int LOAD_LOCK_STRIPES = 64;
+
+    private static Logger log = Logger.getLogger( PageCachedWindowPool.class
+        .getName() );
+
+    private final String storeName;
+    private final int recordSize;
+    private final int recordsPerPage;
+    private final FileChannel fileChannel;
+    private final boolean readOnly;
+    private final PageCache pageCache;
+    private final ConcurrentMap<Long,PageCache.Frame> pages =
+        new ConcurrentHashMap<Long,PageCache.Frame>();
+    private final ConcurrentRowWindows rows;
+    private final Object[] loadLocks = new Object[LOAD_LOCK_STRIPES];
+    /**
+     * The number of rows handed out per page id, for pages which couldn't
+     * be loaded. Only changed holding the load lock of the page.
+     */
+    private final ConcurrentMap<Long,Integer> rowsPerPage =
+        new ConcurrentHashMap<Long,Integer>();
+
+    private final AtomicInteger hit = new AtomicInteger();
+    private final AtomicInteger miss = new AtomicInteger();
+    private final AtomicInteger ooe = new AtomicInteger();
+
+    private final WindowFlushCounter flushCounter = new WindowFlushCounter();
+
+    public PageCachedWindowPool( String storeName, int recordSize,
+        FileChannel fileChannel, PageCache pageCache, boolean readOnly )
+    {
+        this.storeName = storeName;
+        this.recordSize = recordSize;
+        this.recordsPerPage = recordSize > 0 ? pageCache.getPageSize() / recordSize : 0;
+        this.fileChannel = fileChannel;
+        this.pageCache = pageCache;
+        this.readOnly = readOnly;
+        this.rows = new ConcurrentRowWindows( recordSize, fileChannel );
+        for ( int i = 0; i < loadLocks.length; i++ )
+        {
+            loadLocks[i] = new Object();
+        }
+        if ( recordsPerPage == 0 && recordSize > 0 )
+        {
+            log.warning( "[" + storeName + "] Record size " + recordSize
+                + " larger than page size " + pageCache.getPageSize()
+                + ", page cache won't be used" );
+        }
+    }
+
+    public PersistenceWindow acquire( long position, OperationType operationType )
+    {
+        if ( recordsPerPage > 0 && pageCache.getPageCount() > 0 )
+        {
+            long pageId = position / recordsPerPage;
+            PageCacheWindow window = pinnedWindow( pageId );
+            if ( window != null )
+            {
+                hit.incrementAndGet();
+            }
+            else
+            {
+                miss.incrementAndGet();
+                window = load( pageId );
+            }
+            if ( window != null )
+            {
+                window.mark();
+                window.lock();
+                window.setOperationType( operationType );
+                return window;
+            }
+            // load registered the row for its page
+        }
+        return rows.acquire( position, operationType );
+    }
+
+    private PageCacheWindow pinnedWindow( long pageId )
+    {
+        PageCache.Frame frame = pages.get( pageId );
+        if ( frame == null || !frame.pin() )
+        {
+            return null;
+        }
+        // the page may have been evicted and reused since we looked it up
+        PageCacheWindow window = frame.window;
+        if ( window != null && window.getPool() == this && window.getPageId() == pageId )
+        {
+            frame.referenced = true;
+            return window;
+        }
+        frame.unpin();
+        return null;
+    }
+
+    private Object loadLock( long pageId )
+    {
+        return loadLocks[(int) (pageId % LOAD_LOCK_STRIPES)];
+    }
+
+    /**
+     * @return the loaded page pinned, or <CODE>null</CODE> if there was no
+     * free page, in which case a row of the page has been registered and
+     * must be handed out.
+     */
+    private PageCacheWindow load( long pageId )
+    {
+        synchronized ( loadLock( pageId ) )
+        {
+            PageCacheWindow window = pinnedWindow( pageId );
+            if ( window != null )
+            {
+                return window;
+            }
+            if ( !rowsPerPage.containsKey( pageId ) )
+            {
+                // a page being evicted is only removed once written, see pageEvicted
+                while ( pages.containsKey( pageId ) )
+                {
+                    Thread.yield();
+                }
+                PageCache.Frame frame = null;
+                try
+                {
+                    frame = pageCache.pinFreeFrame();
+                }
+                catch ( OutOfMemoryError e )
+                {
+                    ooe.incrementAndGet();
+                    log.log( Level.WARNING, "[" + storeName + "] Unable to allocate page", e );
+                }
+                if ( frame != null )
+                {
+                    window = new PageCacheWindow( this, frame, pageId, recordSize,
+                        recordsPerPage, fileChannel );
+                    window.readPosition();
+                    frame.referenced = true;
+                    frame.window = window;
+                    pages.put( pageId, frame );
+                    return window;
+                }
+            }
+            Integer rowCount = rowsPerPage.get( pageId );
+            rowsPerPage.put( pageId, rowCount == null ? 1 : rowCount + 1 );
+            return null;
+        }
+    }
+
+    private void releaseRow( PersistenceRow row )
+    {
+        rows.release( row );
+        if ( recordsPerPage > 0 && pageCache.getPageCount() > 0 )
+        {
+            long pageId = row.position() / recordsPerPage;
+            synchronized ( loadLock( pageId ) )
+            {
+                int rowCount = rowsPerPage.get( pageId );
+                if ( rowCount == 1 )
+                {
+                    rowsPerPage.remove( pageId );
+                }
+                else
+                {
+                    rowsPerPage.put( pageId, rowCount - 1 );
+                }
+            }
+        }
+    }
+
+    /**
+     * Called by the {@link PageCache} when it evicts one of our pages, while
+     * no other thread can pin it.
+     */
+    void pageEvicted( PageCacheWindow window )
+    {
+        PageCache.Frame frame = window.getFrame();
+        try
+        {
+            if ( window.clearDirty() && !readOnly )
+            {
+                window.writeOut();
+            }
+        }
+        finally
+        {
+            // rows of the page may be read from the file once it's removed
+            pages.remove( window.getPageId(), frame );
+        }
+    }
+
+    public void release( PersistenceWindow window )
+    {
+        if ( window instanceof PersistenceRow )
+        {
+            releaseRow( (PersistenceRow) window );
+        }
+        else
+        {
+            PageCacheWindow pageWindow = (PageCacheWindow) window;
+            PageCache.Frame frame = pageWindow.getFrame();
+            if ( pageWindow.getOperationType() == OperationType.WRITE )
+            {
+                pageWindow.markDirty();
+            }
+            pageWindow.unLock();
+            frame.unpin();
+        }
+    }
+
+    public void flushAll()
+    {
+        if ( readOnly ) return;
+
+        for ( PageCache.Frame frame : pages.values() )
+        {
+            // a page being evicted is written out by the evicting thread
+            if ( !frame.pin() )
+            {
+                continue;
+            }
+            try
+            {
+                PageCacheWindow window = frame.window;
+                if ( window != null && window.getPool() == this )
+                {
+                    flushCounter.forceIfDirty( window, recordSize );
+                }
+            }
+            finally
+            {
+                frame.unpin();
+            }
+        }
+        try
+        {
+            fileChannel.force( false );
+        }
+        catch ( IOException e )
+        {
+            throw new UnderlyingStorageException(
+                "Failed to flush file channel " + storeName, e );
+        }
+    }
+
+    public long flushDirtyWindows( long maxBytes )
+    {
+        if ( readOnly ) return 0;
+
+        long flushed = 0;
+        for ( PageCache.Frame frame : pages.values() )
+        {
+            if ( flushed >= maxBytes )
+            {
+                break;
+            }
+            PageCacheWindow window = frame.window;
+            if ( window == null || !window.isDirty() || !frame.pin() )
+            {
+                continue;
+            }
+            try
+            {
+                window = frame.window;
+                if ( window != null && window.getPool() == this )
+                {
+                    window.mark();
+                    flushed += flushCounter.flushIfDirty( window, recordSize );
+                }
+            }
+            finally
+            {
+                frame.unpin();
+            }
+        }
+        return flushed;
+    }
+
+    public void close()
+    {
+        flushAll();
+        // hand our pages back to the cache so other stores can have them,
+        // none of them may be written to our file once it's closed
+        for ( PageCache.Frame frame : pages.values() )
+        {
+            while ( true )
+            {
+                if ( frame.lockForEviction() )
+                {
+                    PageCacheWindow window = frame.window;
+                    if ( window != null && window.getPool() == this )
+                    {
+                        pageEvicted( window );
+                        frame.window = null;
+                        frame.referenced = false;
+                    }
+                    frame.unlockAfterEviction( 0 );
+                    break;
+                }
+                // pinned, or being evicted by another store, which detaches
+                // the page only after it has been written
+                PageCacheWindow window = frame.window;
+                if ( window == null || window.getPool() != this )
+                {
+                    break;
+                }
+                Thread.yield();
+            }
+        }
+        pages.clear();
+        rows.clear();
+        rowsPerPage.clear();
+        log.finest( storeName + " hit=" + hit + " miss=" + miss + " ooe=" + ooe );
+    }
+
+    public WindowPoolStats getStats()
+    {
+        int pageCount = 0;
+        int dirtyCount = 0;
+        for ( PageCache.Frame frame : pages.values() )
+        {
+            PageCacheWindow window = frame.window;
+            pageCount++;
+            if ( window != null && window.isDirty() )
+            {
+                dirtyCount++;
+            }
+        }
+        return new WindowPoolStats( storeName, pageCache.getMemory(),
+                (long) pageCount * pageCache.getPageSize(), pageCount,
+                pageCache.getPageSize(), hit.get(), miss.get(), ooe.get(), dirtyCount,
+                flushCounter.getFlushCount(), flushCounter.getFlushedBytes(),
+                flushCounter.getFlushTimeMillis() );
+    }
+}
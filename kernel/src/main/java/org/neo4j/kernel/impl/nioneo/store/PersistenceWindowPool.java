@@ -38,7 +38,7 @@ import java.util.logging.Logger;
  * that the most frequently used records/blocks (be it for read or write
  * operations) are encapsulated by a memory mapped persistence window.
  */
-public class PersistenceWindowPool
+public class PersistenceWindowPool implements WindowPool
 {
     private static final int MAX_BRICK_COUNT = 100000;
 
@@ -66,6 +66,10 @@ public class PersistenceWindowPool
     private int ooe = 0;
     private boolean useMemoryMapped = true;
 
+    private final WindowFlushCounter flushCounter = new WindowFlushCounter();
+    // only touched by the thread flushing dirty windows
+    private int flushCursor = 0;
+
     private final boolean readOnly;
 
     /**
@@ -219,11 +223,16 @@ public class PersistenceWindowPool
         }
         else
         {
-            ((LockableWindow) window).unLock();
+            LockableWindow lockable = (LockableWindow) window;
+            if ( lockable.getOperationType() == OperationType.WRITE )
+            {
+                lockable.markDirty();
+            }
+            lockable.unLock();
         }
     }
 
-    synchronized void close()
+    public synchronized void close()
     {
         flushAll();
 //        synchronized ( activeRowWindows )
@@ -243,7 +252,7 @@ public class PersistenceWindowPool
         dumpStatistics();
     }
 
-    void flushAll()
+    public void flushAll()
     {
         if ( readOnly ) return;
 
@@ -251,10 +260,10 @@ public class PersistenceWindowPool
 //        {
             for ( BrickElement element : brickArray )
             {
-                PersistenceWindow window = element.getWindow();
+                LockableWindow window = element.getWindow();
                 if ( window != null )
                 {
-                    window.force();
+                    flushCounter.forceIfDirty( window, blockSize );
                 }
             }
 //        }
@@ -269,6 +278,35 @@ public class PersistenceWindowPool
         }
     }
 
+    public long flushDirtyWindows( long maxBytes )
+    {
+        if ( readOnly ) return 0;
+
+        BrickElement[] bricks = brickArray;
+        long flushed = 0;
+        for ( int i = 0; i < bricks.length && flushed < maxBytes; i++ )
+        {
+            if ( flushCursor >= bricks.length )
+            {
+                flushCursor = 0;
+            }
+            BrickElement element = bricks[flushCursor++];
+            LockableWindow window;
+            synchronized ( this )
+            {
+                window = element.getWindow();
+                if ( window == null || !window.isDirty() )
+                {
+                    continue;
+                }
+                // keeps it from being unmapped until we've locked it
+                window.mark();
+            }
+            flushed += flushCounter.flushIfDirty( window, blockSize );
+        }
+        return flushed;
+    }
+
     private static class BrickElement
     {
         private final int index;
@@ -661,9 +699,19 @@ public class PersistenceWindowPool
         log.log( Level.WARNING, "[" + storeName + "] " + logMessage, cause );
     }
 
-    WindowPoolStats getStats()
+    public WindowPoolStats getStats()
     {
+        int dirtyCount = 0;
+        for ( BrickElement element : brickArray )
+        {
+            LockableWindow window = element.getWindow();
+            if ( window != null && window.isDirty() )
+            {
+                dirtyCount++;
+            }
+        }
         return new WindowPoolStats( storeName, availableMem, memUsed, brickCount,
-                brickSize, hit, miss, ooe );
+                brickSize, hit, miss, ooe, dirtyCount, flushCounter.getFlushCount(),
+                flushCounter.getFlushedBytes(), flushCounter.getFlushTimeMillis() );
     }
 }
\ No newline at end of file
@@ -137,6 +137,15 @@ public class PropertyStore extends AbstractStore implements Store, RecordStore<P
         super.flushAll();
     }
 
+    @Override
+    public long flushDirtyWindows( long maxBytes )
+    {
+        long flushed = stringPropertyStore.flushDirtyWindows( maxBytes );
+        flushed += propertyIndexStore.flushDirtyWindows( maxBytes - flushed );
+        flushed += arrayPropertyStore.flushDirtyWindows( maxBytes - flushed );
+        return flushed + super.flushDirtyWindows( maxBytes - flushed );
+    }
+
     @Override
     public String getTypeDescriptor()
     {
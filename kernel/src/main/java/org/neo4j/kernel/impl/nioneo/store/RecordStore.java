@@ -69,6 +69,11 @@ public interface RecordStore<R extends AbstractBaseRecord>
             processRecord( RelationshipRecord.class, store, rel );
         }
 
+        public void processRelationshipGroup( RecordStore<RelationshipGroupRecord> store, RelationshipGroupRecord group )
+        {
+            processRecord( RelationshipGroupRecord.class, store, group );
+        }
+
         public void processProperty( RecordStore<PropertyRecord> store, PropertyRecord property )
         {
             processRecord( PropertyRecord.class, store, property );
@@ -0,0 +1,391 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.neo4j.kernel.IdGeneratorFactory;
+import org.neo4j.kernel.IdType;
+import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
+import org.neo4j.kernel.impl.util.StringLogger;
+
+/**
+ * Implementation of the relationship group store. Nodes with many
+ * relationships can have their relationships grouped by type, with one
+ * {@link RelationshipGroupRecord} per type holding separate chains for
+ * outgoing, incoming and loop relationships. The relationship records are the
+ * same as for other nodes, only the chain they are linked into differs. The
+ * node record of a grouped ("dense") node points to its first group instead of
+ * its first relationship, and has its dense flag set, see
+ * {@link NodeRecord#isDense()}. Groups are only ever deleted together with
+ * their owning node.
+ */
+public class RelationshipGroupStore extends AbstractStore implements Store, RecordStore<RelationshipGroupRecord>
+{
+    public static final String TYPE_DESCRIPTOR = "RelationshipGroupStore";
+
+    // in_use(byte)+type_and_chain_high_bits(int)+next_group(int)+first_out(int)+
+    // first_in(int)+first_loop(int)+owning_node(int)+out_count(int)+
+    // in_count(int)+loop_count(int)
+    public static final int RECORD_SIZE = 37;
+
+    public RelationshipGroupStore( String fileName, Map<?,?> config )
+    {
+        super( fileName, config, IdType.RELATIONSHIP_GROUP );
+    }
+
+    @Override
+    public void accept( RecordStore.Processor processor, RelationshipGroupRecord record )
+    {
+        processor.processRelationshipGroup( this, record );
+    }
+
+    @Override
+    public String getTypeDescriptor()
+    {
+        return TYPE_DESCRIPTOR;
+    }
+
+    @Override
+    public int getRecordSize()
+    {
+        return RECORD_SIZE;
+    }
+
+    @Override
+    public int getRecordHeaderSize()
+    {
+        return getRecordSize();
+    }
+
+    /**
+     * Creates a new relationship group store contained in
+     * <CODE>fileName</CODE> If filename is <CODE>null</CODE> or the file
+     * already exists an <CODE>IOException</CODE> is thrown.
+     *
+     * @param fileName
+     *            File name of the new relationship group store
+     */
+    public static void createStore( String fileName, IdGeneratorFactory idGeneratorFactory,
+            FileSystemAbstraction fileSystem )
+    {
+        createEmptyStore( fileName, buildTypeDescriptorAndVersion( TYPE_DESCRIPTOR ), idGeneratorFactory, fileSystem );
+    }
+
+    public RelationshipGroupRecord getRecord( long id )
+    {
+        PersistenceWindow window = acquireWindow( id, OperationType.READ );
+        try
+        {
+            return getRecord( id, window, RecordLoad.NORMAL );
+        }
+        finally
+        {
+            releaseWindow( window );
+        }
+    }
+
+    /**
+     * @return the record with the given id or <CODE>null</CODE> if it isn't
+     * in use.
+     */
+    public RelationshipGroupRecord getLightRecord( long id )
+    {
+        PersistenceWindow window = null;
+        try
+        {
+            window = acquireWindow( id, OperationType.READ );
+        }
+        catch ( InvalidRecordException e )
+        {
+            // ok to high id
+            return null;
+        }
+        try
+        {
+            return getRecord( id, window, RecordLoad.CHECK );
+        }
+        finally
+        {
+            releaseWindow( window );
+        }
+    }
+
+    @Override
+    public RelationshipGroupRecord forceGetRecord( long id )
+    {
+        PersistenceWindow window = null;
+        try
+        {
+            window = acquireWindow( id, OperationType.READ );
+        }
+        catch ( InvalidRecordException e )
+        {
+            return new RelationshipGroupRecord( id, -1, -1 );
+        }
+
+        try
+        {
+            return getRecord( id, window, RecordLoad.FORCE );
+        }
+        finally
+        {
+            releaseWindow( window );
+        }
+    }
+
+    @Override
+    public RelationshipGroupRecord forceGetRaw( long id )
+    {
+        return forceGetRecord( id );
+    }
+
+    public void updateRecord( RelationshipGroupRecord record, boolean recovered )
+    {
+        assert recovered;
+        setRecovered();
+        try
+        {
+            updateRecord( record );
+            registerIdFromUpdateRecord( record.getId() );
+        }
+        finally
+        {
+            unsetRecovered();
+        }
+    }
+
+    public void updateRecord( RelationshipGroupRecord record )
+    {
+        PersistenceWindow window = acquireWindow( record.getId(),
+            OperationType.WRITE );
+        try
+        {
+            updateRecord( record, window, false );
+        }
+        finally
+        {
+            releaseWindow( window );
+        }
+    }
+
+    @Override
+    public void forceUpdateRecord( RelationshipGroupRecord record )
+    {
+        PersistenceWindow window = acquireWindow( record.getId(),
+                OperationType.WRITE );
+        try
+        {
+            updateRecord( record, window, true );
+        }
+        finally
+        {
+            releaseWindow( window );
+        }
+    }
+
+    private void updateRecord( RelationshipGroupRecord record,
+        PersistenceWindow window, boolean force )
+    {
+        long id = record.getId();
+        Buffer buffer = window.getOffsettedBuffer( id );
+        if ( record.inUse() || force )
+        {
+            long next = record.getNext();
+            long nextMod = next == Record.NO_NEXT_RELATIONSHIP.intValue() ? 0 : (next & 0x700000000L) >> 31;
+
+            long owningNode = record.getOwningNode();
+            long owningNodeMod = (owningNode & 0x700000000L) >> 28;
+
+            // [    ,   x] in use flag
+            // [    ,xxx ] next group high order bits
+            // [ xxx,    ] owning node high order bits
+            short inUseUnsignedByte = (short)((record.inUse() ? Record.IN_USE : Record.NOT_IN_USE).byteValue() | nextMod | owningNodeMod);
+
+            // [    ,    ][  xx,x   ][    ,    ][    ,    ] first loop high order bits, 0x380000
+            // [    ,    ][    , xxx][    ,    ][    ,    ] first in high order bits,   0x70000
+            // [    ,    ][    ,    ][xxxx,xxxx][xxxx,xxxx] type
+            int typeInt = (int)(record.getType() | chainMod( record.getFirstOut(), 16 ) |
+                    chainMod( record.getFirstIn(), 19 ) | chainMod( record.getFirstLoop(), 22 ) );
+
+            buffer.put( (byte)inUseUnsignedByte ).putInt( typeInt ).putInt( (int) next )
+                .putInt( (int) record.getFirstOut() ).putInt( (int) record.getFirstIn() )
+                .putInt( (int) record.getFirstLoop() ).putInt( (int) owningNode )
+                .putInt( record.getOutCount() ).putInt( record.getInCount() ).putInt( record.getLoopCount() );
+        }
+        else
+        {
+            buffer.put( Record.NOT_IN_USE.byteValue() );
+            if ( !isInRecoveryMode() )
+            {
+                freeId( id );
+            }
+        }
+    }
+
+    private static long chainMod( long first, int shift )
+    {
+        return first == Record.NO_NEXT_RELATIONSHIP.intValue() ? 0 : ((first & 0x700000000L) >> 32) << shift;
+    }
+
+    private static long chainModifier( long typeInt, int shift )
+    {
+        return ((typeInt >> shift) & 0x7L) << 32;
+    }
+
+    private RelationshipGroupRecord getRecord( long id, PersistenceWindow window,
+        RecordLoad load )
+    {
+        Buffer buffer = window.getOffsettedBuffer( id );
+
+        // [    ,   x] in use flag
+        // [    ,xxx ] next group high order bits
+        // [ xxx,    ] owning node high order bits
+        long inUseByte = buffer.get();
+
+        boolean inUse = (inUseByte & 0x1) == Record.IN_USE.intValue();
+        if ( !inUse )
+        {
+            switch ( load )
+            {
+            case NORMAL:
+                throw new InvalidRecordException( "Record[" + id + "] not in use" );
+            case CHECK:
+                return null;
+            }
+        }
+
+        long typeInt = buffer.getUnsignedInt();
+        long next = buffer.getUnsignedInt();
+        long firstOut = buffer.getUnsignedInt();
+        long firstIn = buffer.getUnsignedInt();
+        long firstLoop = buffer.getUnsignedInt();
+        long owningNode = buffer.getUnsignedInt();
+
+        RelationshipGroupRecord record = new RelationshipGroupRecord( id, (int)(typeInt & 0xFFFF),
+                longFromIntAndMod( owningNode, (inUseByte & 0x70L) << 28 ) );
+        record.setInUse( inUse );
+        record.setNext( longFromIntAndMod( next, (inUseByte & 0xEL) << 31 ) );
+        record.setFirstOut( longFromIntAndMod( firstOut, chainModifier( typeInt, 16 ) ) );
+        record.setFirstIn( longFromIntAndMod( firstIn, chainModifier( typeInt, 19 ) ) );
+        record.setFirstLoop( longFromIntAndMod( firstLoop, chainModifier( typeInt, 22 ) ) );
+        record.setOutCount( buffer.getInt() );
+        record.setInCount( buffer.getInt() );
+        record.setLoopCount( buffer.getInt() );
+        return record;
+    }
+
+    /**
+     * Groups a chain of relationships by type. The node side pointers of the
+     * relationships in <CODE>chain</CODE> are relinked into one chain per
+     * type and direction and <CODE>node</CODE> is made to point to the first
+     * of the returned groups, which haven't been written to this store. Ids
+     * for the groups are taken from this store.
+     *
+     * @param node the node owning the relationships, will be marked as dense.
+     * @param chain all the relationships of <CODE>node</CODE>.
+     * @return the new groups, in the order they are linked.
+     */
+    public List<RelationshipGroupRecord> groupRelationships( NodeRecord node,
+            List<RelationshipRecord> chain )
+    {
+        long nodeId = node.getId();
+        Map<Integer,RelationshipGroupRecord> groups = new LinkedHashMap<Integer,RelationshipGroupRecord>();
+        Map<RelationshipGroupRecord,RelationshipRecord[]> lastInChain =
+                new LinkedHashMap<RelationshipGroupRecord,RelationshipRecord[]>();
+        for ( RelationshipRecord rel : chain )
+        {
+            RelationshipGroupRecord group = groups.get( rel.getType() );
+            if ( group == null )
+            {
+                group = new RelationshipGroupRecord( nextId(), rel.getType(), nodeId );
+                group.setInUse( true );
+                groups.put( rel.getType(), group );
+                lastInChain.put( group, new RelationshipRecord[3] );
+            }
+            DirectionWrapper direction = RelationshipGroupRecord.directionOf( nodeId, rel );
+            RelationshipRecord[] last = lastInChain.get( group );
+            RelationshipRecord prev = last[direction.ordinal()];
+            if ( prev == null )
+            {
+                group.setFirst( direction, rel.getId() );
+                setPrev( nodeId, rel, Record.NO_PREV_RELATIONSHIP.intValue() );
+            }
+            else
+            {
+                setNext( nodeId, prev, rel.getId() );
+                setPrev( nodeId, rel, prev.getId() );
+            }
+            setNext( nodeId, rel, Record.NO_NEXT_RELATIONSHIP.intValue() );
+            last[direction.ordinal()] = rel;
+            group.setCount( direction, group.getCount( direction ) + 1 );
+        }
+
+        List<RelationshipGroupRecord> result = new ArrayList<RelationshipGroupRecord>( groups.values() );
+        for ( int i = 0; i < result.size() - 1; i++ )
+        {
+            result.get( i ).setNext( result.get( i + 1 ).getId() );
+        }
+        node.setNextRel( result.isEmpty() ? Record.NO_NEXT_RELATIONSHIP.intValue() : result.get( 0 ).getId() );
+        node.setDense( !result.isEmpty() );
+        return result;
+    }
+
+    private static void setPrev( long nodeId, RelationshipRecord rel, long prev )
+    {
+        if ( rel.getFirstNode() == nodeId )
+        {
+            rel.setFirstPrevRel( prev );
+        }
+        if ( rel.getSecondNode() == nodeId )
+        {
+            rel.setSecondPrevRel( prev );
+        }
+    }
+
+    private static void setNext( long nodeId, RelationshipRecord rel, long next )
+    {
+        if ( rel.getFirstNode() == nodeId )
+        {
+            rel.setFirstNextRel( next );
+        }
+        if ( rel.getSecondNode() == nodeId )
+        {
+            rel.setSecondNextRel( next );
+        }
+    }
+
+    @Override
+    public List<WindowPoolStats> getAllWindowPoolStats()
+    {
+        List<WindowPoolStats> list = new ArrayList<WindowPoolStats>();
+        list.add( getWindowPoolStats() );
+        return list;
+    }
+
+    @Override
+    public void logIdUsage( StringLogger.LineLogger logger )
+    {
+        NeoStore.logIdUsage( logger, this );
+    }
+}
@@ -364,6 +364,77 @@ public class RelationshipStore extends AbstractStore implements Store, RecordSto
         }
     }
 
+    /**
+     * Reads records from the relationship chain of a node, starting at
+     * <CODE>position</CODE> and following the pointers of
+     * <CODE>nodeId</CODE>. A window is held on to for as long as the chain
+     * stays within it, so that records close to each other, which is common
+     * for relationships created together, don't each need a window of
+     * their own.
+     *
+     * @param nodeId the node whose chain to follow.
+     * @param position the id of the first record to read.
+     * @param maxCount the maximum number of records to read.
+     * @param target the list to add the read records to.
+     * @return the id of the next record in the chain, which is
+     * {@link Record#NO_NEXT_RELATIONSHIP} at the end of the chain. If a
+     * record is beyond the high id, its id is returned without reading it.
+     */
+    public long getChainRecords( long nodeId, long position, int maxCount,
+        List<RelationshipRecord> target )
+    {
+        PersistenceWindow window = null;
+        try
+        {
+            for ( int i = 0; i < maxCount && position != Record.NO_NEXT_RELATIONSHIP.intValue(); i++ )
+            {
+                if ( window != null && ( position < window.position()
+                    || position >= window.position() + window.size() || position > getHighId() ) )
+                {
+                    releaseWindow( window );
+                    window = null;
+                }
+                if ( window == null )
+                {
+                    try
+                    {
+                        window = acquireWindow( position, OperationType.READ );
+                    }
+                    catch ( InvalidRecordException e )
+                    {
+                        // ok to high id
+                        return position;
+                    }
+                }
+                RelationshipRecord record = getRecord( position, window, RecordLoad.NORMAL );
+                target.add( record );
+                if ( record.getFirstNode() == nodeId )
+                {
+                    position = record.getFirstNextRel();
+                }
+                else if ( record.getSecondNode() == nodeId )
+                {
+                    position = record.getSecondNextRel();
+                }
+                else
+                {
+                    throw new InvalidRecordException( "Node[" + nodeId +
+                        "] is neither firstNode[" + record.getFirstNode() +
+                        "] nor secondNode[" + record.getSecondNode() + "] for Relationship[" +
+                        record.getId() + "]" );
+                }
+            }
+            return position;
+        }
+        finally
+        {
+            if ( window != null )
+            {
+                releaseWindow( window );
+            }
+        }
+    }
+
     @Override
     public List<WindowPoolStats> getAllWindowPoolStats()
     {
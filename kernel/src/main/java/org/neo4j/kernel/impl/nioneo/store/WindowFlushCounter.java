@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of how many windows a window pool has written out and how long
+ * it took, for {@link WindowPoolStats}.
+ */
+class WindowFlushCounter
+{
+    private final AtomicInteger flushCount = new AtomicInteger();
+    private final AtomicLong flushedBytes = new AtomicLong();
+    private final AtomicLong flushTimeNanos = new AtomicLong();
+
+    /**
+     * Writes out <CODE>window</CODE> if it's dirty, see
+     * {@link LockableWindow#flushIfDirty()}.
+     *
+     * @return the number of bytes written
+     */
+    long flushIfDirty( LockableWindow window, int blockSize )
+    {
+        long start = System.nanoTime();
+        if ( !window.flushIfDirty() )
+        {
+            return 0;
+        }
+        return flushed( window, blockSize, start );
+    }
+
+    /**
+     * Forces <CODE>window</CODE> if it's dirty, without locking it.
+     *
+     * @return the number of bytes written
+     */
+    long forceIfDirty( LockableWindow window, int blockSize )
+    {
+        long start = System.nanoTime();
+        if ( !window.clearDirty() )
+        {
+            return 0;
+        }
+        window.force();
+        return flushed( window, blockSize, start );
+    }
+
+    private long flushed( LockableWindow window, int blockSize, long start )
+    {
+        long bytes = (long) window.size() * blockSize;
+        flushCount.incrementAndGet();
+        flushedBytes.addAndGet( bytes );
+        flushTimeNanos.addAndGet( System.nanoTime() - start );
+        return bytes;
+    }
+
+    int getFlushCount()
+    {
+        return flushCount.get();
+    }
+
+    long getFlushedBytes()
+    {
+        return flushedBytes.get();
+    }
+
+    long getFlushTimeMillis()
+    {
+        return flushTimeNanos.get() / 1000000;
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+/**
+ * Hands out {@link PersistenceWindow persistence windows} for the records of
+ * a store. A window acquired through {@link #acquire(long, OperationType)} is
+ * locked for the calling thread and must be handed back through
+ * {@link #release(PersistenceWindow)} when the operation is done.
+ */
+public interface WindowPool
+{
+    /**
+     * Acquires a window for <CODE>position</CODE> and
+     * <CODE>operationType</CODE> locking the window preventing other threads
+     * from using it.
+     *
+     * @param position the position that needs to be encapsulated by the window
+     * @param operationType the type of operation (READ or WRITE)
+     * @return a locked window encapsulating the position
+     */
+    PersistenceWindow acquire( long position, OperationType operationType );
+
+    /**
+     * Releases a window used for an operation back to the pool and unlocks
+     * it so other threads may use it.
+     *
+     * @param window the window to be released
+     */
+    void release( PersistenceWindow window );
+
+    void flushAll();
+
+    /**
+     * Writes out windows that have been written to since they were last
+     * flushed, continuing where the previous call left off, until about
+     * <CODE>maxBytes</CODE> have been written. Meant to be called
+     * periodically so that {@link #flushAll()} has little left to do.
+     *
+     * @param maxBytes the number of bytes to write before returning
+     * @return the number of bytes written
+     */
+    long flushDirtyWindows( long maxBytes );
+
+    void close();
+
+    WindowPoolStats getStats();
+}
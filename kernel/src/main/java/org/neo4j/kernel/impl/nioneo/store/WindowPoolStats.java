@@ -32,9 +32,22 @@ public class WindowPoolStats
     private final int hitCount;
     private final int missCount;
     private final int oomCount;
+
+    private final int dirtyCount;
+    private final int flushCount;
+    private final long flushedBytes;
+    private final long flushTimeMillis;
     
     public WindowPoolStats( String name, long memAvail, long memUsed, int windowCount,
             int windowSize, int hitCount, int missCount, int oomCount )
+    {
+        this( name, memAvail, memUsed, windowCount, windowSize, hitCount, missCount,
+                oomCount, 0, 0, 0, 0 );
+    }
+
+    public WindowPoolStats( String name, long memAvail, long memUsed, int windowCount,
+            int windowSize, int hitCount, int missCount, int oomCount, int dirtyCount,
+            int flushCount, long flushedBytes, long flushTimeMillis )
     {
         this.name = name;
         this.memAvail = memAvail;
@@ -44,6 +57,10 @@ public class WindowPoolStats
         this.hitCount = hitCount;
         this.missCount = missCount;
         this.oomCount = oomCount;
+        this.dirtyCount = dirtyCount;
+        this.flushCount = flushCount;
+        this.flushedBytes = flushedBytes;
+        this.flushTimeMillis = flushTimeMillis;
     }
     
     public String getName()
@@ -85,4 +102,38 @@ public class WindowPoolStats
     {
         return oomCount;
     }
+
+    /**
+     * @return the number of windows written to but not yet flushed
+     */
+    public int getDirtyCount()
+    {
+        return dirtyCount;
+    }
+
+    /**
+     * @return the number of times a dirty window has been written out
+     */
+    public int getFlushCount()
+    {
+        return flushCount;
+    }
+
+    public long getFlushedBytes()
+    {
+        return flushedBytes;
+    }
+
+    public long getFlushTimeMillis()
+    {
+        return flushTimeMillis;
+    }
+
+    /**
+     * @return the number of bytes written out per second spent flushing
+     */
+    public long getFlushThroughput()
+    {
+        return flushTimeMillis == 0 ? flushedBytes : flushedBytes * 1000 / flushTimeMillis;
+    }
 }
@@ -0,0 +1,82 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import java.nio.channels.FileChannel;
+import java.util.Map;
+
+/**
+ * The available {@link WindowPool} implementations, selected per database
+ * through the {@link org.neo4j.kernel.Config#WINDOW_POOL_TYPE} setting.
+ */
+public enum WindowPoolType
+{
+    standard( "synchronized brick pool" )
+    {
+        @Override
+        WindowPool create( String storeName, int blockSize, FileChannel fileChannel,
+                long mappedMem, boolean useMemoryMappedBuffers, boolean readOnly,
+                Map<?,?> config )
+        {
+            return new PersistenceWindowPool( storeName, blockSize, fileChannel,
+                    mappedMem, useMemoryMappedBuffers, readOnly );
+        }
+    },
+    concurrent( "lock free page table" )
+    {
+        @Override
+        WindowPool create( String storeName, int blockSize, FileChannel fileChannel,
+                long mappedMem, boolean useMemoryMappedBuffers, boolean readOnly,
+                Map<?,?> config )
+        {
+            return new ConcurrentPersistenceWindowPool( storeName, blockSize, fileChannel,
+                    mappedMem, useMemoryMappedBuffers, readOnly );
+        }
+    },
+    shared( "page cache shared by all stores" )
+    {
+        @Override
+        WindowPool create( String storeName, int blockSize, FileChannel fileChannel,
+                long mappedMem, boolean useMemoryMappedBuffers, boolean readOnly,
+                Map<?,?> config )
+        {
+            return new PageCachedWindowPool( storeName, blockSize, fileChannel,
+                    PageCache.getOrCreate( config ), readOnly );
+        }
+    };
+
+    public static final WindowPoolType DEFAULT = standard;
+
+    private final String description;
+
+    private WindowPoolType( String description )
+    {
+        this.description = description;
+    }
+
+    abstract WindowPool create( String storeName, int blockSize, FileChannel fileChannel,
+            long mappedMem, boolean useMemoryMappedBuffers, boolean readOnly,
+            Map<?,?> config );
+
+    public String getDescription()
+    {
+        return description;
+    }
+}
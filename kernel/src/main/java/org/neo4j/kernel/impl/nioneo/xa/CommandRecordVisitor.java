@@ -23,6 +23,7 @@ import org.neo4j.kernel.impl.nioneo.store.NeoStoreRecord;
 import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyIndexRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeRecord;
 
@@ -36,6 +37,8 @@ public interface CommandRecordVisitor
 
     void visitRelationship( RelationshipRecord record );
 
+    void visitRelationshipGroup( RelationshipGroupRecord record );
+
     void visitProperty( PropertyRecord record );
 
     void visitRelationshipType( RelationshipTypeRecord record );
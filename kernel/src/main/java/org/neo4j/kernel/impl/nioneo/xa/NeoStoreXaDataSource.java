@@ -99,6 +99,10 @@ public class NeoStoreXaDataSource extends LogBackedXaDataSource
 
     private boolean logApplied = false;
 
+    // applies recovered transactions while the logical log is scanned, if
+    // parallel recovery is enabled
+    private RecoveryLanes recoveryLanes;
+
     private final StringLogger msgLog;
 
     private enum Diagnostics implements DiagnosticsExtractor<NeoStoreXaDataSource>
@@ -221,6 +225,10 @@ public class NeoStoreXaDataSource extends LogBackedXaDataSource
         {
             if ( !readOnly )
             {
+                if ( Boolean.parseBoolean( (String) config.get( Config.PARALLEL_RECOVERY ) ) )
+                {
+                    recoveryLanes = new RecoveryLanes( neoStore );
+                }
                 neoStore.setRecoveredStatus( true );
                 try
                 {
@@ -255,6 +263,10 @@ public class NeoStoreXaDataSource extends LogBackedXaDataSource
         }
         catch ( Throwable e )
         {   // Something unexpected happened during startup
+            if ( recoveryLanes != null )
+            {
+                recoveryLanes.shutdown();
+            }
             try
             {   // Close the neostore, so that locks are released properly
                 neoStore.close();
@@ -397,8 +409,8 @@ public class NeoStoreXaDataSource extends LogBackedXaDataSource
 
             TransactionInterceptor first = TransactionInterceptorProvider.resolveChain(
                     providers, NeoStoreXaDataSource.this );
-            return new InterceptingWriteTransaction( identifier,
-                    getLogicalLog(), neoStore, lockReleaser, lockManager, first );
+            return withRecoveryLanes( new InterceptingWriteTransaction( identifier,
+                    getLogicalLog(), neoStore, lockReleaser, lockManager, first ) );
         }
     }
 
@@ -407,8 +419,27 @@ public class NeoStoreXaDataSource extends LogBackedXaDataSource
         @Override
         public XaTransaction create( int identifier )
         {
-            return new WriteTransaction( identifier, getLogicalLog(), neoStore,
-                lockReleaser, lockManager );
+            return withRecoveryLanes( new WriteTransaction( identifier, getLogicalLog(), neoStore,
+                lockReleaser, lockManager ) );
+        }
+
+        @Override
+        public void recoveryScanComplete()
+        {
+            if ( recoveryLanes == null )
+            {
+                return;
+            }
+            try
+            {
+                recoveryLanes.awaitApplied();
+                neoStore.getIdGeneratorFactory().updateIdGenerators( neoStore );
+            }
+            finally
+            {
+                recoveryLanes.shutdown();
+                recoveryLanes = null;
+            }
         }
 
         @Override
@@ -461,6 +492,12 @@ public class NeoStoreXaDataSource extends LogBackedXaDataSource
         }
     }
 
+    private WriteTransaction withRecoveryLanes( WriteTransaction tx )
+    {
+        tx.setRecoveryLanes( recoveryLanes );
+        return tx;
+    }
+
     public long nextId( Class<?> clazz )
     {
         Store store = idGenerators.get( clazz );
@@ -42,6 +42,8 @@ import org.neo4j.kernel.impl.nioneo.store.PropertyIndexStore;
 import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyStore;
 import org.neo4j.kernel.impl.nioneo.store.Record;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupStore;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipStore;
 import org.neo4j.kernel.impl.persistence.NeoStoreTransaction;
@@ -74,6 +76,11 @@ class ReadTransaction implements NeoStoreTransaction
         return neoStore.getRelationshipStore();
     }
 
+    private RelationshipGroupStore getRelationshipGroupStore()
+    {
+        return neoStore.getRelationshipGroupStore();
+    }
+
     private PropertyStore getPropertyStore()
     {
         return neoStore.getPropertyStore();
@@ -101,12 +108,45 @@ class ReadTransaction implements NeoStoreTransaction
     public Pair<Map<DirectionWrapper, Iterable<RelationshipRecord>>, Long> getMoreRelationships(
             long nodeId, long position )
     {
-        return getMoreRelationships( nodeId, position, getRelGrabSize(), getRelationshipStore() );
+        return getMoreRelationships( nodeId, position, getRelGrabSize(), getNodeStore(),
+                getRelationshipStore(), getRelationshipGroupStore() );
+    }
+
+    @Override
+    public Map<DirectionWrapper, Iterable<RelationshipRecord>> getRelationshipsOfTypes(
+            long nodeId, int[] types, DirectionWrapper direction )
+    {
+        return getRelationshipsOfTypes( nodeId, types, direction, getNodeStore(), getRelationshipStore(),
+                getRelationshipGroupStore() );
+    }
+
+    @Override
+    public void groupRelationships( long nodeId )
+    {
+        throw readOnlyException();
+    }
+
+    @Override
+    public long[] getNodeIdsInUse( long fromId, long toId )
+    {
+        return getNodeStore().getIdsInUse( fromId, toId );
+    }
+
+    @Override
+    public long[] getRelationshipIdsInUse( long fromId, long toId )
+    {
+        return getRelationshipStore().getIdsInUse( fromId, toId );
     }
 
     static Pair<Map<DirectionWrapper, Iterable<RelationshipRecord>>, Long> getMoreRelationships(
-            long nodeId, long position, int grabSize, RelationshipStore relStore )
+            long nodeId, long position, int grabSize, NodeStore nodeStore, RelationshipStore relStore,
+            RelationshipGroupStore groupStore )
     {
+        NodeRecord node = nodeStore.loadLightNode( nodeId );
+        if ( node != null && node.isDense() )
+        {
+            return getMoreGroupedRelationships( nodeId, position, relStore, groupStore );
+        }
         // initialCapacity=grabSize saves the lists the trouble of resizing
         List<RelationshipRecord> out = new ArrayList<RelationshipRecord>();
         List<RelationshipRecord> in = new ArrayList<RelationshipRecord>();
@@ -115,60 +155,145 @@ class ReadTransaction implements NeoStoreTransaction
             new EnumMap<DirectionWrapper, Iterable<RelationshipRecord>>( DirectionWrapper.class );
         result.put( DirectionWrapper.OUTGOING, out );
         result.put( DirectionWrapper.INCOMING, in );
-        for ( int i = 0; i < grabSize &&
-            position != Record.NO_NEXT_RELATIONSHIP.intValue(); i++ )
+        List<RelationshipRecord> records = new ArrayList<RelationshipRecord>( grabSize );
+        position = relStore.getChainRecords( nodeId, position, grabSize, records );
+        for ( RelationshipRecord relRecord : records )
         {
-            RelationshipRecord relRecord = relStore.getChainRecord( position );
-            if ( relRecord == null )
-            {
-                // return what we got so far
-                return Pair.of( result, position );
-            }
             long firstNode = relRecord.getFirstNode();
             long secondNode = relRecord.getSecondNode();
-            if ( relRecord.inUse() )
+            if ( firstNode == secondNode )
             {
-                if ( firstNode == secondNode )
+                if ( loop == null )
                 {
-                    if ( loop == null )
-                    {
-                        // This is done lazily because loops are probably quite
-                        // rarely encountered
-                        loop = new ArrayList<RelationshipRecord>();
-                        result.put( DirectionWrapper.BOTH, loop );
-                    }
-                    loop.add( relRecord );
-                }
-                else if ( firstNode == nodeId )
-                {
-                    out.add( relRecord );
-                }
-                else if ( secondNode == nodeId )
-                {
-                    in.add( relRecord );
+                    // This is done lazily because loops are probably quite
+                    // rarely encountered
+                    loop = new ArrayList<RelationshipRecord>();
+                    result.put( DirectionWrapper.BOTH, loop );
                 }
+                loop.add( relRecord );
+            }
+            else if ( firstNode == nodeId )
+            {
+                out.add( relRecord );
             }
             else
             {
-                i--;
+                in.add( relRecord );
+            }
+        }
+        return Pair.of( result, position );
+    }
+
+    /*
+     * The position of a node with grouped relationships is the id of a group.
+     * All groups are loaded at once since relationships created later on
+     * go first in the chain of their group and not first in the node's chain,
+     * so a partially loaded node could get them twice.
+     */
+    private static Pair<Map<DirectionWrapper, Iterable<RelationshipRecord>>, Long> getMoreGroupedRelationships(
+            long nodeId, long position, RelationshipStore relStore, RelationshipGroupStore groupStore )
+    {
+        List<RelationshipRecord> out = new ArrayList<RelationshipRecord>();
+        List<RelationshipRecord> in = new ArrayList<RelationshipRecord>();
+        List<RelationshipRecord> loop = new ArrayList<RelationshipRecord>();
+        while ( position != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            RelationshipGroupRecord group = getGroup( nodeId, position, groupStore );
+            loadChain( nodeId, group.getFirstOut(), relStore, out );
+            loadChain( nodeId, group.getFirstIn(), relStore, in );
+            loadChain( nodeId, group.getFirstLoop(), relStore, loop );
+            position = group.getNext();
+        }
+        return Pair.of( toResult( out, in, loop ), position );
+    }
+
+    static Map<DirectionWrapper, Iterable<RelationshipRecord>> getRelationshipsOfTypes( long nodeId,
+            int[] types, DirectionWrapper direction, NodeStore nodeStore, RelationshipStore relStore,
+            RelationshipGroupStore groupStore )
+    {
+        NodeRecord node = nodeStore.getRecord( nodeId );
+        if ( !node.isDense() )
+        {
+            return null;
+        }
+        List<RelationshipGroupRecord> groups = new ArrayList<RelationshipGroupRecord>( types.length );
+        int outCount = 0, inCount = 0, loopCount = 0;
+        long position = node.getNextRel();
+        while ( position != Record.NO_NEXT_RELATIONSHIP.intValue() && groups.size() < types.length )
+        {
+            RelationshipGroupRecord group = getGroup( nodeId, position, groupStore );
+            for ( int type : types )
+            {
+                if ( group.getType() == type )
+                {
+                    groups.add( group );
+                    outCount += group.getOutCount();
+                    inCount += group.getInCount();
+                    loopCount += group.getLoopCount();
+                    break;
+                }
             }
+            position = group.getNext();
+        }
 
-            if ( firstNode == nodeId )
+        boolean outgoing = direction != DirectionWrapper.INCOMING;
+        boolean incoming = direction != DirectionWrapper.OUTGOING;
+        List<RelationshipRecord> out = new ArrayList<RelationshipRecord>( outgoing ? outCount : 0 );
+        List<RelationshipRecord> in = new ArrayList<RelationshipRecord>( incoming ? inCount : 0 );
+        List<RelationshipRecord> loop = new ArrayList<RelationshipRecord>( loopCount );
+        for ( RelationshipGroupRecord group : groups )
+        {
+            if ( outgoing )
             {
-                position = relRecord.getFirstNextRel();
+                loadChain( nodeId, group.getFirstOut(), relStore, out );
             }
-            else if ( secondNode == nodeId )
+            if ( incoming )
             {
-                position = relRecord.getSecondNextRel();
+                loadChain( nodeId, group.getFirstIn(), relStore, in );
             }
-            else
+            loadChain( nodeId, group.getFirstLoop(), relStore, loop );
+        }
+        return toResult( out, in, loop );
+    }
+
+    private static RelationshipGroupRecord getGroup( long nodeId, long id, RelationshipGroupStore groupStore )
+    {
+        RelationshipGroupRecord group = groupStore.getLightRecord( id );
+        if ( group == null || group.getOwningNode() != nodeId )
+        {
+            throw new InvalidRecordException( "Relationship group[" + id +
+                "] is not a group of Node[" + nodeId + "]: " + group );
+        }
+        return group;
+    }
+
+    private static void loadChain( long nodeId, long position, RelationshipStore relStore,
+            List<RelationshipRecord> target )
+    {
+        while ( position != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            int sizeBefore = target.size();
+            position = relStore.getChainRecords( nodeId, position, Integer.MAX_VALUE, target );
+            if ( target.size() == sizeBefore )
             {
-                throw new InvalidRecordException( "Node[" + nodeId +
-                    "] is neither firstNode[" + firstNode +
-                    "] nor secondNode[" + secondNode + "] for Relationship[" + relRecord.getId() + "]" );
+                // the rest of the chain is beyond the high id
+                return;
             }
         }
-        return Pair.of( result, position );
+    }
+
+    private static Map<DirectionWrapper, Iterable<RelationshipRecord>> toResult(
+            List<RelationshipRecord> out, List<RelationshipRecord> in, List<RelationshipRecord> loop )
+    {
+        Map<DirectionWrapper, Iterable<RelationshipRecord>> result =
+            new EnumMap<DirectionWrapper, Iterable<RelationshipRecord>>( DirectionWrapper.class );
+        result.put( DirectionWrapper.OUTGOING, out );
+        result.put( DirectionWrapper.INCOMING, in );
+        if ( !loop.isEmpty() )
+        {
+            result.put( DirectionWrapper.BOTH, loop );
+        }
+        return result;
     }
 
     static List<PropertyRecord> getPropertyRecordChain(
@@ -220,6 +345,44 @@ class ReadTransaction implements NeoStoreTransaction
         return propertyChainToMap( chain );
     }
 
+    /**
+     * Follows the property chain starting at <CODE>nextProp</CODE> until it
+     * finds the block for <CODE>keyId</CODE>, so that records after it are
+     * never read. The records are read light.
+     */
+    static PropertyData loadProperty( PropertyStore propertyStore, long nextProp, int keyId )
+    {
+        while ( nextProp != Record.NO_NEXT_PROPERTY.intValue() )
+        {
+            PropertyRecord propRecord = propertyStore.getLightRecord( nextProp );
+            PropertyBlock propBlock = propRecord.getPropertyBlock( keyId );
+            if ( propBlock != null )
+            {
+                return propBlock.newPropertyData( propRecord );
+            }
+            nextProp = propRecord.getNextProp();
+        }
+        return null;
+    }
+
+    @Override
+    public PropertyData relLoadProperty( long relId, int keyId )
+    {
+        RelationshipRecord relRecord = getRelationshipStore().getRecord( relId );
+        if ( !relRecord.inUse() )
+        {
+            throw new InvalidRecordException( "Relationship[" + relId +
+                "] not in use" );
+        }
+        return loadProperty( getPropertyStore(), relRecord.getNextProp(), keyId );
+    }
+
+    @Override
+    public PropertyData nodeLoadProperty( long nodeId, long firstProp, int keyId )
+    {
+        return loadProperty( getPropertyStore(), firstProp, keyId );
+    }
+
     @Override
     public ArrayMap<Integer,PropertyData> relLoadProperties( long relId, boolean light )
     {
@@ -253,7 +416,8 @@ class ReadTransaction implements NeoStoreTransaction
     @Override
     public Object loadPropertyValue( PropertyData property )
     {
-        PropertyRecord propertyRecord = getPropertyStore().getRecord(
+        // light, so that only the dynamic records of this value are read
+        PropertyRecord propertyRecord = getPropertyStore().getLightRecord(
                 property.getId() );
         PropertyBlock propertyBlock = propertyRecord.getPropertyBlock( property.getIndex() );
         if ( propertyBlock.isLight() )
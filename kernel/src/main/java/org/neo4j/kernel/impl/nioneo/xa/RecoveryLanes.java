@@ -0,0 +1,285 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.xa;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.neo4j.kernel.impl.nioneo.store.NeoStore;
+import org.neo4j.kernel.impl.nioneo.store.UnderlyingStorageException;
+
+/**
+ * Applies the commands of transactions recovered from the logical log with a
+ * thread per store. The commands for one store are applied in the order they
+ * are given, so each store ends up just as if the recovering thread had
+ * applied them all itself, while the different stores are written in
+ * parallel.
+ * <p>
+ * The lanes are only used while the logical log is scanned at startup. The
+ * last committed tx is set once every lane has applied the commands of that
+ * transaction, so it never runs ahead of the records in the stores.
+ */
+class RecoveryLanes
+{
+    private static final int MAX_QUEUED_COMMANDS = 1024;
+    private static final Object STOP = new Object();
+
+    private final NeoStore neoStore;
+    private volatile boolean running = true;
+    private volatile boolean failed;
+
+    private final Lane properties = new Lane( "properties" );
+    private final Lane relationships = new Lane( "relationships" );
+    private final Lane relationshipGroups = new Lane( "relationship groups" );
+    private final Lane nodes = new Lane( "nodes" );
+    private final Lane[] lanes = { properties, relationships, relationshipGroups, nodes };
+
+    RecoveryLanes( NeoStore neoStore )
+    {
+        this.neoStore = neoStore;
+    }
+
+    /**
+     * @return whether commands may still be given to the lanes, i.e. they
+     *         haven't been shut down.
+     */
+    boolean isRunning()
+    {
+        return running;
+    }
+
+    void execute( Command command )
+    {
+        if ( command instanceof Command.PropertyCommand )
+        {
+            properties.add( command );
+        }
+        else if ( command instanceof Command.RelationshipCommand )
+        {
+            relationships.add( command );
+        }
+        else if ( command instanceof Command.RelationshipGroupCommand )
+        {
+            relationshipGroups.add( command );
+        }
+        else if ( command instanceof Command.NodeCommand )
+        {
+            nodes.add( command );
+        }
+        else
+        {
+            throw new IllegalArgumentException( "No recovery lane for " + command );
+        }
+    }
+
+    /**
+     * Sets the last committed tx to {@code txId} once the commands given so
+     * far have been applied.
+     */
+    void committed( long txId )
+    {
+        Committed committed = new Committed( txId );
+        for ( Lane lane : lanes )
+        {
+            lane.add( committed );
+        }
+    }
+
+    /**
+     * Waits for all commands given so far to be applied.
+     *
+     * @throws UnderlyingStorageException if a command couldn't be applied.
+     */
+    void awaitApplied()
+    {
+        for ( Lane lane : lanes )
+        {
+            lane.await();
+        }
+        for ( Lane lane : lanes )
+        {
+            Throwable failure = lane.failure;
+            if ( failure instanceof RuntimeException )
+            {
+                throw (RuntimeException) failure;
+            }
+            if ( failure instanceof Error )
+            {
+                throw (Error) failure;
+            }
+            if ( failure != null )
+            {
+                throw new UnderlyingStorageException( "Unable to apply recovered commands to the "
+                        + lane.name + " store", failure );
+            }
+        }
+    }
+
+    /**
+     * Stops the threads once they have gone through the commands given to
+     * them.
+     */
+    void shutdown()
+    {
+        running = false;
+        for ( Lane lane : lanes )
+        {
+            lane.stop();
+        }
+    }
+
+    private class Committed
+    {
+        private final long txId;
+        private final AtomicInteger remainingLanes = new AtomicInteger( lanes.length );
+
+        Committed( long txId )
+        {
+            this.txId = txId;
+        }
+
+        void appliedInLane()
+        {
+            if ( remainingLanes.decrementAndGet() == 0 && !failed )
+            {
+                synchronized ( neoStore )
+                {
+                    neoStore.setRecoveredStatus( true );
+                    try
+                    {
+                        neoStore.setLastCommittedTx( txId );
+                    }
+                    finally
+                    {
+                        neoStore.setRecoveredStatus( false );
+                    }
+                }
+            }
+        }
+    }
+
+    private class Lane implements Runnable
+    {
+        private final String name;
+        private final BlockingQueue<Object> queue = new ArrayBlockingQueue<Object>( MAX_QUEUED_COMMANDS );
+        private Thread thread;
+        private volatile Throwable failure;
+
+        Lane( String name )
+        {
+            this.name = name;
+        }
+
+        void add( Object item )
+        {
+            if ( !running )
+            {
+                throw new IllegalStateException( "Recovery of " + name + " has been shut down" );
+            }
+            if ( thread == null )
+            {
+                thread = new Thread( this, "Recovery of " + name );
+                thread.setDaemon( true );
+                thread.start();
+            }
+            put( item );
+        }
+
+        void await()
+        {
+            if ( thread == null )
+            {
+                return;
+            }
+            CountDownLatch applied = new CountDownLatch( 1 );
+            put( applied );
+            try
+            {
+                applied.await();
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException( "Interrupted while waiting for recovery of " + name, e );
+            }
+        }
+
+        void stop()
+        {
+            if ( thread != null )
+            {
+                put( STOP );
+                thread = null;
+            }
+        }
+
+        private void put( Object item )
+        {
+            try
+            {
+                queue.put( item );
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException( "Interrupted while queueing recovery of " + name, e );
+            }
+        }
+
+        public void run()
+        {
+            try
+            {
+                for ( Object item = queue.take(); item != STOP; item = queue.take() )
+                {
+                    if ( item instanceof CountDownLatch )
+                    {
+                        ((CountDownLatch) item).countDown();
+                    }
+                    else if ( failure == null )
+                    {
+                        try
+                        {
+                            if ( item instanceof Committed )
+                            {
+                                ((Committed) item).appliedInLane();
+                            }
+                            else
+                            {
+                                ((Command) item).execute();
+                            }
+                        }
+                        catch ( Throwable t )
+                        {
+                            failure = t;
+                            failed = true;
+                        }
+                    }
+                }
+            }
+            catch ( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -27,9 +27,11 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.transaction.xa.XAException;
 import javax.transaction.xa.XAResource;
@@ -57,6 +59,8 @@ import org.neo4j.kernel.impl.nioneo.store.PropertyRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyStore;
 import org.neo4j.kernel.impl.nioneo.store.PropertyType;
 import org.neo4j.kernel.impl.nioneo.store.Record;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupStore;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipStore;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeRecord;
@@ -82,6 +86,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     private final Map<Long,NodeRecord> nodeRecords = new HashMap<Long,NodeRecord>();
     private final Map<Long,PropertyRecord> propertyRecords = new HashMap<Long,PropertyRecord>();
     private final Map<Long,RelationshipRecord> relRecords = new HashMap<Long,RelationshipRecord>();
+    private final Map<Long,RelationshipGroupRecord> relGroupRecords = new HashMap<Long,RelationshipGroupRecord>();
     private Map<Integer,RelationshipTypeRecord> relTypeRecords;
     private Map<Integer,PropertyIndexRecord> propIndexRecords;
     private NeoStoreRecord neoStoreRecord;
@@ -89,9 +94,12 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     private final ArrayList<Command.NodeCommand> nodeCommands = new ArrayList<Command.NodeCommand>();
     private final ArrayList<Command.PropertyCommand> propCommands = new ArrayList<Command.PropertyCommand>();
     private final ArrayList<Command.RelationshipCommand> relCommands = new ArrayList<Command.RelationshipCommand>();
+    private final ArrayList<Command.RelationshipGroupCommand> relGroupCommands = new ArrayList<Command.RelationshipGroupCommand>();
     private ArrayList<Command.RelationshipTypeCommand> relTypeCommands;
     private ArrayList<Command.PropertyIndexCommand> propIndexCommands;
     private Command.NeoStoreCommand neoStoreCommand;
+    // nodes which got their relationships grouped in this tx
+    private final Set<Long> groupedNodes = new HashSet<Long>();
 
     private final NeoStore neoStore;
     private boolean committed = false;
@@ -100,6 +108,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     private final LockReleaser lockReleaser;
     private final LockManager lockManager;
     private XaConnection xaConnection;
+    private RecoveryLanes recoveryLanes;
 
     WriteTransaction( int identifier, XaLogicalLog log, NeoStore neoStore,
             LockReleaser lockReleaser, LockManager lockManager )
@@ -116,12 +125,12 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         if ( isRecovered() )
         {
             return nodeCommands.size() == 0 && propCommands.size() == 0 &&
-                relCommands.size() == 0 && relTypeCommands == null &&
-                propIndexCommands == null;
+                relCommands.size() == 0 && relGroupCommands.size() == 0 &&
+                relTypeCommands == null && propIndexCommands == null;
         }
         return nodeRecords.size() == 0 && relRecords.size() == 0 &&
-            propertyRecords.size() == 0 && relTypeRecords == null &&
-            propIndexRecords == null;
+            relGroupRecords.size() == 0 && propertyRecords.size() == 0 &&
+            relTypeRecords == null && propIndexRecords == null;
     }
 
     @Override
@@ -133,8 +142,10 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     @Override
     protected void doPrepare() throws XAException
     {
+        deleteGroupsOfDeletedNodes();
         int noOfCommands = nodeRecords.size() +
                            relRecords.size() +
+                           relGroupRecords.size() +
                            propertyRecords.size() +
                            (propIndexRecords != null ? propIndexRecords.size() : 0) +
                            (relTypeRecords != null ? relTypeRecords.size() : 0);
@@ -195,6 +206,14 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
             }
             commands.add( command );
         }
+        for ( RelationshipGroupRecord record : relGroupRecords.values() )
+        {
+            Command.RelationshipGroupCommand command =
+                new Command.RelationshipGroupCommand(
+                    neoStore.getRelationshipGroupStore(), record );
+            relGroupCommands.add( command );
+            commands.add( command );
+        }
         if ( neoStoreRecord != null )
         {
             neoStoreCommand = new Command.NeoStoreCommand( neoStore, neoStoreRecord );
@@ -230,6 +249,35 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         }
     }
 
+    /*
+     * Groups are deleted here and not in nodeDelete since the relationships
+     * of a node can be deleted after the node in the same transaction.
+     */
+    private void deleteGroupsOfDeletedNodes()
+    {
+        for ( NodeRecord record : nodeRecords.values() )
+        {
+            if ( record.inUse() || !record.isDense() )
+            {
+                continue;
+            }
+            long groupId = record.getNextRel();
+            while ( groupId != Record.NO_NEXT_RELATIONSHIP.intValue() )
+            {
+                RelationshipGroupRecord group = getRelationshipGroupRecord( groupId );
+                if ( !group.isEmpty() )
+                {
+                    throw new InvalidRecordException( "Node record " + record
+                        + " still has relationships in " + group );
+                }
+                group.setInUse( false );
+                addRelationshipGroupRecord( group );
+                groupId = group.getNext();
+            }
+            record.setNextRel( Record.NO_NEXT_RELATIONSHIP.intValue() );
+        }
+    }
+
     protected void intercept( List<Command> commands )
     {
         // default no op
@@ -246,6 +294,10 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         {
             relCommands.add( (Command.RelationshipCommand) xaCommand );
         }
+        else if ( xaCommand instanceof Command.RelationshipGroupCommand )
+        {
+            relGroupCommands.add( (Command.RelationshipGroupCommand) xaCommand );
+        }
         else if ( xaCommand instanceof Command.PropertyCommand )
         {
             propCommands.add( (Command.PropertyCommand) xaCommand );
@@ -315,6 +367,14 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
                 }
                 removeRelationshipFromCache( record.getId() );
             }
+            for ( RelationshipGroupRecord record : relGroupRecords.values() )
+            {
+                if ( freeIds && record.isCreated() )
+                {
+                    getRelationshipGroupStore().freeId( record.getId() );
+                }
+                removeNodeFromCache( record.getOwningNode() );
+            }
             if ( neoStoreRecord != null )
             {
                 removeGraphPropertiesFromCache();
@@ -461,13 +521,19 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
             // primitives
             java.util.Collections.sort( nodeCommands, sorter );
             java.util.Collections.sort( relCommands, sorter );
+            java.util.Collections.sort( relGroupCommands, sorter );
             java.util.Collections.sort( propCommands, sorter );
-            executeCreated( propCommands, relCommands, nodeCommands );
-            executeModified( propCommands, relCommands, nodeCommands );
+            executeCreated( propCommands, relCommands, relGroupCommands, nodeCommands );
+            executeModified( propCommands, relCommands, relGroupCommands, nodeCommands );
             if ( neoStoreCommand != null ) neoStoreCommand.execute();
-            executeDeleted( propCommands, relCommands, nodeCommands );
+            executeDeleted( propCommands, relCommands, relGroupCommands, nodeCommands );
             updateFirstRelationships();
             lockReleaser.commitCows();
+            for ( Long nodeId : groupedNodes )
+            {
+                // any cached relationship chain position is stale
+                removeNodeFromCache( nodeId );
+            }
             neoStore.setLastCommittedTx( getCommitTxId() );
         }
         finally
@@ -518,8 +584,26 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         }
     }
 
+    void setRecoveryLanes( RecoveryLanes recoveryLanes )
+    {
+        this.recoveryLanes = recoveryLanes;
+    }
+
     private void commitRecovered()
     {
+        // Transactions created while scanning the log may be committed by
+        // the tx manager after the scan, with the lanes shut down
+        if ( recoveryLanes != null && recoveryLanes.isRunning() )
+        {
+            if ( propIndexCommands == null && relTypeCommands == null )
+            {
+                commitRecoveredInLanes();
+                return;
+            }
+            // new names are read back from their stores below, so the
+            // commands of earlier transactions must have been applied
+            recoveryLanes.awaitApplied();
+        }
         try
         {
             committed = true;
@@ -563,6 +647,13 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
                     removeNodeFromCache( command.getSecondNode() );
                 }
             }
+            // relationship groups
+            java.util.Collections.sort( relGroupCommands, sorter );
+            for ( Command.RelationshipGroupCommand command : relGroupCommands )
+            {
+                command.execute();
+                removeNodeFromCache( command.getOwningNode() );
+            }
             // nodes
             java.util.Collections.sort( nodeCommands, sorter );
             for ( Command.NodeCommand command : nodeCommands )
@@ -592,11 +683,70 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         }
     }
 
+    /**
+     * Hands the commands over to the {@link RecoveryLanes} of their stores
+     * instead of applying them here. The lanes set the last committed tx
+     * once they have applied them, and the id generators are updated once
+     * the log has been scanned. Nothing is cached while the log is scanned
+     * at startup, so there is nothing to invalidate.
+     */
+    private void commitRecoveredInLanes()
+    {
+        try
+        {
+            committed = true;
+            CommandSorter sorter = new CommandSorter();
+            java.util.Collections.sort( propCommands, sorter );
+            for ( Command.PropertyCommand command : propCommands )
+            {
+                recoveryLanes.execute( command );
+            }
+            java.util.Collections.sort( relCommands, sorter );
+            for ( Command.RelationshipCommand command : relCommands )
+            {
+                recoveryLanes.execute( command );
+            }
+            java.util.Collections.sort( relGroupCommands, sorter );
+            for ( Command.RelationshipGroupCommand command : relGroupCommands )
+            {
+                recoveryLanes.execute( command );
+            }
+            java.util.Collections.sort( nodeCommands, sorter );
+            for ( Command.NodeCommand command : nodeCommands )
+            {
+                recoveryLanes.execute( command );
+            }
+            if ( neoStoreCommand != null )
+            {
+                // the lanes set the recovered status of the neo store too
+                synchronized ( neoStore )
+                {
+                    neoStore.setRecoveredStatus( true );
+                    try
+                    {
+                        neoStoreCommand.execute();
+                    }
+                    finally
+                    {
+                        neoStore.setRecoveredStatus( false );
+                    }
+                }
+            }
+            recoveryLanes.committed( getCommitTxId() );
+        }
+        finally
+        {
+            clear();
+        }
+    }
+
     private void clear()
     {
         nodeRecords.clear();
         propertyRecords.clear();
         relRecords.clear();
+        relGroupRecords.clear();
+        groupedNodes.clear();
         if ( relTypeRecords != null ) relTypeRecords.clear();
         if ( propIndexRecords != null ) propIndexRecords.clear();
         neoStoreRecord = null;
@@ -605,6 +755,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         propCommands.clear();
         if ( propIndexCommands != null ) propIndexCommands.clear();
         relCommands.clear();
+        relGroupCommands.clear();
         if ( relTypeCommands != null ) relTypeCommands.clear();
         neoStoreCommand = null;
     }
@@ -645,6 +796,11 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         return neoStore.getRelationshipStore();
     }
 
+    private RelationshipGroupStore getRelationshipGroupStore()
+    {
+        return neoStore.getRelationshipGroupStore();
+    }
+
     private PropertyStore getPropertyStore()
     {
         return neoStore.getPropertyStore();
@@ -912,12 +1068,82 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     public Pair<Map<DirectionWrapper, Iterable<RelationshipRecord>>, Long> getMoreRelationships( long nodeId,
         long position )
     {
-        return ReadTransaction.getMoreRelationships( nodeId, position, getRelGrabSize(), getRelationshipStore() );
+        return ReadTransaction.getMoreRelationships( nodeId, position, getRelGrabSize(), getNodeStore(),
+                getRelationshipStore(), getRelationshipGroupStore() );
+    }
+
+    @Override
+    public Map<DirectionWrapper, Iterable<RelationshipRecord>> getRelationshipsOfTypes( long nodeId,
+            int[] types, DirectionWrapper direction )
+    {
+        return ReadTransaction.getRelationshipsOfTypes( nodeId, types, direction, getNodeStore(),
+                getRelationshipStore(), getRelationshipGroupStore() );
+    }
+
+    @Override
+    public long[] getNodeIdsInUse( long fromId, long toId )
+    {
+        return getNodeStore().getIdsInUse( fromId, toId );
+    }
+
+    @Override
+    public long[] getRelationshipIdsInUse( long fromId, long toId )
+    {
+        return getRelationshipStore().getIdsInUse( fromId, toId );
+    }
+
+    @Override
+    public void groupRelationships( long nodeId )
+    {
+        NodeRecord node = getNodeRecord( nodeId );
+        if ( node == null )
+        {
+            node = getNodeStore().getRecord( nodeId );
+            addNodeRecord( node );
+        }
+        if ( !node.inUse() || node.isDense() )
+        {
+            return;
+        }
+        List<RelationshipRecord> chain = new ArrayList<RelationshipRecord>();
+        long position = node.getNextRel();
+        while ( position != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            getWriteLock( new LockableRelationship( position ) );
+            RelationshipRecord rel = getRelationshipRecord( position );
+            if ( rel == null )
+            {
+                rel = getRelationshipStore().getRecord( position );
+                addRelationshipRecord( rel );
+            }
+            chain.add( rel );
+            position = rel.getFirstNode() == nodeId ? rel.getFirstNextRel() : rel.getSecondNextRel();
+        }
+        for ( RelationshipGroupRecord group : getRelationshipGroupStore().groupRelationships( node, chain ) )
+        {
+            group.setCreated();
+            addRelationshipGroupRecord( group );
+        }
+        groupedNodes.add( nodeId );
+    }
+
+    private boolean isDense( long nodeId )
+    {
+        NodeRecord node = getNodeRecord( nodeId );
+        if ( node == null )
+        {
+            node = getNodeStore().loadLightNode( nodeId );
+        }
+        return node != null && node.isDense();
     }
 
     private void updateNodes( RelationshipRecord rel )
     {
-        if ( rel.getFirstPrevRel() == Record.NO_PREV_RELATIONSHIP.intValue() )
+        if ( isDense( rel.getFirstNode() ) )
+        {
+            updateGroup( rel.getFirstNode(), rel, rel.getFirstPrevRel(), rel.getFirstNextRel() );
+        }
+        else if ( rel.getFirstPrevRel() == Record.NO_PREV_RELATIONSHIP.intValue() )
         {
             NodeRecord firstNode = getNodeRecord( rel.getFirstNode() );
             if ( firstNode == null )
@@ -927,7 +1153,15 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
             }
             firstNode.setNextRel( rel.getFirstNextRel() );
         }
-        if ( rel.getSecondPrevRel() == Record.NO_PREV_RELATIONSHIP.intValue() )
+        if ( rel.getFirstNode() == rel.getSecondNode() )
+        {
+            return;
+        }
+        if ( isDense( rel.getSecondNode() ) )
+        {
+            updateGroup( rel.getSecondNode(), rel, rel.getSecondPrevRel(), rel.getSecondNextRel() );
+        }
+        else if ( rel.getSecondPrevRel() == Record.NO_PREV_RELATIONSHIP.intValue() )
         {
             NodeRecord secondNode = getNodeRecord( rel.getSecondNode() );
             if ( secondNode == null )
@@ -939,6 +1173,28 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         }
     }
 
+    private void updateGroup( long nodeId, RelationshipRecord rel, long prev, long next )
+    {
+        NodeRecord node = getNodeRecord( nodeId );
+        if ( node == null )
+        {
+            node = getNodeStore().getRecord( nodeId );
+        }
+        RelationshipGroupRecord group = findRelationshipGroup( node, rel.getType() );
+        if ( group == null )
+        {
+            throw new InvalidRecordException( "No group of type " + rel.getType() + " for " +
+                node + " which " + rel + " belongs to" );
+        }
+        DirectionWrapper direction = RelationshipGroupRecord.directionOf( nodeId, rel );
+        if ( prev == Record.NO_PREV_RELATIONSHIP.intValue() )
+        {
+            group.setFirst( direction, next );
+        }
+        group.setCount( direction, group.getCount( direction ) - 1 );
+        addRelationshipGroupRecord( group );
+    }
+
     @Override
     public void relRemoveProperty( long relId, PropertyData propertyData )
     {
@@ -1004,6 +1260,41 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         return ReadTransaction.loadProperties( getPropertyStore(), firstProp );
     }
 
+    @Override
+    public PropertyData relLoadProperty( long relId, int keyId )
+    {
+        RelationshipRecord relRecord = getRelationshipRecord( relId );
+        if ( relRecord != null && relRecord.isCreated() ) return null;
+        if ( relRecord != null && !relRecord.inUse() )
+        {
+            throw new IllegalStateException( "Relationship[" + relId +
+                    "] has been deleted in this tx" );
+        }
+        relRecord = getRelationshipStore().getRecord( relId );
+        if ( !relRecord.inUse() )
+        {
+            throw new InvalidRecordException( "Relationship[" + relId +
+                "] not in use" );
+        }
+        return ReadTransaction.loadProperty( getPropertyStore(), relRecord.getNextProp(), keyId );
+    }
+
+    @Override
+    public PropertyData nodeLoadProperty( long nodeId, long firstProp, int keyId )
+    {
+        NodeRecord nodeRecord = getNodeRecord( nodeId );
+        if ( nodeRecord != null && nodeRecord.isCreated() )
+        {
+            return null;
+        }
+        if ( nodeRecord != null && !nodeRecord.inUse() )
+        {
+            throw new IllegalStateException( "Node[" + nodeId +
+                    "] has been deleted in this tx" );
+        }
+        return ReadTransaction.loadProperty( getPropertyStore(), firstProp, keyId );
+    }
+
     public Object propertyGetValueOrNull( PropertyBlock block )
     {
         return block.getType().getValue( block,
@@ -1016,7 +1307,7 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         PropertyRecord propertyRecord = propertyRecords.get( propertyData.getId() );
         if ( propertyRecord == null )
         {
-            propertyRecord = getPropertyStore().getRecord( propertyData.getId() );
+            propertyRecord = getPropertyStore().getLightRecord( propertyData.getId() );
         }
         PropertyBlock block = propertyRecord.getPropertyBlock( propertyData.getIndex() );
         if ( block == null )
@@ -1380,26 +1671,50 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
     private void connectRelationship( NodeRecord firstNode,
         NodeRecord secondNode, RelationshipRecord rel )
     {
-        assert firstNode.getNextRel() != rel.getId();
-        assert secondNode.getNextRel() != rel.getId();
-        rel.setFirstNextRel( firstNode.getNextRel() );
-        rel.setSecondNextRel( secondNode.getNextRel() );
         connect( firstNode, rel );
-        connect( secondNode, rel );
-        firstNode.setNextRel( rel.getId() );
-        secondNode.setNextRel( rel.getId() );
+        if ( secondNode.getId() != firstNode.getId() )
+        {
+            connect( secondNode, rel );
+        }
     }
 
+    /*
+     * Puts rel first in the chain of node, which for a node with grouped
+     * relationships is the chain of the group for the type and direction of
+     * rel.
+     */
     private void connect( NodeRecord node, RelationshipRecord rel )
     {
-        if ( node.getNextRel() != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        RelationshipGroupRecord group = null;
+        DirectionWrapper direction = null;
+        long first;
+        if ( node.isDense() )
         {
-            Relationship lockableRel = new LockableRelationship( node.getNextRel() );
+            group = getOrCreateRelationshipGroup( node, rel.getType() );
+            direction = RelationshipGroupRecord.directionOf( node.getId(), rel );
+            first = group.getFirst( direction );
+        }
+        else
+        {
+            first = node.getNextRel();
+        }
+        assert first != rel.getId();
+        if ( rel.getFirstNode() == node.getId() )
+        {
+            rel.setFirstNextRel( first );
+        }
+        if ( rel.getSecondNode() == node.getId() )
+        {
+            rel.setSecondNextRel( first );
+        }
+        if ( first != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            Relationship lockableRel = new LockableRelationship( first );
             getWriteLock( lockableRel );
-            RelationshipRecord nextRel = getRelationshipRecord( node.getNextRel() );
+            RelationshipRecord nextRel = getRelationshipRecord( first );
             if ( nextRel == null )
             {
-                nextRel = getRelationshipStore().getRecord( node.getNextRel() );
+                nextRel = getRelationshipStore().getRecord( first );
                 addRelationshipRecord( nextRel );
             }
             boolean changed = false;
@@ -1418,6 +1733,46 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
                 throw new InvalidRecordException( node + " dont match " + nextRel );
             }
         }
+        if ( group != null )
+        {
+            group.setFirst( direction, rel.getId() );
+            group.setCount( direction, group.getCount( direction ) + 1 );
+            addRelationshipGroupRecord( group );
+        }
+        else
+        {
+            node.setNextRel( rel.getId() );
+        }
+    }
+
+    private RelationshipGroupRecord findRelationshipGroup( NodeRecord node, int type )
+    {
+        long groupId = node.getNextRel();
+        while ( groupId != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            RelationshipGroupRecord group = getRelationshipGroupRecord( groupId );
+            if ( group.getType() == type )
+            {
+                return group;
+            }
+            groupId = group.getNext();
+        }
+        return null;
+    }
+
+    private RelationshipGroupRecord getOrCreateRelationshipGroup( NodeRecord node, int type )
+    {
+        RelationshipGroupRecord group = findRelationshipGroup( node, type );
+        if ( group == null )
+        {
+            group = new RelationshipGroupRecord( getRelationshipGroupStore().nextId(), type, node.getId() );
+            group.setInUse( true );
+            group.setCreated();
+            group.setNext( node.getNextRel() );
+            node.setNextRel( group.getId() );
+            addRelationshipGroupRecord( group );
+        }
+        return group;
     }
 
     @Override
@@ -1548,6 +1903,22 @@ public class WriteTransaction extends XaTransaction implements NeoStoreTransacti
         return relRecords.get( relId );
     }
 
+    void addRelationshipGroupRecord( RelationshipGroupRecord record )
+    {
+        relGroupRecords.put( record.getId(), record );
+    }
+
+    /*
+     * Returns the group as it is in this transaction, read from the store
+     * if not changed in it. Groups read from the store aren't added to the
+     * transaction until they are changed.
+     */
+    RelationshipGroupRecord getRelationshipGroupRecord( long groupId )
+    {
+        RelationshipGroupRecord record = relGroupRecords.get( groupId );
+        return record != null ? record : getRelationshipGroupStore().getRecord( groupId );
+    }
+
     void addPropertyRecord( PropertyRecord record )
     {
         propertyRecords.put( record.getId(), record );
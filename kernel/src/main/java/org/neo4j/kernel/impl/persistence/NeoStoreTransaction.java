@@ -259,6 +259,30 @@ public interface NeoStoreTransaction
     public ArrayMap<Integer,PropertyData> relLoadProperties( long relId,
             boolean light);
 
+    /**
+     * Looks up a single property of the given node, reading the property
+     * chain only as far as to the record holding it. Values kept in the
+     * dynamic stores are left to be loaded by {@link #loadPropertyValue}.
+     *
+     * @param nodeId The id of the node whose property to load.
+     * @param firstProp The first property record of the node.
+     * @param keyId The property index id of the property to load.
+     * @return The property, or <CODE>null</CODE> if the node doesn't have it.
+     */
+    public PropertyData nodeLoadProperty( long nodeId, long firstProp, int keyId );
+
+    /**
+     * Looks up a single property of the given relationship, reading the
+     * property chain only as far as to the record holding it. Values kept in
+     * the dynamic stores are left to be loaded by {@link #loadPropertyValue}.
+     *
+     * @param relId The id of the relationship whose property to load.
+     * @param keyId The property index id of the property to load.
+     * @return The property, or <CODE>null</CODE> if the relationship doesn't
+     *         have it.
+     */
+    public PropertyData relLoadProperty( long relId, int keyId );
+
     /**
      * Tries to load the light relationship with the given id, returns the
      * record on success.
@@ -306,6 +330,51 @@ public interface NeoStoreTransaction
     public Pair<Map<DirectionWrapper, Iterable<RelationshipRecord>>, Long> getMoreRelationships(
             long nodeId, long position );
 
+    /**
+     * Loads the relationships of the given types of a node which has its
+     * relationships grouped by type, without reading relationships of other
+     * types. Only committed relationships are returned.
+     *
+     * @param nodeId The id of the node.
+     * @param types The ids of the relationship types to load.
+     * @param direction The direction of the relationships to load.
+     * @return the relationships per direction, same as for
+     *         {@link #getMoreRelationships(long, long)}, or <code>null</code>
+     *         if the relationships of the node aren't grouped.
+     */
+    public Map<DirectionWrapper, Iterable<RelationshipRecord>> getRelationshipsOfTypes(
+            long nodeId, int[] types, DirectionWrapper direction );
+
+    /**
+     * Groups the relationships of a node by type, so that relationships
+     * of one type can be loaded without reading all of them. Does nothing if
+     * they already are grouped.
+     *
+     * @param nodeId The id of the node.
+     */
+    public void groupRelationships( long nodeId );
+
+    /**
+     * Returns the ids of the nodes in use in the given id range, reading the
+     * node store directly. Only committed nodes are returned.
+     *
+     * @param fromId The first node id to check.
+     * @param toId The node id after the last one to check.
+     * @return the ids of the nodes in use, in ascending order.
+     */
+    public long[] getNodeIdsInUse( long fromId, long toId );
+
+    /**
+     * Returns the ids of the relationships in use in the given id range,
+     * reading the relationship store directly. Only committed relationships
+     * are returned.
+     *
+     * @param fromId The first relationship id to check.
+     * @param toId The relationship id after the last one to check.
+     * @return the ids of the relationships in use, in ascending order.
+     */
+    public long[] getRelationshipIdsInUse( long fromId, long toId );
+
     /**
      * Returns an array view of the ids of the nodes that have been created in
      * this transaction.
@@ -108,6 +108,27 @@ public class PersistenceManager
         return getReadOnlyResource().getMoreRelationships( nodeId, position );
     }
 
+    public Map<DirectionWrapper, Iterable<RelationshipRecord>> getRelationshipsOfTypes(
+            long nodeId, int[] types, DirectionWrapper direction )
+    {
+        return getReadOnlyResource().getRelationshipsOfTypes( nodeId, types, direction );
+    }
+
+    public void groupRelationships( long nodeId )
+    {
+        getResource( true ).groupRelationships( nodeId );
+    }
+
+    public long[] getNodeIdsInUse( long fromId, long toId )
+    {
+        return getReadOnlyResource().getNodeIdsInUse( fromId, toId );
+    }
+
+    public long[] getRelationshipIdsInUse( long fromId, long toId )
+    {
+        return getReadOnlyResource().getRelationshipIdsInUse( fromId, toId );
+    }
+
     public ArrayMap<Integer,PropertyData> loadNodeProperties( long nodeId, long firstProp,
             boolean light )
     {
@@ -120,6 +141,16 @@ public class PersistenceManager
         return getReadOnlyResourceIfPossible().relLoadProperties( relId, light );
     }
     
+    public PropertyData loadNodeProperty( long nodeId, long firstProp, int keyId )
+    {
+        return getReadOnlyResourceIfPossible().nodeLoadProperty( nodeId, firstProp, keyId );
+    }
+
+    public PropertyData loadRelProperty( long relId, int keyId )
+    {
+        return getReadOnlyResourceIfPossible().relLoadProperty( relId, keyId );
+    }
+
     public RelationshipRecord loadLightRelationship( long id )
     {
         return getReadOnlyResourceIfPossible().relLoadLight( id );
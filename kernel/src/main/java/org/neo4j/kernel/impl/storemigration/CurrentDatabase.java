@@ -26,6 +26,7 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -36,25 +37,32 @@ import org.neo4j.kernel.impl.nioneo.store.NeoStore;
 import org.neo4j.kernel.impl.nioneo.store.NodeStore;
 import org.neo4j.kernel.impl.nioneo.store.PropertyIndexStore;
 import org.neo4j.kernel.impl.nioneo.store.PropertyStore;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupStore;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipStore;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeStore;
 
 public class CurrentDatabase
 {
-    private Map<String, String> fileNamesToTypeDescriptors = new HashMap<String, String>();
+    /*
+     * Initialized by the static block below.
+     */
+    public static final Map<String, String> fileNamesToTypeDescriptors;
 
-    public CurrentDatabase()
+    static
     {
-        fileNamesToTypeDescriptors.put( NeoStore.DEFAULT_NAME, NeoStore.TYPE_DESCRIPTOR );
-        fileNamesToTypeDescriptors.put( "neostore.nodestore.db", NodeStore.TYPE_DESCRIPTOR );
-        fileNamesToTypeDescriptors.put( "neostore.propertystore.db", PropertyStore.TYPE_DESCRIPTOR );
-        fileNamesToTypeDescriptors.put( "neostore.propertystore.db.arrays", DynamicArrayStore.TYPE_DESCRIPTOR );
-        fileNamesToTypeDescriptors.put( "neostore.propertystore.db.index", PropertyIndexStore.TYPE_DESCRIPTOR );
-        fileNamesToTypeDescriptors.put( "neostore.propertystore.db.index.keys", DynamicStringStore.TYPE_DESCRIPTOR );
-        fileNamesToTypeDescriptors.put( "neostore.propertystore.db.strings", DynamicStringStore.TYPE_DESCRIPTOR );
-        fileNamesToTypeDescriptors.put( "neostore.relationshipstore.db", RelationshipStore.TYPE_DESCRIPTOR );
-        fileNamesToTypeDescriptors.put( "neostore.relationshiptypestore.db", RelationshipTypeStore.TYPE_DESCRIPTOR );
-        fileNamesToTypeDescriptors.put( "neostore.relationshiptypestore.db.names", DynamicStringStore.TYPE_DESCRIPTOR );
+        Map<String, String> current = new HashMap<String, String>();
+        current.put( NeoStore.DEFAULT_NAME, NeoStore.TYPE_DESCRIPTOR );
+        current.put( "neostore.nodestore.db", NodeStore.TYPE_DESCRIPTOR );
+        current.put( "neostore.propertystore.db", PropertyStore.TYPE_DESCRIPTOR );
+        current.put( "neostore.propertystore.db.arrays", DynamicArrayStore.TYPE_DESCRIPTOR );
+        current.put( "neostore.propertystore.db.index", PropertyIndexStore.TYPE_DESCRIPTOR );
+        current.put( "neostore.propertystore.db.index.keys", DynamicStringStore.TYPE_DESCRIPTOR );
+        current.put( "neostore.propertystore.db.strings", DynamicStringStore.TYPE_DESCRIPTOR );
+        current.put( "neostore.relationshipstore.db", RelationshipStore.TYPE_DESCRIPTOR );
+        current.put( "neostore.relationshipgroupstore.db", RelationshipGroupStore.TYPE_DESCRIPTOR );
+        current.put( "neostore.relationshiptypestore.db", RelationshipTypeStore.TYPE_DESCRIPTOR );
+        current.put( "neostore.relationshiptypestore.db.names", DynamicStringStore.TYPE_DESCRIPTOR );
+        fileNamesToTypeDescriptors = Collections.unmodifiableMap( current );
     }
 
     public boolean storeFilesAtCurrentVersion( File storeDirectory )
@@ -40,6 +40,25 @@ public class StoreFiles
             "neostore.relationshiptypestore.db.names",
     };
 
+    /**
+     * Store files which older versions of the store don't have.
+     */
+    public static final String[] optionalFileNames = {
+            "neostore.relationshipgroupstore.db",
+    };
+
+    static boolean isOptional( String fileName )
+    {
+        for ( String optionalFileName : optionalFileNames )
+        {
+            if ( optionalFileName.equals( fileName ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Moves a database's store files from one directory
      * to another. Since it just renames files (the standard way of moving with
@@ -58,6 +77,14 @@ public class StoreFiles
             moveFile( fileName, fromDirectory, toDirectory );
             moveFile( fileName + ".id", fromDirectory, toDirectory );
         }
+        for ( String fileName : optionalFileNames )
+        {
+            if ( new File( fromDirectory, fileName ).exists() )
+            {
+                moveFile( fileName, fromDirectory, toDirectory );
+                moveFile( fileName + ".id", fromDirectory, toDirectory );
+            }
+        }
     }
 
     /**
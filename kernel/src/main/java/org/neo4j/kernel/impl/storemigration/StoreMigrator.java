@@ -19,21 +19,33 @@
  */
 package org.neo4j.kernel.impl.storemigration;
 
+import static org.neo4j.kernel.impl.nioneo.store.CommonAbstractStore.buildTypeDescriptorAndVersion;
 import static org.neo4j.kernel.impl.nioneo.store.PropertyStore.encodeString;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import org.neo4j.helpers.Pair;
+import org.neo4j.helpers.UTF8;
+import org.neo4j.kernel.IdGeneratorFactory;
+import org.neo4j.kernel.impl.nioneo.store.CommonAbstractStore;
 import org.neo4j.kernel.impl.nioneo.store.DynamicRecord;
+import org.neo4j.kernel.impl.nioneo.store.FileSystemAbstraction;
 import org.neo4j.kernel.impl.nioneo.store.NeoStore;
 import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
 import org.neo4j.kernel.impl.nioneo.store.NodeStore;
 import org.neo4j.kernel.impl.nioneo.store.PropertyIndexRecord;
 import org.neo4j.kernel.impl.nioneo.store.PropertyIndexStore;
 import org.neo4j.kernel.impl.nioneo.store.Record;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupRecord;
+import org.neo4j.kernel.impl.nioneo.store.RelationshipGroupStore;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipRecord;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipStore;
 import org.neo4j.kernel.impl.nioneo.store.RelationshipTypeRecord;
@@ -47,6 +59,7 @@ import org.neo4j.kernel.impl.storemigration.legacystore.LegacyPropertyRecord;
 import org.neo4j.kernel.impl.storemigration.legacystore.LegacyRelationshipTypeStoreReader;
 import org.neo4j.kernel.impl.storemigration.legacystore.LegacyStore;
 import org.neo4j.kernel.impl.storemigration.monitoring.MigrationProgressMonitor;
+import org.neo4j.kernel.impl.util.FileUtils;
 
 public class StoreMigrator
 {
@@ -64,6 +77,218 @@ public class StoreMigrator
         progressMonitor.finished();
     }
 
+    /*
+     * node record of UpgradableDatabase.PREVIOUS_VERSION:
+     * in_use(byte)+next_rel_id(int)+next_prop_id(int)
+     */
+    private static final int PREVIOUS_NODE_RECORD_SIZE = 9;
+
+    /**
+     * Upgrades a store of the {@link UpgradableDatabase#PREVIOUS_VERSION}.
+     * Only the node records differ from the current version, they got the
+     * byte holding the dense flag, so the other store files are copied as
+     * they are apart from their version trailers. The dense flag is then set
+     * for every node owning relationship groups.
+     *
+     * @param fromDirectory the directory of the store to upgrade.
+     * @param config the configuration of the upgraded store, with
+     *            <code>neo_store</code> in the directory to upgrade into.
+     */
+    public void migrateFromPreviousVersion( File fromDirectory, Map<?, ?> config ) throws IOException
+    {
+        progressMonitor.started();
+        File toDirectory = new File( (String) config.get( "neo_store" ) ).getParentFile();
+        for ( Map.Entry<String, String> entry : CurrentDatabase.fileNamesToTypeDescriptors.entrySet() )
+        {
+            String fileName = entry.getKey();
+            File fromFile = new File( fromDirectory, fileName );
+            if ( !fromFile.exists() )
+            {
+                // the relationship group store, created below
+                continue;
+            }
+            String typeDescriptor = entry.getValue();
+            if ( NodeStore.TYPE_DESCRIPTOR.equals( typeDescriptor ) )
+            {
+                migratePreviousNodeRecords( fromFile, new File( toDirectory, fileName ) );
+            }
+            else
+            {
+                copyWithCurrentVersion( fromFile, new File( toDirectory, fileName ), typeDescriptor );
+            }
+            FileUtils.copyFile( new File( fromDirectory, fileName + ".id" ),
+                    new File( toDirectory, fileName + ".id" ) );
+        }
+        File groupStoreFile = new File( toDirectory, "neostore.relationshipgroupstore.db" );
+        if ( !groupStoreFile.exists() )
+        {
+            RelationshipGroupStore.createStore( groupStoreFile.getPath(),
+                    (IdGeneratorFactory) config.get( IdGeneratorFactory.class ),
+                    (FileSystemAbstraction) config.get( FileSystemAbstraction.class ) );
+        }
+
+        NeoStore neoStore = new NeoStore( config );
+        try
+        {
+            neoStore.setStoreVersion( NeoStore.versionStringToLong( CommonAbstractStore.ALL_STORES_VERSION ) );
+            flagDenseNodes( neoStore );
+        }
+        finally
+        {
+            neoStore.close();
+        }
+        progressMonitor.finished();
+    }
+
+    private void migratePreviousNodeRecords( File fromFile, File toFile ) throws IOException
+    {
+        FileChannel from = new RandomAccessFile( fromFile, "r" ).getChannel();
+        FileChannel to = new RandomAccessFile( toFile, "rw" ).getChannel();
+        try
+        {
+            long records = (from.size() - previousTrailerLength( NodeStore.TYPE_DESCRIPTOR ))
+                    / PREVIOUS_NODE_RECORD_SIZE;
+            ByteBuffer fromBuffer = ByteBuffer.allocate( PREVIOUS_NODE_RECORD_SIZE );
+            ByteBuffer toBuffer = ByteBuffer.allocate( NodeStore.RECORD_SIZE );
+            int percentComplete = 0;
+            for ( long record = 0; record < records; record++ )
+            {
+                fromBuffer.clear();
+                readFully( from, fromBuffer );
+                fromBuffer.flip();
+                toBuffer.clear();
+                // no node is dense until flagDenseNodes has seen its groups
+                toBuffer.put( fromBuffer ).put( (byte) 0 );
+                toBuffer.flip();
+                to.write( toBuffer );
+                int newPercent = (int) ((record + 1) * 100 / records);
+                if ( newPercent > percentComplete )
+                {
+                    percentComplete = newPercent;
+                    progressMonitor.percentComplete( percentComplete );
+                }
+            }
+            to.write( ByteBuffer.wrap( UTF8.encode( buildTypeDescriptorAndVersion( NodeStore.TYPE_DESCRIPTOR ) ) ) );
+        }
+        finally
+        {
+            from.close();
+            to.close();
+        }
+    }
+
+    private static void copyWithCurrentVersion( File fromFile, File toFile, String typeDescriptor )
+            throws IOException
+    {
+        FileChannel from = new RandomAccessFile( fromFile, "r" ).getChannel();
+        FileChannel to = new RandomAccessFile( toFile, "rw" ).getChannel();
+        try
+        {
+            long count = from.size() - previousTrailerLength( typeDescriptor );
+            long position = 0;
+            while ( position < count )
+            {
+                position += from.transferTo( position, count - position, to );
+            }
+            to.position( count );
+            to.write( ByteBuffer.wrap( UTF8.encode( buildTypeDescriptorAndVersion( typeDescriptor ) ) ) );
+        }
+        finally
+        {
+            from.close();
+            to.close();
+        }
+    }
+
+    private static int previousTrailerLength( String typeDescriptor )
+    {
+        return UTF8.encode( typeDescriptor + " " + UpgradableDatabase.PREVIOUS_VERSION ).length;
+    }
+
+    private static void readFully( FileChannel channel, ByteBuffer buffer ) throws IOException
+    {
+        while ( buffer.hasRemaining() )
+        {
+            if ( channel.read( buffer ) == -1 )
+            {
+                throw new IOException( "Unexpected end of file" );
+            }
+        }
+    }
+
+    /**
+     * Sets the dense flag, see {@link NodeRecord#isDense()}, of every node
+     * which owns a relationship group.
+     */
+    private static void flagDenseNodes( NeoStore neoStore )
+    {
+        NodeStore nodeStore = neoStore.getNodeStore();
+        RelationshipGroupStore groupStore = neoStore.getRelationshipGroupStore();
+        long highId = groupStore.getHighId();
+        for ( long groupId = 0; groupId < highId; groupId++ )
+        {
+            RelationshipGroupRecord group = groupStore.getLightRecord( groupId );
+            if ( group == null )
+            {
+                continue;
+            }
+            NodeRecord nodeRecord = nodeStore.getRecord( group.getOwningNode() );
+            if ( !nodeRecord.isDense() )
+            {
+                nodeRecord.setDense( true );
+                nodeStore.updateRecord( nodeRecord );
+            }
+        }
+    }
+
+    /**
+     * Groups the relationships of all nodes which have at least
+     * <code>threshold</code> relationships by type, see
+     * {@link RelationshipGroupStore}. Nodes which already are grouped are
+     * left as they are.
+     *
+     * @param neoStore the store to group the nodes in.
+     * @param threshold the number of relationships from which a node is
+     *            grouped.
+     */
+    public static void groupDenseNodes( NeoStore neoStore, int threshold )
+    {
+        NodeStore nodeStore = neoStore.getNodeStore();
+        RelationshipStore relationshipStore = neoStore.getRelationshipStore();
+        RelationshipGroupStore groupStore = neoStore.getRelationshipGroupStore();
+        long highId = nodeStore.getHighId();
+        for ( long nodeId = 0; nodeId < highId; nodeId++ )
+        {
+            NodeRecord nodeRecord = nodeStore.loadLightNode( nodeId );
+            if ( nodeRecord == null || nodeRecord.isDense() )
+            {
+                continue;
+            }
+            List<RelationshipRecord> chain = new ArrayList<RelationshipRecord>();
+            long nextRel = nodeRecord.getNextRel();
+            while ( nextRel != Record.NO_NEXT_RELATIONSHIP.intValue() )
+            {
+                RelationshipRecord relationshipRecord = relationshipStore.getRecord( nextRel );
+                chain.add( relationshipRecord );
+                nextRel = relationshipRecord.getFirstNode() == nodeId ?
+                        relationshipRecord.getFirstNextRel() : relationshipRecord.getSecondNextRel();
+            }
+            if ( chain.size() < threshold )
+            {
+                continue;
+            }
+            for ( RelationshipGroupRecord group : groupStore.groupRelationships( nodeRecord, chain ) )
+            {
+                groupStore.updateRecord( group );
+            }
+            for ( RelationshipRecord relationshipRecord : chain )
+            {
+                relationshipStore.updateRecord( relationshipRecord );
+            }
+            nodeStore.updateRecord( nodeRecord );
+        }
+    }
+
     protected class Migration
     {
         private LegacyStore legacyStore;
@@ -83,6 +308,10 @@ public class StoreMigrator
             migrateNeoStore( neoStore );
             migrateNodes( neoStore.getNodeStore(), new PropertyWriter( neoStore.getPropertyStore() ) );
             migrateRelationships( neoStore.getRelationshipStore(), new PropertyWriter( neoStore.getPropertyStore() ) );
+            if ( neoStore.getRelationshipGroupingThreshold() > 0 )
+            {
+                groupDenseNodes( neoStore, neoStore.getRelationshipGroupingThreshold() );
+            }
             migratePropertyIndexes( neoStore.getPropertyStore().getIndexStore() );
             legacyStore.getPropertyStoreReader().close();
             migrateRelationshipTypes( neoStore.getRelationshipTypeStore() );
@@ -92,6 +92,19 @@ public class StoreUpgrader
         Map<Object, Object> upgradeConfig = new HashMap<Object, Object>( originalConfig );
         upgradeConfig.put( "neo_store", upgradeFileName );
 
+        if ( upgradableDatabase.storeFilesAtPreviousVersion( new File( storageFileName ) ) )
+        {
+            try
+            {
+                storeMigrator.migrateFromPreviousVersion( new File( storageFileName ).getParentFile(), upgradeConfig );
+            }
+            catch ( IOException e )
+            {
+                throw new UnableToUpgradeException( e );
+            }
+            return;
+        }
+
         NeoStore.createStore( upgradeFileName, upgradeConfig );
         NeoStore neoStore = new NeoStore( upgradeConfig );
         try
@@ -40,6 +40,12 @@ import org.neo4j.kernel.impl.storemigration.legacystore.LegacyStore;
 
 public class UpgradableDatabase
 {
+    /**
+     * The store version before nodes got their dense flag, see
+     * {@link StoreMigrator#migrateFromPreviousVersion(File, Map)}.
+     */
+    public static final String PREVIOUS_VERSION = "v0.A.0";
+
     /*
      * Initialized by the static block below.
      */
@@ -77,45 +83,90 @@ public class UpgradableDatabase
         }
     }
 
+    /**
+     * @return whether the store is either a legacy store, see
+     *         {@link #fileNamesToExpectedVersions}, or a store of the
+     *         {@link #PREVIOUS_VERSION}.
+     */
     public boolean storeFilesUpgradeable( File neoStoreFile )
+    {
+        return storeFilesAtLegacyVersion( neoStoreFile ) || storeFilesAtPreviousVersion( neoStoreFile );
+    }
+
+    private boolean storeFilesAtLegacyVersion( File neoStoreFile )
     {
         File storeDirectory = neoStoreFile.getParentFile();
         for ( String fileName : fileNamesToExpectedVersions.keySet() )
         {
-            String expectedVersion = fileNamesToExpectedVersions.get( fileName );
-            FileChannel fileChannel = null;
-            byte[] expectedVersionBytes = UTF8.encode( expectedVersion );
-            try
+            if ( !storeFileEndsWith( new File( storeDirectory, fileName ),
+                    fileNamesToExpectedVersions.get( fileName ) ) )
             {
-                File storeFile = new File( storeDirectory, fileName );
-                if (!storeFile.exists()) {
-                    return false;
-                }
-                fileChannel = new RandomAccessFile( storeFile, "r" ).getChannel();
-                fileChannel.position( fileChannel.size() - expectedVersionBytes.length );
-                byte[] foundVersionBytes = new byte[expectedVersionBytes.length];
-                fileChannel.read( ByteBuffer.wrap( foundVersionBytes ) );
-                if ( !expectedVersion.equals( UTF8.decode( foundVersionBytes ) ) )
-                {
-                    return false;
-                }
-            } catch ( IOException e )
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stores of the previous version only differ from the current ones in
+     * the node record, which got the dense flag. They may also lack the
+     * relationship group store, which is created when upgrading.
+     *
+     * @return whether all store files are of the {@link #PREVIOUS_VERSION}.
+     */
+    public boolean storeFilesAtPreviousVersion( File neoStoreFile )
+    {
+        File storeDirectory = neoStoreFile.getParentFile();
+        for ( String fileName : CurrentDatabase.fileNamesToTypeDescriptors.keySet() )
+        {
+            File storeFile = new File( storeDirectory, fileName );
+            if ( !storeFile.exists() && StoreFiles.isOptional( fileName ) )
             {
-                throw new RuntimeException( e );
-            } finally
+                continue;
+            }
+            String expectedVersion = CurrentDatabase.fileNamesToTypeDescriptors.get( fileName ) + " "
+                    + PREVIOUS_VERSION;
+            if ( !storeFileEndsWith( storeFile, expectedVersion ) )
             {
-                if ( fileChannel != null )
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean storeFileEndsWith( File storeFile, String expectedVersion )
+    {
+        FileChannel fileChannel = null;
+        byte[] expectedVersionBytes = UTF8.encode( expectedVersion );
+        try
+        {
+            if (!storeFile.exists()) {
+                return false;
+            }
+            fileChannel = new RandomAccessFile( storeFile, "r" ).getChannel();
+            if ( fileChannel.size() < expectedVersionBytes.length )
+            {
+                return false;
+            }
+            fileChannel.position( fileChannel.size() - expectedVersionBytes.length );
+            byte[] foundVersionBytes = new byte[expectedVersionBytes.length];
+            fileChannel.read( ByteBuffer.wrap( foundVersionBytes ) );
+            return expectedVersion.equals( UTF8.decode( foundVersionBytes ) );
+        } catch ( IOException e )
+        {
+            throw new RuntimeException( e );
+        } finally
+        {
+            if ( fileChannel != null )
+            {
+                try
                 {
-                    try
-                    {
-                        fileChannel.close();
-                    } catch ( IOException e )
-                    {
-                        // Ignore exception on close
-                    }
+                    fileChannel.close();
+                } catch ( IOException e )
+                {
+                    // Ignore exception on close
                 }
             }
         }
-        return true;
     }
 }
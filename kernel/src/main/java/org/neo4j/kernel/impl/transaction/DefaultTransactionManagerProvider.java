@@ -19,6 +19,8 @@
  */
 package org.neo4j.kernel.impl.transaction;
 
+import java.util.Map;
+
 import org.neo4j.helpers.Service;
 import org.neo4j.kernel.impl.core.KernelPanicEventGenerator;
 import org.neo4j.kernel.impl.nioneo.store.FileSystemAbstraction;
@@ -38,4 +40,12 @@ public final class DefaultTransactionManagerProvider extends TransactionManagerP
     {
         return new TxManager( txLogDir, kpe, rollbackHook, msgLog, fileSystem );
     }
+
+    @Override
+    protected AbstractTransactionManager loadTransactionManager( String txLogDir,
+            KernelPanicEventGenerator kpe, TxHook rollbackHook, StringLogger msgLog,
+            FileSystemAbstraction fileSystem, Map<?,?> config )
+    {
+        return new TxManager( txLogDir, kpe, rollbackHook, msgLog, fileSystem, config );
+    }
 }
@@ -49,17 +49,77 @@ import org.neo4j.kernel.info.WaitingThread;
  * <p>
  * LockManager just maps locks to resources and they do all the hard work
  * together with a resource allocation graph.
+ * <p>
+ * The resources are spread over a number of stripes, each with its own map
+ * and monitor, so that transactions locking different resources don't contend
+ * on the same monitor.
  */
 public class LockManager
 {
-    private final Map<Object,RWLock> resourceLockMap =
-        new HashMap<Object,RWLock>();
+    static final int DEFAULT_STRIPE_COUNT = defaultStripeCount();
+
+    private final Map<Object,RWLock>[] resourceLockMaps;
 
     private final RagManager ragManager;
 
     public LockManager( TransactionManager tm )
     {
-        ragManager = new RagManager( tm );
+        this( tm, DEFAULT_STRIPE_COUNT );
+    }
+
+    /**
+     * @param stripeCount the number of stripes to spread the resources over,
+     *            must be a power of two.
+     */
+    @SuppressWarnings( "unchecked" )
+    public LockManager( TransactionManager tm, int stripeCount )
+    {
+        resourceLockMaps = new Map[checkStripeCount( stripeCount )];
+        for ( int i = 0; i < resourceLockMaps.length; i++ )
+        {
+            resourceLockMaps[i] = new HashMap<Object,RWLock>();
+        }
+        ragManager = new RagManager( tm, stripeCount );
+    }
+
+    private static int defaultStripeCount()
+    {
+        int stripes = 16;
+        while ( stripes < Runtime.getRuntime().availableProcessors() * 4 )
+        {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+
+    static int checkStripeCount( int stripeCount )
+    {
+        if ( stripeCount < 1 || Integer.bitCount( stripeCount ) != 1 )
+        {
+            throw new IllegalArgumentException( "Stripe count must be a power of two, not "
+                                                + stripeCount );
+        }
+        return stripeCount;
+    }
+
+    static int stripe( Object resource, int stripeCount )
+    {
+        // spread the bits, resources are often nodes/relationships hashed on
+        // their sequential ids
+        int h = resource.hashCode();
+        h ^= ( h >>> 20 ) ^ ( h >>> 12 );
+        h ^= ( h >>> 7 ) ^ ( h >>> 4 );
+        return h & ( stripeCount - 1 );
+    }
+
+    private Map<Object,RWLock> resourceLockMapFor( Object resource )
+    {
+        return resourceLockMaps[stripe( resource, resourceLockMaps.length )];
+    }
+
+    int getStripeCount()
+    {
+        return resourceLockMaps.length;
     }
 
     public long getDetectedDeadlockCount()
@@ -88,6 +148,7 @@ public class LockManager
         }
 
         RWLock lock = null;
+        Map<Object,RWLock> resourceLockMap = resourceLockMapFor( resource );
         synchronized ( resourceLockMap )
         {
             lock = resourceLockMap.get( resource );
@@ -122,6 +183,7 @@ public class LockManager
         }
 
         RWLock lock = null;
+        Map<Object,RWLock> resourceLockMap = resourceLockMapFor( resource );
         synchronized ( resourceLockMap )
         {
             lock = resourceLockMap.get( resource );
@@ -154,6 +216,7 @@ public class LockManager
         }
 
         RWLock lock = null;
+        Map<Object,RWLock> resourceLockMap = resourceLockMapFor( resource );
         synchronized ( resourceLockMap )
         {
             lock = resourceLockMap.get( resource );
@@ -191,6 +254,7 @@ public class LockManager
         }
 
         RWLock lock = null;
+        Map<Object,RWLock> resourceLockMap = resourceLockMapFor( resource );
         synchronized ( resourceLockMap )
         {
             lock = resourceLockMap.get( resource );
@@ -219,6 +283,7 @@ public class LockManager
     public void dumpLocksOnResource( Object resource )
     {
         RWLock lock = null;
+        Map<Object,RWLock> resourceLockMap = resourceLockMapFor( resource );
         synchronized ( resourceLockMap )
         {
             if ( !resourceLockMap.containsKey( resource ) )
@@ -250,11 +315,14 @@ public class LockManager
      */
     private <V extends Visitor<LockInfo>> V eachLock( V visitor )
     {
-        synchronized ( resourceLockMap )
+        for ( Map<Object,RWLock> resourceLockMap : resourceLockMaps )
         {
-            for ( RWLock lock : resourceLockMap.values() )
+            synchronized ( resourceLockMap )
             {
-                if ( visitor.visit( lock.info() ) ) break;
+                for ( RWLock lock : resourceLockMap.values() )
+                {
+                    if ( visitor.visit( lock.info() ) ) return visitor;
+                }
             }
         }
         return visitor;
@@ -274,11 +342,14 @@ public class LockManager
     private <V extends Visitor<LockInfo>> V eachAwaitedLock( V visitor, long minWaitTime )
     {
         long waitStart = System.currentTimeMillis() - minWaitTime;
-        synchronized ( resourceLockMap )
+        for ( Map<Object,RWLock> resourceLockMap : resourceLockMaps )
         {
-            for ( RWLock lock : resourceLockMap.values() )
+            synchronized ( resourceLockMap )
             {
-                if ( lock.acceptVisitorIfWaitedSinceBefore( visitor, waitStart ) ) break;
+                for ( RWLock lock : resourceLockMap.values() )
+                {
+                    if ( lock.acceptVisitorIfWaitedSinceBefore( visitor, waitStart ) ) return visitor;
+                }
             }
         }
         return visitor;
@@ -19,6 +19,7 @@
  */
 package org.neo4j.kernel.impl.transaction;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -56,6 +57,14 @@ import org.neo4j.kernel.impl.util.ArrayMap;
  * traverse node nodespace starting on the resource and see if we can get back
  * to the tx ( T1 wants to wait on R1 and R1->T2->R2->T3->R8->T1 <==>
  * deadlock!).
+ * <p>
+ * Acquiring and releasing locks, which happens all the time, only touches the
+ * resource->tx relationships which are kept in stripes guarded by their own
+ * monitors. Only transactions that actually have to wait go through the
+ * monitor of the RagManager itself, which guards the tx->resource
+ * relationships and the traversal. That is enough to find every deadlock
+ * since a waiting transaction can't acquire or release locks, so the last
+ * transaction to close a cycle sees all the other relationships in it.
  */
 class RagManager
 {
@@ -73,8 +82,7 @@ class RagManager
     // o When the transaction wakes up from waiting on a resource the
     // stopWaitOn( resource ) method must be invoked
 
-    private final Map<Object,List<Transaction>> resourceMap =
-        new HashMap<Object,List<Transaction>>();
+    private final Map<Object,List<Transaction>>[] resourceMaps;
 
     private final ArrayMap<Transaction,Object> waitingTxMap =
         new ArrayMap<Transaction,Object>( 5, false, true );
@@ -84,46 +92,84 @@ class RagManager
     private final AtomicInteger deadlockCount = new AtomicInteger();
 
     RagManager( TransactionManager tm )
+    {
+        this( tm, LockManager.DEFAULT_STRIPE_COUNT );
+    }
+
+    @SuppressWarnings( "unchecked" )
+    RagManager( TransactionManager tm, int stripeCount )
     {
         this.tm = tm;
+        this.resourceMaps = new Map[LockManager.checkStripeCount( stripeCount )];
+        for ( int i = 0; i < resourceMaps.length; i++ )
+        {
+            resourceMaps[i] = new HashMap<Object,List<Transaction>>();
+        }
     }
 
-    long getDeadlockCount()
+    private Map<Object,List<Transaction>> resourceMapFor( Object resource )
     {
-        return deadlockCount.longValue();
+        return resourceMaps[LockManager.stripe( resource, resourceMaps.length )];
     }
 
-    synchronized void lockAcquired( Object resource, Transaction tx )
+    /**
+     * @return a copy of the transactions holding locks on
+     *         <CODE>resource</CODE>, or <CODE>null</CODE> if there are none.
+     */
+    private List<Transaction> lockingTransactions( Object resource )
     {
-        List<Transaction> lockingTxList = resourceMap.get( resource );
-        if ( lockingTxList != null )
-        {
-            assert !lockingTxList.contains( tx );
-            lockingTxList.add( tx );
-        }
-        else
+        Map<Object,List<Transaction>> resourceMap = resourceMapFor( resource );
+        synchronized ( resourceMap )
         {
-            lockingTxList = new LinkedList<Transaction>();
-            lockingTxList.add( tx );
-            resourceMap.put( resource, lockingTxList );
+            List<Transaction> lockingTxList = resourceMap.get( resource );
+            return lockingTxList != null ? new ArrayList<Transaction>( lockingTxList ) : null;
         }
     }
 
-    synchronized void lockReleased( Object resource, Transaction tx )
+    long getDeadlockCount()
     {
-        List<Transaction> lockingTxList = resourceMap.get( resource );
-        if ( lockingTxList == null )
-        {
-            throw new LockException( resource + " not found in resource map" );
-        }
+        return deadlockCount.longValue();
+    }
 
-        if ( !lockingTxList.remove( tx ) )
+    void lockAcquired( Object resource, Transaction tx )
+    {
+        Map<Object,List<Transaction>> resourceMap = resourceMapFor( resource );
+        synchronized ( resourceMap )
         {
-            throw new LockException( tx + "not found in locking tx list" );
+            List<Transaction> lockingTxList = resourceMap.get( resource );
+            if ( lockingTxList != null )
+            {
+                assert !lockingTxList.contains( tx );
+                lockingTxList.add( tx );
+            }
+            else
+            {
+                lockingTxList = new LinkedList<Transaction>();
+                lockingTxList.add( tx );
+                resourceMap.put( resource, lockingTxList );
+            }
         }
-        if ( lockingTxList.size() == 0 )
+    }
+
+    void lockReleased( Object resource, Transaction tx )
+    {
+        Map<Object,List<Transaction>> resourceMap = resourceMapFor( resource );
+        synchronized ( resourceMap )
         {
-            resourceMap.remove( resource );
+            List<Transaction> lockingTxList = resourceMap.get( resource );
+            if ( lockingTxList == null )
+            {
+                throw new LockException( resource + " not found in resource map" );
+            }
+
+            if ( !lockingTxList.remove( tx ) )
+            {
+                throw new LockException( tx + "not found in locking tx list" );
+            }
+            if ( lockingTxList.size() == 0 )
+            {
+                resourceMap.remove( resource );
+            }
         }
     }
 
@@ -139,7 +185,7 @@ class RagManager
     synchronized void checkWaitOn( Object resource, Transaction tx )
         throws DeadlockDetectedException
     {
-        List<Transaction> lockingTxList = resourceMap.get( resource );
+        List<Transaction> lockingTxList = lockingTransactions( resource );
         if ( lockingTxList == null )
         {
             throw new LockException( "Illegal resource[" + resource
@@ -233,7 +279,7 @@ class RagManager
             // this is ok since current tx or any other tx will wake
             // in the synchronized block and will be forced to do the deadlock
             // check once more if lock cannot be acquired
-            List<Transaction> lockingTxList = resourceMap.get( resource );
+            List<Transaction> lockingTxList = lockingTransactions( resource );
             if ( lockingTxList != null )
             {
                 Iterator<Transaction> itr = lockingTxList.iterator();
@@ -272,6 +318,17 @@ class RagManager
             System.out.println( "" + tx + "->" + waitingTxMap.get( tx ) );
         }
         System.out.print( "Resource lock list: " );
+        Map<Object,List<Transaction>> resourceMap = new HashMap<Object,List<Transaction>>();
+        for ( Map<Object,List<Transaction>> stripe : resourceMaps )
+        {
+            synchronized ( stripe )
+            {
+                for ( Map.Entry<Object,List<Transaction>> entry : stripe.entrySet() )
+                {
+                    resourceMap.put( entry.getKey(), new ArrayList<Transaction>( entry.getValue() ) );
+                }
+            }
+        }
         Iterator<?> resources = resourceMap.keySet().iterator();
         if ( !resources.hasNext() )
         {
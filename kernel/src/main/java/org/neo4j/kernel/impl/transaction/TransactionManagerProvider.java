@@ -18,6 +18,8 @@
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 package org.neo4j.kernel.impl.transaction;
+import java.util.Map;
+
 import org.neo4j.helpers.Service;
 import org.neo4j.kernel.impl.core.KernelPanicEventGenerator;
 import org.neo4j.kernel.impl.nioneo.store.FileSystemAbstraction;
@@ -43,4 +45,16 @@ public abstract class TransactionManagerProvider extends Service
 
     protected abstract AbstractTransactionManager loadTransactionManager( String txLogDir,
             KernelPanicEventGenerator kpe, TxHook rollbackHook, StringLogger msgLog, FileSystemAbstraction fileSystem );
+
+    /**
+     * Like {@link #loadTransactionManager(String, KernelPanicEventGenerator, TxHook, StringLogger, FileSystemAbstraction)}
+     * with access to the configuration of the database. Ignores the
+     * configuration unless overridden.
+     */
+    protected AbstractTransactionManager loadTransactionManager( String txLogDir,
+            KernelPanicEventGenerator kpe, TxHook rollbackHook, StringLogger msgLog,
+            FileSystemAbstraction fileSystem, Map<?,?> config )
+    {
+        return loadTransactionManager( txLogDir, kpe, rollbackHook, msgLog, fileSystem );
+    }
 }
@@ -37,11 +37,11 @@ import org.neo4j.helpers.UTF8;
 import org.neo4j.kernel.impl.nioneo.store.FileSystemAbstraction;
 import org.neo4j.kernel.impl.transaction.xaframework.DirectMappedLogBuffer;
 import org.neo4j.kernel.impl.transaction.xaframework.ForceMode;
+import org.neo4j.kernel.impl.transaction.xaframework.GroupCommit;
 import org.neo4j.kernel.impl.transaction.xaframework.LogBuffer;
 
 // TODO: fixed sized logs (pre-initialize them)
 // keep dangling records in memory for log switch
-// batch disk forces
 /**
  * This class is made public for testing purposes only, do not use.
  * <p>
@@ -52,7 +52,7 @@ import org.neo4j.kernel.impl.transaction.xaframework.LogBuffer;
 public class TxLog
 {
     private String name = null;
-    private LogBuffer logBuffer;
+    private volatile LogBuffer logBuffer;
     private int recordCount = 0;
 
     public static final byte TX_START = 1;
@@ -60,6 +60,7 @@ public class TxLog
     public static final byte MARK_COMMIT = 3;
     public static final byte TX_DONE = 4;
     private final FileSystemAbstraction fileSystem;
+    private final GroupCommit groupCommit;
 
     /**
      * Initializes a transaction log using <CODE>filename</CODE>. If the file
@@ -72,12 +73,37 @@ public class TxLog
      *             If unable to open file
      */
     public TxLog( String fileName, FileSystemAbstraction fileSystem ) throws IOException
+    {
+        this( fileName, fileSystem, null );
+    }
+
+    /**
+     * Initializes a transaction log using <CODE>filename</CODE>, forcing
+     * commit records in batches if <CODE>group_commit</CODE> is enabled in
+     * <CODE>config</CODE>.
+     *
+     * @param fileName
+     *            Filename of file to use
+     * @param config
+     *            The configuration, may be <CODE>null</CODE>
+     * @throws IOException
+     *             If unable to open file
+     */
+    public TxLog( String fileName, FileSystemAbstraction fileSystem, Map<?,?> config )
+            throws IOException
     {
         if ( fileName == null )
         {
             throw new IllegalArgumentException( "Null filename" );
         }
         this.fileSystem = fileSystem;
+        this.groupCommit = GroupCommit.create( config, new GroupCommit.Force()
+        {
+            public void force() throws IOException
+            {
+                logBuffer.getFileChannel().force( false );
+            }
+        } );
         FileChannel fileChannel = fileSystem.open( fileName, "rw" );
         fileChannel.position( fileChannel.size() );
         logBuffer = new DirectMappedLogBuffer( fileChannel );
@@ -106,8 +132,26 @@ public class TxLog
      */
     public void close() throws IOException
     {
-        logBuffer.force();
-        logBuffer.getFileChannel().close();
+        lockGroupCommit();
+        try
+        {
+            logBuffer.force();
+            markAllForced();
+            logBuffer.getFileChannel().close();
+        }
+        finally
+        {
+            unlockGroupCommit();
+        }
+    }
+
+    /**
+     * @return the group commit forcing this log, or <CODE>null</CODE> if
+     *         group commit isn't enabled.
+     */
+    public GroupCommit getGroupCommit()
+    {
+        return groupCommit;
     }
 
     /**
@@ -177,7 +221,8 @@ public class TxLog
 
     /**
      * Writes a <CODE>MARK_COMMIT</CODE> record to the file and forces the
-     * file to disk.
+     * file to disk. In group commit mode the record is forced together with
+     * those of other transactions committing at the same time.
      * 
      * @param globalId
      *            The global id of the transaction
@@ -186,13 +231,24 @@ public class TxLog
      */
     // mark_committing(byte)|gid_length(byte)|globalId
     // forces
-    public synchronized void markAsCommitting( byte globalId[], ForceMode forceMode )
+    public void markAsCommitting( byte globalId[], ForceMode forceMode )
         throws IOException
+    {
+        long ticket = writeMarkAsCommitting( globalId, forceMode, groupCommit );
+        if ( ticket != GroupCommit.NO_TICKET )
+        {
+            groupCommit.awaitForced( ticket );
+        }
+    }
+
+    private synchronized long writeMarkAsCommitting( byte globalId[], ForceMode forceMode,
+            GroupCommit groupCommit ) throws IOException
     {
         assertNotNull( globalId, "global id" );
         logBuffer.put( MARK_COMMIT ).put( (byte) globalId.length ).put( globalId );
-        forceMode.force( logBuffer );
+        long ticket = GroupCommit.force( groupCommit, forceMode, logBuffer );
         recordCount++;
+        return ticket;
     }
 
     /**
@@ -292,7 +348,7 @@ public class TxLog
         }
         else if ( record.getType() == MARK_COMMIT )
         {
-            markAsCommitting( record.getGlobalId(), forceMode );
+            writeMarkAsCommitting( record.getGlobalId(), forceMode, null );
         }
         else
         {
@@ -457,8 +513,22 @@ public class TxLog
         {
             throw new IllegalArgumentException( "Null filename" );
         }
+        lockGroupCommit();
+        try
+        {
+            switchToLogFileLocked( newFile );
+        }
+        finally
+        {
+            unlockGroupCommit();
+        }
+    }
+
+    private void switchToLogFileLocked( String newFile ) throws IOException
+    {
         // copy all dangling records from current log to new log
         force();
+        markAllForced();
         Iterator<List<Record>> itr = getDanglingRecords();
         close();
         List<Record> records = new ArrayList<Record>();
@@ -486,4 +556,28 @@ public class TxLog
         }
         force();
     }
-}
\ No newline at end of file
+
+    private void lockGroupCommit()
+    {
+        if ( groupCommit != null )
+        {
+            groupCommit.lock();
+        }
+    }
+
+    private void unlockGroupCommit()
+    {
+        if ( groupCommit != null )
+        {
+            groupCommit.unlock();
+        }
+    }
+
+    private void markAllForced()
+    {
+        if ( groupCommit != null )
+        {
+            groupCommit.markAllForced();
+        }
+    }
+}
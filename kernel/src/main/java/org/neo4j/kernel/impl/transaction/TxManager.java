@@ -96,11 +96,19 @@ public class TxManager extends AbstractTransactionManager
 
     final TxHook finishHook;
     private final FileSystemAbstraction fileSystem;
+    private final Map<?,?> config;
 
     TxManager( String txLogDir, KernelPanicEventGenerator kpe, TxHook finishHook, StringLogger msgLog, FileSystemAbstraction fileSystem )
+    {
+        this( txLogDir, kpe, finishHook, msgLog, fileSystem, null );
+    }
+
+    TxManager( String txLogDir, KernelPanicEventGenerator kpe, TxHook finishHook, StringLogger msgLog,
+            FileSystemAbstraction fileSystem, Map<?,?> config )
     {
         this.txLogDir = txLogDir;
         this.fileSystem = fileSystem;
+        this.config = config;
         this.msgLog = msgLog;
         this.kpe = kpe;
         this.finishHook = finishHook;
@@ -166,7 +174,7 @@ public class TxManager extends AbstractTransactionManager
                                     "Unable to start TM, " + "active tx log file[" +
                                             currentTxLog + "] not found."));
                 }
-                txLog = new TxLog( currentTxLog, fileSystem );
+                txLog = new TxLog( currentTxLog, fileSystem, config );
                 msgLog.logMessage( "TM opening log: " + currentTxLog, true );
             }
             else
@@ -186,7 +194,7 @@ public class TxManager extends AbstractTransactionManager
                     .getBytes( "UTF-8" ) );
                 FileChannel fc = fileSystem.open( logSwitcherFileName, "rw" );
                 fc.write( buf );
-                txLog = new TxLog( txLogDir + separator + txLog1FileName, fileSystem );
+                txLog = new TxLog( txLogDir + separator + txLog1FileName, fileSystem, config );
                 msgLog.logMessage( "TM new log: " + txLog1FileName, true );
                 fc.force( true );
                 fc.close();
@@ -55,6 +55,12 @@ public class TxModule
 
     public TxModule( String txLogDir, KernelPanicEventGenerator kpe, TxHook txHook, StringLogger msgLog, FileSystemAbstraction fileSystem,
             String serviceName )
+    {
+        this( txLogDir, kpe, txHook, msgLog, fileSystem, serviceName, null );
+    }
+
+    public TxModule( String txLogDir, KernelPanicEventGenerator kpe, TxHook txHook, StringLogger msgLog, FileSystemAbstraction fileSystem,
+            String serviceName, Map<?,?> config )
     {
         this.txLogDir = txLogDir;
         this.kpe = kpe;
@@ -72,7 +78,7 @@ public class TxModule
                                                  + serviceName );
             }
         }
-        txManager = provider.loadTransactionManager( txLogDir, kpe, txHook, msgLog, fileSystem );
+        txManager = provider.loadTransactionManager( txLogDir, kpe, txHook, msgLog, fileSystem, config );
         this.xaDsManager = new XaDataSourceManager();
     }
 
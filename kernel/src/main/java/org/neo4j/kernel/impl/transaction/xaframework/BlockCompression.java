@@ -0,0 +1,212 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction.xaframework;
+
+import java.io.IOException;
+
+/**
+ * A fast LZ77 style compression of byte blocks, in the LZF format. Used for
+ * the command blocks of the logical log, see
+ * {@link LogIoUtils#writeCommandBlock(LogBuffer, int, int, byte[])}.
+ *
+ * A compressed block is a sequence of literal runs and back references, each
+ * starting with a control byte:
+ * <pre>
+ * 000LLLLL                      a run of L+1 literal bytes follows
+ * LLLooooo [LLLLLLLL] oooooooo  copy L+2 bytes from 'o'+1 bytes back
+ * </pre>
+ * where the extra length byte is present when the three length bits are all
+ * set.
+ */
+final class BlockCompression
+{
+    private static final int MAX_LITERAL = 1 << 5;
+    private static final int MAX_OFFSET = 1 << 13;
+    private static final int MAX_REFERENCE = ( 1 << 8 ) + ( 1 << 3 );
+    private static final int MAX_HASH_BITS = 14;
+
+    private BlockCompression()
+    {
+    }
+
+    /**
+     * @return the size of an output array large enough for compressing
+     * {@code length} bytes, even when they don't compress at all.
+     */
+    static int maxCompressedLength( int length )
+    {
+        return length + length / MAX_LITERAL + 1;
+    }
+
+    /**
+     * Compresses the first {@code length} bytes of {@code in} into
+     * {@code out}, which must be at least {@link #maxCompressedLength(int)}
+     * long.
+     *
+     * @return the number of compressed bytes written to {@code out}.
+     */
+    static int compress( byte[] in, int length, byte[] out )
+    {
+        int hashBits = Math.min( MAX_HASH_BITS, Math.max( 8, 32 - Integer.numberOfLeadingZeros( length ) ) );
+        int[] table = new int[1 << hashBits];
+        int inPos = 0;
+        // The control byte of the current literal run is written when the
+        // run ends, until then its slot is kept free in front of the run
+        int outPos = 1;
+        int literals = 0;
+        while ( inPos < length - 2 )
+        {
+            int hash = hash( in, inPos, hashBits );
+            // table entries are position + 1 so that 0 means no entry
+            int ref = table[hash] - 1;
+            table[hash] = inPos + 1;
+            int offset = inPos - ref - 1;
+            if ( ref >= 0 && offset < MAX_OFFSET && in[ref] == in[inPos]
+                 && in[ref + 1] == in[inPos + 1] && in[ref + 2] == in[inPos + 2] )
+            {
+                outPos = endLiteralRun( out, outPos, literals );
+                int maxLength = Math.min( MAX_REFERENCE, length - inPos );
+                int matchLength = 3;
+                while ( matchLength < maxLength && in[ref + matchLength] == in[inPos + matchLength] )
+                {
+                    matchLength++;
+                }
+                int encodedLength = matchLength - 2;
+                if ( encodedLength < 7 )
+                {
+                    out[outPos++] = (byte) ( ( offset >> 8 ) + ( encodedLength << 5 ) );
+                }
+                else
+                {
+                    out[outPos++] = (byte) ( ( offset >> 8 ) + ( 7 << 5 ) );
+                    out[outPos++] = (byte) ( encodedLength - 7 );
+                }
+                out[outPos++] = (byte) offset;
+                for ( int i = inPos + 1; i < inPos + matchLength && i < length - 2; i++ )
+                {
+                    table[hash( in, i, hashBits )] = i + 1;
+                }
+                inPos += matchLength;
+                outPos++;
+                literals = 0;
+            }
+            else
+            {
+                out[outPos++] = in[inPos++];
+                if ( ++literals == MAX_LITERAL )
+                {
+                    outPos = endLiteralRun( out, outPos, literals ) + 1;
+                    literals = 0;
+                }
+            }
+        }
+        while ( inPos < length )
+        {
+            out[outPos++] = in[inPos++];
+            if ( ++literals == MAX_LITERAL )
+            {
+                outPos = endLiteralRun( out, outPos, literals ) + 1;
+                literals = 0;
+            }
+        }
+        return endLiteralRun( out, outPos, literals );
+    }
+
+    private static int endLiteralRun( byte[] out, int outPos, int literals )
+    {
+        if ( literals == 0 )
+        {
+            // Give back the slot kept for the control byte
+            return outPos - 1;
+        }
+        out[outPos - literals - 1] = (byte) ( literals - 1 );
+        return outPos;
+    }
+
+    private static int hash( byte[] in, int pos, int hashBits )
+    {
+        int value = ( ( in[pos] & 0xFF ) << 16 ) | ( ( in[pos + 1] & 0xFF ) << 8 ) | ( in[pos + 2] & 0xFF );
+        return ( value * 0x9E3779B1 ) >>> ( 32 - hashBits );
+    }
+
+    /**
+     * Decompresses the first {@code length} bytes of {@code in}, which must
+     * decompress into exactly {@code out.length} bytes.
+     *
+     * @throws IOException if the compressed bytes are corrupt.
+     */
+    static void decompress( byte[] in, int length, byte[] out ) throws IOException
+    {
+        int inPos = 0;
+        int outPos = 0;
+        while ( inPos < length )
+        {
+            int control = in[inPos++] & 0xFF;
+            if ( control < MAX_LITERAL )
+            {
+                int run = control + 1;
+                if ( inPos + run > length || outPos + run > out.length )
+                {
+                    throw corrupt( inPos );
+                }
+                System.arraycopy( in, inPos, out, outPos, run );
+                inPos += run;
+                outPos += run;
+            }
+            else
+            {
+                int referenceLength = control >> 5;
+                if ( referenceLength == 7 )
+                {
+                    if ( inPos >= length )
+                    {
+                        throw corrupt( inPos );
+                    }
+                    referenceLength += in[inPos++] & 0xFF;
+                }
+                referenceLength += 2;
+                if ( inPos >= length )
+                {
+                    throw corrupt( inPos );
+                }
+                int ref = outPos - ( ( control & 0x1F ) << 8 ) - ( in[inPos++] & 0xFF ) - 1;
+                if ( ref < 0 || outPos + referenceLength > out.length )
+                {
+                    throw corrupt( inPos );
+                }
+                // Byte by byte since the reference may overlap what it writes
+                for ( int i = 0; i < referenceLength; i++ )
+                {
+                    out[outPos++] = out[ref++];
+                }
+            }
+        }
+        if ( outPos != out.length )
+        {
+            throw new IOException( "Compressed block decompressed into " + outPos +
+                    " bytes, expected " + out.length );
+        }
+    }
+
+    private static IOException corrupt( int position )
+    {
+        return new IOException( "Corrupt compressed block at position " + position );
+    }
+}
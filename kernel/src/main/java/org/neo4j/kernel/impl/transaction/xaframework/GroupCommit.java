@@ -0,0 +1,286 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction.xaframework;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.neo4j.kernel.Config;
+
+/**
+ * Lets concurrently committing transactions share one force of a log. A
+ * committer writes its commit entry out to the log file channel (without
+ * forcing it) while holding the log monitor and gets a ticket from
+ * {@link #append()}. It then releases the monitor and calls
+ * {@link #awaitForced(long)}, where the first waiting committer becomes the
+ * leader and forces the channel for everyone that has appended so far, while
+ * the rest wait for that force to complete.
+ * <p>
+ * The leader can wait up to <CODE>group_commit_max_wait</CODE> milliseconds
+ * before forcing to let more committers join the batch. Whoever closes or
+ * replaces the forced channel must do so between {@link #lock()} and
+ * {@link #unlock()} and call {@link #markAllForced()} once it has forced
+ * everything itself.
+ */
+public class GroupCommit
+{
+    public static final long NO_TICKET = -1;
+
+    /**
+     * Forces the file channel that the committers have written to.
+     */
+    public interface Force
+    {
+        void force() throws IOException;
+    }
+
+    private final long maxWaitMillis;
+    private final Force force;
+    private final ReentrantLock forceLock = new ReentrantLock();
+
+    private long appended;
+    private long forced;
+    private boolean forcing;
+
+    private long forceCount;
+    private long forcedCommitCount;
+    private long maxBatchSize;
+    private long forceTimeNanos;
+
+    public GroupCommit( long maxWaitMillis, Force force )
+    {
+        if ( maxWaitMillis < 0 )
+        {
+            throw new IllegalArgumentException( "Negative max wait " + maxWaitMillis );
+        }
+        this.maxWaitMillis = maxWaitMillis;
+        this.force = force;
+    }
+
+    /**
+     * @return a group commit forcing with <CODE>force</CODE> if
+     *         <CODE>group_commit</CODE> is enabled in <CODE>config</CODE>,
+     *         otherwise <CODE>null</CODE>.
+     */
+    public static GroupCommit create( Map<?,?> config, Force force )
+    {
+        if ( config == null || !Boolean.parseBoolean( (String) config.get( Config.GROUP_COMMIT ) ) )
+        {
+            return null;
+        }
+        String maxWait = (String) config.get( Config.GROUP_COMMIT_MAX_WAIT );
+        return new GroupCommit( maxWait != null ? Long.parseLong( maxWait.trim() ) : 0, force );
+    }
+
+    /**
+     * Makes <CODE>buffer</CODE> durable according to <CODE>forceMode</CODE>.
+     * If <CODE>groupCommit</CODE> is given and the buffer should be forced the
+     * content is only written out and the returned ticket must be passed to
+     * {@link #awaitForced(long)} once the log monitor has been released.
+     *
+     * @return the ticket to wait for, or {@link #NO_TICKET} if the buffer was
+     *         handled right away.
+     */
+    public static long force( GroupCommit groupCommit, ForceMode forceMode, LogBuffer buffer )
+            throws IOException
+    {
+        if ( groupCommit == null || forceMode != ForceMode.forced )
+        {
+            forceMode.force( buffer );
+            return NO_TICKET;
+        }
+        buffer.writeOut();
+        return groupCommit.append();
+    }
+
+    /**
+     * Registers content that has been written out to the channel but not yet
+     * forced. Must be called while holding the monitor that orders writes to
+     * the channel.
+     *
+     * @return the ticket to pass to {@link #awaitForced(long)}.
+     */
+    public synchronized long append()
+    {
+        return ++appended;
+    }
+
+    /**
+     * Returns once everything appended up to and including <CODE>ticket</CODE>
+     * has been forced, forcing it if no other thread is already doing so.
+     */
+    public void awaitForced( long ticket ) throws IOException
+    {
+        if ( ticket == NO_TICKET )
+        {
+            return;
+        }
+        long target;
+        synchronized ( this )
+        {
+            while ( forced < ticket && forcing )
+            {
+                waitUninterruptibly( 0 );
+            }
+            if ( forced >= ticket )
+            {
+                return;
+            }
+            forcing = true;
+            if ( maxWaitMillis > 0 )
+            {
+                long deadline = System.currentTimeMillis() + maxWaitMillis;
+                for ( long left = maxWaitMillis; left > 0; left = deadline - System.currentTimeMillis() )
+                {
+                    waitUninterruptibly( left );
+                }
+            }
+            target = appended;
+        }
+        lead( target );
+    }
+
+    private void lead( long target ) throws IOException
+    {
+        forceLock.lock();
+        try
+        {
+            long batchSize;
+            synchronized ( this )
+            {
+                batchSize = target - forced;
+            }
+            if ( batchSize > 0 )
+            {
+                long start = System.nanoTime();
+                force.force();
+                forced( target, batchSize, System.nanoTime() - start );
+            }
+        }
+        finally
+        {
+            forceLock.unlock();
+            synchronized ( this )
+            {
+                forcing = false;
+                notifyAll();
+            }
+        }
+    }
+
+    private synchronized void forced( long target, long batchSize, long timeNanos )
+    {
+        forced = Math.max( forced, target );
+        forceCount++;
+        forcedCommitCount += batchSize;
+        maxBatchSize = Math.max( maxBatchSize, batchSize );
+        forceTimeNanos += timeNanos;
+    }
+
+    private void waitUninterruptibly( long millis )
+    {
+        try
+        {
+            wait( millis );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * Keeps batch forces from running until {@link #unlock()}, for closing or
+     * replacing the channel that is being forced.
+     */
+    public void lock()
+    {
+        forceLock.lock();
+    }
+
+    public void unlock()
+    {
+        forceLock.unlock();
+    }
+
+    /**
+     * Tells the waiting committers that everything appended so far has been
+     * forced by the caller, who holds both {@link #lock()} and the monitor
+     * ordering the appends.
+     */
+    public synchronized void markAllForced()
+    {
+        forced = appended;
+        notifyAll();
+    }
+
+    /**
+     * @return the number of forces done on behalf of committers.
+     */
+    public synchronized long getForceCount()
+    {
+        return forceCount;
+    }
+
+    /**
+     * @return the number of commits that have been made durable by batch
+     *         forces.
+     */
+    public synchronized long getForcedCommitCount()
+    {
+        return forcedCommitCount;
+    }
+
+    public synchronized long getMaxBatchSize()
+    {
+        return maxBatchSize;
+    }
+
+    public synchronized double getAverageBatchSize()
+    {
+        return forceCount == 0 ? 0 : (double) forcedCommitCount / forceCount;
+    }
+
+    public synchronized long getForceTimeMillis()
+    {
+        return forceTimeNanos / 1000000;
+    }
+
+    /**
+     * @return the average time in milliseconds a batch force has taken.
+     */
+    public synchronized double getAverageForceLatencyMillis()
+    {
+        return forceCount == 0 ? 0 : forceTimeNanos / 1000000d / forceCount;
+    }
+
+    public long getMaxWaitMillis()
+    {
+        return maxWaitMillis;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        return "GroupCommit[forces=" + forceCount + ", commits=" + forcedCommitCount +
+                ", maxBatch=" + maxBatchSize + ", forceTime=" + getForceTimeMillis() + "ms]";
+    }
+}
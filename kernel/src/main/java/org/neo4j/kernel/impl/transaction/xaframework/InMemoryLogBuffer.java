@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
 
 public class InMemoryLogBuffer implements LogBuffer, ReadableByteChannel
 {
@@ -40,6 +41,14 @@ public class InMemoryLogBuffer implements LogBuffer, ReadableByteChannel
         writeIndex = readIndex = 0;
     }
     
+    /**
+     * @return the bytes written to this buffer and not yet read.
+     */
+    byte[] toByteArray()
+    {
+        return Arrays.copyOfRange( bytes, readIndex, writeIndex );
+    }
+
     private void ensureArrayCapacityPlus( int plus )
     {
         while ( writeIndex+plus > bytes.length ) 
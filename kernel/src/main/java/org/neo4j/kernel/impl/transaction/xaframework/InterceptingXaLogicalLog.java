@@ -56,10 +56,13 @@ public class InterceptingXaLogicalLog extends XaLogicalLog
                 {
                     if ( entry instanceof LogEntry.Command )
                     {
-                        LogEntry.Command commandEntry = (LogEntry.Command) entry;
-                        if ( commandEntry.getXaCommand() instanceof Command )
+                        accept( (LogEntry.Command) entry, first );
+                    }
+                    else if ( entry instanceof LogEntry.CommandBlock )
+                    {
+                        for ( LogEntry.Command commandEntry : ((LogEntry.CommandBlock) entry).getCommands() )
                         {
-                            ( (Command) commandEntry.getXaCommand() ).accept( first );
+                            accept( commandEntry, first );
                         }
                     }
                     else if ( entry instanceof LogEntry.Start )
@@ -76,4 +79,12 @@ public class InterceptingXaLogicalLog extends XaLogicalLog
         };
         return toReturn;
     }
+
+    private static void accept( LogEntry.Command commandEntry, TransactionInterceptor interceptor )
+    {
+        if ( commandEntry.getXaCommand() instanceof Command )
+        {
+            ( (Command) commandEntry.getXaCommand() ).accept( interceptor );
+        }
+    }
 }
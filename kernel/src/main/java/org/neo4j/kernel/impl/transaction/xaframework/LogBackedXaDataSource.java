@@ -134,6 +134,12 @@ public abstract class LogBackedXaDataSource extends XaDataSource
         return logicalLog.getLogExtractor( startTxId, endTxIdHint );
     }
 
+    @Override
+    public TransactionStream getTransactionStream( long startTxId ) throws IOException
+    {
+        return logicalLog.getTransactionStream( startTxId );
+    }
+
     protected void setKeepLogicalLogsIfSpecified( String configString, String dataSourceName )
     {
         Boolean keepLogs = shouldKeepLog( configString, dataSourceName );
@@ -19,6 +19,8 @@
  */
 package org.neo4j.kernel.impl.transaction.xaframework;
 
+import java.util.List;
+
 import javax.transaction.xa.Xid;
 
 import org.neo4j.helpers.Format;
@@ -27,8 +29,9 @@ public abstract class LogEntry
 {
     /* version 1 as of 2011-02-22
      * version 2 as of 2011-10-17
+     * version 3 as of 2026-10-17, adds COMMAND_BLOCK
      */
-    static final byte CURRENT_VERSION = (byte) 2;
+    static final byte CURRENT_VERSION = (byte) 3;
     // empty record due to memory mapped file
     public static final byte EMPTY = (byte) 0;
     public static final byte TX_START = (byte) 1;
@@ -37,6 +40,7 @@ public abstract class LogEntry
     public static final byte DONE = (byte) 4;
     public static final byte TX_1P_COMMIT = (byte) 5;
     public static final byte TX_2P_COMMIT = (byte) 6;
+    public static final byte COMMAND_BLOCK = (byte) 7;
 
     private int identifier;
 
@@ -214,6 +218,48 @@ public abstract class LogEntry
         }
     }
 
+    /**
+     * The commands of a transaction written as one compressed block, see
+     * {@link org.neo4j.kernel.Config#LOGICAL_LOG_COMPRESSION}.
+     */
+    public static class CommandBlock extends LogEntry
+    {
+        private final List<Command> commands;
+
+        CommandBlock( int identifier, List<Command> commands )
+        {
+            super( identifier );
+            this.commands = commands;
+        }
+
+        public List<Command> getCommands()
+        {
+            return commands;
+        }
+
+        @Override
+        public void setIdentifier( int newXidIdentifier )
+        {
+            super.setIdentifier( newXidIdentifier );
+            for ( Command command : commands )
+            {
+                command.setIdentifier( newXidIdentifier );
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            StringBuilder result = new StringBuilder( "CommandBlock[" + getIdentifier() + ", " +
+                    commands.size() + " commands]" );
+            for ( Command command : commands )
+            {
+                result.append( "\n    " ).append( command );
+            }
+            return result.toString();
+        }
+    }
+
     public void setIdentifier( int newXidIdentifier )
     {
         identifier = newXidIdentifier;
@@ -214,6 +214,7 @@ public class LogExtractor
     private long collectNextFromCurrentSource( LogBuffer target ) throws IOException
     {
         LogEntry entry = null;
+        long entryPosition = positionOfSource();
         while ( collector.hasInFutureQueue() || // if something in queue then don't read next entry
                 (entry = LogIoUtils.readEntry( localBuffer, source, commandFactory )) != null )
         {
@@ -225,10 +226,21 @@ public class LogExtractor
                 lastCommitEntry = (LogEntry.Commit)foundEntry;
                 return lastCommitEntry.getTxId();
             }
+            entryPosition = positionOfSource();
+        }
+        if ( entryPosition != -1 )
+        {   // The last entry may have been only partially written (to the active log),
+            // go back to where it starts so that it can be read in full later on.
+            ((FileChannel) source).position( entryPosition );
         }
         return -1;
     }
 
+    private long positionOfSource() throws IOException
+    {
+        return source instanceof FileChannel ? ((FileChannel) source).position() : -1;
+    }
+
     public void close()
     {
         ensureSourceIsClosed();
@@ -444,7 +456,8 @@ public class LogExtractor
                 lastStartEntry = (LogEntry.Start)entries.get( 0 );
                 return entry;
             }
-            else if ( entry instanceof LogEntry.Command || entry instanceof LogEntry.Prepare )
+            else if ( entry instanceof LogEntry.Command || entry instanceof LogEntry.CommandBlock
+                      || entry instanceof LogEntry.Prepare )
             {
                 List<LogEntry> list = transactions.get( entry.getIdentifier() );
 
@@ -19,11 +19,15 @@
  */
 package org.neo4j.kernel.impl.transaction.xaframework;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.transaction.xa.Xid;
 
@@ -112,6 +116,8 @@ public class LogIoUtils
                 return readTxTwoPhaseCommitEntry( buffer, channel );
             case LogEntry.COMMAND:
                 return readTxCommandEntry( buffer, channel, cf );
+            case LogEntry.COMMAND_BLOCK:
+                return readCommandBlockEntry( buffer, channel, cf );
             case LogEntry.DONE:
                 return readTxDoneEntry( buffer, channel );
             case LogEntry.EMPTY:
@@ -180,6 +186,41 @@ public class LogIoUtils
         return new LogEntry.Command( identifier, command );
     }
 
+    private static LogEntry.CommandBlock readCommandBlockEntry( ByteBuffer buf,
+            ReadableByteChannel channel, XaCommandFactory cf ) throws IOException, ReadPastEndException
+    {
+        int identifier = readNextInt( buf, channel );
+        int commandCount = readNextInt( buf, channel );
+        int rawLength = readNextInt( buf, channel );
+        int storedLength = readNextInt( buf, channel );
+        if ( commandCount < 0 || rawLength < 0 || storedLength < 0 || storedLength > rawLength )
+        {
+            throw new IOException( "Invalid command block for identifier[" + identifier + "], " +
+                    commandCount + " commands, " + rawLength + " bytes stored in " + storedLength );
+        }
+        byte[] stored = new byte[storedLength];
+        readIntoBufferAndFlip( ByteBuffer.wrap( stored ), channel, storedLength );
+        byte[] raw = stored;
+        if ( storedLength < rawLength )
+        {
+            raw = new byte[rawLength];
+            BlockCompression.decompress( stored, storedLength, raw );
+        }
+        ReadableByteChannel commandChannel = Channels.newChannel( new ByteArrayInputStream( raw ) );
+        List<LogEntry.Command> commands = new ArrayList<LogEntry.Command>( commandCount );
+        for ( int i = 0; i < commandCount; i++ )
+        {
+            XaCommand command = cf.readCommand( commandChannel, buf );
+            if ( command == null )
+            {
+                throw new IOException( "Unable to read command " + i + " of " + commandCount +
+                        " in command block for identifier[" + identifier + "]" );
+            }
+            commands.add( new LogEntry.Command( identifier, command ) );
+        }
+        return new LogEntry.CommandBlock( identifier, commands );
+    }
+
     public static void writeLogEntry( LogEntry entry, LogBuffer buffer )
         throws IOException
     {
@@ -187,6 +228,16 @@ public class LogIoUtils
         {
             writeCommand( buffer, entry.getIdentifier(), ((LogEntry.Command) entry).getXaCommand() );
         }
+        else if ( entry instanceof LogEntry.CommandBlock )
+        {
+            List<LogEntry.Command> commands = ((LogEntry.CommandBlock) entry).getCommands();
+            InMemoryLogBuffer serialized = new InMemoryLogBuffer();
+            for ( LogEntry.Command command : commands )
+            {
+                command.getXaCommand().writeToFile( serialized );
+            }
+            writeCommandBlock( buffer, entry.getIdentifier(), commands.size(), serialized.toByteArray() );
+        }
         else if ( entry instanceof LogEntry.Start )
         {
             writeStart( buffer, entry.getIdentifier(), ( (LogEntry.Start) entry ).getXid(),
@@ -255,6 +306,35 @@ public class LogIoUtils
         command.writeToFile( buffer );
     }
 
+    // [COMMAND_BLOCK][identifier][command count][raw length][stored length][stored bytes]
+    /**
+     * Writes serialized commands as one block, compressed with
+     * {@link BlockCompression} unless that doesn't make it any smaller, in
+     * which case the stored length equals the raw length.
+     */
+    public static void writeCommandBlock( LogBuffer buffer, int identifier, int commandCount,
+            byte[] commands ) throws IOException
+    {
+        buffer.put( commandBlock( identifier, commandCount, commands ) );
+    }
+
+    /**
+     * @return the complete entry {@link #writeCommandBlock(LogBuffer, int, int, byte[])}
+     *         writes, so that it can be compressed before the log it goes
+     *         into is locked.
+     */
+    public static byte[] commandBlock( int identifier, int commandCount, byte[] commands )
+    {
+        byte[] compressed = new byte[BlockCompression.maxCompressedLength( commands.length )];
+        int compressedLength = BlockCompression.compress( commands, commands.length, compressed );
+        int storedLength = compressedLength < commands.length ? compressedLength : commands.length;
+        ByteBuffer block = ByteBuffer.allocate( 17 + storedLength );
+        block.put( LogEntry.COMMAND_BLOCK ).putInt( identifier ).putInt( commandCount ).putInt(
+                commands.length ).putInt( storedLength );
+        block.put( compressedLength < commands.length ? compressed : commands, 0, storedLength );
+        return block.array();
+    }
+
     private static int readNextInt( ByteBuffer buf, ReadableByteChannel channel )
             throws IOException, ReadPastEndException
     {
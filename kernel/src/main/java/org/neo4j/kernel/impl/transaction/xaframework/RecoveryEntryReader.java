@@ -0,0 +1,173 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction.xaframework;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.transaction.xa.Xid;
+
+/**
+ * Reads the entries of a logical log being recovered, commands included, in
+ * a thread of its own so that the next entries have been read by the time
+ * the recovering thread has applied the ones before them.
+ */
+class RecoveryEntryReader implements Runnable
+{
+    private static final int MAX_READ_AHEAD = 1024;
+
+    private final FileChannel channel;
+    private final XaCommandFactory cf;
+    private final ByteBuffer buffer = ByteBuffer.allocate( 9 + Xid.MAXGTRIDSIZE
+            + Xid.MAXBQUALSIZE * 10 );
+    private final BlockingQueue<ReadEntry> entries = new ArrayBlockingQueue<ReadEntry>( MAX_READ_AHEAD );
+    private volatile boolean closed;
+    private long position;
+
+    RecoveryEntryReader( FileChannel channel, XaCommandFactory cf ) throws IOException
+    {
+        this.channel = channel;
+        this.cf = cf;
+        this.position = channel.position();
+        Thread thread = new Thread( this, "Logical log recovery reader" );
+        thread.setDaemon( true );
+        thread.start();
+    }
+
+    /**
+     * @return the next entry in the log, or {@code null} if there are no more
+     *         (complete) entries in it.
+     */
+    LogEntry next() throws IOException
+    {
+        ReadEntry next;
+        try
+        {
+            next = entries.take();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( "Interrupted while reading the logical log", e );
+        }
+        if ( next.failure != null )
+        {
+            if ( next.failure instanceof IOException )
+            {
+                throw (IOException) next.failure;
+            }
+            if ( next.failure instanceof RuntimeException )
+            {
+                throw (RuntimeException) next.failure;
+            }
+            if ( next.failure instanceof Error )
+            {
+                throw (Error) next.failure;
+            }
+            throw new IOException( next.failure );
+        }
+        if ( next.entry != null )
+        {
+            position = next.endPosition;
+        }
+        return next.entry;
+    }
+
+    /**
+     * @return the position in the log right after the last entry returned by
+     *         {@link #next()}.
+     */
+    long position()
+    {
+        return position;
+    }
+
+    /**
+     * Stops reading, if the reader thread isn't done already.
+     */
+    void close()
+    {
+        closed = true;
+        entries.clear();
+    }
+
+    public void run()
+    {
+        try
+        {
+            LogEntry entry;
+            do
+            {
+                long startPosition = channel.position();
+                entry = LogIoUtils.readEntry( buffer, channel, cf );
+                if ( entry instanceof LogEntry.Start )
+                {
+                    ((LogEntry.Start) entry).setStartPosition( startPosition );
+                }
+                if ( !handOver( new ReadEntry( entry, channel.position(), null ) ) )
+                {
+                    return;
+                }
+            }
+            while ( entry != null );
+        }
+        catch ( Throwable t )
+        {
+            handOver( new ReadEntry( null, -1, t ) );
+        }
+    }
+
+    private boolean handOver( ReadEntry entry )
+    {
+        try
+        {
+            while ( !closed )
+            {
+                if ( entries.offer( entry, 100, TimeUnit.MILLISECONDS ) )
+                {
+                    return true;
+                }
+            }
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    private static class ReadEntry
+    {
+        private final LogEntry entry;
+        private final long endPosition;
+        private final Throwable failure;
+
+        ReadEntry( LogEntry entry, long endPosition, Throwable failure )
+        {
+            this.entry = entry;
+            this.endPosition = endPosition;
+            this.failure = failure;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction.xaframework;
+
+import org.neo4j.kernel.impl.util.StringLogger;
+import org.neo4j.kernel.info.DiagnosticsPhase;
+import org.neo4j.kernel.info.DiagnosticsProvider;
+
+/**
+ * Reports on the recovery of a logical log: how far it has come is written to
+ * the messages log while the log is scanned, and how it went is dumped with
+ * the other diagnostics once the database has started.
+ */
+class RecoveryProgress implements DiagnosticsProvider
+{
+    private static final int REPORT_STEPS = 10;
+
+    private final String logFileName;
+    private final long logSize;
+    private final boolean parallel;
+    private final StringLogger msgLog;
+    private final long startTime = System.currentTimeMillis();
+    private long endTime;
+    private long entries;
+    private long transactions;
+    private int reportedSteps;
+
+    RecoveryProgress( String logFileName, long logSize, boolean parallel, StringLogger msgLog )
+    {
+        this.logFileName = logFileName;
+        this.logSize = logSize;
+        this.parallel = parallel;
+        this.msgLog = msgLog;
+    }
+
+    void entryApplied( long position, long recoveredTransactions )
+    {
+        entries++;
+        int steps = logSize == 0 ? 0 : (int) (position * REPORT_STEPS / logSize);
+        if ( steps > reportedSteps )
+        {
+            reportedSteps = steps;
+            msgLog.logMessage( "Recovery of [" + logFileName + "] " + (steps * 100 / REPORT_STEPS)
+                    + "% scanned, " + entries + " log entries, " + recoveredTransactions
+                    + " transactions recovered" );
+        }
+    }
+
+    void completed( long entries, long recoveredTransactions )
+    {
+        this.endTime = System.currentTimeMillis();
+        this.entries = entries;
+        this.transactions = recoveredTransactions;
+    }
+
+    public String getDiagnosticsIdentifier()
+    {
+        return "Recovery of " + logFileName;
+    }
+
+    public void acceptDiagnosticsVisitor( Object visitor )
+    {
+        // nothing to visit
+    }
+
+    public void dump( DiagnosticsPhase phase, StringLogger log )
+    {
+        if ( phase.isInitialization() || phase.isExplicitlyRequested() )
+        {
+            log.logMessage( "Recovered [" + logFileName + "]" + (parallel ? " in parallel" : "")
+                    + " in " + (endTime - startTime) + "ms: " + entries + " log entries, "
+                    + transactions + " transactions" );
+        }
+    }
+}
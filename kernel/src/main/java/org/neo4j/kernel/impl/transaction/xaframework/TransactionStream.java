@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction.xaframework;
+
+import java.io.IOException;
+
+/**
+ * The transactions committed to a {@link XaLogicalLog}, from a given tx id
+ * and on. Unlike a {@link LogExtractor} used on its own a stream doesn't end
+ * when it has returned the last committed transaction. It stays positioned
+ * at the end of the active log and picks up the transactions committed after
+ * that from there, following the log over rotations. A follower which keeps
+ * a stream open never has to search the logs for where to continue from.
+ * <p>
+ * The logs must be kept (see {@link XaLogicalLog#setKeepLogs(boolean)}) for
+ * a stream to get past a rotation of a log it hasn't read to the end yet.
+ * <p>
+ * A transaction is only returned once it is the last committed one or
+ * older. Its commit entry has then been forced, whereas a newer one read
+ * from the end of the active log may still be waiting for a group commit.
+ * Transactions are read through a {@link LogExtractor} rather than copied
+ * from the log channel as they are, since the entries of concurrently
+ * committing transactions are interleaved in the log.
+ */
+public class TransactionStream
+{
+    private final XaLogicalLog log;
+    private final LogExtractor extractor;
+    private final InMemoryLogBuffer extracted = new InMemoryLogBuffer();
+    private long extractedTxId = -1;
+    private long lastTxId;
+    private long streamedCount;
+    private long maxLag;
+
+    TransactionStream( XaLogicalLog log, long startTxId ) throws IOException
+    {
+        this.log = log;
+        this.lastTxId = startTxId - 1;
+        this.extractor = log.getLogExtractor( startTxId, log.getLastCommittedTx() );
+    }
+
+    /**
+     * Writes the next transaction in this stream to {@code target}.
+     *
+     * @param target the {@link LogBuffer} to write the transaction to.
+     * @return the tx id of the written transaction, or -1 if all committed
+     *         transactions have been returned. Transactions committed after
+     *         that will be returned by subsequent calls.
+     * @throws IOException if the logs couldn't be read.
+     */
+    public synchronized long next( LogBuffer target ) throws IOException
+    {
+        if ( !extractCommitted() )
+        {
+            return -1;
+        }
+        target.put( extracted.toByteArray() );
+        return streamed();
+    }
+
+    /**
+     * Extracts the next transaction unless it has been extracted already.
+     *
+     * @return whether there is an extracted transaction which may be returned.
+     */
+    private boolean extractCommitted() throws IOException
+    {
+        if ( extractedTxId == -1 )
+        {
+            extracted.reset();
+            extractedTxId = extractor.extractNext( extracted );
+        }
+        return extractedTxId != -1 && extractedTxId <= log.getLastCommittedTx();
+    }
+
+    private long streamed()
+    {
+        long txId = extractedTxId;
+        extractedTxId = -1;
+        lastTxId = txId;
+        streamedCount++;
+        return txId;
+    }
+
+    /**
+     * Applies the next transactions in this stream to {@code follower}, via
+     * {@link XaDataSource#applyCommittedTransaction(long, java.nio.channels.ReadableByteChannel)}.
+     *
+     * @param follower the data source to apply the transactions to.
+     * @param maxTransactions the maximum number of transactions to apply.
+     * @return the number of applied transactions, less than
+     *         {@code maxTransactions} only if the follower has caught up.
+     * @throws IOException if the logs couldn't be read or a transaction
+     *             couldn't be applied.
+     */
+    public synchronized int pushTo( XaDataSource follower, int maxTransactions ) throws IOException
+    {
+        maxLag = Math.max( maxLag, getLag() );
+        int applied = 0;
+        while ( applied < maxTransactions && extractCommitted() )
+        {
+            follower.applyCommittedTransaction( extractedTxId, extracted );
+            streamed();
+            applied++;
+        }
+        return applied;
+    }
+
+    /**
+     * @return the tx id of the last transaction returned by this stream.
+     */
+    public synchronized long getLastTxId()
+    {
+        return lastTxId;
+    }
+
+    /**
+     * @return the number of transactions committed to the log, but not yet
+     *         returned by this stream.
+     */
+    public synchronized long getLag()
+    {
+        return Math.max( 0, log.getLastCommittedTx() - lastTxId );
+    }
+
+    /**
+     * @return the highest lag seen by {@link #pushTo(XaDataSource, int)},
+     *         i.e. how far behind the follower has been at the most.
+     */
+    public synchronized long getMaxLag()
+    {
+        return maxLag;
+    }
+
+    /**
+     * @return the number of transactions returned by this stream.
+     */
+    public synchronized long getStreamedCount()
+    {
+        return streamedCount;
+    }
+
+    public synchronized void close()
+    {
+        extractor.close();
+    }
+}
@@ -380,4 +380,9 @@ public abstract class XaDataSource
     {
         throw new UnsupportedOperationException( getClass().getName() );
     }
+
+    public TransactionStream getTransactionStream( long startTxId ) throws IOException
+    {
+        throw new UnsupportedOperationException( getClass().getName() );
+    }
 }
@@ -30,6 +30,7 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
@@ -39,6 +40,7 @@ import javax.transaction.xa.Xid;
 
 import org.neo4j.helpers.Exceptions;
 import org.neo4j.helpers.Pair;
+import org.neo4j.kernel.Config;
 import org.neo4j.kernel.impl.nioneo.store.FileSystemAbstraction;
 import org.neo4j.kernel.impl.transaction.xaframework.LogEntry.Commit;
 import org.neo4j.kernel.impl.transaction.xaframework.LogEntry.Start;
@@ -49,6 +51,7 @@ import org.neo4j.kernel.impl.util.ArrayMap;
 import org.neo4j.kernel.impl.util.BufferedFileChannel;
 import org.neo4j.kernel.impl.util.FileUtils;
 import org.neo4j.kernel.impl.util.StringLogger;
+import org.neo4j.kernel.info.DiagnosticsManager;
 
 /**
  * <CODE>XaLogicalLog</CODE> is a transaction and logical log combined. In
@@ -80,7 +83,7 @@ public class XaLogicalLog implements LogLoader
 
     private FileChannel fileChannel = null;
     private final ByteBuffer sharedBuffer;
-    private LogBuffer writeBuffer = null;
+    private volatile LogBuffer writeBuffer = null;
     private long previousLogLastCommittedTx = -1;
     private long logVersion = 0;
     private final ArrayMap<Integer,LogEntry.Start> xidIdentMap =
@@ -109,6 +112,14 @@ public class XaLogicalLog implements LogLoader
 
     private final LogPositionCache positionCache = new LogPositionCache();
     private final FileSystemAbstraction fileSystem;
+    private final GroupCommit groupCommit;
+    private final boolean parallelRecovery;
+    private final DiagnosticsManager diagnostics;
+    private final boolean compressCommands;
+    // Only touched by the thread of each transaction, not under the monitor
+    private final Map<Integer,PendingCommands> pendingCommands =
+        new ConcurrentHashMap<Integer,PendingCommands>();
+    private static final int MAX_COMMANDS_PER_BLOCK = 1024;
 
     XaLogicalLog( String fileName, XaResourceManager xaRm, XaCommandFactory cf,
             XaTransactionFactory xaTf, Map<Object, Object> config )
@@ -124,6 +135,16 @@ public class XaLogicalLog implements LogLoader
         sharedBuffer = ByteBuffer.allocateDirect( 9 + Xid.MAXGTRIDSIZE
             + Xid.MAXBQUALSIZE * 10 );
         msgLog = (StringLogger) config.get( StringLogger.class );
+        parallelRecovery = Boolean.parseBoolean( (String) config.get( Config.PARALLEL_RECOVERY ) );
+        diagnostics = (DiagnosticsManager) config.get( DiagnosticsManager.class );
+        compressCommands = Boolean.parseBoolean( (String) config.get( Config.LOGICAL_LOG_COMPRESSION ) );
+        groupCommit = GroupCommit.create( config, new GroupCommit.Force()
+        {
+            public void force() throws IOException
+            {
+                writeBuffer.getFileChannel().force( false );
+            }
+        } );
 
         // We should turn keep-logs on if there are previous logs around,
         // this so that e.g. temporary shell sessions or operations don't create
@@ -311,45 +332,61 @@ public class XaLogicalLog implements LogLoader
     }
 
     // [TX_PREPARE][identifier]
-    public synchronized void prepare( int identifier ) throws XAException
+    public void prepare( int identifier ) throws XAException
     {
-        LogEntry.Start startEntry = xidIdentMap.get( identifier );
-        assert startEntry != null;
-        try
-        {
-            LogIoUtils.writePrepare( writeBuffer, identifier, System.currentTimeMillis() );
-            /*
-             * Make content visible to all readers of the file channel, so that prepared transactions
-             * can be extracted. Not really necessary, since getLogicalLogOrMyselfCommitted() looks for
-             * force()d content (which is forced by commit{One,Two}Phase()) and getLogicalLogOrMyselfPrepared()
-             * always calls writeOut(). Leaving it here for now.
-             */
-            writeBuffer.writeOut();
-        }
-        catch ( IOException e )
+        byte[] commandBlock = takePendingCommands( identifier );
+        synchronized ( this )
         {
-            throw Exceptions.withCause( new XAException( "Logical log unable to mark prepare [" + identifier + "] " ),
-                    e );
+            assert xidIdentMap.get( identifier ) != null;
+            try
+            {
+                writeCommandBlock( identifier, commandBlock );
+                LogIoUtils.writePrepare( writeBuffer, identifier, System.currentTimeMillis() );
+                /*
+                 * Make content visible to all readers of the file channel, so that prepared transactions
+                 * can be extracted. Not really necessary, since getLogicalLogOrMyselfCommitted() looks for
+                 * force()d content (which is forced by commit{One,Two}Phase()) and getLogicalLogOrMyselfPrepared()
+                 * always calls writeOut(). Leaving it here for now.
+                 */
+                writeBuffer.writeOut();
+            }
+            catch ( IOException e )
+            {
+                throw Exceptions.withCause( new XAException( "Logical log unable to mark prepare [" + identifier + "] " ),
+                        e );
+            }
         }
     }
 
     // [TX_1P_COMMIT][identifier]
-    public synchronized void commitOnePhase( int identifier, long txId, ForceMode forceMode )
+    /**
+     * @return a ticket to pass to {@link #awaitCommitForced(long)} once the
+     *         commit has been applied, if the commit entry is left for a group
+     *         commit to force.
+     */
+    public long commitOnePhase( int identifier, long txId, ForceMode forceMode )
         throws XAException
     {
-        LogEntry.Start startEntry = xidIdentMap.get( identifier );
-        assert startEntry != null;
-        assert txId != -1;
-        try
-        {
-            LogIoUtils.writeCommit( false, writeBuffer, identifier, txId, System.currentTimeMillis() );
-            forceMode.force( writeBuffer );
-            cacheTxStartPosition( txId, startEntry.getMasterId(), startEntry );
-        }
-        catch ( IOException e )
+        byte[] commandBlock = takePendingCommands( identifier );
+        synchronized ( this )
         {
-            throw Exceptions.withCause(
-                    new XAException( "Logical log unable to mark 1P-commit [" + identifier + "] " ), e );
+            assert txId != -1;
+            try
+            {
+                // Writing the block may rotate the log, which replaces the start entry
+                writeCommandBlock( identifier, commandBlock );
+                LogEntry.Start startEntry = xidIdentMap.get( identifier );
+                assert startEntry != null;
+                LogIoUtils.writeCommit( false, writeBuffer, identifier, txId, System.currentTimeMillis() );
+                long ticket = GroupCommit.force( groupCommit, forceMode, writeBuffer );
+                cacheTxStartPosition( txId, startEntry.getMasterId(), startEntry );
+                return ticket;
+            }
+            catch ( IOException e )
+            {
+                throw Exceptions.withCause(
+                        new XAException( "Logical log unable to mark 1P-commit [" + identifier + "] " ), e );
+            }
         }
     }
 
@@ -381,6 +418,7 @@ public class XaLogicalLog implements LogLoader
         {
             LogIoUtils.writeDone( writeBuffer, identifier );
             xidIdentMap.remove( identifier );
+            pendingCommands.remove( identifier );
         }
         catch ( IOException e )
         {
@@ -411,26 +449,92 @@ public class XaLogicalLog implements LogLoader
     }
 
     // [TX_2P_COMMIT][identifier]
-    public synchronized void commitTwoPhase( int identifier, long txId, ForceMode forceMode )
+    /**
+     * @see #commitOnePhase(int, long, ForceMode)
+     */
+    public long commitTwoPhase( int identifier, long txId, ForceMode forceMode )
         throws XAException
     {
-        LogEntry.Start startEntry = xidIdentMap.get( identifier );
-        assert startEntry != null;
-        assert txId != -1;
+        byte[] commandBlock = takePendingCommands( identifier );
+        synchronized ( this )
+        {
+            assert txId != -1;
+            try
+            {
+                // Writing the block may rotate the log, which replaces the start entry
+                writeCommandBlock( identifier, commandBlock );
+                LogEntry.Start startEntry = xidIdentMap.get( identifier );
+                assert startEntry != null;
+                LogIoUtils.writeCommit( true, writeBuffer, identifier, txId, System.currentTimeMillis() );
+                long ticket = GroupCommit.force( groupCommit, forceMode, writeBuffer );
+                cacheTxStartPosition( txId, startEntry.getMasterId(), startEntry );
+                return ticket;
+            }
+            catch ( IOException e )
+            {
+                throw Exceptions.withCause( new XAException( "Logical log unable to mark 2PC [" + identifier + "] " ), e );
+            }
+        }
+    }
+
+    /**
+     * Waits for a commit entry written in group commit mode to be forced.
+     * Must not be called while holding the monitor of this log.
+     *
+     * @param ticket the ticket returned when committing.
+     */
+    public void awaitCommitForced( long ticket ) throws XAException
+    {
+        if ( ticket == GroupCommit.NO_TICKET )
+        {
+            return;
+        }
         try
         {
-            LogIoUtils.writeCommit( true, writeBuffer, identifier, txId, System.currentTimeMillis() );
-            forceMode.force( writeBuffer );
-            cacheTxStartPosition( txId, startEntry.getMasterId(), startEntry );
+            groupCommit.awaitForced( ticket );
         }
         catch ( IOException e )
         {
-            throw Exceptions.withCause( new XAException( "Logical log unable to mark 2PC [" + identifier + "] " ), e );
+            throw Exceptions.withCause( new XAException( "Logical log unable to force commit" ), e );
         }
     }
 
+    /**
+     * @return the group commit forcing this log, or <CODE>null</CODE> if
+     *         group commit isn't enabled.
+     */
+    public GroupCommit getGroupCommit()
+    {
+        return groupCommit;
+    }
+
     // [COMMAND][identifier][COMMAND_DATA]
-    public synchronized void writeCommand( XaCommand command, int identifier )
+    public void writeCommand( XaCommand command, int identifier )
+        throws IOException
+    {
+        if ( !compressCommands )
+        {
+            writeUncompressedCommand( command, identifier );
+            return;
+        }
+        PendingCommands pending = pendingCommands.get( identifier );
+        if ( pending == null )
+        {
+            pending = new PendingCommands();
+            pendingCommands.put( identifier, pending );
+        }
+        command.writeToFile( pending.commands );
+        if ( ++pending.count >= MAX_COMMANDS_PER_BLOCK )
+        {
+            byte[] commandBlock = takePendingCommands( identifier );
+            synchronized ( this )
+            {
+                writeCommandBlock( identifier, commandBlock );
+            }
+        }
+    }
+
+    private synchronized void writeUncompressedCommand( XaCommand command, int identifier )
         throws IOException
     {
         checkLogRotation();
@@ -438,6 +542,43 @@ public class XaLogicalLog implements LogLoader
         LogIoUtils.writeCommand( writeBuffer, identifier, command );
     }
 
+    /**
+     * With {@link Config#LOGICAL_LOG_COMPRESSION} the commands of a
+     * transaction are kept here until it prepares or commits and then written
+     * as one compressed {@link LogEntry.CommandBlock}. Serializing and
+     * compressing them is left to the thread of that transaction, outside the
+     * monitor of this log, so that committers only hold it while the finished
+     * block is copied into the log.
+     */
+    private static class PendingCommands
+    {
+        private final InMemoryLogBuffer commands = new InMemoryLogBuffer();
+        private int count;
+    }
+
+    /**
+     * @return the compressed block of the commands pending for the
+     *         transaction, or <CODE>null</CODE> if there are none.
+     */
+    private byte[] takePendingCommands( int identifier )
+    {
+        PendingCommands pending = pendingCommands.remove( identifier );
+        return pending == null ? null : LogIoUtils.commandBlock( identifier, pending.count,
+                pending.commands.toByteArray() );
+    }
+
+    // [COMMAND_BLOCK][identifier][COMMAND_BLOCK_DATA]
+    private void writeCommandBlock( int identifier, byte[] commandBlock ) throws IOException
+    {
+        assert Thread.holdsLock( this );
+        if ( commandBlock != null )
+        {
+            checkLogRotation();
+            assert xidIdentMap.get( identifier ) != null;
+            writeBuffer.put( commandBlock );
+        }
+    }
+
     private void applyEntry( LogEntry entry ) throws IOException
     {
         if ( entry instanceof LogEntry.Start )
@@ -452,6 +593,13 @@ public class XaLogicalLog implements LogLoader
         {
             applyCommandEntry( (LogEntry.Command ) entry );
         }
+        else if ( entry instanceof LogEntry.CommandBlock )
+        {
+            for ( LogEntry.Command command : ((LogEntry.CommandBlock) entry).getCommands() )
+            {
+                applyCommandEntry( command );
+            }
+        }
         else if ( entry instanceof LogEntry.OnePhaseCommit )
         {
             applyOnePhaseCommitEntry( (LogEntry.OnePhaseCommit ) entry );
@@ -709,6 +857,7 @@ public class XaLogicalLog implements LogLoader
         if ( writeBuffer != null )
         {
             writeBuffer.force();
+            markAllForced();
         }
         fileChannel.close();
         fileChannel = null;
@@ -721,12 +870,26 @@ public class XaLogicalLog implements LogLoader
             log.fine( "Logical log: " + fileName + " already closed" );
             return;
         }
+        lockGroupCommit();
+        try
+        {
+            closeLocked();
+        }
+        finally
+        {
+            unlockGroupCommit();
+        }
+    }
+
+    private void closeLocked() throws IOException
+    {
         long endPosition = writeBuffer.getFileChannelPosition();
         if ( xidIdentMap.size() > 0 )
         {
             log.info( "Close invoked with " + xidIdentMap.size() +
                 " running transaction(s). " );
             writeBuffer.force();
+            markAllForced();
             fileChannel.close();
             log.info( "Dirty log: " + fileName + "." + currentLog +
                 " now closed. Recovery will be started automatically next " +
@@ -757,9 +920,37 @@ public class XaLogicalLog implements LogLoader
             renameLogFileToRightVersion( fileName + "." + logWas, endPosition );
             xaTf.getAndSetNewVersion();
         }
+        if ( groupCommit != null )
+        {
+            msgLog.logMessage( "Group commit for " + fileName + ": " + groupCommit, true );
+        }
         msgLog.logMessage( "Closed log " + fileName, true );
     }
 
+    private void lockGroupCommit()
+    {
+        if ( groupCommit != null )
+        {
+            groupCommit.lock();
+        }
+    }
+
+    private void unlockGroupCommit()
+    {
+        if ( groupCommit != null )
+        {
+            groupCommit.unlock();
+        }
+    }
+
+    private void markAllForced()
+    {
+        if ( groupCommit != null )
+        {
+            groupCommit.markAllForced();
+        }
+    }
+
     static long[] readAndAssertLogHeader( ByteBuffer localBuffer,
             ReadableByteChannel channel, long expectedVersion ) throws IOException
     {
@@ -808,13 +999,33 @@ public class XaLogicalLog implements LogLoader
                 " with committed tx=" + lastCommittedTx, true );
         long logEntriesFound = 0;
         long lastEntryPos = fileChannel.position();
+        RecoveryProgress progress = new RecoveryProgress( logFileName, fileChannel.size(),
+                parallelRecovery, msgLog );
         fileChannel = new BufferedFileChannel( fileChannel );
-        LogEntry entry;
-        while ( (entry = readEntry()) != null )
+        RecoveryEntryReader reader = parallelRecovery ? new RecoveryEntryReader( fileChannel, cf ) : null;
+        try
         {
-            applyEntry( entry );
-            logEntriesFound++;
-            lastEntryPos = fileChannel.position();
+            LogEntry entry;
+            while ( (entry = reader != null ? reader.next() : readEntry()) != null )
+            {
+                applyEntry( entry );
+                logEntriesFound++;
+                lastEntryPos = reader != null ? reader.position() : fileChannel.position();
+                progress.entryApplied( lastEntryPos, recoveredTxCount );
+            }
+        }
+        finally
+        {
+            if ( reader != null )
+            {
+                reader.close();
+            }
+        }
+        xaTf.recoveryScanComplete();
+        progress.completed( logEntriesFound, recoveredTxCount );
+        if ( diagnostics != null )
+        {
+            diagnostics.appendProvider( progress );
         }
         // make sure we overwrite any broken records
         fileChannel = ((BufferedFileChannel)fileChannel).getSource();
@@ -953,7 +1164,8 @@ public class XaLogicalLog implements LogLoader
             {
                 break;
             }
-            if ( entry instanceof LogEntry.Start || entry instanceof LogEntry.Command )
+            if ( entry instanceof LogEntry.Start || entry instanceof LogEntry.Command
+                 || entry instanceof LogEntry.CommandBlock )
             {
                 LogIoUtils.writeLogEntry( entry, targetBuffer );
                 found = true;
@@ -1002,6 +1214,22 @@ public class XaLogicalLog implements LogLoader
         return new LogExtractor( positionCache, this, cf, startTxId, endTxIdHint );
     }
 
+    /**
+     * @param startTxId the tx id of the first transaction to stream.
+     * @return a {@link TransactionStream} over the transactions committed to
+     *         this log from {@code startTxId} and on, including the ones
+     *         committed after it has been created.
+     */
+    public TransactionStream getTransactionStream( long startTxId ) throws IOException
+    {
+        return new TransactionStream( this, startTxId );
+    }
+
+    long getLastCommittedTx()
+    {
+        return xaTf.getLastCommittedTx();
+    }
+
     public static final int MASTER_ID_REPRESENTING_NO_MASTER = -1;
 
     public synchronized Pair<Integer, Long> getMasterIdForCommittedTransaction( long txId ) throws IOException
@@ -1377,6 +1605,19 @@ public class XaLogicalLog implements LogLoader
      * @throws IOException I/O error.
      */
     public synchronized long rotate() throws IOException
+    {
+        lockGroupCommit();
+        try
+        {
+            return rotateLocked();
+        }
+        finally
+        {
+            unlockGroupCommit();
+        }
+    }
+
+    private long rotateLocked() throws IOException
     {
 //        if ( writeBuffer.getFileChannelPosition() == LogIoUtils.LOG_HEADER_SIZE ) return xaTf.getLastCommittedTx();
         xaTf.flushAll();
@@ -1405,6 +1646,7 @@ public class XaLogicalLog implements LogLoader
                 writeBuffer.getFileChannelPosition(), true );
         long endPosition = writeBuffer.getFileChannelPosition();
         writeBuffer.force();
+        markAllForced();
         FileChannel newLog = fileSystem.open( newLogFile, "rw" );
         long lastTx = xaTf.getLastCommittedTx();
         LogIoUtils.writeLogHeader( sharedBuffer, (currentVersion + 1), lastTx );
@@ -59,6 +59,14 @@ public class XaResourceManager
     private StringLogger msgLog;
     private final AbstractTransactionManager transactionManager;
 
+    /*
+     * Commits are applied to the store in the order their commit entries were
+     * appended to the log, see commit(Xid,boolean).
+     */
+    private long nextAppendOrder;
+    private long nextApplyOrder;
+    private long lastAppendedTxId = -1;
+
     XaResourceManager( XaDataSource dataSource, XaTransactionFactory tf,
             TxIdGenerator txIdGenerator, AbstractTransactionManager transactionManager, String name )
     {
@@ -410,9 +418,59 @@ public class XaResourceManager
         return xaTransaction;
     }
 
-    synchronized XaTransaction commit( Xid xid, boolean onePhase )
-        throws XAException
+    XaTransaction commit( Xid xid, boolean onePhase ) throws XAException
     {
+        /*
+         * With group commit the commit entry is only written out to the log
+         * when appending. Wait for it to be forced after letting go of this
+         * monitor so that other transactions can append meanwhile and share
+         * the force, and only then apply the transaction to the store so that
+         * nothing sees or persists a transaction which isn't durable yet.
+         */
+        AppendedCommit appended = appendCommit( xid, onePhase );
+        boolean forced = false;
+        try
+        {
+            log.awaitCommitForced( appended.forceTicket );
+            forced = true;
+        }
+        finally
+        {
+            if ( !forced )
+            {
+                skipApply( appended );
+            }
+        }
+        return applyCommit( appended );
+    }
+
+    /**
+     * A transaction whose commit entry has been appended to the log, waiting
+     * for it to be forced and for its turn to be applied.
+     */
+    private static class AppendedCommit
+    {
+        private final Xid xid;
+        private final boolean onePhase;
+        private final TransactionStatus txStatus;
+        private final long forceTicket;
+        private final long order;
+
+        AppendedCommit( Xid xid, boolean onePhase, TransactionStatus txStatus, long forceTicket,
+                long order )
+        {
+            this.xid = xid;
+            this.onePhase = onePhase;
+            this.txStatus = txStatus;
+            this.forceTicket = forceTicket;
+            this.order = order;
+        }
+    }
+
+    private synchronized AppendedCommit appendCommit( Xid xid, boolean onePhase )
+            throws XAException
+    {
+        long forceTicket = GroupCommit.NO_TICKET;
         XidStatus status = xidMap.get( xid );
         if ( status == null )
         {
@@ -429,10 +487,8 @@ public class XaResourceManager
                 {
                     xaTransaction.prepare();
 
-                    long txId = txIdGenerator.generate( dataSource,
-                            xaTransaction.getIdentifier() );
-                    xaTransaction.setCommitTxId( txId );
-                    log.commitOnePhase( xaTransaction.getIdentifier(),
+                    xaTransaction.setCommitTxId( generateTxId( xaTransaction ) );
+                    forceTicket = log.commitOnePhase( xaTransaction.getIdentifier(),
                             xaTransaction.getCommitTxId(), getForceMode() );
                 }
             }
@@ -449,14 +505,52 @@ public class XaResourceManager
             {
                 if ( !onePhase )
                 {
-                    long txId = txIdGenerator.generate( dataSource,
-                            xaTransaction.getIdentifier() );
-                    xaTransaction.setCommitTxId( txId );
-                    log.commitTwoPhase( xaTransaction.getIdentifier(),
+                    xaTransaction.setCommitTxId( generateTxId( xaTransaction ) );
+                    forceTicket = log.commitTwoPhase( xaTransaction.getIdentifier(),
                             xaTransaction.getCommitTxId(), getForceMode() );
                 }
             }
             txStatus.markCommitStarted();
+        }
+        return new AppendedCommit( xid, onePhase, txStatus, forceTicket, nextAppendOrder++ );
+    }
+
+    private long generateTxId( XaTransaction xaTransaction )
+    {
+        long txId = txIdGenerator.generate( dataSource, xaTransaction.getIdentifier() );
+        /*
+         * The default generator counts from the last applied transaction,
+         * which lags behind the ones appended and still waiting to be forced.
+         */
+        if ( nextApplyOrder < nextAppendOrder && txId <= lastAppendedTxId )
+        {
+            txId = lastAppendedTxId + 1;
+        }
+        lastAppendedTxId = txId;
+        return txId;
+    }
+
+    private synchronized XaTransaction applyCommit( AppendedCommit appended )
+            throws XAException
+    {
+        awaitTurnToApply( appended.order );
+        try
+        {
+            return applyCommitInTurn( appended );
+        }
+        finally
+        {
+            nextApplyOrder++;
+            notifyAll();
+        }
+    }
+
+    private XaTransaction applyCommitInTurn( AppendedCommit appended ) throws XAException
+    {
+        TransactionStatus txStatus = appended.txStatus;
+        XaTransaction xaTransaction = txStatus.getTransaction();
+        if ( !xaTransaction.isReadOnly() )
+        {
             if ( xaTransaction.isRecovered() && xaTransaction.getCommitTxId() == -1 )
             {
                 boolean previousRecoveredValue = dataSource.setRecovered( true );
@@ -478,10 +572,10 @@ public class XaResourceManager
         else if ( !log.scanIsComplete() || recoveredTxCount > 0 )
         {
             int identifier = xaTransaction.getIdentifier();
-            recoveredDoneRecords.add( new TransactionInfo( identifier, onePhase,
+            recoveredDoneRecords.add( new TransactionInfo( identifier, appended.onePhase,
                     xaTransaction.getCommitTxId() ) );
         }
-        xidMap.remove( xid );
+        xidMap.remove( appended.xid );
         if ( xaTransaction.isRecovered() )
         {
             recoveredTxCount--;
@@ -490,6 +584,48 @@ public class XaResourceManager
         return xaTransaction;
     }
 
+    /**
+     * Gives up the turn of a transaction whose commit entry couldn't be
+     * forced, so that the ones appended after it don't wait forever. It stays
+     * unapplied and is left for recovery.
+     */
+    private synchronized void skipApply( AppendedCommit appended )
+    {
+        awaitTurnToApply( appended.order );
+        nextApplyOrder++;
+        notifyAll();
+    }
+
+    private void awaitTurnToApply( long order )
+    {
+        boolean interrupted = false;
+        while ( nextApplyOrder != order )
+        {
+            try
+            {
+                wait();
+            }
+            catch ( InterruptedException e )
+            {
+                interrupted = true;
+            }
+        }
+        if ( interrupted )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for the transactions appended by {@link #commit(Xid, boolean)}
+     * to be applied, must be called while holding this monitor before
+     * applying transactions some other way.
+     */
+    private void awaitPendingCommits()
+    {
+        awaitTurnToApply( nextAppendOrder );
+    }
+
     private ForceMode getForceMode()
     {
         return transactionManager.getForceMode();
@@ -682,7 +818,8 @@ public class XaResourceManager
                 {
                     if ( !recoveredTx.isOnePhase() )
                     {
-                        log.commitTwoPhase( recoveredTx.getIdentifier(), recoveredTx.getTxId(), ForceMode.forced );
+                        log.awaitCommitForced( log.commitTwoPhase( recoveredTx.getIdentifier(),
+                                recoveredTx.getTxId(), ForceMode.forced ) );
                     }
                     log.doneInternal( recoveredTx.getIdentifier() );
                 }
@@ -726,6 +863,7 @@ public class XaResourceManager
     public synchronized void applyCommittedTransaction(
             ReadableByteChannel transaction, long txId ) throws IOException
     {
+        awaitPendingCommits();
         long lastCommittedTxId = dataSource.getLastCommittedTxId();
         if ( lastCommittedTxId + 1 == txId )
         {
@@ -741,6 +879,7 @@ public class XaResourceManager
     public synchronized long applyPreparedTransaction(
             ReadableByteChannel transaction ) throws IOException
     {
+        awaitPendingCommits();
         long txId = TxIdGenerator.DEFAULT.generate( dataSource, 0 );
         int masterId = txIdGenerator.getCurrentMasterId();
         log.applyTransactionWithoutTxId( transaction, txId, masterId, getForceMode() );
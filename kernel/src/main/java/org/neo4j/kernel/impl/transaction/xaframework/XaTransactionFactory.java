@@ -60,6 +60,17 @@ public abstract class XaTransactionFactory
     {
     }
 
+    /**
+     * This method will be called when the logical log has been scanned during
+     * recovery and the transactions found committed in it have been
+     * committed, before looking for the ones left to resolve. This
+     * implementation does nothing so override if recovered transactions
+     * aren't done committing when their commit returns.
+     */
+    public void recoveryScanComplete()
+    {
+    }
+
     public abstract long getCurrentVersion();
     
     public abstract long getAndSetNewVersion();
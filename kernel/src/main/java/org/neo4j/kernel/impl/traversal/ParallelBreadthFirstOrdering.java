@@ -0,0 +1,50 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.traversal;
+
+import java.util.concurrent.ExecutorService;
+
+import org.neo4j.graphdb.traversal.BranchOrderingPolicy;
+import org.neo4j.graphdb.traversal.BranchSelector;
+import org.neo4j.graphdb.traversal.TraversalBranch;
+
+/**
+ * A breadth first ordering which expands all the branches of one depth
+ * using the threads of an {@link ExecutorService} before returning them,
+ * see {@link org.neo4j.kernel.Traversal#parallelBreadthFirst(ExecutorService)}.
+ */
+public class ParallelBreadthFirstOrdering implements BranchOrderingPolicy
+{
+    private final ExecutorService workers;
+
+    public ParallelBreadthFirstOrdering( ExecutorService workers )
+    {
+        if ( workers == null )
+        {
+            throw new IllegalArgumentException( "Null workers" );
+        }
+        this.workers = workers;
+    }
+
+    public BranchSelector create( TraversalBranch startSource )
+    {
+        return new ParallelBreadthFirstSelector( startSource, workers );
+    }
+}
@@ -0,0 +1,144 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.traversal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.neo4j.graphdb.traversal.BranchSelector;
+import org.neo4j.graphdb.traversal.TraversalBranch;
+
+/**
+ * Selects {@link TraversalBranch}s in breadth first order, one depth at a
+ * time. When all branches of a depth have been returned the next depth is
+ * created by expanding all of them, split into chunks which are expanded
+ * concurrently by the worker threads. The branches of a depth are returned
+ * in the order of their parents, but which of two parents at the same depth
+ * gets to reach a node first (as decided by the uniqueness) is up to the
+ * workers.
+ */
+class ParallelBreadthFirstSelector implements BranchSelector
+{
+    private static final int CHUNKS_PER_PROCESSOR = 4;
+
+    private final TraversalBranch startSource;
+    private final ExecutorService workers;
+    private List<TraversalBranch> currentDepth;
+    private Iterator<TraversalBranch> toReturn;
+
+    ParallelBreadthFirstSelector( TraversalBranch startSource, ExecutorService workers )
+    {
+        this.startSource = startSource;
+        this.workers = workers;
+    }
+
+    public TraversalBranch next()
+    {
+        if ( currentDepth == null )
+        {
+            TraversalBranch start = startSource.next();
+            currentDepth = start != null ? Collections.singletonList( start )
+                    : Collections.<TraversalBranch>emptyList();
+            toReturn = currentDepth.iterator();
+        }
+        while ( !toReturn.hasNext() )
+        {
+            if ( currentDepth.isEmpty() )
+            {
+                return null;
+            }
+            currentDepth = expand( currentDepth );
+            toReturn = currentDepth.iterator();
+        }
+        return toReturn.next();
+    }
+
+    private List<TraversalBranch> expand( List<TraversalBranch> branches )
+    {
+        int chunkCount = Math.min( branches.size(),
+                Runtime.getRuntime().availableProcessors() * CHUNKS_PER_PROCESSOR );
+        int chunkSize = ( branches.size() + chunkCount - 1 ) / chunkCount;
+        List<Future<List<TraversalBranch>>> futures = new ArrayList<Future<List<TraversalBranch>>>();
+        for ( int from = 0; from < branches.size(); from += chunkSize )
+        {
+            final List<TraversalBranch> chunk =
+                    branches.subList( from, Math.min( from + chunkSize, branches.size() ) );
+            futures.add( workers.submit( new Callable<List<TraversalBranch>>()
+            {
+                @Override
+                public List<TraversalBranch> call()
+                {
+                    List<TraversalBranch> children = new ArrayList<TraversalBranch>();
+                    for ( TraversalBranch branch : chunk )
+                    {
+                        for ( TraversalBranch child = branch.next(); child != null; child = branch.next() )
+                        {
+                            children.add( child );
+                        }
+                    }
+                    return children;
+                }
+            } ) );
+        }
+        List<TraversalBranch> nextDepth = new ArrayList<TraversalBranch>();
+        try
+        {
+            for ( Future<List<TraversalBranch>> future : futures )
+            {
+                nextDepth.addAll( future.get() );
+            }
+            return nextDepth;
+        }
+        catch ( InterruptedException e )
+        {
+            cancel( futures );
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( "Interrupted while expanding branches", e );
+        }
+        catch ( ExecutionException e )
+        {
+            cancel( futures );
+            Throwable cause = e.getCause();
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            throw new RuntimeException( cause );
+        }
+    }
+
+    private static void cancel( List<? extends Future<?>> futures )
+    {
+        for ( Future<?> future : futures )
+        {
+            future.cancel( true );
+        }
+    }
+}
@@ -19,6 +19,8 @@
  */
 package org.neo4j.kernel.impl.traversal;
 
+import java.util.concurrent.ExecutorService;
+
 import org.neo4j.graphdb.Direction;
 import org.neo4j.graphdb.Expander;
 import org.neo4j.graphdb.Node;
@@ -189,6 +191,17 @@ public final class TraversalDescriptionImpl implements TraversalDescription
         return order( Traversal.preorderBreadthFirst() );
     }
 
+    /**
+     * Not part of {@link TraversalDescription} since it's experimental, use
+     * {@link #order(BranchOrderingPolicy)} with
+     * {@link Traversal#parallelBreadthFirst(ExecutorService)} on other
+     * descriptions.
+     */
+    public TraversalDescription parallelBreadthFirst( ExecutorService workers )
+    {
+        return order( Traversal.parallelBreadthFirst( workers ) );
+    }
+
     /* (non-Javadoc)
      * @see org.neo4j.graphdb.traversal.TraversalDescription#relationships(org.neo4j.graphdb.RelationshipType)
      */
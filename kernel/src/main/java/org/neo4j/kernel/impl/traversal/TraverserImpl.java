@@ -101,7 +101,9 @@ class TraverserImpl implements Traverser
         TraverserIterator()
         {
             this.description = TraverserImpl.this.description;
-            this.uniquness = description.uniqueness.create( description.uniquenessParameter );
+            UniquenessFilter uniqueness = description.uniqueness.create( description.uniquenessParameter );
+            this.uniquness = description.branchSelector instanceof ParallelBreadthFirstOrdering ?
+                    new SynchronizedUniquenessFilter( uniqueness ) : uniqueness;
             this.startNode = TraverserImpl.this.startNode;
             this.sourceSelector = description.branchSelector.create(
                     new StartNodeTraversalBranch( this, startNode,
@@ -136,4 +138,27 @@ class TraverserImpl implements Traverser
             }
         }
     }
+
+    /**
+     * Lets the branches be checked from the threads of a parallel ordering.
+     */
+    private static class SynchronizedUniquenessFilter implements UniquenessFilter
+    {
+        private final UniquenessFilter filter;
+
+        SynchronizedUniquenessFilter( UniquenessFilter filter )
+        {
+            this.filter = filter;
+        }
+
+        public synchronized boolean checkFirst( TraversalBranch branch )
+        {
+            return filter.checkFirst( branch );
+        }
+
+        public synchronized boolean check( TraversalBranch branch )
+        {
+            return filter.check( branch );
+        }
+    }
 }
@@ -0,0 +1,103 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.util;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A first-in-first-out queue of primitive longs backed by a growable ring
+ * buffer, so that queued values aren't boxed. Not thread safe.
+ */
+public class LongArrayQueue
+{
+    private long[] values;
+    private int head = 0;
+    private int size = 0;
+
+    public LongArrayQueue()
+    {
+        this( 16 );
+    }
+
+    public LongArrayQueue( int initialCapacity )
+    {
+        if ( initialCapacity < 1 )
+        {
+            throw new IllegalArgumentException( "Illegal capacity: " + initialCapacity );
+        }
+        values = new long[initialCapacity];
+    }
+
+    public void add( long value )
+    {
+        if ( size == values.length )
+        {
+            long[] newValues = new long[values.length * 2];
+            int firstPart = values.length - head;
+            System.arraycopy( values, head, newValues, 0, firstPart );
+            System.arraycopy( values, 0, newValues, firstPart, head );
+            values = newValues;
+            head = 0;
+        }
+        values[(head + size) % values.length] = value;
+        size++;
+    }
+
+    public long removeFirst()
+    {
+        if ( size == 0 )
+        {
+            throw new NoSuchElementException();
+        }
+        long value = values[head];
+        head = (head + 1) % values.length;
+        size--;
+        return value;
+    }
+
+    /**
+     * @return the value at {@code index} counted from the head of the queue,
+     * without removing it.
+     */
+    public long get( int index )
+    {
+        if ( index < 0 || index >= size )
+        {
+            throw new IndexOutOfBoundsException( "Index " + index + ", size " + size );
+        }
+        return values[(head + index) % values.length];
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public void clear()
+    {
+        head = 0;
+        size = 0;
+    }
+}
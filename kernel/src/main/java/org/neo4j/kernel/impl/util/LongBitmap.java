@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.util;
+
+/**
+ * A set of non-negative longs kept as one bit each. The bits are kept in
+ * pages of 64k bits which are only allocated once a value in their range is
+ * set, so memory is spent on the parts of the id space which are actually
+ * used, at one bit per id instead of an object per id. Not thread safe.
+ */
+public class LongBitmap
+{
+    private static final int PAGE_BITS = 16;
+    private static final int PAGE_MASK = (1 << PAGE_BITS) - 1;
+
+    private final PrimitiveLongMap<long[]> pages = new PrimitiveLongMap<long[]>();
+    private long size;
+
+    /**
+     * @return <CODE>true</CODE> if <CODE>value</CODE> wasn't set already.
+     */
+    public boolean set( long value )
+    {
+        long pageId = pageId( value );
+        long[] page = pages.get( pageId );
+        if ( page == null )
+        {
+            page = new long[(PAGE_MASK + 1) >>> 6];
+            pages.put( pageId, page );
+        }
+        int bit = (int) value & PAGE_MASK;
+        long mask = 1L << (bit & 63);
+        if ( ( page[bit >>> 6] & mask ) != 0 )
+        {
+            return false;
+        }
+        page[bit >>> 6] |= mask;
+        size++;
+        return true;
+    }
+
+    public boolean isSet( long value )
+    {
+        long[] page = pages.get( pageId( value ) );
+        if ( page == null )
+        {
+            return false;
+        }
+        int bit = (int) value & PAGE_MASK;
+        return ( page[bit >>> 6] & (1L << (bit & 63)) ) != 0;
+    }
+
+    private static long pageId( long value )
+    {
+        if ( value < 0 )
+        {
+            throw new IllegalArgumentException( "Negative value " + value );
+        }
+        return value >>> PAGE_BITS;
+    }
+
+    /**
+     * @return the number of values which are set.
+     */
+    public long size()
+    {
+        return size;
+    }
+
+    /**
+     * @return the number of pages of bits allocated.
+     */
+    public int pageCount()
+    {
+        return pages.size();
+    }
+}
@@ -0,0 +1,452 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.util;
+
+import static org.neo4j.kernel.impl.cache.SizeOfs.REFERENCE_SIZE;
+import static org.neo4j.kernel.impl.cache.SizeOfs.withObjectOverhead;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.NoSuchElementException;
+
+/**
+ * A {@link RelIdArray} for nodes with lots of relationships, which keeps the
+ * ids outside of the java heap. The ids of each direction are stored in a
+ * direct {@link ByteBuffer} as the difference from the previous id, zig-zag
+ * and variable length encoded, which for ids loaded from a relationship chain
+ * usually takes one to three bytes per id instead of the four or more of an
+ * {@link IdBlock}.
+ * <p>
+ * Ids are only ever appended by one thread at a time, the node or a not yet
+ * published instance guards that, while any number of iterators can read
+ * concurrently. Iterators decode the ids as they go so the ids are never
+ * materialized on the heap.
+ * <p>
+ * The buffers double as ids are added and are trimmed to size once loaded,
+ * see {@link #shrink()}. Replaced direct buffers are only freed when garbage
+ * collected, so while the ids of a node are loaded the direct memory used
+ * can be a few times the final size.
+ */
+public class OffHeapRelIdArray extends RelIdArray
+{
+    private final IdList out = new IdList();
+    private final IdList in = new IdList();
+    private final IdList loop = new IdList();
+
+    public OffHeapRelIdArray( String type )
+    {
+        super( type );
+    }
+
+    /**
+     * @param source the ids to copy
+     * @return a new array with the same ids as <CODE>source</CODE>, kept
+     *         outside of the heap.
+     */
+    public static OffHeapRelIdArray copyOf( RelIdArray source )
+    {
+        OffHeapRelIdArray result = new OffHeapRelIdArray( source.getType() );
+        source.copyTo( result );
+        return result;
+    }
+
+    private IdList list( DirectionWrapper direction )
+    {
+        switch ( direction )
+        {
+        case OUTGOING: return out;
+        case INCOMING: return in;
+        default: return loop;
+        }
+    }
+
+    @Override
+    public void add( long id, DirectionWrapper direction )
+    {
+        list( direction ).add( id );
+    }
+
+    @Override
+    public RelIdArray addAll( RelIdArray source )
+    {
+        if ( source != null )
+        {
+            source.copyTo( this );
+        }
+        return this;
+    }
+
+    @Override
+    protected void copyTo( RelIdArray target )
+    {
+        for ( DirectionWrapper direction : DirectionWrapper.values() )
+        {
+            IdList list = list( direction );
+            for ( Cursor cursor = new Cursor(); list.hasNext( cursor ); )
+            {
+                target.add( list.next( cursor ), direction );
+            }
+        }
+    }
+
+    @Override
+    protected void removeAll( Collection<Long> excluded )
+    {
+        out.removeAll( excluded );
+        in.removeAll( excluded );
+        loop.removeAll( excluded );
+    }
+
+    @Override
+    public boolean isOffHeap()
+    {
+        return true;
+    }
+
+    @Override
+    protected boolean hasLoops()
+    {
+        return loop.count > 0;
+    }
+
+    @Override
+    public RelIdArray upgradeIfNeeded( RelIdArray capabilitiesToMatch )
+    {
+        return this;
+    }
+
+    @Override
+    public RelIdArray shrink()
+    {
+        out.trim();
+        in.trim();
+        loop.trim();
+        return this;
+    }
+
+    @Override
+    public boolean isEmpty()
+    {
+        return length() == 0;
+    }
+
+    @Override
+    public int length()
+    {
+        return out.count + in.count + loop.count;
+    }
+
+    @Override
+    public int size()
+    {
+        // only the heap part, which is the array itself and the three lists
+        return withObjectOverhead( 6*REFERENCE_SIZE ) + 3*withObjectOverhead( REFERENCE_SIZE + 16 );
+    }
+
+    /**
+     * @return the number of bytes allocated outside of the heap for the ids.
+     */
+    public int offHeapBytes()
+    {
+        return out.capacity() + in.capacity() + loop.capacity();
+    }
+
+    @Override
+    public RelIdArray newSimilarInstance()
+    {
+        return new OffHeapRelIdArray( getType() );
+    }
+
+    @Override
+    public boolean couldBeNeedingUpdate()
+    {
+        return false;
+    }
+
+    @Override
+    public RelIdIterator iterator( DirectionWrapper direction )
+    {
+        switch ( direction )
+        {
+        case OUTGOING: return iterator( DIRECTIONS_FOR_OUTGOING, null );
+        case INCOMING: return iterator( DIRECTIONS_FOR_INCOMING, null );
+        default: return iterator( DIRECTIONS_FOR_BOTH, null );
+        }
+    }
+
+    /**
+     * @param consumed the number of ids of each direction already seen by
+     *            an iterator which is being moved over to this array, or
+     *            <CODE>null</CODE> to start from the beginning.
+     */
+    RelIdIterator iterator( DirectionWrapper[] directions, int[] consumed )
+    {
+        return new OffHeapRelIdIterator( this, directions, consumed );
+    }
+
+    /**
+     * The position of an iterator in an {@link IdList}.
+     */
+    private static class Cursor
+    {
+        private int position;
+        private int index;
+        private long value;
+    }
+
+    private static class IdList
+    {
+        private static final int INITIAL_CAPACITY = 64;
+        // enough for any zig-zag encoded long
+        private static final int MAX_BYTES_PER_ID = 10;
+
+        private volatile ByteBuffer buffer;
+        private volatile int end;
+        private volatile int count;
+        private long last;
+
+        void add( long id )
+        {
+            long delta = id - last;
+            long encoded = ( delta << 1 ) ^ ( delta >> 63 );
+            ByteBuffer buffer = ensureCapacity( MAX_BYTES_PER_ID );
+            int position = end;
+            while ( ( encoded & ~0x7FL ) != 0 )
+            {
+                buffer.put( position++, (byte) ( ( encoded & 0x7F ) | 0x80 ) );
+                encoded >>>= 7;
+            }
+            buffer.put( position++, (byte) encoded );
+            last = id;
+            count++;
+            // publishing the new end makes the written bytes visible to readers
+            end = position;
+        }
+
+        /*
+         * The replaced buffer is left to the garbage collector, it may still
+         * be read by iterators
+         */
+        private ByteBuffer ensureCapacity( int extra )
+        {
+            ByteBuffer current = buffer;
+            if ( current != null && end + extra <= current.capacity() )
+            {
+                return current;
+            }
+            int capacity = current == null ? INITIAL_CAPACITY : current.capacity() * 2;
+            ByteBuffer grown = ByteBuffer.allocateDirect( Math.max( capacity, end + extra ) );
+            copy( current, grown );
+            buffer = grown;
+            return grown;
+        }
+
+        private void copy( ByteBuffer from, ByteBuffer to )
+        {
+            if ( from != null )
+            {
+                ByteBuffer source = from.duplicate();
+                source.position( 0 ).limit( end );
+                to.put( source );
+            }
+        }
+
+        void trim()
+        {
+            ByteBuffer current = buffer;
+            if ( current != null && current.capacity() > end )
+            {
+                ByteBuffer trimmed = ByteBuffer.allocateDirect( end );
+                copy( current, trimmed );
+                buffer = trimmed;
+            }
+        }
+
+        int capacity()
+        {
+            ByteBuffer current = buffer;
+            return current != null ? current.capacity() : 0;
+        }
+
+        boolean hasNext( Cursor cursor )
+        {
+            return cursor.position < end;
+        }
+
+        /*
+         * Only called if hasNext returns true
+         */
+        long next( Cursor cursor )
+        {
+            ByteBuffer buffer = this.buffer;
+            int position = cursor.position;
+            long encoded = 0;
+            int shift = 0;
+            byte b;
+            do
+            {
+                b = buffer.get( position++ );
+                encoded |= ( (long) ( b & 0x7F ) ) << shift;
+                shift += 7;
+            }
+            while ( ( b & 0x80 ) != 0 );
+            cursor.position = position;
+            cursor.index++;
+            cursor.value += ( encoded >>> 1 ) ^ -( encoded & 1 );
+            return cursor.value;
+        }
+
+        Cursor skip( int ids )
+        {
+            Cursor cursor = new Cursor();
+            while ( cursor.index < ids && hasNext( cursor ) )
+            {
+                next( cursor );
+            }
+            return cursor;
+        }
+
+        void removeAll( Collection<Long> excluded )
+        {
+            IdList retained = new IdList();
+            for ( Cursor cursor = new Cursor(); hasNext( cursor ); )
+            {
+                long id = next( cursor );
+                if ( !excluded.contains( id ) )
+                {
+                    retained.add( id );
+                }
+            }
+            last = retained.last;
+            buffer = retained.buffer;
+            count = retained.count;
+            end = retained.end;
+        }
+    }
+
+    private static class OffHeapRelIdIterator implements RelIdIterator
+    {
+        private final DirectionWrapper[] directions;
+        private final Cursor[] cursors;
+        private OffHeapRelIdArray ids;
+        private int directionPosition;
+
+        private long nextElement;
+        private boolean nextElementDetermined;
+
+        OffHeapRelIdIterator( OffHeapRelIdArray ids, DirectionWrapper[] directions, int[] consumed )
+        {
+            this.ids = ids;
+            this.directions = directions;
+            this.cursors = new Cursor[directions.length];
+            for ( int i = 0; i < directions.length; i++ )
+            {
+                cursors[i] = consumed == null ? new Cursor() :
+                        ids.list( directions[i] ).skip( consumed[i] );
+            }
+        }
+
+        @Override
+        public String getType()
+        {
+            return ids.getType();
+        }
+
+        @Override
+        public RelIdArray getIds()
+        {
+            return ids;
+        }
+
+        @Override
+        public RelIdIterator updateSource( RelIdArray newSource )
+        {
+            if ( newSource == ids )
+            {
+                return this;
+            }
+            int[] consumed = new int[cursors.length];
+            for ( int i = 0; i < cursors.length; i++ )
+            {
+                consumed[i] = cursors[i].index;
+            }
+            if ( newSource.isOffHeap() )
+            {
+                return new OffHeapRelIdIterator( (OffHeapRelIdArray) newSource, directions, consumed );
+            }
+            // Went back to a heap array, skip what has already been seen
+            RelIdIterator iterator = newSource.iterator( directions.length == 3 ? DirectionWrapper.BOTH :
+                    directions[0] );
+            int seen = 0;
+            for ( int ids : consumed )
+            {
+                seen += ids;
+            }
+            for ( int i = 0; i < seen && iterator.hasNext(); i++ )
+            {
+                iterator.next();
+            }
+            return iterator;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            if ( nextElementDetermined )
+            {
+                return nextElement != -1;
+            }
+            while ( directionPosition < directions.length )
+            {
+                IdList list = ids.list( directions[directionPosition] );
+                Cursor cursor = cursors[directionPosition];
+                if ( list.hasNext( cursor ) )
+                {
+                    nextElement = list.next( cursor );
+                    nextElementDetermined = true;
+                    return true;
+                }
+                directionPosition++;
+            }
+            // Keep this false since the next call could come after we've loaded
+            // some more relationships
+            nextElementDetermined = false;
+            nextElement = -1;
+            return false;
+        }
+
+        @Override
+        public void doAnotherRound()
+        {
+            directionPosition = 0;
+        }
+
+        @Override
+        public long next()
+        {
+            if ( !hasNext() )
+            {
+                throw new NoSuchElementException();
+            }
+            nextElementDetermined = false;
+            return nextElement;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.util;
+
+/**
+ * The hash function shared by the hash tables keyed by primitive longs, such
+ * as {@link PrimitiveLongSet} and {@link PrimitiveLongMap}. Ids are often
+ * sequential, so they are spread over the table by multiplying with the
+ * golden ratio and folding the high bits into the low ones.
+ */
+public abstract class PrimitiveLongHashing
+{
+    public static int hash( long value )
+    {
+        long hash = value * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    /**
+     * @return the slot for {@code value} in a table of size {@code mask + 1},
+     *         which must be a power of two.
+     */
+    public static int slotFor( long value, int mask )
+    {
+        return hash( value ) & mask;
+    }
+}
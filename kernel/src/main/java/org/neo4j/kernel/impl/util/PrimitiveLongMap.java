@@ -0,0 +1,185 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.util;
+
+import static org.neo4j.kernel.impl.util.PrimitiveLongHashing.slotFor;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A hash map with primitive long keys, using open addressing so that neither
+ * the keys nor the entries are objects of their own. Entries can't be
+ * removed. Not thread safe.
+ *
+ * @param <V> the type of the values.
+ */
+public class PrimitiveLongMap<V>
+{
+    private long[] keys;
+    private Object[] values;
+    private int size;
+
+    public PrimitiveLongMap()
+    {
+        this( 8 );
+    }
+
+    public PrimitiveLongMap( int initialCapacity )
+    {
+        int capacity = 2;
+        while ( capacity < initialCapacity * 4 / 3 + 1 )
+        {
+            capacity <<= 1;
+        }
+        keys = new long[capacity];
+        values = new Object[capacity];
+    }
+
+    @SuppressWarnings( "unchecked" )
+    public V get( long key )
+    {
+        int mask = keys.length - 1;
+        for ( int slot = slotFor( key, mask ); values[slot] != null; slot = (slot + 1) & mask )
+        {
+            if ( keys[slot] == key )
+            {
+                return (V) values[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the value previously associated with {@code key}, or
+     *         {@code null} if there was none.
+     */
+    @SuppressWarnings( "unchecked" )
+    public V put( long key, V value )
+    {
+        if ( value == null )
+        {
+            throw new IllegalArgumentException( "Null value for key " + key );
+        }
+        int mask = keys.length - 1;
+        int slot = slotFor( key, mask );
+        for ( ; values[slot] != null; slot = (slot + 1) & mask )
+        {
+            if ( keys[slot] == key )
+            {
+                V previous = (V) values[slot];
+                values[slot] = value;
+                return previous;
+            }
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if ( ++size > keys.length * 3 / 4 )
+        {
+            grow();
+        }
+        return null;
+    }
+
+    private void grow()
+    {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new Object[oldValues.length * 2];
+        int mask = keys.length - 1;
+        for ( int i = 0; i < oldKeys.length; i++ )
+        {
+            if ( oldValues[i] != null )
+            {
+                int slot = slotFor( oldKeys[i], mask );
+                while ( values[slot] != null )
+                {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * @return the values in this map, in no particular order.
+     */
+    public Iterable<V> values()
+    {
+        return new Iterable<V>()
+        {
+            @Override
+            public Iterator<V> iterator()
+            {
+                return new Iterator<V>()
+                {
+                    private final Object[] snapshot = values;
+                    private int slot = nextSlot( 0 );
+
+                    private int nextSlot( int from )
+                    {
+                        while ( from < snapshot.length && snapshot[from] == null )
+                        {
+                            from++;
+                        }
+                        return from;
+                    }
+
+                    @Override
+                    public boolean hasNext()
+                    {
+                        return slot < snapshot.length;
+                    }
+
+                    @SuppressWarnings( "unchecked" )
+                    @Override
+                    public V next()
+                    {
+                        if ( !hasNext() )
+                        {
+                            throw new NoSuchElementException();
+                        }
+                        V value = (V) snapshot[slot];
+                        slot = nextSlot( slot + 1 );
+                        return value;
+                    }
+
+                    @Override
+                    public void remove()
+                    {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.util;
+
+import static org.neo4j.kernel.impl.util.PrimitiveLongHashing.slotFor;
+
+/**
+ * A hash set of primitive longs, using open addressing so that the values
+ * aren't boxed. Values can't be removed. Not thread safe.
+ */
+public class PrimitiveLongSet
+{
+    // 0 marks a free slot, so whether 0 itself is in the set is kept aside
+    private long[] values;
+    private boolean containsZero;
+    private int size;
+
+    public PrimitiveLongSet()
+    {
+        this( 8 );
+    }
+
+    public PrimitiveLongSet( int initialCapacity )
+    {
+        int capacity = 2;
+        while ( capacity < initialCapacity * 4 / 3 + 1 )
+        {
+            capacity <<= 1;
+        }
+        values = new long[capacity];
+    }
+
+    /**
+     * @return <CODE>true</CODE> if <CODE>value</CODE> wasn't in the set
+     *         already.
+     */
+    public boolean add( long value )
+    {
+        if ( value == 0 )
+        {
+            if ( containsZero )
+            {
+                return false;
+            }
+            containsZero = true;
+            size++;
+            return true;
+        }
+        int mask = values.length - 1;
+        int slot = slotFor( value, mask );
+        for ( ; values[slot] != 0; slot = (slot + 1) & mask )
+        {
+            if ( values[slot] == value )
+            {
+                return false;
+            }
+        }
+        values[slot] = value;
+        if ( ++size > values.length * 3 / 4 )
+        {
+            grow();
+        }
+        return true;
+    }
+
+    public boolean contains( long value )
+    {
+        if ( value == 0 )
+        {
+            return containsZero;
+        }
+        int mask = values.length - 1;
+        for ( int slot = slotFor( value, mask ); values[slot] != 0; slot = (slot + 1) & mask )
+        {
+            if ( values[slot] == value )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void grow()
+    {
+        long[] oldValues = values;
+        values = new long[oldValues.length * 2];
+        int mask = values.length - 1;
+        for ( long value : oldValues )
+        {
+            if ( value != 0 )
+            {
+                int slot = slotFor( value, mask );
+                while ( values[slot] != 0 )
+                {
+                    slot = (slot + 1) & mask;
+                }
+                values[slot] = value;
+            }
+        }
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+}
@@ -22,15 +22,19 @@ package org.neo4j.kernel.impl.util;
 import java.util.Collection;
 import java.util.NoSuchElementException;
 
+import static org.neo4j.kernel.impl.cache.SizeOfs.REFERENCE_SIZE;
+import static org.neo4j.kernel.impl.cache.SizeOfs.withArrayOverhead;
+import static org.neo4j.kernel.impl.cache.SizeOfs.withObjectOverhead;
+
 import org.neo4j.graphdb.Direction;
 
 public class RelIdArray
 {
-    private static final DirectionWrapper[] DIRECTIONS_FOR_OUTGOING =
+    static final DirectionWrapper[] DIRECTIONS_FOR_OUTGOING =
             new DirectionWrapper[] { DirectionWrapper.OUTGOING, DirectionWrapper.BOTH };
-    private static final DirectionWrapper[] DIRECTIONS_FOR_INCOMING =
+    static final DirectionWrapper[] DIRECTIONS_FOR_INCOMING =
             new DirectionWrapper[] { DirectionWrapper.INCOMING, DirectionWrapper.BOTH };
-    private static final DirectionWrapper[] DIRECTIONS_FOR_BOTH =
+    static final DirectionWrapper[] DIRECTIONS_FOR_BOTH =
             new DirectionWrapper[] { DirectionWrapper.OUTGOING, DirectionWrapper.INCOMING, DirectionWrapper.BOTH };
     
     public static class EmptyRelIdArray extends RelIdArray
@@ -144,6 +148,13 @@ public class RelIdArray
             return this;
         }
         
+        if ( source.isOffHeap() )
+        {
+            RelIdArray target = upgradeIfNeeded( source );
+            source.copyTo( target );
+            return target;
+        }
+        
         if ( source.getLastLoopBlock() != null )
         {
             return upgradeIfNeeded( source ).addAll( source );
@@ -175,7 +186,39 @@ public class RelIdArray
     
     public RelIdArray upgradeIfNeeded( RelIdArray capabilitiesToMatch )
     {
-        return capabilitiesToMatch.getLastLoopBlock() != null ? new RelIdArrayWithLoops( this ) : this;
+        return capabilitiesToMatch.hasLoops() ? new RelIdArrayWithLoops( this ) : this;
+    }
+    
+    protected boolean hasLoops()
+    {
+        return getLastLoopBlock() != null;
+    }
+    
+    /**
+     * @return whether the ids are kept outside of the heap, in which case
+     * there are no {@link IdBlock}s to get at.
+     */
+    public boolean isOffHeap()
+    {
+        return false;
+    }
+    
+    /**
+     * Adds all ids of this array to <CODE>target</CODE>, keeping their
+     * directions.
+     */
+    protected void copyTo( RelIdArray target )
+    {
+        for ( RelIdIteratorImpl iterator = (RelIdIteratorImpl) DirectionWrapper.BOTH.iterator( this ); iterator.hasNext(); )
+        {
+            long id = iterator.next();
+            target.add( id, iterator.currentDirection );
+        }
+    }
+    
+    protected void removeAll( Collection<Long> excluded )
+    {
+        evictExcluded( this, excluded );
     }
     
     public RelIdArray downgradeIfPossible()
@@ -248,6 +291,39 @@ public class RelIdArray
         return lastOutBlock == null && lastInBlock == null && getLastLoopBlock() == null ;
     }
     
+    /**
+     * @return the number of ids in this array.
+     */
+    public int length()
+    {
+        return length( lastOutBlock ) + length( lastInBlock ) + length( getLastLoopBlock() );
+    }
+    
+    private static int length( IdBlock block )
+    {
+        int length = 0;
+        for ( ; block != null; block = block.getPrev() )
+        {
+            length += block.length();
+        }
+        return length;
+    }
+    
+    /**
+     * @return an estimate of the number of bytes this array and its id blocks
+     * take up on the heap.
+     */
+    public int size()
+    {
+        return withObjectOverhead( 3*REFERENCE_SIZE ) + sizeOf( lastOutBlock ) +
+                sizeOf( lastInBlock ) + sizeOf( getLastLoopBlock() );
+    }
+    
+    private static int sizeOf( IdBlock block )
+    {
+        return block != null ? block.size() : 0;
+    }
+    
     public RelIdIterator iterator( DirectionWrapper direction )
     {
         return direction.iterator( this );
@@ -395,6 +471,16 @@ public class RelIdArray
         {
             return ids[0];
         }
+        
+        int size()
+        {
+            return withObjectOverhead( REFERENCE_SIZE ) + sizeOfIds();
+        }
+        
+        int sizeOfIds()
+        {
+            return withArrayOverhead( ids.length*4 );
+        }
 
         IdBlock getPrev()
         {
@@ -523,6 +609,13 @@ public class RelIdArray
         {
             return prev;
         }
+        
+        @Override
+        int size()
+        {
+            int size = withObjectOverhead( 2*REFERENCE_SIZE + 8 ) + sizeOfIds();
+            return prev != null ? size + prev.size() : size;
+        }
 
         @Override
         void setPrev( IdBlock prev )
@@ -657,6 +750,17 @@ public class RelIdArray
         @Override
         public RelIdIterator updateSource( RelIdArray newSource )
         {
+            if ( newSource.isOffHeap() )
+            {
+                // The ids have been moved off heap, continue from the same
+                // position in each direction
+                int[] consumed = new int[states.length];
+                for ( int i = 0; i < states.length; i++ )
+                {
+                    consumed[i] = states[i] != null ? states[i].absolutePosition : 0;
+                }
+                return ((OffHeapRelIdArray) newSource).iterator( directions, consumed );
+            }
             if ( ids != newSource || newSource.couldBeNeedingUpdate() )
             {
                 ids = newSource;
@@ -798,7 +902,7 @@ public class RelIdArray
             {
                 newArray = src.newSimilarInstance();
                 newArray.addAll( src );
-                evictExcluded( newArray, remove );
+                newArray.removeAll( remove );
             }
             else
             {
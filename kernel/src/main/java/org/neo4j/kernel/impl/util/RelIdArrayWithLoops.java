@@ -19,6 +19,7 @@
  */
 package org.neo4j.kernel.impl.util;
 
+import static org.neo4j.kernel.impl.cache.SizeOfs.REFERENCE_SIZE;
 
 public class RelIdArrayWithLoops extends RelIdArray
 {
@@ -53,6 +54,12 @@ public class RelIdArrayWithLoops extends RelIdArray
         this.lastLoopBlock = block;
     }
     
+    @Override
+    public int size()
+    {
+        return super.size() + REFERENCE_SIZE;
+    }
+    
     @Override
     public RelIdArray upgradeIfNeeded( RelIdArray capabilitiesToMatch )
     {
@@ -72,6 +79,11 @@ public class RelIdArrayWithLoops extends RelIdArray
         {
             return this;
         }
+        if ( source.isOffHeap() )
+        {
+            source.copyTo( this );
+            return this;
+        }
         append( source, DirectionWrapper.OUTGOING );
         append( source, DirectionWrapper.INCOMING );
         append( source, DirectionWrapper.BOTH );
@@ -93,6 +93,33 @@ public class GlobalGraphOperations
         };
     }
 
+    /**
+     * Returns a scan over all nodes in the graph, which reads the node store
+     * directly in chunks without loading the nodes into the cache. It can be
+     * split up to be iterated by several threads, see {@link StoreScan}.
+     * Nodes created or deleted in the current transaction aren't reflected.
+     * 
+     * @return a scan over all nodes in the graph.
+     */
+    public StoreScan<Node> scanAllNodes()
+    {
+        return new NodeScan( 0, nodeManager.getHighestPossibleIdInUse( Node.class ) + 1 );
+    }
+
+    /**
+     * Returns a scan over all relationships in the graph, which reads the
+     * relationship store directly in chunks without loading the relationships
+     * into the cache. It can be split up to be iterated by several threads,
+     * see {@link StoreScan}. Relationships created or deleted in the current
+     * transaction aren't reflected.
+     * 
+     * @return a scan over all relationships in the graph.
+     */
+    public StoreScan<Relationship> scanAllRelationships()
+    {
+        return new RelationshipScan( 0, nodeManager.getHighestPossibleIdInUse( Relationship.class ) + 1 );
+    }
+
     /**
      * Returns all relationship types currently in the underlying store. Relationship types are
      * added to the underlying store the first time they are used in a successfully commited
@@ -107,4 +134,44 @@ public class GlobalGraphOperations
     {
         return nodeManager.getRelationshipTypes();
     }
+
+    private class NodeScan extends StoreScan<Node>
+    {
+        NodeScan( long fromId, long toId )
+        {
+            super( fromId, toId );
+        }
+
+        @Override
+        protected StoreScan<Node> newScan( long fromId, long toId )
+        {
+            return new NodeScan( fromId, toId );
+        }
+
+        @Override
+        protected Iterator<Node> iterator( long fromId, long toId )
+        {
+            return nodeManager.scanNodes( fromId, toId );
+        }
+    }
+
+    private class RelationshipScan extends StoreScan<Relationship>
+    {
+        RelationshipScan( long fromId, long toId )
+        {
+            super( fromId, toId );
+        }
+
+        @Override
+        protected StoreScan<Relationship> newScan( long fromId, long toId )
+        {
+            return new RelationshipScan( fromId, toId );
+        }
+
+        @Override
+        protected Iterator<Relationship> iterator( long fromId, long toId )
+        {
+            return nodeManager.scanRelationships( fromId, toId );
+        }
+    }
 }
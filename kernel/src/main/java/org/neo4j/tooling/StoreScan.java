@@ -0,0 +1,202 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.tooling;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.neo4j.helpers.collection.Visitor;
+
+/**
+ * A scan over a range of ids in a store, for example all nodes, see
+ * {@link GlobalGraphOperations#scanAllNodes()}. The store is read directly in
+ * chunks of records and the entities aren't loaded into the cache, which makes
+ * it a lot faster than {@link GlobalGraphOperations#getAllNodes()} for looking
+ * at the whole graph. Entities created or deleted in the current transaction
+ * aren't reflected in the scan.
+ * <p>
+ * Like a spliterator a scan can be partitioned with {@link #trySplit()}, so
+ * that the parts can be iterated by different threads.
+ * {@link #visitInParallel(int, Visitor)} does that using a pool of threads.
+ *
+ * @param <T> the type of entities the scan returns.
+ */
+public abstract class StoreScan<T> implements Iterable<T>
+{
+    private static final long MIN_SPLIT_SIZE = 8192;
+
+    private long fromId;
+    private final long toId;
+
+    protected StoreScan( long fromId, long toId )
+    {
+        this.fromId = fromId;
+        this.toId = toId;
+    }
+
+    /**
+     * Splits off the first half of the ids remaining in this scan into a new
+     * scan, leaving the second half in this scan.
+     *
+     * @return a scan over the first half of the ids, or {@code null} if this
+     *         scan is too small to be split.
+     */
+    public StoreScan<T> trySplit()
+    {
+        if ( estimateSize() < MIN_SPLIT_SIZE * 2 )
+        {
+            return null;
+        }
+        long middle = fromId + estimateSize() / 2;
+        StoreScan<T> prefix = newScan( fromId, middle );
+        fromId = middle;
+        return prefix;
+    }
+
+    /**
+     * @return the number of ids this scan covers, which is an upper bound of
+     *         the number of entities it will return.
+     */
+    public long estimateSize()
+    {
+        return Math.max( 0, toId - fromId );
+    }
+
+    /**
+     * Returns the entities in use in this scan, in id order.
+     */
+    @Override
+    public Iterator<T> iterator()
+    {
+        return iterator( fromId, toId );
+    }
+
+    /**
+     * Splits this scan into partitions and lets {@code threads} threads visit
+     * the entities in them. The {@code visitor} is called concurrently and
+     * must be thread safe. If it returns {@code true} the scan is stopped, but
+     * other threads may still visit a few entities before they notice.
+     *
+     * @param threads the number of threads to visit the entities with.
+     * @param visitor the visitor to call for each entity.
+     * @return {@code true} if the scan was stopped by the visitor.
+     */
+    public boolean visitInParallel( int threads, final Visitor<T> visitor )
+    {
+        if ( threads < 1 )
+        {
+            throw new IllegalArgumentException( "Illegal number of threads: " + threads );
+        }
+        final AtomicBoolean stopped = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool( threads );
+        try
+        {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for ( final StoreScan<T> partition : split( threads * 4 ) )
+            {
+                futures.add( executor.submit( new Callable<Void>()
+                {
+                    @Override
+                    public Void call()
+                    {
+                        for ( T entity : partition )
+                        {
+                            if ( stopped.get() )
+                            {
+                                break;
+                            }
+                            if ( visitor.visit( entity ) )
+                            {
+                                stopped.set( true );
+                            }
+                        }
+                        return null;
+                    }
+                } ) );
+            }
+            for ( Future<Void> future : futures )
+            {
+                future.get();
+            }
+            return stopped.get();
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( "Interrupted while scanning", e );
+        }
+        catch ( ExecutionException e )
+        {
+            Throwable cause = e.getCause();
+            if ( cause instanceof RuntimeException )
+            {
+                throw (RuntimeException) cause;
+            }
+            if ( cause instanceof Error )
+            {
+                throw (Error) cause;
+            }
+            throw new RuntimeException( cause );
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<StoreScan<T>> split( int maxPartitions )
+    {
+        List<StoreScan<T>> partitions = new ArrayList<StoreScan<T>>();
+        partitions.add( this );
+        boolean splitAny = true;
+        while ( splitAny && partitions.size() < maxPartitions )
+        {
+            splitAny = false;
+            for ( int i = partitions.size() - 1; i >= 0 && partitions.size() < maxPartitions; i-- )
+            {
+                StoreScan<T> prefix = partitions.get( i ).trySplit();
+                if ( prefix != null )
+                {
+                    partitions.add( i, prefix );
+                    splitAny = true;
+                }
+            }
+        }
+        return partitions;
+    }
+
+    /**
+     * @return a scan of the same kind as this one covering the given ids.
+     */
+    protected abstract StoreScan<T> newScan( long fromId, long toId );
+
+    /**
+     * @return the entities in use with ids from {@code fromId} (inclusive)
+     *         to {@code toId} (exclusive).
+     */
+    protected abstract Iterator<T> iterator( long fromId, long toId );
+}
@@ -0,0 +1,199 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class TestPrimitiveLongCache
+{
+    @Test
+    public void testCreate()
+    {
+        try
+        {
+            new PrimitiveLongCache<Object>( "TestCache", 0 );
+            fail( "Illegal maxSize should throw exception" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+        PrimitiveLongCache<Object> cache = new PrimitiveLongCache<Object>( "TestCache", 70 );
+        assertTrue( cache.maxSize() >= 70 );
+        try
+        {
+            cache.put( 1L, null );
+            fail( "Null element should throw exception" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+        try
+        {
+            cache.get( (Long) null );
+            fail( "Null key should throw exception" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+    }
+
+    @Test
+    public void testPutGetRemove()
+    {
+        PrimitiveLongCache<String> cache = new PrimitiveLongCache<String>( "TestCache", 100 );
+        cache.put( 0L, "zero" );
+        cache.put( 1L, "one" );
+        cache.put( -1L, "minus one" );
+        assertEquals( "zero", cache.get( 0L ) );
+        assertEquals( "one", cache.get( 1L ) );
+        assertEquals( "minus one", cache.get( -1L ) );
+        assertNull( cache.get( 2L ) );
+        assertEquals( 3, cache.size() );
+        assertEquals( 3, cache.hitCount() );
+        assertEquals( 1, cache.missCount() );
+
+        cache.put( 1L, "uno" );
+        assertEquals( "uno", cache.get( 1L ) );
+        assertEquals( 3, cache.size() );
+
+        assertEquals( "uno", cache.remove( 1L ) );
+        assertNull( cache.remove( 1L ) );
+        assertNull( cache.get( 1L ) );
+        assertEquals( 2, cache.size() );
+
+        cache.clear();
+        assertEquals( 0, cache.size() );
+        assertNull( cache.get( 0L ) );
+    }
+
+    @Test
+    public void testSizeIsBounded()
+    {
+        PrimitiveLongCache<Long> cache = new PrimitiveLongCache<Long>( "TestCache", 1000 );
+        for ( long i = 0; i < 100000; i++ )
+        {
+            cache.put( i, Long.valueOf( i ) );
+        }
+        assertTrue( cache.size() <= cache.maxSize() );
+        int found = 0;
+        for ( long i = 0; i < 100000; i++ )
+        {
+            Long value = cache.get( i );
+            if ( value != null )
+            {
+                assertEquals( i, value.longValue() );
+                found++;
+            }
+        }
+        assertEquals( cache.size(), found );
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedInBucket()
+    {
+        // a single bucket, so every key competes for the same slots
+        PrimitiveLongCache<Long> cache = new PrimitiveLongCache<Long>( "TestCache", 1 );
+        assertEquals( PrimitiveLongCache.BUCKET_SIZE, cache.maxSize() );
+        for ( long i = 0; i < PrimitiveLongCache.BUCKET_SIZE; i++ )
+        {
+            cache.put( i, Long.valueOf( i ) );
+        }
+        cache.put( PrimitiveLongCache.BUCKET_SIZE + 1L, Long.valueOf( 0 ) );
+        for ( long i = 1; i < PrimitiveLongCache.BUCKET_SIZE; i++ )
+        {
+            cache.get( i );
+        }
+        cache.put( PrimitiveLongCache.BUCKET_SIZE + 2L, Long.valueOf( 0 ) );
+        assertNull( cache.get( 0L ) );
+        assertNull( cache.get( PrimitiveLongCache.BUCKET_SIZE + 1L ) );
+        for ( long i = 1; i < PrimitiveLongCache.BUCKET_SIZE; i++ )
+        {
+            assertEquals( Long.valueOf( i ), cache.get( i ) );
+        }
+    }
+
+    @Test
+    public void testConcurrentReadersNeverSeeWrongValue() throws Exception
+    {
+        final PrimitiveLongCache<Long> cache = new PrimitiveLongCache<Long>( "TestCache", 64 );
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Collection<Thread> threads = new ArrayList<Thread>();
+        for ( int t = 0; t < 4; t++ )
+        {
+            final int offset = t;
+            threads.add( new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        for ( long i = 0; i < 200000; i++ )
+                        {
+                            long key = ( i * 7 + offset ) % 1000;
+                            if ( i % 3 == 0 )
+                            {
+                                cache.put( key, Long.valueOf( key ) );
+                            }
+                            else if ( i % 17 == 0 )
+                            {
+                                cache.remove( key );
+                            }
+                            else
+                            {
+                                Long value = cache.get( key );
+                                if ( value != null && value.longValue() != key )
+                                {
+                                    throw new AssertionError( "Got " + value + " for " + key );
+                                }
+                            }
+                        }
+                    }
+                    catch ( Throwable e )
+                    {
+                        failure.compareAndSet( null, e );
+                    }
+                }
+            } );
+        }
+        for ( Thread thread : threads )
+        {
+            thread.start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        if ( failure.get() != null )
+        {
+            throw new AssertionError( failure.get() );
+        }
+        assertTrue( cache.size() <= cache.maxSize() );
+    }
+}
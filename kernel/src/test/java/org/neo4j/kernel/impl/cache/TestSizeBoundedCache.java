@@ -0,0 +1,150 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class TestSizeBoundedCache
+{
+    private static class Entity implements EntityWithSize
+    {
+        private final long id;
+        private int size;
+
+        Entity( long id, int size )
+        {
+            this.id = id;
+            this.size = size;
+        }
+
+        public long getId()
+        {
+            return id;
+        }
+
+        public int size()
+        {
+            return size;
+        }
+    }
+
+    @Test
+    public void testCreate()
+    {
+        try
+        {
+            new SizeBoundedCache<Entity>( "TestCache", 0 );
+            fail( "Illegal max bytes should throw exception" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+        SizeBoundedCache<Entity> cache = new SizeBoundedCache<Entity>( "TestCache", 1000 );
+        try
+        {
+            cache.put( 1L, null );
+            fail( "Null element should throw exception" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+        try
+        {
+            cache.get( null );
+            fail( "Null key should throw exception" );
+        }
+        catch ( IllegalArgumentException e )
+        { // good
+        }
+    }
+
+    @Test
+    public void testPutGetRemove()
+    {
+        SizeBoundedCache<Entity> cache = new SizeBoundedCache<Entity>( "TestCache", 1024 * 1024 );
+        Entity one = new Entity( 1, 100 );
+        Entity two = new Entity( 2, 200 );
+        cache.put( 1L, one );
+        cache.put( 2L, two );
+        assertSame( one, cache.get( 1L ) );
+        assertSame( two, cache.get( 2L ) );
+        assertNull( cache.get( 3L ) );
+        assertEquals( 2, cache.size() );
+        assertEquals( 300, cache.usedBytes() );
+        assertEquals( 2, cache.hitCount() );
+        assertEquals( 1, cache.missCount() );
+
+        cache.put( 1L, new Entity( 1, 50 ) );
+        assertEquals( 250, cache.usedBytes() );
+        assertSame( two, cache.remove( 2L ) );
+        assertNull( cache.remove( 2L ) );
+        assertEquals( 50, cache.usedBytes() );
+        cache.clear();
+        assertEquals( 0, cache.size() );
+        assertEquals( 0, cache.usedBytes() );
+        assertEquals( 0, cache.evictionCount() );
+    }
+
+    @Test
+    public void testStaysWithinBudget()
+    {
+        long maxBytes = 16 * 1000;
+        SizeBoundedCache<Entity> cache = new SizeBoundedCache<Entity>( "TestCache", maxBytes );
+        for ( long id = 0; id < 1000; id++ )
+        {
+            cache.put( id, new Entity( id, 100 ) );
+            assertTrue( cache.usedBytes() <= maxBytes );
+        }
+        assertTrue( cache.evictionCount() > 0 );
+        assertEquals( 1000, cache.size() + cache.evictionCount() );
+        assertEquals( cache.size() * 100L, cache.usedBytes() );
+        // the most recently put entity is never the one to go
+        assertTrue( cache.get( 999L ) != null );
+    }
+
+    @Test
+    public void testUpdateSize()
+    {
+        SizeBoundedCache<Entity> cache = new SizeBoundedCache<Entity>( "TestCache", 16 * 1000 );
+        Entity entity = new Entity( 1, 10 );
+        cache.put( 1L, entity );
+        entity.size = 500;
+        cache.updateSize( entity );
+        assertEquals( 500, cache.usedBytes() );
+        assertSame( entity, cache.get( 1L ) );
+
+        // an entity not in the cache isn't added by an update
+        cache.updateSize( new Entity( 2, 10 ) );
+        assertNull( cache.get( 2L ) );
+
+        // an entity outgrowing the budget is evicted
+        entity.size = 100 * 1000;
+        cache.updateSize( entity );
+        assertNull( cache.get( 1L ) );
+        assertEquals( 0, cache.usedBytes() );
+        assertEquals( 1, cache.evictionCount() );
+    }
+}
@@ -20,17 +20,24 @@
 package org.neo4j.kernel.impl.core;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.neo4j.graphdb.DynamicRelationshipType;
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
 import org.neo4j.helpers.collection.MapUtil;
 import org.neo4j.kernel.Config;
 import org.neo4j.kernel.EmbeddedGraphDatabase;
 import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
+import org.neo4j.kernel.impl.cache.Cache;
+import org.neo4j.kernel.impl.cache.PrimitiveLongCache;
+import org.neo4j.kernel.impl.cache.SizeBoundedCache;
 import org.neo4j.kernel.impl.core.NodeManager.CacheType;
 
 public class TestCacheTypes extends AbstractNeo4jTestCase
@@ -96,12 +103,55 @@ public class TestCacheTypes extends AbstractNeo4jTestCase
         db.shutdown();
     }
 
+    @Test
+    public void testPrimitiveCache()
+    {
+        GraphDatabaseService db = new EmbeddedGraphDatabase( getStorePath( "primitive-cache-db" ), MapUtil.stringMap( Config.CACHE_TYPE,
+                "primitive", Config.NODE_CACHE_SIZE, "1000" ) );
+        NodeManager nodeManager = ((EmbeddedGraphDatabase) db).getConfig().getGraphDbModule().getNodeManager();
+        assertEquals( CacheType.primitive, nodeManager.getCacheType() );
+        for ( Cache<?, ?> cache : nodeManager.caches() )
+        {
+            assertTrue( cache instanceof PrimitiveLongCache );
+        }
+        db.shutdown();
+    }
+
+    @Test
+    public void testSizeBoundedCache()
+    {
+        GraphDatabaseService db = new EmbeddedGraphDatabase( getStorePath( "bounded-cache-db" ), MapUtil.stringMap(
+                Config.CACHE_TYPE, "bounded", Config.NODE_CACHE_MEMORY, "1M", Config.RELATIONSHIP_CACHE_MEMORY, "1M" ) );
+        NodeManager nodeManager = ((EmbeddedGraphDatabase) db).getConfig().getGraphDbModule().getNodeManager();
+        assertEquals( CacheType.bounded, nodeManager.getCacheType() );
+        Transaction tx = db.beginTx();
+        Node node = db.createNode();
+        node.setProperty( "name", "a name which takes up some space" );
+        node.createRelationshipTo( db.createNode(), DynamicRelationshipType.withName( "KNOWS" ) );
+        tx.success();
+        tx.finish();
+        nodeManager.clearCache();
+
+        node = db.getNodeById( node.getId() );
+        node.getProperty( "name" );
+        node.getRelationships().iterator().next();
+        for ( Cache<?, ?> cache : nodeManager.caches() )
+        {
+            SizeBoundedCache<?> bounded = (SizeBoundedCache<?>) cache;
+            assertEquals( 1024 * 1024, bounded.maxBytes() );
+            assertTrue( bounded.usedBytes() > 0 );
+        }
+        db.shutdown();
+    }
+
     @Test
     public void testInvalidCache()
     {
         try
         {
-            newDb( "whatever" );
+            // Own store since a failed startup may leave the store locked
+            new EmbeddedGraphDatabase( getStorePath( "invalid-cache-db" ),
+                    MapUtil.stringMap( Config.CACHE_TYPE, "whatever" ) );
             fail( "Should've failed" );
         }
         catch ( IllegalArgumentException e ) { /* Good */ }
@@ -0,0 +1,157 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.neo4j.helpers.collection.IteratorUtil.count;
+import static org.neo4j.helpers.collection.MapUtil.stringMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.impl.util.RelIdArray;
+import org.neo4j.test.ImpermanentGraphDatabase;
+
+public class TestDenseNodes
+{
+    private static final int GRAB_SIZE = 10;
+    private static final int THRESHOLD = 25;
+    private static final RelationshipType TYPE1 = DynamicRelationshipType.withName( "TYPE1" );
+    private static final RelationshipType TYPE2 = DynamicRelationshipType.withName( "TYPE2" );
+
+    private ImpermanentGraphDatabase db;
+    private NodeManager nodeManager;
+
+    @Before
+    public void startDb()
+    {
+        db = new ImpermanentGraphDatabase( stringMap( "relationship_grab_size", String.valueOf( GRAB_SIZE ),
+                Config.DENSE_NODE_THRESHOLD, String.valueOf( THRESHOLD ) ) );
+        nodeManager = db.getConfig().getGraphDbModule().getNodeManager();
+    }
+
+    @After
+    public void stopDb()
+    {
+        db.shutdown();
+    }
+
+    private Node createDenseNode( int relationshipsOfEachType )
+    {
+        Transaction tx = db.beginTx();
+        Node node = db.createNode();
+        for ( int i = 0; i < relationshipsOfEachType; i++ )
+        {
+            node.createRelationshipTo( db.createNode(), TYPE1 );
+            db.createNode().createRelationshipTo( node, TYPE2 );
+        }
+        node.createRelationshipTo( node, TYPE1 );
+        tx.success();
+        tx.finish();
+        nodeManager.clearCache();
+        return node;
+    }
+
+    private void assertOffHeap( Node node )
+    {
+        for ( RelIdArray ids : nodeManager.getNodeIfCached( node.getId() ).getRelationshipIds() )
+        {
+            assertTrue( ids.isOffHeap() );
+        }
+    }
+
+    @Test
+    public void relationshipsOfDenseNodeAreKeptOffHeap()
+    {
+        Node node = createDenseNode( 50 );
+        assertEquals( 101, count( node.getRelationships() ) );
+        assertOffHeap( node );
+        assertEquals( 51, count( node.getRelationships( TYPE1 ) ) );
+        assertEquals( 51, count( node.getRelationships( Direction.OUTGOING ) ) );
+        assertEquals( 51, count( node.getRelationships( Direction.INCOMING ) ) );
+        assertEquals( 50, count( node.getRelationships( TYPE2, Direction.INCOMING ) ) );
+        assertEquals( 0, count( node.getRelationships( TYPE2, Direction.OUTGOING ) ) );
+    }
+
+    @Test
+    public void commitToDenseNode()
+    {
+        Node node = createDenseNode( 50 );
+        assertEquals( 101, count( node.getRelationships() ) );
+
+        Transaction tx = db.beginTx();
+        node.getRelationships( TYPE1, Direction.OUTGOING ).iterator().next().delete();
+        Relationship added = node.createRelationshipTo( db.createNode(), TYPE2 );
+        assertEquals( 101, count( node.getRelationships() ) );
+        tx.success();
+        tx.finish();
+
+        assertOffHeap( node );
+        assertEquals( 101, count( node.getRelationships() ) );
+        assertEquals( 51, count( node.getRelationships( TYPE2 ) ) );
+        assertEquals( added, node.getRelationships( TYPE2, Direction.OUTGOING ).iterator().next() );
+    }
+
+    @Test
+    public void denseRelationshipsOutliveEvictionOfTheNode()
+    {
+        Node node = createDenseNode( 50 );
+        assertEquals( 101, count( node.getRelationships() ) );
+        assertNotNull( nodeManager.getDenseRelationships( node.getId() ) );
+
+        @SuppressWarnings( "unchecked" )
+        org.neo4j.kernel.impl.cache.Cache<Long, ?> nodeCache =
+                (org.neo4j.kernel.impl.cache.Cache<Long, ?>) nodeManager.getNodeCache();
+        nodeCache.remove( node.getId() );
+        assertEquals( 101, count( node.getRelationships() ) );
+        assertOffHeap( node );
+
+        // a commit while the node isn't cached makes the kept ids out of date
+        Transaction tx = db.beginTx();
+        node.createRelationshipTo( db.createNode(), TYPE1 );
+        nodeCache.remove( node.getId() );
+        tx.success();
+        tx.finish();
+        assertNull( nodeManager.getDenseRelationships( node.getId() ) );
+        assertEquals( 102, count( node.getRelationships() ) );
+    }
+
+    @Test
+    public void sparseNodeStaysOnHeap()
+    {
+        Node node = createDenseNode( 5 );
+        assertEquals( 11, count( node.getRelationships() ) );
+        for ( RelIdArray ids : nodeManager.getNodeIfCached( node.getId() ).getRelationshipIds() )
+        {
+            assertTrue( !ids.isOffHeap() );
+        }
+        assertNull( nodeManager.getDenseRelationships( node.getId() ) );
+    }
+}
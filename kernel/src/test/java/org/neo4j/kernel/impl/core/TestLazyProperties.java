@@ -0,0 +1,176 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.neo4j.helpers.collection.IteratorUtil.count;
+import static org.neo4j.helpers.collection.MapUtil.stringMap;
+
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.AbstractGraphDatabase;
+import org.neo4j.kernel.Config;
+import org.neo4j.test.ImpermanentGraphDatabase;
+
+public class TestLazyProperties
+{
+    private static final String LONG_STRING = longString( 1000 );
+
+    private AbstractGraphDatabase db;
+    private NodeManager nodeManager;
+
+    @Before
+    public void startDb()
+    {
+        db = new ImpermanentGraphDatabase( stringMap( Config.LAZY_PROPERTY_LOADING, "true" ) );
+        nodeManager = db.getConfig().getGraphDbModule().getNodeManager();
+    }
+
+    @After
+    public void stopDb()
+    {
+        db.shutdown();
+    }
+
+    private static String longString( int length )
+    {
+        char[] chars = new char[length];
+        for ( int i = 0; i < length; i++ )
+        {
+            chars[i] = (char) ( 'a' + i % 26 );
+        }
+        return new String( chars );
+    }
+
+    private Node createNodeWithProperties( int count )
+    {
+        Transaction tx = db.beginTx();
+        Node node = db.createNode();
+        for ( int i = 0; i < count; i++ )
+        {
+            node.setProperty( "key" + i, i );
+        }
+        node.setProperty( "text", LONG_STRING );
+        node.setProperty( "array", new long[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 } );
+        tx.success();
+        tx.finish();
+        return node;
+    }
+
+    private int keyId( String key )
+    {
+        return nodeManager.index( key ).iterator().next().getKeyId();
+    }
+
+    @Test
+    public void onlyPropertiesWhichAreReadAreKeptInTheCache()
+    {
+        Node node = createNodeWithProperties( 20 );
+        nodeManager.clearCache();
+
+        assertEquals( 7, node.getProperty( "key7" ) );
+        assertEquals( LONG_STRING, node.getProperty( "text" ) );
+        assertFalse( node.hasProperty( "missing" ) );
+        assertEquals( "default", node.getProperty( "missing", "default" ) );
+
+        NodeImpl nodeImpl = nodeManager.getNodeIfCached( node.getId() );
+        assertNull( nodeImpl.allProperties() );
+        assertNotNull( nodeImpl.getLazyProperty( nodeManager, keyId( "key7" ) ) );
+        assertEquals( LONG_STRING, nodeImpl.getLazyProperty( nodeManager, keyId( "text" ) ).getValue() );
+
+        // reading all the keys loads all the properties
+        assertEquals( 22, count( node.getPropertyKeys() ) );
+        assertNotNull( nodeImpl.allProperties() );
+        assertTrue( Arrays.equals( new long[] { 1, 2, 3, 4, 5, 6, 7, 8, 9, 10 },
+                (long[]) node.getProperty( "array" ) ) );
+    }
+
+    @Test
+    public void dynamicValuesAreNotLoadedUntilRead()
+    {
+        Node node = createNodeWithProperties( 2 );
+        nodeManager.clearCache();
+
+        NodeImpl nodeImpl = nodeManager.getNodeForProxy( node.getId() );
+        assertNull( nodeImpl.getLazyProperty( nodeManager, keyId( "text" ) ).getValue() );
+        assertEquals( LONG_STRING, node.getProperty( "text" ) );
+        assertEquals( LONG_STRING, nodeImpl.getLazyProperty( nodeManager, keyId( "text" ) ).getValue() );
+    }
+
+    @Test
+    public void lazilyReadPropertiesSeeCommittedChanges()
+    {
+        Node node = createNodeWithProperties( 10 );
+        nodeManager.clearCache();
+        assertEquals( 3, node.getProperty( "key3" ) );
+        assertEquals( 4, node.getProperty( "key4" ) );
+
+        Transaction tx = db.beginTx();
+        node.setProperty( "key3", 33 );
+        node.removeProperty( "key4" );
+        node.setProperty( "new", "value" );
+        assertEquals( 33, node.getProperty( "key3" ) );
+        assertFalse( node.hasProperty( "key4" ) );
+        tx.success();
+        tx.finish();
+
+        assertEquals( 33, node.getProperty( "key3" ) );
+        assertFalse( node.hasProperty( "key4" ) );
+        assertEquals( "value", node.getProperty( "new" ) );
+
+        nodeManager.clearCache();
+        assertEquals( 33, node.getProperty( "key3" ) );
+        assertFalse( node.hasProperty( "key4" ) );
+        assertEquals( "value", node.getProperty( "new" ) );
+        assertEquals( 5, node.getProperty( "key5" ) );
+    }
+
+    @Test
+    public void relationshipPropertiesAreLoadedLazily()
+    {
+        Transaction tx = db.beginTx();
+        Relationship relationship = db.createNode().createRelationshipTo( db.createNode(),
+                DynamicRelationshipType.withName( "KNOWS" ) );
+        for ( int i = 0; i < 10; i++ )
+        {
+            relationship.setProperty( "key" + i, "value" + i );
+        }
+        tx.success();
+        tx.finish();
+        nodeManager.clearCache();
+
+        assertEquals( "value8", relationship.getProperty( "key8" ) );
+        assertFalse( relationship.hasProperty( "missing" ) );
+        RelationshipImpl relImpl = nodeManager.getRelForProxy( relationship.getId() );
+        assertNull( relImpl.allProperties() );
+        assertEquals( "value2", relationship.getProperty( "key2" ) );
+    }
+}
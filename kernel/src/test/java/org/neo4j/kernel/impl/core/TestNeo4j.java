@@ -43,6 +43,7 @@ import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
 import org.neo4j.kernel.impl.MyRelTypes;
 import org.neo4j.kernel.impl.transaction.XaDataSourceManager;
 import org.neo4j.kernel.impl.transaction.xaframework.XaDataSource;
+import org.neo4j.test.ImpermanentGraphDatabase;
 import org.neo4j.tooling.GlobalGraphOperations;
 
 public class TestNeo4j extends AbstractNeo4jTestCase
@@ -319,8 +320,11 @@ public class TestNeo4j extends AbstractNeo4jTestCase
     @Test
     public void testMultipleShutdown()
     {
-        getGraphDb().shutdown();
-        getGraphDb().shutdown();
+        // Use a db of its own so that the shared one stays usable for
+        // whichever tests happen to run after this one
+        GraphDatabaseService db = new ImpermanentGraphDatabase();
+        db.shutdown();
+        db.shutdown();
     }
     
     @Test
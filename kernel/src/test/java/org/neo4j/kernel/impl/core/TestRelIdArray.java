@@ -34,8 +34,10 @@ import java.util.HashSet;
 import java.util.List;
 
 import org.junit.Test;
+import org.neo4j.kernel.impl.util.OffHeapRelIdArray;
 import org.neo4j.kernel.impl.util.RelIdArray;
 import org.neo4j.kernel.impl.util.RelIdArray.DirectionWrapper;
+import org.neo4j.kernel.impl.util.RelIdArrayWithLoops;
 import org.neo4j.kernel.impl.util.RelIdIterator;
 
 // TODO Add some tests for loops, i.e. add with direction BOTH.
@@ -143,10 +145,86 @@ public class TestRelIdArray
                 0L, 1L, justOverIntMax, justOverIntMax+1 ) ), new HashSet<Long>( asList( all ) ) );
     }
     
+    @Test
+    public void testOffHeap() throws Exception
+    {
+        RelIdArray array = new OffHeapRelIdArray( null );
+        long justOverIntMax = (long) Math.pow( 2, 32 )+3;
+        array.add( 10, OUTGOING );
+        array.add( justOverIntMax, OUTGOING );
+        array.add( 5, OUTGOING );
+        array.add( 7, INCOMING );
+        array.add( 8, BOTH );
+        assertEquals( 5, array.length() );
+        
+        assertEquals( Arrays.asList( 10L, justOverIntMax, 5L, 8L ), asList( array.iterator( OUTGOING ) ) );
+        assertEquals( Arrays.asList( 7L, 8L ), asList( array.iterator( INCOMING ) ) );
+        assertEquals( Arrays.asList( 10L, justOverIntMax, 5L, 7L, 8L ), asList( array ) );
+    }
+    
+    @Test
+    public void testOffHeapWithAddRemove() throws Exception
+    {
+        RelIdArray source = new RelIdArray( null );
+        for ( long id = 0; id < 1000; id++ )
+        {
+            source.add( id, id % 2 == 0 ? OUTGOING : INCOMING );
+        }
+        RelIdArray offHeap = OffHeapRelIdArray.copyOf( source );
+        assertEquals( asList( source ), asList( offHeap ) );
+        
+        RelIdArray add = new RelIdArrayWithLoops( null );
+        add.add( 2000, OUTGOING );
+        add.add( 2001, BOTH );
+        Collection<Long> remove = new HashSet<Long>( Arrays.asList( 0L, 501L, 2000L ) );
+        RelIdArray result = RelIdArray.from( offHeap, add, remove );
+        assertTrue( result.isOffHeap() );
+        assertEquals( 999, result.length() );
+        Collection<Long> expected = new HashSet<Long>( asList( source ) );
+        expected.removeAll( remove );
+        expected.add( 2001L );
+        assertEquals( expected, new HashSet<Long>( asList( result ) ) );
+        
+        // A heap array taking in the off heap ids
+        RelIdArray heap = new RelIdArray( null ).addAll( result );
+        assertFalse( heap.isOffHeap() );
+        assertEquals( expected, new HashSet<Long>( asList( heap ) ) );
+    }
+    
+    @Test
+    public void testIteratorMovesOverToOffHeap() throws Exception
+    {
+        RelIdArray array = new RelIdArray( null );
+        for ( long id = 0; id < 10; id++ )
+        {
+            array.add( id, OUTGOING );
+        }
+        RelIdIterator iterator = array.iterator( OUTGOING );
+        for ( long id = 0; id < 5; id++ )
+        {
+            assertEquals( id, iterator.next() );
+        }
+        RelIdArray offHeap = OffHeapRelIdArray.copyOf( array );
+        offHeap.add( 10, OUTGOING );
+        iterator = iterator.updateSource( offHeap );
+        iterator.doAnotherRound();
+        assertEquals( Arrays.asList( 5L, 6L, 7L, 8L, 9L, 10L ), asList( iterator ) );
+        
+        // more ids added while iterating show up after another round
+        offHeap.add( 11, OUTGOING );
+        iterator.doAnotherRound();
+        assertEquals( Arrays.asList( 11L ), asList( iterator ) );
+    }
+    
     private List<Long> asList( RelIdArray ids )
+    {
+        return asList( ids.iterator( DirectionWrapper.BOTH ) );
+    }
+    
+    private List<Long> asList( RelIdIterator iterator )
     {
         List<Long> result = new ArrayList<Long>();
-        for ( RelIdIterator iterator = ids.iterator( DirectionWrapper.BOTH ); iterator.hasNext(); )
+        while ( iterator.hasNext() )
         {
             result.add( iterator.next() );
         }
@@ -0,0 +1,342 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.neo4j.helpers.collection.IteratorUtil.count;
+import static org.neo4j.helpers.collection.MapUtil.stringMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.helpers.UTF8;
+import org.neo4j.kernel.AbstractGraphDatabase;
+import org.neo4j.kernel.CommonFactories;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.IdGeneratorFactory;
+import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
+import org.neo4j.kernel.impl.nioneo.store.CommonAbstractStore;
+import org.neo4j.kernel.impl.nioneo.store.FileSystemAbstraction;
+import org.neo4j.kernel.impl.nioneo.store.NeoStore;
+import org.neo4j.kernel.impl.nioneo.store.NodeRecord;
+import org.neo4j.kernel.impl.nioneo.store.NodeStore;
+import org.neo4j.kernel.impl.nioneo.xa.NeoStoreXaDataSource;
+import org.neo4j.kernel.impl.storemigration.CurrentDatabase;
+import org.neo4j.kernel.impl.storemigration.StoreMigrator;
+import org.neo4j.kernel.impl.storemigration.UpgradableDatabase;
+import org.neo4j.kernel.impl.util.FileUtils;
+import org.neo4j.kernel.impl.util.StringLogger;
+import org.neo4j.test.ImpermanentGraphDatabase;
+
+public class TestRelationshipGroups
+{
+    private static final int THRESHOLD = 20;
+    private static final RelationshipType TYPE1 = DynamicRelationshipType.withName( "TYPE1" );
+    private static final RelationshipType TYPE2 = DynamicRelationshipType.withName( "TYPE2" );
+    private static final RelationshipType TYPE3 = DynamicRelationshipType.withName( "TYPE3" );
+
+    private AbstractGraphDatabase db;
+
+    @After
+    public void stopDb()
+    {
+        if ( db != null )
+        {
+            db.shutdown();
+        }
+    }
+
+    private Map<String, String> config( int threshold )
+    {
+        return stringMap( Config.RELATIONSHIP_GROUPING_THRESHOLD, String.valueOf( threshold ) );
+    }
+
+    private NeoStore neoStore()
+    {
+        return ( (NeoStoreXaDataSource) db.getConfig().getTxModule().getXaDataSourceManager().getXaDataSource(
+                Config.DEFAULT_DATA_SOURCE_NAME ) ).getNeoStore();
+    }
+
+    private boolean isDense( long nodeId )
+    {
+        NodeRecord record = neoStore().getNodeStore().loadLightNode( nodeId );
+        return record != null && record.isDense();
+    }
+
+    private void clearCache()
+    {
+        db.getConfig().getGraphDbModule().getNodeManager().clearCache();
+    }
+
+    private Node createNodeWithRelationships( int relationshipsOfEachType )
+    {
+        Transaction tx = db.beginTx();
+        Node node = db.createNode();
+        for ( int i = 0; i < relationshipsOfEachType; i++ )
+        {
+            node.createRelationshipTo( db.createNode(), TYPE1 );
+            db.createNode().createRelationshipTo( node, TYPE2 );
+        }
+        node.createRelationshipTo( node, TYPE1 );
+        tx.success();
+        tx.finish();
+        clearCache();
+        return node;
+    }
+
+    private void assertRelationships( Node node, int relationshipsOfEachType )
+    {
+        assertEquals( 2 * relationshipsOfEachType + 1, count( node.getRelationships() ) );
+        clearCache();
+        assertEquals( relationshipsOfEachType + 1, count( node.getRelationships( TYPE1 ) ) );
+        assertEquals( relationshipsOfEachType + 1, count( node.getRelationships( Direction.OUTGOING, TYPE1 ) ) );
+        assertEquals( 1, count( node.getRelationships( Direction.INCOMING, TYPE1 ) ) );
+        assertEquals( relationshipsOfEachType, count( node.getRelationships( TYPE2, Direction.INCOMING ) ) );
+        assertEquals( 0, count( node.getRelationships( TYPE2, Direction.OUTGOING ) ) );
+        assertEquals( 0, count( node.getRelationships( TYPE3 ) ) );
+        for ( Relationship rel : node.getRelationships( TYPE2 ) )
+        {
+            assertEquals( node, rel.getEndNode() );
+        }
+    }
+
+    @Test
+    public void relationshipsOfNodeAboveThresholdGetGrouped()
+    {
+        db = new ImpermanentGraphDatabase( config( THRESHOLD ) );
+        Node dense = createNodeWithRelationships( 50 );
+        Node sparse = createNodeWithRelationships( 5 );
+        assertTrue( isDense( dense.getId() ) );
+        assertFalse( isDense( sparse.getId() ) );
+        assertRelationships( dense, 50 );
+        assertRelationships( sparse, 5 );
+    }
+
+    @Test
+    public void relationshipsAreNotGroupedByDefault()
+    {
+        db = new ImpermanentGraphDatabase();
+        Node node = createNodeWithRelationships( 50 );
+        assertFalse( isDense( node.getId() ) );
+        assertRelationships( node, 50 );
+    }
+
+    @Test
+    public void nodeGetsGroupedWhenItGrowsAboveThreshold()
+    {
+        db = new ImpermanentGraphDatabase( config( THRESHOLD ) );
+        Node node = createNodeWithRelationships( 5 );
+        assertFalse( isDense( node.getId() ) );
+
+        // relationships have to be loaded for the degree to be known
+        count( node.getRelationships() );
+        Transaction tx = db.beginTx();
+        for ( int i = 0; i < THRESHOLD; i++ )
+        {
+            node.createRelationshipTo( db.createNode(), TYPE3 );
+        }
+        assertEquals( 11 + THRESHOLD, count( node.getRelationships() ) );
+        tx.success();
+        tx.finish();
+
+        assertTrue( isDense( node.getId() ) );
+        clearCache();
+        assertEquals( THRESHOLD, count( node.getRelationships( TYPE3, Direction.OUTGOING ) ) );
+        assertEquals( 6, count( node.getRelationships( TYPE1 ) ) );
+        assertEquals( 5, count( node.getRelationships( Direction.INCOMING, TYPE2 ) ) );
+        assertEquals( 11 + THRESHOLD, count( node.getRelationships() ) );
+    }
+
+    @Test
+    public void typedRelationshipsOfGroupedNodeIncludeTransactionState()
+    {
+        db = new ImpermanentGraphDatabase( config( THRESHOLD ) );
+        Node node = createNodeWithRelationships( 50 );
+
+        Transaction tx = db.beginTx();
+        Relationship deleted = node.getRelationships( TYPE2 ).iterator().next();
+        deleted.delete();
+        clearCache();
+        Relationship added = node.createRelationshipTo( db.createNode(), TYPE3 );
+        assertEquals( 49, count( node.getRelationships( TYPE2 ) ) );
+        assertEquals( added, node.getSingleRelationship( TYPE3, Direction.OUTGOING ) );
+        tx.success();
+        tx.finish();
+
+        clearCache();
+        assertEquals( 49, count( node.getRelationships( TYPE2 ) ) );
+        assertEquals( added, node.getSingleRelationship( TYPE3, Direction.OUTGOING ) );
+        assertEquals( 101, count( node.getRelationships() ) );
+    }
+
+    @Test
+    public void deleteGroupedNodeWithItsRelationships()
+    {
+        db = new ImpermanentGraphDatabase( config( THRESHOLD ) );
+        Node node = createNodeWithRelationships( 50 );
+        Transaction tx = db.beginTx();
+        node.delete();
+        for ( Relationship rel : node.getRelationships() )
+        {
+            rel.delete();
+        }
+        tx.success();
+        tx.finish();
+        assertFalse( isDense( node.getId() ) );
+    }
+
+    @Test
+    public void groupedNodeWithRelationshipsCannotBeDeleted()
+    {
+        db = new ImpermanentGraphDatabase( config( THRESHOLD ) );
+        Node node = createNodeWithRelationships( 50 );
+        Transaction tx = db.beginTx();
+        node.delete();
+        tx.success();
+        try
+        {
+            tx.finish();
+            fail( "Shouldn't be able to delete a node which still has relationships" );
+        }
+        catch ( RuntimeException e )
+        {   // Good
+        }
+        assertTrue( isDense( node.getId() ) );
+        assertRelationships( node, 50 );
+    }
+
+    @Test
+    public void groupsSurviveRestart()
+    {
+        String path = AbstractNeo4jTestCase.getStorePath( "relationship-groups" );
+        AbstractNeo4jTestCase.deleteFileOrDirectory( new File( path ) );
+        db = new EmbeddedGraphDatabase( path, config( THRESHOLD ) );
+        Node node = createNodeWithRelationships( 50 );
+        db.shutdown();
+
+        db = new EmbeddedGraphDatabase( path, config( THRESHOLD ) );
+        node = db.getNodeById( node.getId() );
+        assertTrue( isDense( node.getId() ) );
+        assertRelationships( node, 50 );
+    }
+
+    @Test
+    public void existingNodesCanBeGrouped()
+    {
+        db = new ImpermanentGraphDatabase();
+        Node dense = createNodeWithRelationships( 50 );
+        Node sparse = createNodeWithRelationships( 5 );
+        StoreMigrator.groupDenseNodes( neoStore(), THRESHOLD );
+        clearCache();
+
+        assertTrue( isDense( dense.getId() ) );
+        assertFalse( isDense( sparse.getId() ) );
+        assertRelationships( dense, 50 );
+        assertRelationships( sparse, 5 );
+    }
+
+    @Test
+    public void storesOfThePreviousVersionAreUpgraded() throws IOException
+    {
+        String path = AbstractNeo4jTestCase.getStorePath( "relationship-groups-upgrade" );
+        // the upgrade leaves an upgrade_backup directory behind
+        FileUtils.deleteRecursively( new File( path ) );
+        db = new EmbeddedGraphDatabase( path, config( THRESHOLD ) );
+        Node dense = createNodeWithRelationships( 50 );
+        Node sparse = createNodeWithRelationships( 5 );
+        db.shutdown();
+        db = null;
+        downgradeToPreviousVersion( new File( path ) );
+
+        Map<String, String> config = config( THRESHOLD );
+        config.put( Config.ALLOW_STORE_UPGRADE, "true" );
+        db = new EmbeddedGraphDatabase( path, config );
+        assertEquals( CommonAbstractStore.ALL_STORES_VERSION,
+                NeoStore.versionLongToString( neoStore().getStoreVersion() ) );
+        assertTrue( isDense( dense.getId() ) );
+        assertFalse( isDense( sparse.getId() ) );
+        dense = db.getNodeById( dense.getId() );
+        sparse = db.getNodeById( sparse.getId() );
+        assertRelationships( dense, 50 );
+        assertRelationships( sparse, 5 );
+    }
+
+    /**
+     * Rewrites the store in <code>storeDir</code> the way
+     * {@link UpgradableDatabase#PREVIOUS_VERSION} would have written it, that
+     * is with node records lacking the byte of the dense flag.
+     */
+    private static void downgradeToPreviousVersion( File storeDir ) throws IOException
+    {
+        Map<Object, Object> config = new HashMap<Object, Object>();
+        config.put( IdGeneratorFactory.class, CommonFactories.defaultIdGeneratorFactory() );
+        config.put( FileSystemAbstraction.class, CommonFactories.defaultFileSystemAbstraction() );
+        config.put( StringLogger.class, StringLogger.SYSTEM );
+        config.put( "neo_store", new File( storeDir, NeoStore.DEFAULT_NAME ).getPath() );
+        NeoStore neoStore = new NeoStore( config );
+        neoStore.setStoreVersion( NeoStore.versionStringToLong( UpgradableDatabase.PREVIOUS_VERSION ) );
+        neoStore.close();
+
+        for ( Map.Entry<String, String> entry : CurrentDatabase.fileNamesToTypeDescriptors.entrySet() )
+        {
+            RandomAccessFile file = new RandomAccessFile( new File( storeDir, entry.getKey() ), "rw" );
+            try
+            {
+                byte[] trailer = UTF8.encode( CommonAbstractStore.buildTypeDescriptorAndVersion( entry.getValue() ) );
+                long length = file.length() - trailer.length;
+                if ( NodeStore.TYPE_DESCRIPTOR.equals( entry.getValue() ) )
+                {
+                    byte[] record = new byte[NodeStore.RECORD_SIZE];
+                    long records = length / NodeStore.RECORD_SIZE;
+                    for ( long id = 0; id < records; id++ )
+                    {
+                        file.seek( id * NodeStore.RECORD_SIZE );
+                        file.readFully( record );
+                        file.seek( id * (NodeStore.RECORD_SIZE - 1) );
+                        file.write( record, 0, NodeStore.RECORD_SIZE - 1 );
+                    }
+                    length = records * (NodeStore.RECORD_SIZE - 1);
+                }
+                file.seek( length );
+                file.write( UTF8.encode( entry.getValue() + " " + UpgradableDatabase.PREVIOUS_VERSION ) );
+                file.setLength( file.getFilePointer() );
+            }
+            finally
+            {
+                file.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
+
+public class TestConcurrentPersistenceWindowPool
+{
+    private static final int RECORD_SIZE = 8;
+    private static final int RECORD_COUNT = 20000;
+
+    private File file;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+
+    @Before
+    public void createStoreFile() throws Exception
+    {
+        File path = new File( AbstractNeo4jTestCase.getStorePath( "concurrent-pool" ) );
+        path.mkdirs();
+        file = new File( path, "records.db" );
+        file.delete();
+        raf = new RandomAccessFile( file, "rw" );
+        raf.setLength( RECORD_SIZE * RECORD_COUNT );
+        channel = raf.getChannel();
+    }
+
+    @After
+    public void deleteStoreFile() throws Exception
+    {
+        raf.close();
+        assertTrue( file.delete() );
+    }
+
+    @Test
+    public void readsBackWrittenRecordsWhileBricksAreRemapped() throws Exception
+    {
+        // room for only a fraction of the file so that both bricks and rows are used
+        WindowPool pool = new ConcurrentPersistenceWindowPool( "records", RECORD_SIZE,
+                channel, RECORD_SIZE * RECORD_COUNT / 4, true, false );
+        for ( long id = 0; id < RECORD_COUNT; id++ )
+        {
+            write( pool, id, id * 3 );
+        }
+        // enough misses to trigger a couple of brick refreshes
+        for ( int round = 0; round < 6; round++ )
+        {
+            for ( long id = 0; id < RECORD_COUNT; id++ )
+            {
+                assertEquals( id * 3, read( pool, id ) );
+            }
+        }
+        WindowPoolStats stats = pool.getStats();
+        assertTrue( stats.getHitCount() > 0 );
+        assertTrue( stats.getMissCount() > 0 );
+        pool.close();
+    }
+
+    @Test
+    public void concurrentReadersAndWritersSeeTheirOwnRecords() throws Exception
+    {
+        final WindowPool pool = new ConcurrentPersistenceWindowPool( "records", RECORD_SIZE,
+                channel, RECORD_SIZE * RECORD_COUNT / 2, true, false );
+        final int threadCount = 8;
+        final int recordsPerThread = RECORD_COUNT / threadCount;
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for ( int t = 0; t < threadCount; t++ )
+        {
+            final long first = t * recordsPerThread;
+            Thread thread = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        for ( int round = 1; round <= 10; round++ )
+                        {
+                            for ( long id = first; id < first + recordsPerThread; id++ )
+                            {
+                                write( pool, id, id * round );
+                            }
+                            for ( long id = first; id < first + recordsPerThread; id++ )
+                            {
+                                assertEquals( id * round, read( pool, id ) );
+                            }
+                        }
+                    }
+                    catch ( Throwable e )
+                    {
+                        failure.compareAndSet( null, e );
+                    }
+                }
+            };
+            threads.add( thread );
+            thread.start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        if ( failure.get() != null )
+        {
+            throw new RuntimeException( failure.get() );
+        }
+        pool.close();
+    }
+
+    private static void write( WindowPool pool, long id, long value )
+    {
+        PersistenceWindow window = pool.acquire( id, OperationType.WRITE );
+        try
+        {
+            window.getOffsettedBuffer( id ).putLong( value );
+        }
+        finally
+        {
+            pool.release( window );
+        }
+    }
+
+    private static long read( WindowPool pool, long id )
+    {
+        PersistenceWindow window = pool.acquire( id, OperationType.READ );
+        try
+        {
+            return window.getOffsettedBuffer( id ).getLong();
+        }
+        finally
+        {
+            pool.release( window );
+        }
+    }
+}
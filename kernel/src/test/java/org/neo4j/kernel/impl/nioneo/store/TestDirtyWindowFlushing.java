@@ -0,0 +1,179 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.helpers.collection.MapUtil;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
+import org.neo4j.kernel.impl.nioneo.xa.NeoStoreXaDataSource;
+
+public class TestDirtyWindowFlushing
+{
+    private static final int RECORD_SIZE = 8;
+    private static final int RECORD_COUNT = 10000;
+
+    private final File path = new File( AbstractNeo4jTestCase.getStorePath( "dirty-windows" ) );
+    private RandomAccessFile file;
+    private FileChannel channel;
+
+    @Before
+    public void createStoreFile() throws Exception
+    {
+        AbstractNeo4jTestCase.deleteFileOrDirectory( path );
+        path.mkdirs();
+        file = new RandomAccessFile( new File( path, "records.db" ), "rw" );
+        file.setLength( RECORD_SIZE * RECORD_COUNT );
+        channel = file.getChannel();
+    }
+
+    @After
+    public void closeStoreFile() throws Exception
+    {
+        file.close();
+    }
+
+    @Test
+    public void standardPoolFlushesDirtyWindowsInSteps() throws Exception
+    {
+        flushesDirtyWindowsInSteps( new PersistenceWindowPool( "records", RECORD_SIZE, channel,
+                RECORD_SIZE * RECORD_COUNT * 2, false, false ) );
+    }
+
+    @Test
+    public void concurrentPoolFlushesDirtyWindowsInSteps() throws Exception
+    {
+        flushesDirtyWindowsInSteps( new ConcurrentPersistenceWindowPool( "records", RECORD_SIZE, channel,
+                RECORD_SIZE * RECORD_COUNT * 2, false, false ) );
+    }
+
+    @Test
+    public void pageCachedPoolFlushesDirtyWindowsInSteps() throws Exception
+    {
+        flushesDirtyWindowsInSteps( new PageCachedWindowPool( "records", RECORD_SIZE, channel,
+                new PageCache( RECORD_SIZE * RECORD_COUNT * 2, 1024 ), false ) );
+    }
+
+    private void flushesDirtyWindowsInSteps( WindowPool pool )
+    {
+        // bricks get mapped once there has been enough misses
+        for ( int round = 0; round < 6; round++ )
+        {
+            for ( long id = 0; id < RECORD_COUNT; id++ )
+            {
+                read( pool, id );
+            }
+        }
+        for ( long id = 0; id < RECORD_COUNT; id++ )
+        {
+            write( pool, id, id );
+        }
+        WindowPoolStats stats = pool.getStats();
+        int dirty = stats.getDirtyCount();
+        assertTrue( "Expected dirty windows, got " + stats.getDirtyCount(), dirty > 1 );
+
+        long windowBytes = (long) RECORD_SIZE * RECORD_COUNT / dirty;
+        long flushed = pool.flushDirtyWindows( windowBytes );
+        assertTrue( flushed > 0 );
+        assertTrue( pool.getStats().getDirtyCount() < dirty );
+
+        while ( pool.flushDirtyWindows( windowBytes ) > 0 )
+        {
+            // keep going until everything is written
+        }
+        stats = pool.getStats();
+        assertEquals( 0, stats.getDirtyCount() );
+        assertEquals( dirty, stats.getFlushCount() );
+        assertTrue( stats.getFlushedBytes() >= RECORD_SIZE * RECORD_COUNT );
+        pool.close();
+    }
+
+    @Test
+    public void backgroundFlusherCleansStoreWindows() throws Exception
+    {
+        EmbeddedGraphDatabase db = new EmbeddedGraphDatabase( new File( path, "db" ).getAbsolutePath(),
+                MapUtil.stringMap( Config.BACKGROUND_FLUSH_RATE, "10M",
+                        Config.USE_MEMORY_MAPPED_BUFFERS, "false" ) );
+        try
+        {
+            Transaction tx = db.beginTx();
+            for ( int i = 0; i < 1000; i++ )
+            {
+                db.createNode();
+            }
+            tx.success();
+            tx.finish();
+
+            NeoStoreXaDataSource dataSource = (NeoStoreXaDataSource) db.getConfig().getTxModule()
+                    .getXaDataSourceManager().getXaDataSource( Config.DEFAULT_DATA_SOURCE_NAME );
+            NodeStore nodeStore = dataSource.getNeoStore().getNodeStore();
+            long end = System.currentTimeMillis() + 10000;
+            while ( nodeStore.getWindowPoolStats().getDirtyCount() > 0 &&
+                    System.currentTimeMillis() < end )
+            {
+                Thread.sleep( 50 );
+            }
+            WindowPoolStats stats = nodeStore.getWindowPoolStats();
+            assertEquals( 0, stats.getDirtyCount() );
+            assertTrue( stats.getFlushCount() > 0 );
+        }
+        finally
+        {
+            db.shutdown();
+        }
+    }
+
+    private static void write( WindowPool pool, long id, long value )
+    {
+        PersistenceWindow window = pool.acquire( id, OperationType.WRITE );
+        try
+        {
+            window.getOffsettedBuffer( id ).putLong( value );
+        }
+        finally
+        {
+            pool.release( window );
+        }
+    }
+
+    private static long read( WindowPool pool, long id )
+    {
+        PersistenceWindow window = pool.acquire( id, OperationType.READ );
+        try
+        {
+            return window.getOffsettedBuffer( id ).getLong();
+        }
+        finally
+        {
+            pool.release( window );
+        }
+    }
+}
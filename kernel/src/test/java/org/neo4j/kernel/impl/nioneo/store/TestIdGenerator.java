@@ -677,4 +677,62 @@ public class TestIdGenerator
         assertEquals( id, idGenerator.nextId() );
         idGenerator.close( true );
     }
+
+    @Test
+    public void concurrentlyAllocatedIdsAreUnique() throws Exception
+    {
+        IdGeneratorImpl.createGenerator( idGeneratorFile() );
+        final IdGeneratorImpl idGenerator = new IdGeneratorImpl( idGeneratorFile(), 10, 1000000, true );
+        for ( int i = 0; i < 10; i++ )
+        {
+            idGenerator.nextId();
+        }
+        for ( int i = 0; i < 10; i += 2 )
+        {
+            idGenerator.freeId( i );
+        }
+
+        final int idsPerThread = 10000;
+        final long[][] allocated = new long[8][];
+        Thread[] threads = new Thread[allocated.length];
+        for ( int t = 0; t < threads.length; t++ )
+        {
+            final int thread = t;
+            threads[t] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    long[] ids = new long[idsPerThread];
+                    for ( int i = 0; i < ids.length; i++ )
+                    {
+                        ids[i] = idGenerator.nextId();
+                        if ( i % 100 == 0 )
+                        {
+                            // Keep a mix of reused and new ids coming
+                            idGenerator.freeId( ids[i] );
+                            ids[i] = -1;
+                        }
+                    }
+                    allocated[thread] = ids;
+                }
+            };
+            threads[t].start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+
+        Set<Long> seen = new HashSet<Long>();
+        for ( long[] ids : allocated )
+        {
+            for ( long id : ids )
+            {
+                assertTrue( "Id " + id + " handed out twice", id == -1 || seen.add( id ) );
+            }
+        }
+        assertEquals( idGenerator.getHighId() - idGenerator.getDefragCount(), seen.size() + 5 );
+        idGenerator.close( true );
+    }
 }
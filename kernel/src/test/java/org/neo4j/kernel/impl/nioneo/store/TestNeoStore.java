@@ -240,6 +240,10 @@ public class TestNeoStore extends AbstractNeo4jTestCase
         file.delete();
         file = new File( file( "neo.relationshiptypestore.db.names.id" ) );
         file.delete();
+        file = new File( file( "neo.relationshipgroupstore.db" ) );
+        file.delete();
+        file = new File( file( "neo.relationshipgroupstore.db.id" ) );
+        file.delete();
         file = new File( "." );
         for ( File nioFile : file.listFiles() )
         {
@@ -0,0 +1,272 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.helpers.collection.MapUtil;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
+import org.neo4j.kernel.impl.MyRelTypes;
+
+public class TestPageCachedWindowPool
+{
+    private static final int PAGE_SIZE = 512;
+    private static final int RECORD_COUNT = 5000;
+
+    private final File path = new File( AbstractNeo4jTestCase.getStorePath( "page-cache" ) );
+    private RandomAccessFile nodes;
+    private RandomAccessFile rels;
+
+    @Before
+    public void createStoreFiles() throws Exception
+    {
+        AbstractNeo4jTestCase.deleteFileOrDirectory( path );
+        path.mkdirs();
+        nodes = new RandomAccessFile( new File( path, "nodes.db" ), "rw" );
+        rels = new RandomAccessFile( new File( path, "rels.db" ), "rw" );
+    }
+
+    @After
+    public void closeStoreFiles() throws Exception
+    {
+        nodes.close();
+        rels.close();
+    }
+
+    @Test
+    public void storesShareTheSameBudget() throws Exception
+    {
+        // room for a fraction of the two stores only
+        PageCache cache = new PageCache( 16 * PAGE_SIZE, PAGE_SIZE );
+        WindowPool nodePool = new PageCachedWindowPool( "nodes", 8, nodes.getChannel(), cache, false );
+        WindowPool relPool = new PageCachedWindowPool( "rels", 12, rels.getChannel(), cache, false );
+        for ( long id = 0; id < RECORD_COUNT; id++ )
+        {
+            write( nodePool, id, id );
+            write( relPool, id, -id );
+        }
+        for ( long id = 0; id < RECORD_COUNT; id++ )
+        {
+            assertEquals( id, read( nodePool, id ) );
+            assertEquals( -id, read( relPool, id ) );
+        }
+        assertTrue( cache.getEvictionCount() > 0 );
+        WindowPoolStats nodeStats = nodePool.getStats();
+        WindowPoolStats relStats = relPool.getStats();
+        assertTrue( nodeStats.getWindowCount() + relStats.getWindowCount() <= cache.getPageCount() );
+        assertTrue( nodeStats.getHitCount() > 0 );
+        nodePool.close();
+        relPool.close();
+    }
+
+    @Test
+    public void flushWritesDirtyPagesToTheFile() throws Exception
+    {
+        PageCache cache = new PageCache( 64 * PAGE_SIZE, PAGE_SIZE );
+        FileChannel channel = nodes.getChannel();
+        WindowPool pool = new PageCachedWindowPool( "nodes", 8, channel, cache, false );
+        for ( long id = 0; id < 1000; id++ )
+        {
+            write( pool, id, id * 7 );
+        }
+        pool.flushAll();
+        ByteBuffer buffer = ByteBuffer.allocate( 8 );
+        for ( long id = 0; id < 1000; id++ )
+        {
+            buffer.clear();
+            channel.read( buffer, id * 8 );
+            buffer.flip();
+            assertEquals( id * 7, buffer.getLong() );
+        }
+        pool.close();
+    }
+
+    @Test
+    public void recordsSeeTheirLatestWritesWhenPagesAndRowsAreMixed() throws Exception
+    {
+        // a single page, so threads mostly can't get one and are handed rows
+        final PageCache cache = new PageCache( PAGE_SIZE, PAGE_SIZE );
+        final WindowPool pool = new PageCachedWindowPool( "nodes", 8, nodes.getChannel(), cache, false );
+        final int threadCount = 8;
+        // two pages worth of records
+        final int recordsPerThread = 2 * PAGE_SIZE / 8 / threadCount;
+        final AtomicReference<String> failure = new AtomicReference<String>();
+        Thread[] threads = new Thread[threadCount];
+        for ( int t = 0; t < threadCount; t++ )
+        {
+            final int thread = t;
+            threads[t] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for ( long value = 1; value <= 2000 && failure.get() == null; value++ )
+                    {
+                        // the records of all threads are interleaved over the same pages
+                        for ( long i = 0; i < recordsPerThread; i++ )
+                        {
+                            long id = i * threadCount + thread;
+                            write( pool, id, value );
+                            long read = read( pool, id );
+                            if ( read != value )
+                            {
+                                failure.compareAndSet( null, "Record " + id + " was " + read + " after writing " + value );
+                                return;
+                            }
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        assertNull( failure.get(), failure.get() );
+        for ( long id = 0; id < threadCount * recordsPerThread; id++ )
+        {
+            assertEquals( 2000L, read( pool, id ) );
+        }
+        pool.close();
+        ByteBuffer buffer = ByteBuffer.allocate( 8 );
+        for ( long id = 0; id < threadCount * recordsPerThread; id++ )
+        {
+            buffer.clear();
+            nodes.getChannel().read( buffer, id * 8 );
+            buffer.flip();
+            assertEquals( 2000L, buffer.getLong() );
+        }
+    }
+
+    @Test
+    public void closeWaitsForPinnedPagesSoThatOtherStoresDontWriteThemAfterwards() throws Exception
+    {
+        PageCache cache = new PageCache( PAGE_SIZE, PAGE_SIZE );
+        final WindowPool nodePool = new PageCachedWindowPool( "nodes", 8, nodes.getChannel(), cache, false );
+        WindowPool relPool = new PageCachedWindowPool( "rels", 12, rels.getChannel(), cache, false );
+        PersistenceWindow pinned = nodePool.acquire( 1, OperationType.WRITE );
+        pinned.getOffsettedBuffer( 1 ).putLong( 42 );
+        Thread closer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                nodePool.close();
+            }
+        };
+        closer.start();
+        closer.join( 200 );
+        assertTrue( "close returned while its page was pinned", closer.isAlive() );
+        nodePool.release( pinned );
+        closer.join();
+        nodes.close();
+
+        // evicts what was the page of the closed store
+        write( relPool, 0, 1 );
+        assertEquals( 1L, read( relPool, 0 ) );
+        relPool.close();
+        nodes = new RandomAccessFile( new File( path, "nodes.db" ), "rw" );
+        ByteBuffer buffer = ByteBuffer.allocate( 8 );
+        nodes.getChannel().read( buffer, 8 );
+        buffer.flip();
+        assertEquals( 42L, buffer.getLong() );
+    }
+
+    @Test
+    public void databaseWorksOnTopOfSharedPageCache() throws Exception
+    {
+        String storeDir = new File( path, "db" ).getAbsolutePath();
+        GraphDatabaseService db = newDb( storeDir );
+        Transaction tx = db.beginTx();
+        Node first = db.createNode();
+        long firstId = first.getId();
+        for ( int i = 0; i < 1000; i++ )
+        {
+            Node node = db.createNode();
+            node.setProperty( "name", "node " + i );
+            first.createRelationshipTo( node, MyRelTypes.TEST );
+        }
+        tx.success();
+        tx.finish();
+        db.shutdown();
+
+        db = newDb( storeDir );
+        int count = 0;
+        for ( Relationship rel : db.getNodeById( firstId ).getRelationships() )
+        {
+            assertTrue( ((String) rel.getEndNode().getProperty( "name" )).startsWith( "node " ) );
+            count++;
+        }
+        assertEquals( 1000, count );
+        db.shutdown();
+    }
+
+    private GraphDatabaseService newDb( String storeDir )
+    {
+        return new EmbeddedGraphDatabase( storeDir, MapUtil.stringMap(
+                Config.WINDOW_POOL_TYPE, WindowPoolType.shared.name(),
+                Config.PAGE_CACHE_MEMORY, "64k",
+                Config.PAGE_CACHE_PAGE_SIZE, "1k" ) );
+    }
+
+    private static void write( WindowPool pool, long id, long value )
+    {
+        PersistenceWindow window = pool.acquire( id, OperationType.WRITE );
+        try
+        {
+            window.getOffsettedBuffer( id ).putLong( value );
+        }
+        finally
+        {
+            pool.release( window );
+        }
+    }
+
+    private static long read( WindowPool pool, long id )
+    {
+        PersistenceWindow window = pool.acquire( id, OperationType.READ );
+        try
+        {
+            return window.getOffsettedBuffer( id ).getLong();
+        }
+        finally
+        {
+            pool.release( window );
+        }
+    }
+}
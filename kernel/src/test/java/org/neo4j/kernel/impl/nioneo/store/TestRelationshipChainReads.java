@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.nioneo.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.neo4j.helpers.collection.IteratorUtil.count;
+import static org.neo4j.helpers.collection.MapUtil.stringMap;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.impl.nioneo.xa.NeoStoreXaDataSource;
+import org.neo4j.test.ImpermanentGraphDatabase;
+
+public class TestRelationshipChainReads
+{
+    private static final RelationshipType TYPE = DynamicRelationshipType.withName( "TYPE" );
+
+    private ImpermanentGraphDatabase db;
+    private Node node;
+    private final Set<Long> relationships = new HashSet<Long>();
+
+    @Before
+    public void createNodeWithRelationships()
+    {
+        db = new ImpermanentGraphDatabase( stringMap( "relationship_grab_size", "7" ) );
+        Transaction tx = db.beginTx();
+        node = db.createNode();
+        for ( int i = 0; i < 500; i++ )
+        {
+            Node other = db.createNode();
+            relationships.add( node.createRelationshipTo( other, TYPE ).getId() );
+            relationships.add( other.createRelationshipTo( node, TYPE ).getId() );
+            // something in between so that the chain isn't in id order
+            other.createRelationshipTo( db.createNode(), TYPE );
+            if ( i % 100 == 0 )
+            {
+                relationships.add( node.createRelationshipTo( node, TYPE ).getId() );
+            }
+        }
+        tx.success();
+        tx.finish();
+        db.getConfig().getGraphDbModule().getNodeManager().clearCache();
+    }
+
+    @After
+    public void stopDb()
+    {
+        db.shutdown();
+    }
+
+    private NeoStore neoStore()
+    {
+        return ( (NeoStoreXaDataSource) db.getConfig().getTxModule().getXaDataSourceManager().getXaDataSource(
+                Config.DEFAULT_DATA_SOURCE_NAME ) ).getNeoStore();
+    }
+
+    @Test
+    public void chainIsReadInBatches()
+    {
+        RelationshipStore store = neoStore().getRelationshipStore();
+        long position = neoStore().getNodeStore().getRecord( node.getId() ).getNextRel();
+        Set<Long> read = new HashSet<Long>();
+        while ( position != Record.NO_NEXT_RELATIONSHIP.intValue() )
+        {
+            List<RelationshipRecord> records = new ArrayList<RelationshipRecord>();
+            position = store.getChainRecords( node.getId(), position, 13, records );
+            assertTrue( records.size() <= 13 );
+            assertTrue( records.size() == 13 || position == Record.NO_NEXT_RELATIONSHIP.intValue() );
+            for ( RelationshipRecord record : records )
+            {
+                assertTrue( record.inUse() );
+                assertTrue( read.add( record.getId() ) );
+            }
+        }
+        assertEquals( relationships, read );
+    }
+
+    @Test
+    public void relationshipsAreLoadedThroughTheChain()
+    {
+        Set<Long> loaded = new HashSet<Long>();
+        for ( Relationship relationship : node.getRelationships() )
+        {
+            assertTrue( loaded.add( relationship.getId() ) );
+        }
+        assertEquals( relationships, loaded );
+        db.getConfig().getGraphDbModule().getNodeManager().clearCache();
+        assertEquals( 505, count( node.getRelationships( Direction.OUTGOING ) ) );
+        assertEquals( 505, count( node.getRelationships( Direction.INCOMING ) ) );
+    }
+}
@@ -20,6 +20,8 @@
 package org.neo4j.kernel.impl.nioneo.store;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
@@ -411,9 +413,16 @@ public class TestXa extends AbstractNeo4jTestCase
 
     private NeoStoreXaDataSource newNeoStore() throws InstantiationException,
             IOException
+    {
+        return newNeoStore( new HashMap<String, String>() );
+    }
+
+    private NeoStoreXaDataSource newNeoStore( Map<String, String> extraConfig )
+            throws InstantiationException, IOException
     {
         Map<Object, Object> config = new HashMap<Object, Object>();
         config.putAll( Config.getDefaultParams() );
+        config.putAll( extraConfig );
         MapUtil.genericMap( config,
             LockManager.class, lockManager,
             LockReleaser.class, lockReleaser,
@@ -467,6 +476,64 @@ public class TestXa extends AbstractNeo4jTestCase
         xaCon.clearAllTransactions();
     }
 
+    @Test
+    public void preparedTransactionIsCommittedAfterParallelRecovery() throws Exception
+    {
+        XAResource xaRes = xaCon.getXaResource();
+        Xid committedXid = new XidImpl( new byte[3], new byte[3] );
+        xaRes.start( committedXid, XAResource.TMNOFLAGS );
+        long node1 = ds.nextId( Node.class );
+        xaCon.getWriteTransaction().nodeCreate( node1 );
+        xaRes.end( committedXid, XAResource.TMSUCCESS );
+        xaRes.commit( committedXid, true );
+        Xid xid = new XidImpl( new byte[4], new byte[4] );
+        xaRes.start( xid, XAResource.TMNOFLAGS );
+        long node2 = ds.nextId( Node.class );
+        xaCon.getWriteTransaction().nodeCreate( node2 );
+        xaRes.end( xid, XAResource.TMSUCCESS );
+        xaRes.prepare( xid );
+        copyLogicalLog( path() );
+        xaCon.clearAllTransactions();
+        ds.close();
+        deleteLogicalLogIfExist();
+        renameCopiedLogicalLog( path() );
+        ds = newNeoStore( MapUtil.stringMap( Config.PARALLEL_RECOVERY, "true" ) );
+        xaCon = (NeoStoreXaConnection) ds.getXaConnection();
+        xaRes = xaCon.getXaResource();
+        assertEquals( 1, xaRes.recover( XAResource.TMNOFLAGS ).length );
+
+        // The tx manager commits the prepared transaction after the scan,
+        // which must be applied right away rather than by recovery lanes
+        long lastCommittedTx = ds.getLastCommittedTxId();
+        xaRes.commit( xid, true );
+        assertEquals( lastCommittedTx + 1, ds.getLastCommittedTxId() );
+        assertNotNull( ds.getNeoStore().getNodeStore().loadLightNode( node1 ) );
+        assertNotNull( ds.getNeoStore().getNodeStore().loadLightNode( node2 ) );
+        assertTrue( ds.nextId( Node.class ) > node2 );
+        assertFalse( "Recovery lanes still running", recoveryLanesRunning() );
+        xaCon.clearAllTransactions();
+    }
+
+    private boolean recoveryLanesRunning() throws InterruptedException
+    {
+        long end = System.currentTimeMillis() + 5000;
+        do
+        {
+            boolean running = false;
+            for ( Thread thread : Thread.getAllStackTraces().keySet() )
+            {
+                running |= thread.isAlive() && thread.getName().startsWith( "Recovery of " );
+            }
+            if ( !running )
+            {
+                return false;
+            }
+            Thread.sleep( 10 );
+        }
+        while ( System.currentTimeMillis() < end );
+        return true;
+    }
+
     @Test
     public void testLogicalLogPreparedPropertyBlocks() throws Exception
     {
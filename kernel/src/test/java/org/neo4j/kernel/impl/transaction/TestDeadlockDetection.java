@@ -19,6 +19,8 @@
  */
 package org.neo4j.kernel.impl.transaction;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.util.concurrent.atomic.AtomicReference;
@@ -247,6 +249,55 @@ public class TestDeadlockDetection
         }
     }
 
+    @Test
+    public void testDeadlockDetectedAcrossStripes()
+    {
+        LockManager lm = new LockManager( new PlaceboTm(), 4 );
+        Object r1 = new ResourceObject( "R1" );
+        Object r2 = new ResourceObject( "R2" );
+        while ( LockManager.stripe( r2, lm.getStripeCount() ) == LockManager.stripe( r1, lm.getStripeCount() ) )
+        {
+            r2 = new ResourceObject( "R2" );
+        }
+
+        HelperThread t1 = new HelperThread( "T1", lm );
+        HelperThread t2 = new HelperThread( "T2", lm );
+        try
+        {
+            t1.start();
+            t2.start();
+
+            t1.getWriteLock( r1 );
+            t1.waitForCompletionOfTask();
+            t2.getWriteLock( r2 );
+            t2.waitForCompletionOfTask();
+            t1.getWriteLock( r2 );
+            t1.waitForWaitingState(); // t1-r2-t2
+            t2.getWriteLock( r1 );
+            t2.waitForCompletionOfTask();
+            assertTrue( t2.isLastGetLockDeadLock() ); // t2-r1-t1-r2-t2
+            t2.releaseWriteLock( r2 );
+            t1.waitForCompletionOfTask(); // give r2 to t1
+            assertFalse( t1.isLastGetLockDeadLock() );
+            t1.releaseWriteLock( r2 );
+            t1.waitForCompletionOfTask();
+            t1.releaseWriteLock( r1 );
+            t1.waitForCompletionOfTask();
+        }
+        finally
+        {
+            t1.quit();
+            t2.quit();
+        }
+        assertEquals( 1, lm.getDetectedDeadlockCount() );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testStripeCountMustBePowerOfTwo()
+    {
+        new LockManager( new PlaceboTm(), 3 );
+    }
+
     @Test
     public void testDeadlockDetection()
     {
@@ -318,7 +369,9 @@ public class TestDeadlockDetection
             t1.getReadLock( r1 );
             t1.waitForCompletionOfTask(); // give r1->t1
             t1.getWriteLock( r4 );
+            t1.waitForWaitingState(); // t1-r4-t2
             t3.getWriteLock( r1 );
+            t3.waitForWaitingState(); // t3-r1-t1
             t4.getReadLock( r2 );
             t4.waitForCompletionOfTask();
             // deadlock
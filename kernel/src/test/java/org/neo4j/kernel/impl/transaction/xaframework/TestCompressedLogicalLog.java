@@ -0,0 +1,291 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction.xaframework;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.neo4j.helpers.collection.MapUtil.stringMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.AbstractGraphDatabase;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.impl.MyRelTypes;
+import org.neo4j.kernel.impl.nioneo.xa.Command;
+import org.neo4j.kernel.impl.nioneo.xa.NeoStoreXaDataSource;
+import org.neo4j.kernel.impl.transaction.xaframework.TestParallelRecovery.ProduceUncleanTransactions;
+import org.neo4j.test.DbRepresentation;
+import org.neo4j.test.TargetDirectory;
+
+public class TestCompressedLogicalLog
+{
+    private final TargetDirectory target = TargetDirectory.forTest( getClass() );
+
+    @Test
+    public void blockCompressionRoundTrips() throws Exception
+    {
+        Random random = new Random( 1234 );
+        byte[] noise = new byte[5000];
+        random.nextBytes( noise );
+        byte[] repeating = new byte[100000];
+        for ( int i = 0; i < repeating.length; i++ )
+        {
+            repeating[i] = (byte) ( i % 7 == 0 ? random.nextInt( 4 ) : i % 13 );
+        }
+        for ( byte[] data : new byte[][] { new byte[0], new byte[] { 1 }, new byte[] { 1, 1, 1, 1 },
+                noise, repeating, new byte[300] } )
+        {
+            byte[] compressed = new byte[BlockCompression.maxCompressedLength( data.length )];
+            int compressedLength = BlockCompression.compress( data, data.length, compressed );
+            byte[] decompressed = new byte[data.length];
+            BlockCompression.decompress( compressed, compressedLength, decompressed );
+            assertArrayEquals( data, decompressed );
+        }
+        byte[] compressed = new byte[BlockCompression.maxCompressedLength( repeating.length )];
+        assertTrue( BlockCompression.compress( repeating, repeating.length, compressed ) < repeating.length / 4 );
+    }
+
+    @Test
+    public void compressedLogHoldsTheSameCommandsInLessSpace() throws Exception
+    {
+        LogSummary plain = writeAndSummarize( "plain", "false" );
+        LogSummary compressed = writeAndSummarize( "compressed", "true" );
+        assertEquals( 0, plain.commandBlocks );
+        assertEquals( plain.transactions, compressed.transactions );
+        assertEquals( plain.transactions, compressed.commandBlocks );
+        assertEquals( plain.commands, compressed.commands );
+        assertTrue( compressed.size + " >= " + plain.size, compressed.size < plain.size );
+    }
+
+    @Test
+    public void logsFromBeforeCommandBlocksAreRefused() throws Exception
+    {
+        ByteBuffer buffer = ByteBuffer.allocate( LogIoUtils.LOG_HEADER_SIZE );
+        LogIoUtils.writeLogHeader( buffer, 5, 10 );
+        assertEquals( 3, ( buffer.getLong( 0 ) >> 56 ) & 0xFF );
+
+        InMemoryLogBuffer oldHeader = new InMemoryLogBuffer();
+        oldHeader.putLong( 5 | ( 2L << 56 ) ).putLong( 10 );
+        try
+        {
+            LogIoUtils.readLogHeader( buffer, oldHeader, true );
+            fail( "Should not read a log header of format version 2" );
+        }
+        catch ( IllegalLogFormatException e )
+        {   // Good
+        }
+    }
+
+    @Test
+    public void recoversFromCompressedLog() throws Exception
+    {
+        File plainDir = target.directory( "unclean-plain", true );
+        File compressedDir = target.directory( "unclean-compressed", true );
+        produceUncleanTransactions( plainDir );
+        produceUncleanTransactions( compressedDir, Config.LOGICAL_LOG_COMPRESSION, "true" );
+
+        AbstractGraphDatabase plain = new EmbeddedGraphDatabase( plainDir.getAbsolutePath() );
+        DbRepresentation expected = DbRepresentation.of( plain );
+        plain.shutdown();
+        AbstractGraphDatabase compressed = new EmbeddedGraphDatabase( compressedDir.getAbsolutePath(),
+                stringMap( Config.LOGICAL_LOG_COMPRESSION, "true" ) );
+        try
+        {
+            assertEquals( expected, DbRepresentation.of( compressed ) );
+        }
+        finally
+        {
+            compressed.shutdown();
+        }
+    }
+
+    @Test
+    public void concurrentCommitsCanBeExtractedAcrossRotationsOfACompressedLog() throws Exception
+    {
+        File dir = target.directory( "concurrent", true );
+        final AbstractGraphDatabase db = new EmbeddedGraphDatabase( dir.getAbsolutePath(), stringMap(
+                Config.KEEP_LOGICAL_LOGS, "true", Config.LOGICAL_LOG_COMPRESSION, "true" ) );
+        ExecutorService executor = Executors.newFixedThreadPool( 4 );
+        try
+        {
+            XaDataSource dataSource = db.getConfig().getTxModule().getXaDataSourceManager().getXaDataSource(
+                    Config.DEFAULT_DATA_SOURCE_NAME );
+            dataSource.setLogicalLogTargetSize( 20000 );
+            long firstTxId = dataSource.getLastCommittedTxId() + 1;
+            List<Future<?>> committers = new ArrayList<Future<?>>();
+            for ( int t = 0; t < 4; t++ )
+            {
+                final int thread = t;
+                committers.add( executor.submit( new Runnable()
+                {
+                    public void run()
+                    {
+                        for ( int i = 0; i < 40; i++ )
+                        {
+                            // Some transactions are big enough to be written as several blocks
+                            int nodes = i % 10 == thread ? 700 : 20;
+                            Transaction tx = db.beginTx();
+                            for ( int j = 0; j < nodes; j++ )
+                            {
+                                db.createNode().setProperty( "name", "node " + thread + "-" + i + "-" + j );
+                            }
+                            tx.success();
+                            tx.finish();
+                        }
+                    }
+                } ) );
+            }
+            for ( Future<?> committer : committers )
+            {
+                committer.get();
+            }
+            long lastTxId = dataSource.getLastCommittedTxId();
+            assertTrue( dataSource.getCurrentLogVersion() > 2 );
+            LogExtractor extractor = dataSource.getLogExtractor( firstTxId, lastTxId );
+            try
+            {
+                for ( long txId = firstTxId; txId <= lastTxId; txId++ )
+                {
+                    assertEquals( txId, extractor.extractNext( new InMemoryLogBuffer() ) );
+                }
+            }
+            finally
+            {
+                extractor.close();
+            }
+            assertEquals( 4 * 40, lastTxId - firstTxId + 1 );
+        }
+        finally
+        {
+            executor.shutdown();
+            db.shutdown();
+        }
+    }
+
+    private void produceUncleanTransactions( File dir, String... config ) throws Exception
+    {
+        String[] command = new String[] { "java", "-cp", System.getProperty( "java.class.path" ),
+                ProduceUncleanTransactions.class.getName(), dir.getAbsolutePath() };
+        command = Arrays.copyOf( command, command.length + config.length );
+        System.arraycopy( config, 0, command, command.length - config.length, config.length );
+        assertEquals( 0, Runtime.getRuntime().exec( command ).waitFor() );
+    }
+
+    private LogSummary writeAndSummarize( String name, String compress ) throws IOException
+    {
+        File dir = target.directory( name, true );
+        AbstractGraphDatabase db = new EmbeddedGraphDatabase( dir.getAbsolutePath(), stringMap(
+                Config.KEEP_LOGICAL_LOGS, "true", Config.LOGICAL_LOG_COMPRESSION, compress ) );
+        try
+        {
+            for ( int i = 0; i < 20; i++ )
+            {
+                Transaction tx = db.beginTx();
+                Node previous = db.getReferenceNode();
+                for ( int j = 0; j < 50; j++ )
+                {
+                    Node node = db.createNode();
+                    node.setProperty( "name", "node " + j );
+                    node.setProperty( "number", j );
+                    previous.createRelationshipTo( node, MyRelTypes.TEST );
+                    previous = node;
+                }
+                tx.success();
+                tx.finish();
+            }
+            db.getConfig().getTxModule().getXaDataSourceManager().getXaDataSource(
+                    Config.DEFAULT_DATA_SOURCE_NAME ).rotateLogicalLog();
+        }
+        finally
+        {
+            db.shutdown();
+        }
+
+        LogSummary summary = new LogSummary();
+        RandomAccessFile file = new RandomAccessFile( new File( dir,
+                NeoStoreXaDataSource.LOGICAL_LOG_DEFAULT_NAME + ".v0" ), "r" );
+        try
+        {
+            FileChannel channel = file.getChannel();
+            summary.size = channel.size();
+            ByteBuffer buffer = ByteBuffer.allocate( 1024*500 );
+            LogIoUtils.readLogHeader( buffer, channel, true );
+            XaCommandFactory commandFactory = new CommandFactory();
+            LogEntry entry;
+            while ( (entry = LogIoUtils.readEntry( buffer, channel, commandFactory )) != null )
+            {
+                if ( entry instanceof LogEntry.Command )
+                {
+                    summary.commands++;
+                }
+                else if ( entry instanceof LogEntry.CommandBlock )
+                {
+                    summary.commandBlocks++;
+                    summary.commands += ((LogEntry.CommandBlock) entry).getCommands().size();
+                }
+                else if ( entry instanceof LogEntry.Commit )
+                {
+                    summary.transactions++;
+                }
+            }
+        }
+        finally
+        {
+            file.close();
+        }
+        return summary;
+    }
+
+    private static class LogSummary
+    {
+        private long size;
+        private int transactions;
+        private int commandBlocks;
+        private int commands;
+    }
+
+    private static class CommandFactory extends XaCommandFactory
+    {
+        @Override
+        public XaCommand readCommand( ReadableByteChannel byteChannel,
+                ByteBuffer buffer ) throws IOException
+        {
+            return Command.readCommand( null, byteChannel, buffer );
+        }
+    }
+}
@@ -0,0 +1,330 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction.xaframework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.helpers.collection.IteratorUtil;
+import org.neo4j.helpers.collection.MapUtil;
+import org.neo4j.kernel.AbstractGraphDatabase;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.impl.AbstractNeo4jTestCase;
+import org.neo4j.kernel.impl.nioneo.store.NeoStore;
+import org.neo4j.kernel.impl.nioneo.xa.NeoStoreXaDataSource;
+
+public class TestGroupCommit
+{
+    private static final int THREADS = 10;
+    private static final int COMMITS_PER_THREAD = 50;
+
+    @Test
+    public void concurrentCommittersShareForces() throws Exception
+    {
+        final AtomicLong forcedUpTo = new AtomicLong();
+        final AtomicLong appended = new AtomicLong();
+        final AtomicInteger forces = new AtomicInteger();
+        final GroupCommit groupCommit = new GroupCommit( 0, new GroupCommit.Force()
+        {
+            public void force() throws IOException
+            {
+                long upTo = appended.get();
+                forces.incrementAndGet();
+                sleep( 2 );
+                forcedUpTo.set( upTo );
+            }
+        } );
+        final Object logMonitor = new Object();
+        final Collection<Throwable> failures = new ArrayList<Throwable>();
+        Collection<Thread> threads = new ArrayList<Thread>();
+        final CountDownLatch start = new CountDownLatch( 1 );
+        for ( int i = 0; i < THREADS; i++ )
+        {
+            threads.add( new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                        for ( int i = 0; i < COMMITS_PER_THREAD; i++ )
+                        {
+                            long ticket;
+                            synchronized ( logMonitor )
+                            {
+                                ticket = groupCommit.append();
+                                appended.set( ticket );
+                            }
+                            groupCommit.awaitForced( ticket );
+                            if ( forcedUpTo.get() < ticket )
+                            {
+                                throw new AssertionError( "Ticket " + ticket + " returned before forced" );
+                            }
+                        }
+                    }
+                    catch ( Throwable e )
+                    {
+                        synchronized ( failures )
+                        {
+                            failures.add( e );
+                        }
+                    }
+                }
+            } );
+        }
+        for ( Thread thread : threads )
+        {
+            thread.start();
+        }
+        start.countDown();
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        assertTrue( failures.toString(), failures.isEmpty() );
+
+        int commits = THREADS * COMMITS_PER_THREAD;
+        assertEquals( commits, groupCommit.getForcedCommitCount() );
+        assertEquals( forces.get(), groupCommit.getForceCount() );
+        assertTrue( "Expected forces to be shared, but did " + forces.get() + " for " + commits
+                    + " commits", forces.get() < commits );
+        assertTrue( groupCommit.getMaxBatchSize() > 1 );
+        assertTrue( groupCommit.getAverageBatchSize() > 1 );
+    }
+
+    @Test
+    public void markAllForcedReleasesWaitersWithoutForcing() throws Exception
+    {
+        final AtomicInteger forces = new AtomicInteger();
+        GroupCommit groupCommit = new GroupCommit( 0, new GroupCommit.Force()
+        {
+            public void force()
+            {
+                forces.incrementAndGet();
+            }
+        } );
+        long ticket = groupCommit.append();
+        groupCommit.lock();
+        try
+        {
+            groupCommit.markAllForced();
+        }
+        finally
+        {
+            groupCommit.unlock();
+        }
+        groupCommit.awaitForced( ticket );
+        assertEquals( 0, forces.get() );
+        assertEquals( 0, groupCommit.getForceCount() );
+    }
+
+    @Test
+    public void failedForceIsRetriedByNextCommitter() throws Exception
+    {
+        final AtomicInteger forces = new AtomicInteger();
+        GroupCommit groupCommit = new GroupCommit( 0, new GroupCommit.Force()
+        {
+            public void force() throws IOException
+            {
+                if ( forces.incrementAndGet() == 1 )
+                {
+                    throw new IOException( "Simulated" );
+                }
+            }
+        } );
+        long first = groupCommit.append();
+        try
+        {
+            groupCommit.awaitForced( first );
+            fail( "Should have failed" );
+        }
+        catch ( IOException e )
+        {   // Good
+        }
+        long second = groupCommit.append();
+        groupCommit.awaitForced( second );
+        assertEquals( 2, forces.get() );
+        assertEquals( 2, groupCommit.getForcedCommitCount() );
+    }
+
+    @Test
+    public void groupCommitIsOffUnlessConfigured()
+    {
+        assertNull( GroupCommit.create( MapUtil.stringMap(), null ) );
+        assertNull( GroupCommit.create( MapUtil.stringMap( Config.GROUP_COMMIT, "false" ), null ) );
+        assertEquals( 5, GroupCommit.create( MapUtil.stringMap( Config.GROUP_COMMIT, "true",
+                Config.GROUP_COMMIT_MAX_WAIT, "5" ), null ).getMaxWaitMillis() );
+    }
+
+    @Test
+    public void databaseCommitsConcurrentlyWithGroupCommit() throws Exception
+    {
+        String path = AbstractNeo4jTestCase.getStorePath( "group-commit" );
+        AbstractNeo4jTestCase.deleteFileOrDirectory( new File( path ) );
+        final AbstractGraphDatabase db = new EmbeddedGraphDatabase( path, MapUtil.stringMap(
+                Config.GROUP_COMMIT, "true", Config.GROUP_COMMIT_MAX_WAIT, "1" ) );
+        final Collection<Throwable> failures = new ArrayList<Throwable>();
+        Collection<Thread> threads = new ArrayList<Thread>();
+        for ( int i = 0; i < THREADS; i++ )
+        {
+            threads.add( new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        for ( int i = 0; i < COMMITS_PER_THREAD; i++ )
+                        {
+                            Transaction tx = db.beginTx();
+                            try
+                            {
+                                db.createNode();
+                                tx.success();
+                            }
+                            finally
+                            {
+                                tx.finish();
+                            }
+                        }
+                    }
+                    catch ( Throwable e )
+                    {
+                        synchronized ( failures )
+                        {
+                            failures.add( e );
+                        }
+                    }
+                }
+            } );
+        }
+        for ( Thread thread : threads )
+        {
+            thread.start();
+        }
+        for ( Thread thread : threads )
+        {
+            thread.join();
+        }
+        assertTrue( failures.toString(), failures.isEmpty() );
+        GroupCommit groupCommit = db.getConfig().getTxModule().getXaDataSourceManager().getXaDataSource(
+                Config.DEFAULT_DATA_SOURCE_NAME ).getXaContainer().getLogicalLog().getGroupCommit();
+        assertEquals( THREADS * COMMITS_PER_THREAD, groupCommit.getForcedCommitCount() );
+        assertTrue( groupCommit.getForceCount() <= groupCommit.getForcedCommitCount() );
+        db.shutdown();
+
+        AbstractGraphDatabase restarted = new EmbeddedGraphDatabase( path );
+        try
+        {
+            // the reference node plus the created ones
+            assertEquals( THREADS * COMMITS_PER_THREAD + 1,
+                    IteratorUtil.count( restarted.getAllNodes() ) );
+        }
+        finally
+        {
+            restarted.shutdown();
+        }
+    }
+
+    @Test
+    public void storeIsNotChangedBeforeTheCommitIsForced() throws Exception
+    {
+        String path = AbstractNeo4jTestCase.getStorePath( "group-commit-apply" );
+        AbstractNeo4jTestCase.deleteFileOrDirectory( new File( path ) );
+        // The committer leads the force and waits this long before doing it
+        final AbstractGraphDatabase db = new EmbeddedGraphDatabase( path, MapUtil.stringMap(
+                Config.GROUP_COMMIT, "true", Config.GROUP_COMMIT_MAX_WAIT, "2000" ) );
+        NeoStoreXaDataSource dataSource = (NeoStoreXaDataSource) db.getConfig().getTxModule()
+                .getXaDataSourceManager().getXaDataSource( Config.DEFAULT_DATA_SOURCE_NAME );
+        NeoStore neoStore = dataSource.getNeoStore();
+        long lastCommittedTx = dataSource.getLastCommittedTxId();
+        final AtomicLong nodeId = new AtomicLong( -1 );
+        final Collection<Throwable> failures = new ArrayList<Throwable>();
+        Thread committer = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Transaction tx = db.beginTx();
+                    try
+                    {
+                        nodeId.set( db.createNode().getId() );
+                        tx.success();
+                    }
+                    finally
+                    {
+                        tx.finish();
+                    }
+                }
+                catch ( Throwable e )
+                {
+                    synchronized ( failures )
+                    {
+                        failures.add( e );
+                    }
+                }
+            }
+        };
+        committer.start();
+        while ( nodeId.get() == -1 && committer.isAlive() )
+        {
+            sleep( 10 );
+        }
+        sleep( 500 );
+        assertTrue( "Commit returned before it was forced", committer.isAlive() );
+        assertEquals( lastCommittedTx, dataSource.getLastCommittedTxId() );
+        assertNull( neoStore.getNodeStore().loadLightNode( nodeId.get() ) );
+
+        committer.join();
+        assertTrue( failures.toString(), failures.isEmpty() );
+        assertEquals( lastCommittedTx + 1, dataSource.getLastCommittedTxId() );
+        assertNotNull( neoStore.getNodeStore().loadLightNode( nodeId.get() ) );
+        db.shutdown();
+    }
+
+    private static void sleep( long millis )
+    {
+        try
+        {
+            Thread.sleep( millis );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.interrupted();
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction.xaframework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.neo4j.helpers.collection.MapUtil.stringMap;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.AbstractGraphDatabase;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.kernel.impl.MyRelTypes;
+import org.neo4j.kernel.impl.util.FileUtils;
+import org.neo4j.kernel.info.DiagnosticsProvider;
+import org.neo4j.test.DbRepresentation;
+import org.neo4j.test.TargetDirectory;
+
+public class TestParallelRecovery
+{
+    private final TargetDirectory target = TargetDirectory.forTest( getClass() );
+
+    @Test
+    public void parallelRecoveryEndsUpWithTheSameStoreAsSequential() throws Exception
+    {
+        File parallelDir = target.directory( "parallel", true );
+        assertEquals( 0, Runtime.getRuntime().exec( new String[] { "java", "-cp",
+                System.getProperty( "java.class.path" ), ProduceUncleanTransactions.class.getName(),
+                parallelDir.getAbsolutePath() } ).waitFor() );
+        File sequentialDir = target.directory( "sequential", true );
+        FileUtils.copyRecursively( parallelDir, sequentialDir );
+
+        AbstractGraphDatabase sequential = new EmbeddedGraphDatabase( sequentialDir.getAbsolutePath() );
+        DbRepresentation expected = DbRepresentation.of( sequential );
+        sequential.shutdown();
+
+        AbstractGraphDatabase parallel = new EmbeddedGraphDatabase( parallelDir.getAbsolutePath(),
+                stringMap( Config.PARALLEL_RECOVERY, "true" ) );
+        try
+        {
+            assertEquals( expected, DbRepresentation.of( parallel ) );
+            assertTrue( "Recovery not reported in the diagnostics", hasRecoveryDiagnostics( parallel ) );
+
+            // and the id generators must have been brought up to date
+            Transaction tx = parallel.beginTx();
+            Node node = parallel.createNode();
+            node.setProperty( "name", "after recovery" );
+            parallel.getReferenceNode().createRelationshipTo( node, MyRelTypes.TEST );
+            tx.success();
+            tx.finish();
+        }
+        finally
+        {
+            parallel.shutdown();
+        }
+    }
+
+    private boolean hasRecoveryDiagnostics( AbstractGraphDatabase db )
+    {
+        for ( DiagnosticsProvider provider : db.getConfig().getDiagnosticsManager() )
+        {
+            if ( provider.getDiagnosticsIdentifier().startsWith( "Recovery of " ) )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static class ProduceUncleanTransactions
+    {
+        public static void main( String[] args )
+        {
+            // Any further arguments are configuration key/value pairs
+            AbstractGraphDatabase db = new EmbeddedGraphDatabase( args[0],
+                    stringMap( Arrays.copyOfRange( args, 1, args.length ) ) );
+            Node previous = db.getReferenceNode();
+            for ( int i = 0; i < 200; i++ )
+            {
+                Transaction tx = db.beginTx();
+                Node node = db.createNode();
+                node.setProperty( "name", "node " + i );
+                node.setProperty( "values", new int[] { i, i * 2, i * 3 } );
+                Relationship relationship = previous.createRelationshipTo( node, MyRelTypes.TEST );
+                relationship.setProperty( "since", i );
+                if ( i % 10 == 9 )
+                {
+                    previous.setProperty( "name", "renamed " + i );
+                    relationship.delete();
+                    node.createRelationshipTo( previous, MyRelTypes.TEST2 );
+                }
+                if ( i % 25 == 24 )
+                {
+                    node.setProperty( "key" + i, "a new property key" );
+                }
+                tx.success();
+                tx.finish();
+                previous = node;
+            }
+            System.exit( 0 );
+        }
+    }
+}
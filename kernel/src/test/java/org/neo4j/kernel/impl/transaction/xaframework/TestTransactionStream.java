@@ -0,0 +1,173 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.transaction.xaframework;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.neo4j.helpers.collection.MapUtil.stringMap;
+import static org.neo4j.test.TargetDirectory.forTest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.AbstractGraphDatabase;
+import org.neo4j.kernel.Config;
+import org.neo4j.kernel.EmbeddedGraphDatabase;
+import org.neo4j.test.DbRepresentation;
+
+public class TestTransactionStream
+{
+    private AbstractGraphDatabase source;
+    private AbstractGraphDatabase follower;
+
+    @Before
+    public void startDbs()
+    {
+        source = new EmbeddedGraphDatabase( sourcePath( true ), stringMap( Config.KEEP_LOGICAL_LOGS, "true" ) );
+        follower = new EmbeddedGraphDatabase( forTest( getClass() ).directory( "follower", true ).getAbsolutePath() );
+        // Creates the relationship type as well, in a transaction of its own
+        createSomeTransactions( 1 );
+    }
+
+    @After
+    public void stopDbs()
+    {
+        source.shutdown();
+        follower.shutdown();
+    }
+
+    @Test
+    public void followerCatchesUpWithTransactionsCommittedAfterStreamWasOpened() throws Exception
+    {
+        XaDataSource sourceDs = dataSource( source );
+        XaDataSource followerDs = dataSource( follower );
+        TransactionStream stream = sourceDs.getTransactionStream( followerDs.getLastCommittedTxId() + 1 );
+        try
+        {
+            assertEquals( 2, stream.pushTo( followerDs, 100 ) );
+            assertEquals( 0, stream.pushTo( followerDs, 100 ) );
+
+            createSomeTransactions( 3 );
+            assertEquals( 3, stream.getLag() );
+            assertEquals( 3, stream.pushTo( followerDs, 100 ) );
+            assertEquals( 0, stream.getLag() );
+            assertEquals( sourceDs.getLastCommittedTxId(), stream.getLastTxId() );
+
+            createSomeTransactions( 4 );
+            assertEquals( 2, stream.pushTo( followerDs, 2 ) );
+            assertEquals( 2, stream.getLag() );
+            assertEquals( 2, stream.pushTo( followerDs, 100 ) );
+            assertEquals( 4, stream.getMaxLag() );
+            assertEquals( 9, stream.getStreamedCount() );
+        }
+        finally
+        {
+            stream.close();
+        }
+        assertEquals( DbRepresentation.of( source ), DbRepresentation.of( follower ) );
+    }
+
+    @Test
+    public void streamFollowsTheLogOverRotations() throws Exception
+    {
+        XaDataSource sourceDs = dataSource( source );
+        XaDataSource followerDs = dataSource( follower );
+        TransactionStream stream = sourceDs.getTransactionStream( followerDs.getLastCommittedTxId() + 1 );
+        try
+        {
+            createSomeTransactions( 2 );
+            assertEquals( 1, stream.pushTo( followerDs, 1 ) );
+            sourceDs.rotateLogicalLog();
+            createSomeTransactions( 2 );
+            sourceDs.rotateLogicalLog();
+            sourceDs.rotateLogicalLog();
+            createSomeTransactions( 1 );
+            assertEquals( 6, stream.pushTo( followerDs, 100 ) );
+            assertEquals( 0, stream.getLag() );
+        }
+        finally
+        {
+            stream.close();
+        }
+        assertEquals( DbRepresentation.of( source ), DbRepresentation.of( follower ) );
+    }
+
+    @Test
+    public void commitIsNotStreamedBeforeItHasBeenForced() throws Exception
+    {
+        source.shutdown();
+        // Commits wait this long for others to share their force with
+        source = new EmbeddedGraphDatabase( sourcePath( false ), stringMap( Config.KEEP_LOGICAL_LOGS, "true",
+                Config.GROUP_COMMIT, "true", Config.GROUP_COMMIT_MAX_WAIT, "2000" ) );
+        XaDataSource sourceDs = dataSource( source );
+        XaDataSource followerDs = dataSource( follower );
+        TransactionStream stream = sourceDs.getTransactionStream( followerDs.getLastCommittedTxId() + 1 );
+        try
+        {
+            assertEquals( 2, stream.pushTo( followerDs, 100 ) );
+            Thread committer = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    createSomeTransactions( 1 );
+                }
+            };
+            committer.start();
+            Thread.sleep( 500 );
+            assertTrue( committer.isAlive() );
+            assertEquals( 0, stream.pushTo( followerDs, 100 ) );
+            committer.join();
+            assertEquals( 1, stream.pushTo( followerDs, 100 ) );
+        }
+        finally
+        {
+            stream.close();
+        }
+        assertEquals( DbRepresentation.of( source ), DbRepresentation.of( follower ) );
+    }
+
+    private String sourcePath( boolean clean )
+    {
+        return forTest( getClass() ).directory( "source", clean ).getAbsolutePath();
+    }
+
+    private void createSomeTransactions( int count )
+    {
+        for ( int i = 0; i < count; i++ )
+        {
+            Transaction tx = source.beginTx();
+            Node node = source.createNode();
+            node.setProperty( "name", "node " + i );
+            source.getReferenceNode().createRelationshipTo( node, DynamicRelationshipType.withName( "KNOWS" ) );
+            tx.success();
+            tx.finish();
+        }
+    }
+
+    private static XaDataSource dataSource( AbstractGraphDatabase db )
+    {
+        return db.getConfig().getTxModule().getXaDataSourceManager().getXaDataSource(
+                Config.DEFAULT_DATA_SOURCE_NAME );
+    }
+}
@@ -75,6 +75,30 @@ public class SmallestGraphEverTest extends AbstractTestBase
         execute( Traversal.description().breadthFirst(), Uniqueness.RELATIONSHIP_GLOBAL );
     }
 
+    @Test
+    public void testNodeGlobalBitmapTraversalCanFinishDepthFirst() throws Exception
+    {
+        execute( Traversal.description().depthFirst(), Uniqueness.NODE_GLOBAL_BITMAP );
+    }
+
+    @Test
+    public void testNodeGlobalBitmapTraversalCanFinishBreadthFirst() throws Exception
+    {
+        execute( Traversal.description().breadthFirst(), Uniqueness.NODE_GLOBAL_BITMAP );
+    }
+
+    @Test
+    public void testRelationshipGlobalBitmapTraversalCanFinishDepthFirst() throws Exception
+    {
+        execute( Traversal.description().depthFirst(), Uniqueness.RELATIONSHIP_GLOBAL_BITMAP );
+    }
+
+    @Test
+    public void testRelationshipGlobalBitmapTraversalCanFinishBreadthFirst() throws Exception
+    {
+        execute( Traversal.description().breadthFirst(), Uniqueness.RELATIONSHIP_GLOBAL_BITMAP );
+    }
+
     @Test
     public void testNodePathTraversalCanFinishDepthFirst() throws Exception
     {
@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.traversal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.neo4j.graphdb.Path;
+import org.neo4j.graphdb.traversal.Evaluation;
+import org.neo4j.graphdb.traversal.Evaluator;
+import org.neo4j.graphdb.traversal.Evaluators;
+import org.neo4j.graphdb.traversal.TraversalDescription;
+import org.neo4j.kernel.Traversal;
+import org.neo4j.kernel.Uniqueness;
+
+public class TestParallelBreadthFirst extends AbstractTestBase
+{
+    /*
+     *                     (1)
+     *               ------ | ------
+     *             /        |        \
+     *           (2)       (3)       (4)
+     *          / | \     / | \     / | \
+     *        (5)(6)(7) (8)(9)(A) (B)(C)(D)
+     *                   \________________/
+     *                           |
+     *                          (E)
+     */
+    private static final String[] THE_WORLD_AS_WE_KNOW_IT = new String[] {
+            "1 TO 2", "1 TO 3", "1 TO 4", "2 TO 5", "2 TO 6", "2 TO 7",
+            "3 TO 8", "3 TO 9", "3 TO A", "4 TO B", "4 TO C", "4 TO D",
+            "8 TO E", "9 TO E", "A TO E", "B TO E", "C TO E", "D TO E" };
+
+    private static ExecutorService workers;
+
+    @BeforeClass
+    public static void setupGraph()
+    {
+        createGraph( THE_WORLD_AS_WE_KNOW_IT );
+        workers = Executors.newFixedThreadPool( 4 );
+    }
+
+    @AfterClass
+    public static void stopWorkers()
+    {
+        workers.shutdown();
+    }
+
+    private TraversalDescription description()
+    {
+        return Traversal.description().order( Traversal.parallelBreadthFirst( workers ) );
+    }
+
+    @Test
+    public void returnsOneDepthAtATime() throws Exception
+    {
+        Stack<Set<String>> levels = new Stack<Set<String>>();
+        levels.push( new HashSet<String>( Arrays.asList( "E" ) ) );
+        levels.push( new HashSet<String>( Arrays.asList( "5", "6", "7", "8",
+                "9", "A", "B", "C", "D" ) ) );
+        levels.push( new HashSet<String>( Arrays.asList( "2", "3", "4" ) ) );
+        levels.push( new HashSet<String>( Arrays.asList( "1" ) ) );
+        assertLevels( description().traverse( node( "1" ) ), levels );
+    }
+
+    @Test
+    public void findsTheSameNodesAtTheSameDepthsAsBreadthFirst() throws Exception
+    {
+        assertEquals( depths( Traversal.description().breadthFirst() ), depths( description() ) );
+        assertEquals( depths( Traversal.description().breadthFirst().uniqueness( Uniqueness.NODE_GLOBAL_BITMAP ) ),
+                depths( description().uniqueness( Uniqueness.NODE_GLOBAL_BITMAP ) ) );
+    }
+
+    private Map<String, Integer> depths( TraversalDescription description )
+    {
+        Map<String, Integer> depths = new HashMap<String, Integer>();
+        for ( Path path : description.traverse( node( "1" ) ) )
+        {
+            assertEquals( null, depths.put( (String) path.endNode().getProperty( "name" ), path.length() ) );
+        }
+        return depths;
+    }
+
+    @Test
+    public void respectsTheEvaluators() throws Exception
+    {
+        expectNodes( description().evaluator( Evaluators.atDepth( 1 ) ).traverse( node( "1" ) ), "2", "3", "4" );
+        expectNodes( description().evaluator( Evaluators.toDepth( 1 ) ).traverse( node( "1" ) ), "1", "2", "3", "4" );
+    }
+
+    @Test
+    public void relationshipUniquenessReachesNodesMoreThanOnce() throws Exception
+    {
+        int timesEFound = 0;
+        for ( Path path : description().uniqueness( Uniqueness.RELATIONSHIP_GLOBAL ).traverse( node( "1" ) ) )
+        {
+            if ( path.endNode().getProperty( "name" ).equals( "E" ) )
+            {
+                assertTrue( path.length() >= 3 );
+                timesEFound++;
+            }
+        }
+        assertTrue( timesEFound > 1 );
+    }
+
+    @Test
+    public void exceptionsInTheWorkersAreThrownToTheCaller() throws Exception
+    {
+        final RuntimeException failure = new IllegalStateException( "Evaluator failed" );
+        Evaluator failing = new Evaluator()
+        {
+            public Evaluation evaluate( Path path )
+            {
+                if ( path.length() == 2 )
+                {
+                    throw failure;
+                }
+                return Evaluation.INCLUDE_AND_CONTINUE;
+            }
+        };
+        try
+        {
+            for ( @SuppressWarnings( "unused" ) Path path : description().evaluator( failing ).traverse( node( "1" ) ) )
+            {
+                // just iterate
+            }
+            fail( "Should have failed" );
+        }
+        catch ( IllegalStateException e )
+        {
+            assertTrue( e == failure );
+        }
+    }
+}
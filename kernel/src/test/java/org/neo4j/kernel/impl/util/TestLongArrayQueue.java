@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.NoSuchElementException;
+
+import org.junit.Test;
+
+public class TestLongArrayQueue
+{
+    @Test
+    public void valuesComeOutInTheOrderTheyWereAdded()
+    {
+        LongArrayQueue queue = new LongArrayQueue( 2 );
+        for ( long i = 0; i < 10; i++ )
+        {
+            queue.add( i );
+        }
+        assertEquals( 10, queue.size() );
+        for ( long i = 0; i < 10; i++ )
+        {
+            assertEquals( i, queue.get( (int) i ) );
+        }
+        for ( long i = 0; i < 10; i++ )
+        {
+            assertEquals( i, queue.removeFirst() );
+        }
+        assertTrue( queue.isEmpty() );
+    }
+
+    @Test
+    public void growWhenWrappedAround()
+    {
+        LongArrayQueue queue = new LongArrayQueue( 4 );
+        queue.add( 0 );
+        queue.add( 1 );
+        queue.add( 2 );
+        assertEquals( 0, queue.removeFirst() );
+        assertEquals( 1, queue.removeFirst() );
+        for ( long i = 3; i < 8; i++ )
+        {
+            queue.add( i );
+        }
+        for ( long i = 2; i < 8; i++ )
+        {
+            assertEquals( i, queue.removeFirst() );
+        }
+        assertTrue( queue.isEmpty() );
+    }
+
+    @Test
+    public void removeFromEmptyQueue()
+    {
+        LongArrayQueue queue = new LongArrayQueue();
+        queue.add( 5 );
+        queue.clear();
+        try
+        {
+            queue.removeFirst();
+            fail( "Should be empty" );
+        }
+        catch ( NoSuchElementException e )
+        {   // Good
+        }
+    }
+}
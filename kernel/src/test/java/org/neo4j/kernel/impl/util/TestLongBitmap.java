@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestLongBitmap
+{
+    @Test
+    public void setAndCheck()
+    {
+        LongBitmap bitmap = new LongBitmap();
+        for ( long value = 0; value < 200000; value += 7 )
+        {
+            assertTrue( bitmap.set( value ) );
+        }
+        for ( long value = 0; value < 200000; value++ )
+        {
+            assertEquals( value % 7 == 0, bitmap.isSet( value ) );
+        }
+        assertFalse( bitmap.set( 14 ) );
+        assertEquals( 28572, bitmap.size() );
+    }
+
+    @Test
+    public void onlyAllocatesPagesForUsedRanges()
+    {
+        LongBitmap bitmap = new LongBitmap();
+        bitmap.set( 5 );
+        bitmap.set( 6 );
+        bitmap.set( 1L << 35 );
+        assertEquals( 2, bitmap.pageCount() );
+        assertTrue( bitmap.isSet( 1L << 35 ) );
+        assertFalse( bitmap.isSet( (1L << 35) + 1 ) );
+        assertFalse( bitmap.isSet( 1L << 20 ) );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void negativeValuesAreNotAccepted()
+    {
+        new LongBitmap().set( -1 );
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class TestPrimitiveLongMap
+{
+    @Test
+    public void putAndGet()
+    {
+        PrimitiveLongMap<String> map = new PrimitiveLongMap<String>( 2 );
+        assertTrue( map.isEmpty() );
+        for ( long key = -50; key < 1000; key += 3 )
+        {
+            assertNull( map.put( key, "" + key ) );
+        }
+        assertEquals( 350, map.size() );
+        for ( long key = -50; key < 1000; key++ )
+        {
+            assertEquals( (key + 50) % 3 == 0 ? "" + key : null, map.get( key ) );
+        }
+        assertEquals( "7", map.put( 7, "seven" ) );
+        assertEquals( "seven", map.get( 7 ) );
+        assertEquals( 350, map.size() );
+    }
+
+    @Test
+    public void valuesContainAllPutValues()
+    {
+        PrimitiveLongMap<Long> map = new PrimitiveLongMap<Long>();
+        Set<Long> expected = new HashSet<Long>();
+        for ( long key = 0; key < 100; key++ )
+        {
+            map.put( key << 32, key );
+            expected.add( key );
+        }
+        Set<Long> values = new HashSet<Long>();
+        for ( Long value : map.values() )
+        {
+            assertTrue( values.add( value ) );
+        }
+        assertEquals( expected, values );
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.kernel.impl.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestPrimitiveLongSet
+{
+    @Test
+    public void addAndContains()
+    {
+        PrimitiveLongSet set = new PrimitiveLongSet( 2 );
+        assertTrue( set.isEmpty() );
+        for ( long value = -50; value < 1000; value += 3 )
+        {
+            assertTrue( set.add( value ) );
+        }
+        assertEquals( 350, set.size() );
+        for ( long value = -50; value < 1000; value++ )
+        {
+            assertEquals( (value + 50) % 3 == 0, set.contains( value ) );
+        }
+        assertFalse( set.add( 7 ) );
+        assertEquals( 350, set.size() );
+    }
+
+    @Test
+    public void zeroIsAValueLikeAnyOther()
+    {
+        PrimitiveLongSet set = new PrimitiveLongSet();
+        assertFalse( set.contains( 0 ) );
+        assertTrue( set.add( 0 ) );
+        assertFalse( set.add( 0 ) );
+        assertTrue( set.contains( 0 ) );
+        assertEquals( 1, set.size() );
+    }
+
+    @Test
+    public void valuesWhichOnlyDifferInHighBits()
+    {
+        PrimitiveLongSet set = new PrimitiveLongSet();
+        for ( long value = 1; value < 100; value++ )
+        {
+            assertTrue( set.add( value << 40 ) );
+        }
+        for ( long value = 1; value < 100; value++ )
+        {
+            assertTrue( set.contains( value << 40 ) );
+            assertFalse( set.contains( value ) );
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.tooling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.helpers.collection.Visitor;
+import org.neo4j.test.ImpermanentGraphDatabase;
+
+public class TestStoreScan
+{
+    private ImpermanentGraphDatabase db;
+    private Set<Long> nodeIds;
+    private Set<Long> relationshipIds;
+
+    @Before
+    public void createGraph()
+    {
+        db = new ImpermanentGraphDatabase();
+        nodeIds = new HashSet<Long>();
+        relationshipIds = new HashSet<Long>();
+        Transaction tx = db.beginTx();
+        Node previous = db.getReferenceNode();
+        nodeIds.add( previous.getId() );
+        for ( int i = 0; i < 20000; i++ )
+        {
+            Node node = db.createNode();
+            nodeIds.add( node.getId() );
+            relationshipIds.add( previous.createRelationshipTo( node,
+                    DynamicRelationshipType.withName( "NEXT" ) ).getId() );
+            previous = node;
+        }
+        tx.success();
+        tx.finish();
+
+        tx = db.beginTx();
+        for ( Relationship relationship : db.getReferenceNode().getRelationships() )
+        {
+            relationshipIds.remove( relationship.getId() );
+            Node other = relationship.getOtherNode( db.getReferenceNode() );
+            relationship.delete();
+            for ( Relationship otherRelationship : other.getRelationships() )
+            {
+                relationshipIds.remove( otherRelationship.getId() );
+                otherRelationship.delete();
+            }
+            nodeIds.remove( other.getId() );
+            other.delete();
+        }
+        tx.success();
+        tx.finish();
+    }
+
+    @After
+    public void stopDb()
+    {
+        db.shutdown();
+    }
+
+    @Test
+    public void scanReturnsAllNodesAndRelationships()
+    {
+        Set<Long> scannedNodes = new HashSet<Long>();
+        for ( Node node : GlobalGraphOperations.at( db ).scanAllNodes() )
+        {
+            assertTrue( scannedNodes.add( node.getId() ) );
+        }
+        assertEquals( nodeIds, scannedNodes );
+
+        Set<Long> scannedRelationships = new HashSet<Long>();
+        for ( Relationship relationship : GlobalGraphOperations.at( db ).scanAllRelationships() )
+        {
+            assertTrue( scannedRelationships.add( relationship.getId() ) );
+        }
+        assertEquals( relationshipIds, scannedRelationships );
+    }
+
+    @Test
+    public void splitScansCoverAllNodes()
+    {
+        StoreScan<Node> scan = GlobalGraphOperations.at( db ).scanAllNodes();
+        long size = scan.estimateSize();
+        StoreScan<Node> prefix = scan.trySplit();
+        assertNotNull( prefix );
+        assertEquals( size, prefix.estimateSize() + scan.estimateSize() );
+
+        Set<Long> scanned = new HashSet<Long>();
+        long lastPrefixId = -1;
+        for ( Node node : prefix )
+        {
+            assertTrue( scanned.add( node.getId() ) );
+            lastPrefixId = node.getId();
+        }
+        for ( Node node : scan )
+        {
+            assertTrue( node.getId() > lastPrefixId );
+            assertTrue( scanned.add( node.getId() ) );
+        }
+        assertEquals( nodeIds, scanned );
+    }
+
+    @Test
+    public void visitInParallel()
+    {
+        final ConcurrentHashMap<Long, Boolean> seen = new ConcurrentHashMap<Long, Boolean>();
+        boolean stopped = GlobalGraphOperations.at( db ).scanAllNodes().visitInParallel( 4, new Visitor<Node>()
+        {
+            @Override
+            public boolean visit( Node node )
+            {
+                assertTrue( seen.put( node.getId(), Boolean.TRUE ) == null );
+                return false;
+            }
+        } );
+        assertFalse( stopped );
+        assertEquals( nodeIds, seen.keySet() );
+    }
+
+    @Test
+    public void visitorCanStopParallelScan()
+    {
+        final AtomicInteger count = new AtomicInteger();
+        boolean stopped = GlobalGraphOperations.at( db ).scanAllRelationships().visitInParallel( 4,
+                new Visitor<Relationship>()
+                {
+                    @Override
+                    public boolean visit( Relationship relationship )
+                    {
+                        return count.incrementAndGet() >= 10;
+                    }
+                } );
+        assertTrue( stopped );
+        assertTrue( count.get() < relationshipIds.size() );
+    }
+}
@@ -19,51 +19,427 @@
  */
 package org.neo4j.index.impl.lucene;
 
-import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
-import org.neo4j.kernel.impl.cache.LruCache;
+import org.neo4j.kernel.impl.cache.SizeOfs;
 
+/**
+ * Caches the ids found by exact lookups, i.e. {@link LuceneIndex#get(String, Object)},
+ * for the keys of the indexes which have caching enabled. A key gets caching
+ * enabled either explicitly, see {@link #setCapacity(IndexIdentifier, String, int)},
+ * or automatically once it has been looked up a number of times.
+ * <p>
+ * The ids are kept as {@code long[]} and the estimated heap size of all
+ * cached entries, across all indexes, is kept within one byte budget by
+ * evicting the least recently used entries. Like in the
+ * {@link org.neo4j.kernel.impl.cache.SizeBoundedCache} the entries are split
+ * up in segments with their own lock and a share of the budget, so that
+ * concurrent lookups seldom contend.
+ */
 public class Cache
 {
-    private final Map<IndexIdentifier, Map<String,LruCache<String,Collection<Long>>>> caching = 
-            Collections.synchronizedMap( 
-                    new HashMap<IndexIdentifier, Map<String,LruCache<String,Collection<Long>>>>() );
-    
+    private static final int SEGMENT_COUNT = 16;
+    private static final int ENTRY_OVERHEAD = SizeOfs.withObjectOverhead( 4 * SizeOfs.REFERENCE_SIZE + 16 );
+
+    private final long maxBytes;
+    private final int autoEnableLookups;
+    private final Segment[] segments;
+    private final ConcurrentMap<IndexIdentifier, IndexCache> indexes =
+            new ConcurrentHashMap<IndexIdentifier, IndexCache>();
+
+    /**
+     * @param maxBytes the estimated number of bytes the cached ids of all
+     * indexes may take up.
+     * @param autoEnableLookups the number of lookups of a key after which
+     * caching gets enabled for it, or 0 to only have caching enabled explicitly.
+     */
+    public Cache( long maxBytes, int autoEnableLookups )
+    {
+        if ( maxBytes <= 0 )
+        {
+            throw new IllegalArgumentException( "Illegal max bytes " + maxBytes );
+        }
+        this.maxBytes = maxBytes;
+        this.autoEnableLookups = autoEnableLookups;
+        this.segments = new Segment[SEGMENT_COUNT];
+        for ( int i = 0; i < segments.length; i++ )
+        {
+            segments[i] = new Segment( Math.max( 1, maxBytes / SEGMENT_COUNT ) );
+        }
+    }
+
+    private IndexCache indexCache( IndexIdentifier identifier, boolean create )
+    {
+        IndexCache cache = indexes.get( identifier );
+        if ( cache == null && create )
+        {
+            IndexCache newCache = new IndexCache();
+            cache = indexes.putIfAbsent( identifier, newCache );
+            if ( cache == null )
+            {
+                cache = newCache;
+            }
+        }
+        return cache;
+    }
+
+    private KeyCache keyCache( IndexIdentifier identifier, String key, boolean create )
+    {
+        IndexCache indexCache = indexCache( identifier, create );
+        if ( indexCache == null )
+        {
+            return null;
+        }
+        KeyCache cache = indexCache.keys.get( key );
+        if ( cache == null && create )
+        {
+            KeyCache newCache = new KeyCache( indexCache );
+            cache = indexCache.keys.putIfAbsent( key, newCache );
+            if ( cache == null )
+            {
+                cache = newCache;
+            }
+        }
+        return cache;
+    }
+
+    private Segment segment( CacheKey key )
+    {
+        int hash = key.hashCode();
+        hash ^= ( hash >>> 16 ) ^ ( hash >>> 8 );
+        return segments[hash & ( SEGMENT_COUNT - 1 )];
+    }
+
     public void setCapacity( IndexIdentifier identifier, String key, int size )
     {
-        Map<String, LruCache<String, Collection<Long>>> map = caching.get( identifier );
-        if ( map == null )
+        if ( size < 1 )
+        {
+            throw new IllegalArgumentException( "Illegal capacity " + size + " for " + key );
+        }
+        KeyCache cache = keyCache( identifier, key, true );
+        cache.capacity = size;
+        cache.enabled = true;
+    }
+
+    /**
+     * @return the max number of values of {@code key} which may have their
+     * ids cached at a time, {@link Integer#MAX_VALUE} if caching got enabled
+     * automatically, or {@code null} if caching isn't enabled for the key.
+     */
+    public Integer getCapacity( IndexIdentifier identifier, String key )
+    {
+        KeyCache cache = keyCache( identifier, key, false );
+        return cache != null && cache.enabled ? cache.capacity : null;
+    }
+
+    /**
+     * Looks up the cached ids for {@code value} of {@code key}, counting the
+     * lookup towards enabling caching for the key automatically.
+     *
+     * @return the cached ids, or {@code null} if they aren't cached.
+     */
+    public long[] get( IndexIdentifier identifier, String key, String value )
+    {
+        KeyCache cache = keyCache( identifier, key, autoEnableLookups > 0 );
+        if ( cache == null )
+        {
+            return null;
+        }
+        if ( !cache.enabled )
+        {
+            if ( autoEnableLookups > 0 && cache.lookups.incrementAndGet() >= autoEnableLookups )
+            {
+                cache.enabled = true;
+            }
+            return null;
+        }
+
+        CacheKey cacheKey = new CacheKey( cache, value );
+        long[] ids = segment( cacheKey ).get( cacheKey, cache.generation.get() );
+        (ids != null ? cache.index.hits : cache.index.misses).incrementAndGet();
+        return ids;
+    }
+
+    /**
+     * @return whether or not the ids found for a value of {@code key} should
+     * be collected and given to {@link #put(IndexIdentifier, String, String, long[])}.
+     */
+    public boolean isEnabled( IndexIdentifier identifier, String key )
+    {
+        KeyCache cache = keyCache( identifier, key, false );
+        return cache != null && cache.enabled;
+    }
+
+    /**
+     * @return whether or not this many ids are few enough to be cached,
+     * bigger results are better off not being read eagerly.
+     */
+    public boolean fits( int numberOfIds )
+    {
+        return sizeOf( numberOfIds ) <= segments[0].maxBytes / 8;
+    }
+
+    /**
+     * Caches the ids found for {@code value} of {@code key}. Must be called
+     * while holding the read lock of the index, with ids read from a searcher
+     * which has seen all commits, so that no commit can invalidate the entry
+     * between reading the ids and caching them.
+     */
+    public void put( IndexIdentifier identifier, String key, String value, long[] ids )
+    {
+        KeyCache cache = keyCache( identifier, key, false );
+        if ( cache == null || !cache.enabled || !fits( ids.length ) )
         {
-            map = new HashMap<String, LruCache<String,Collection<Long>>>();
-            caching.put( identifier, map );
+            return;
         }
-        map.put( key, new LruCache<String, Collection<Long>>( key, size, null ) );
+        CacheKey cacheKey = new CacheKey( cache, value );
+        segment( cacheKey ).put( cacheKey, new CachedIds( ids, cache.generation.get() ) );
     }
-    
-    public LruCache<String, Collection<Long>> get( IndexIdentifier identifier, String key )
+
+    /**
+     * Drops the cached ids affected by a change of {@code value} of
+     * {@code key}. A {@code null} value affects all values of the key and a
+     * {@code null} key all keys of the index.
+     */
+    public void invalidate( IndexIdentifier identifier, String key, Object value )
     {
-        Map<String, LruCache<String, Collection<Long>>> map = caching.get( identifier );
-        return map != null ? map.get( key ) : null;
+        IndexCache indexCache = indexCache( identifier, false );
+        if ( indexCache == null )
+        {
+            return;
+        }
+        if ( key == null )
+        {
+            for ( KeyCache cache : indexCache.keys.values() )
+            {
+                cache.generation.incrementAndGet();
+            }
+            return;
+        }
+        KeyCache cache = indexCache.keys.get( key );
+        if ( cache == null )
+        {
+            return;
+        }
+        if ( value == null )
+        {
+            cache.generation.incrementAndGet();
+        }
+        else
+        {
+            CacheKey cacheKey = new CacheKey( cache, value.toString() );
+            segment( cacheKey ).remove( cacheKey );
+        }
     }
-    
+
     public void disable( IndexIdentifier identifier, String key )
     {
-        Map<String, LruCache<String, Collection<Long>>> map = caching.get( identifier );
-        if ( map != null )
+        IndexCache indexCache = indexCache( identifier, false );
+        if ( indexCache != null )
         {
-            map.remove( key );
+            // Its entries can't be reached anymore and will be evicted
+            indexCache.keys.remove( key );
         }
     }
-    
+
     public void disable( IndexIdentifier identifier )
     {
-        Map<String, LruCache<String, Collection<Long>>> map = caching.get( identifier );
-        if ( map != null )
+        indexes.remove( identifier );
+    }
+
+    /**
+     * @return the number of lookups in {@code identifier} which found the
+     * ids in the cache.
+     */
+    public long hitCount( IndexIdentifier identifier )
+    {
+        IndexCache cache = indexCache( identifier, false );
+        return cache != null ? cache.hits.get() : 0;
+    }
+
+    /**
+     * @return the number of lookups of keys with caching enabled in
+     * {@code identifier} which didn't find the ids in the cache.
+     */
+    public long missCount( IndexIdentifier identifier )
+    {
+        IndexCache cache = indexCache( identifier, false );
+        return cache != null ? cache.misses.get() : 0;
+    }
+
+    public long usedBytes()
+    {
+        long used = 0;
+        for ( Segment segment : segments )
+        {
+            used += segment.usedBytes();
+        }
+        return used;
+    }
+
+    public long maxBytes()
+    {
+        return maxBytes;
+    }
+
+    private static int sizeOf( int numberOfIds )
+    {
+        return ENTRY_OVERHEAD + SizeOfs.withArrayOverhead( numberOfIds * 8 );
+    }
+
+    private static class IndexCache
+    {
+        private final ConcurrentMap<String, KeyCache> keys = new ConcurrentHashMap<String, KeyCache>();
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+    }
+
+    private static class KeyCache
+    {
+        private final IndexCache index;
+        private volatile boolean enabled;
+        private volatile int capacity = Integer.MAX_VALUE;
+        private final AtomicInteger lookups = new AtomicInteger();
+        private final AtomicInteger entries = new AtomicInteger();
+        /**
+         * Bumped to invalidate all cached values of the key at once, entries
+         * from an older generation are treated as missing.
+         */
+        private final AtomicLong generation = new AtomicLong();
+
+        KeyCache( IndexCache index )
+        {
+            this.index = index;
+        }
+    }
+
+    /**
+     * Compares the {@link KeyCache} by identity, so that entries of a key
+     * which has been disabled are never found again.
+     */
+    private static class CacheKey
+    {
+        private final KeyCache keyCache;
+        private final String value;
+        private final int hashCode;
+
+        CacheKey( KeyCache keyCache, String value )
+        {
+            this.keyCache = keyCache;
+            this.value = value;
+            this.hashCode = 31 * System.identityHashCode( keyCache ) + value.hashCode();
+        }
+
+        @Override
+        public boolean equals( Object obj )
+        {
+            if ( !( obj instanceof CacheKey ) )
+            {
+                return false;
+            }
+            CacheKey other = (CacheKey) obj;
+            return keyCache == other.keyCache && value.equals( other.value );
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
+    }
+
+    private static class CachedIds
+    {
+        private final long[] ids;
+        private final long generation;
+
+        CachedIds( long[] ids, long generation )
+        {
+            this.ids = ids;
+            this.generation = generation;
+        }
+    }
+
+    private static class Segment
+    {
+        private final long maxBytes;
+        private final LinkedHashMap<CacheKey, CachedIds> map =
+                new LinkedHashMap<CacheKey, CachedIds>( 16, 0.75f, true );
+        private long usedBytes;
+
+        Segment( long maxBytes )
+        {
+            this.maxBytes = maxBytes;
+        }
+
+        synchronized long[] get( CacheKey key, long generation )
+        {
+            CachedIds cached = map.get( key );
+            if ( cached == null )
+            {
+                return null;
+            }
+            if ( cached.generation != generation )
+            {
+                removed( key, map.remove( key ) );
+                return null;
+            }
+            return cached.ids;
+        }
+
+        synchronized void put( CacheKey key, CachedIds ids )
+        {
+            KeyCache keyCache = key.keyCache;
+            CachedIds previous = map.remove( key );
+            if ( previous != null )
+            {
+                removed( key, previous );
+            }
+            if ( keyCache.entries.get() >= keyCache.capacity )
+            {
+                return;
+            }
+            map.put( key, ids );
+            keyCache.entries.incrementAndGet();
+            usedBytes += entrySize( key, ids );
+            Iterator<Map.Entry<CacheKey, CachedIds>> entries = map.entrySet().iterator();
+            while ( usedBytes > maxBytes && entries.hasNext() )
+            {
+                Map.Entry<CacheKey, CachedIds> eldest = entries.next();
+                entries.remove();
+                removed( eldest.getKey(), eldest.getValue() );
+            }
+        }
+
+        synchronized void remove( CacheKey key )
+        {
+            CachedIds cached = map.remove( key );
+            if ( cached != null )
+            {
+                removed( key, cached );
+            }
+        }
+
+        private void removed( CacheKey key, CachedIds ids )
+        {
+            key.keyCache.entries.decrementAndGet();
+            usedBytes -= entrySize( key, ids );
+        }
+
+        private static long entrySize( CacheKey key, CachedIds ids )
+        {
+            return sizeOf( ids.ids.length ) + SizeOfs.sizeOf( key.value );
+        }
+
+        synchronized long usedBytes()
         {
-            map.clear();
+            return usedBytes;
         }
     }
 }
@@ -42,6 +42,7 @@ class CommitContext
     
     IndexWriter writer;
     IndexSearcher searcher;
+    private IndexSearcherRef searcherRef;
     
     CommitContext( LuceneDataSource dataSource, IndexIdentifier identifier, IndexType indexType, CommandList commandList )
     {
@@ -57,7 +58,21 @@ class CommitContext
         if ( writer == null )
         {
             writer = dataSource.getIndexWriter( identifier );
-            searcher = dataSource.getIndexSearcher( identifier, false ).getSearcher();
+            searcherRef = dataSource.getIndexSearcher( identifier, true );
+            searcher = searcherRef.getSearcher();
+        }
+    }
+
+    /**
+     * Releases the searcher used while committing, so that it can be closed
+     * when a newer one replaces it.
+     */
+    void close()
+    {
+        if ( searcherRef != null )
+        {
+            searcherRef.closeStrict();
+            searcherRef = null;
         }
     }
     
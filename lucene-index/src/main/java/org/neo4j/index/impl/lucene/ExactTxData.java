@@ -36,6 +36,16 @@ public class ExactTxData extends TxData
 {
     private Map<String, Map<Object, Set<Object>>> data;
     private boolean hasOrphans;
+    /**
+     * Built from {@link #data} the first time it's queried, then kept up to
+     * date with additions. Removals drop it, to be rebuilt when needed.
+     */
+    private TxTermIndex terms;
+    /**
+     * Entities which have had key/value pairs removed, which queries on the
+     * fields of the entity itself still match, see {@link TxTermIndex#addEntity(Object)}.
+     */
+    private Set<Object> entitiesWithRemovals;
 
     ExactTxData( LuceneIndex index )
     {
@@ -46,6 +56,17 @@ public class ExactTxData extends TxData
     void add( TxDataHolder holder, Object entityId, String key, Object value )
     {
         idCollection( key, value, true ).add( entityId );
+        if ( terms != null )
+        {
+            if ( key == null || value == null )
+            {
+                terms = null;
+            }
+            else
+            {
+                terms.add( entityId, key, value );
+            }
+        }
     }
 
     private Set<Object> idCollection( String key, Object value, boolean create )
@@ -130,11 +151,79 @@ public class ExactTxData extends TxData
             return Collections.<Long>emptyList();
         }
 
+        Collection<Long> ids = queryTerms( query );
+        if ( ids != null )
+        {
+            return ids;
+        }
+
         TxData fullTxData = toFullTxData();
         holder.set( fullTxData );
         return fullTxData.query( holder, query, contextOrNull );
     }
 
+    @Override
+    Collection<Long> queryWithoutSearcher( Query query, QueryContext contextOrNull )
+    {
+        if ( contextOrNull != null )
+        {
+            if ( contextOrNull.getTradeCorrectnessForSpeed() )
+            {
+                return Collections.<Long>emptyList();
+            }
+            if ( contextOrNull.getSorting() != null || contextOrNull.getTop() > 0 )
+            {
+                // The hits have to be sorted together with the committed ones
+                return null;
+            }
+        }
+        return queryTerms( query );
+    }
+
+    /**
+     * @return the ids matching {@code query} or {@code null} if it can't be
+     * answered without a {@link FullTxData}.
+     */
+    private Collection<Long> queryTerms( Query query )
+    {
+        if ( hasOrphans )
+        {
+            // Orphans match any query, which only FullTxData knows how to do
+            return null;
+        }
+        if ( data == null )
+        {
+            return Collections.<Long>emptySet();
+        }
+        if ( terms == null )
+        {
+            terms = new TxTermIndex( index );
+            if ( entitiesWithRemovals != null )
+            {
+                for ( Object id : entitiesWithRemovals )
+                {
+                    terms.addEntity( id );
+                }
+            }
+            for ( Map.Entry<String, Map<Object, Set<Object>>> entry : data.entrySet() )
+            {
+                for ( Map.Entry<Object, Set<Object>> valueEntry : entry.getValue().entrySet() )
+                {
+                    for ( Object id : valueEntry.getValue() )
+                    {
+                        terms.add( id, entry.getKey(), valueEntry.getKey() );
+                    }
+                }
+            }
+        }
+        Set<Object> ids = terms.query( query );
+        if ( ids == null )
+        {
+            return null;
+        }
+        return ids.isEmpty() ? Collections.<Long>emptySet() : toLongs( ids );
+    }
+
     @Override
     void remove( TxDataHolder holder, Object entityId, String key, Object value )
     {
@@ -152,10 +241,15 @@ public class ExactTxData extends TxData
         else
         {
             Collection<Object> ids = idCollection( key, value, false );
-            if ( ids != null )
+            if ( ids != null && ids.remove( entityId ) )
             {
-                ids.remove( entityId );
+                if ( entitiesWithRemovals == null )
+                {
+                    entitiesWithRemovals = new HashSet<Object>();
+                }
+                entitiesWithRemovals.add( entityId );
             }
+            terms = null;
         }
     }
 
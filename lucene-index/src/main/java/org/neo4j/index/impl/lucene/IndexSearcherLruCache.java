@@ -47,7 +47,7 @@ public class IndexSearcherLruCache extends LruCache<IndexIdentifier, Pair<IndexS
     public void elementCleaned(Pair<IndexSearcherRef, AtomicBoolean> searcher)
     {
         try {
-            searcher.first().dispose();
+            searcher.first().detachOrClose();
         } catch (IOException e) {
             throw new RuntimeException( e );
         }
@@ -55,12 +55,28 @@ class IndexSearcherRef
         return identifier;
     }
 
-    void incRef()
+    /**
+     * Takes a reference to this searcher, unless it has been detached or
+     * closed since it was looked up, which it may be since searchers are
+     * handed out without locking.
+     *
+     * @return whether or not a reference was taken.
+     */
+    boolean tryIncRef() throws IOException
     {
         this.refCount.incrementAndGet();
+        if ( this.detached || this.isClosed )
+        {
+            if ( this.refCount.decrementAndGet() <= 0 && this.detached )
+            {
+                dispose();
+            }
+            return false;
+        }
+        return true;
     }
     
-    public void dispose() throws IOException
+    public synchronized void dispose() throws IOException
     {
         if ( !this.isClosed )
         {
@@ -72,14 +88,13 @@ class IndexSearcherRef
     
     public void detachOrClose() throws IOException
     {
+        // Detach before looking at the count, a concurrent tryIncRef
+        // either sees it detached or is seen here
+        this.detached = true;
         if ( this.refCount.get() == 0 )
         {
             dispose();
         }
-        else
-        {
-            this.detached = true;
-        }
     }
     
     public boolean close() throws IOException
@@ -29,6 +29,12 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Fieldable;
@@ -36,6 +42,7 @@ import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LogByteSizeMergePolicy;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TopDocs;
@@ -50,9 +57,30 @@ import org.neo4j.kernel.impl.util.IoPrimitiveUtils;
 
 class LuceneBatchInserterIndex implements BatchInserterIndex
 {
+    private static Logger log = Logger.getLogger( LuceneBatchInserterIndex.class.getName() );
+
+    /**
+     * Tells a {@link DocumentWriter} to stop.
+     */
+    private static final Document STOP = new Document();
+
     private final IndexIdentifier identifier;
     private final IndexType type;
-    
+    private final int mergeFactor;
+    private final int shutdownMaxSegments;
+
+    /**
+     * Documents waiting to be written by the {@link #documentWriters}, or
+     * {@code null} if documents are written by the thread adding them.
+     */
+    private final BlockingQueue<Document> queue;
+    private final DocumentWriter[] documentWriters;
+    private final AtomicInteger queuedDocuments = new AtomicInteger();
+    private final Object allWritten = new Object();
+    private volatile Throwable writeFailure;
+    private long documentCount;
+    private long firstAddTime;
+
     private IndexWriter writer;
     private boolean writerModified;
     private IndexSearcher searcher;
@@ -62,14 +90,41 @@ class LuceneBatchInserterIndex implements BatchInserterIndex
     private int commitBatchSize = 500000;
 
     LuceneBatchInserterIndex( LuceneBatchInserterIndexProvider provider,
-            BatchInserter inserter, IndexIdentifier identifier, Map<String, String> config )
+            BatchInserter inserter, IndexIdentifier identifier, Map<String, String> config,
+            Map<String, String> writeConfig )
     {
         String dbStoreDir = ((BatchInserterImpl) inserter).getStore();
         Pair<String, Boolean> storeDir = LuceneDataSource.getStoreDir( dbStoreDir );
         this.createdNow = storeDir.other();
         this.identifier = identifier;
         this.type = IndexType.getIndexType( identifier, config );
+        this.mergeFactor = parseInt( writeConfig, LuceneBatchInserterIndexProvider.MERGE_FACTOR, 0 );
+        this.shutdownMaxSegments = parseInt( writeConfig, LuceneBatchInserterIndexProvider.SHUTDOWN_MAX_SEGMENTS, 1 );
         this.writer = instantiateWriter( storeDir.first() );
+
+        int writerThreads = parseInt( writeConfig, LuceneBatchInserterIndexProvider.WRITER_THREADS, 1 );
+        if ( writerThreads > 1 )
+        {
+            this.queue = new ArrayBlockingQueue<Document>(
+                    parseInt( writeConfig, LuceneBatchInserterIndexProvider.WRITER_QUEUE_SIZE, 10000 ) );
+            this.documentWriters = new DocumentWriter[writerThreads];
+            for ( int i = 0; i < writerThreads; i++ )
+            {
+                documentWriters[i] = new DocumentWriter( i );
+                documentWriters[i].start();
+            }
+        }
+        else
+        {
+            this.queue = null;
+            this.documentWriters = null;
+        }
+    }
+
+    private static int parseInt( Map<String, String> config, String key, int defaultValue )
+    {
+        String value = config.get( key );
+        return value != null ? Integer.parseInt( value ) : defaultValue;
     }
     
     /**
@@ -94,7 +149,7 @@ class LuceneBatchInserterIndex implements BatchInserterIndex
                 Object value = entry.getValue();
                 addSingleProperty(entityId, document, key, value);
             }
-            writer.addDocument( document );
+            write( document );
             if ( ++updateCount == commitBatchSize )
             {
                 writer.commit();
@@ -107,6 +162,226 @@ class LuceneBatchInserterIndex implements BatchInserterIndex
         }
     }
 
+    private void write( Document document ) throws IOException
+    {
+        if ( documentCount++ == 0 )
+        {
+            firstAddTime = System.currentTimeMillis();
+        }
+        if ( queue == null )
+        {
+            writer.addDocument( document );
+            return;
+        }
+
+        checkWriteFailure();
+        queuedDocuments.incrementAndGet();
+        boolean queued = false;
+        try
+        {
+            while ( !queue.offer( document, 100, TimeUnit.MILLISECONDS ) )
+            {
+                // The writers may have stopped on a failure and won't make room
+                checkWriteFailure();
+            }
+            queued = true;
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( "Interrupted while adding " + document + " to " + identifier, e );
+        }
+        finally
+        {
+            if ( !queued )
+            {
+                documentWritten();
+            }
+        }
+    }
+
+    private void documentWritten()
+    {
+        if ( queuedDocuments.decrementAndGet() == 0 )
+        {
+            synchronized ( allWritten )
+            {
+                allWritten.notifyAll();
+            }
+        }
+    }
+
+    private void writeFailed( Throwable failure )
+    {
+        writeFailure = failure;
+        synchronized ( allWritten )
+        {
+            allWritten.notifyAll();
+        }
+    }
+
+    /**
+     * Waits for the documents added so far to be written, which they must be
+     * before deleting documents or opening a searcher.
+     *
+     * @throws RuntimeException if a document couldn't be written or if
+     * interrupted while waiting, in which case the interrupt is kept.
+     */
+    private void awaitQueuedDocuments()
+    {
+        if ( queue == null )
+        {
+            return;
+        }
+        synchronized ( allWritten )
+        {
+            while ( queuedDocuments.get() > 0 && writeFailure == null )
+            {
+                try
+                {
+                    allWritten.wait();
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException( "Interrupted while waiting for documents to be written to " +
+                            identifier, e );
+                }
+            }
+        }
+        checkWriteFailure();
+    }
+
+    private void checkWriteFailure()
+    {
+        if ( writeFailure != null )
+        {
+            throw new RuntimeException( "Unable to write documents to " + identifier, writeFailure );
+        }
+    }
+
+    /**
+     * @return the number of documents added per second since the first one.
+     */
+    double documentsPerSecond()
+    {
+        long millis = Math.max( 1, System.currentTimeMillis() - firstAddTime );
+        return documentCount * 1000d / millis;
+    }
+
+    /**
+     * Writes documents from the queue. Since {@link IndexWriter} buffers the
+     * documents of each thread separately the writers fill separate segments
+     * and only share the flushes to disk. A writer stops when it takes
+     * {@link #STOP} or when interrupted, which fails further adds.
+     */
+    private class DocumentWriter extends Thread
+    {
+        DocumentWriter( int number )
+        {
+            super( "Batch index writer[" + identifier + "," + number + "]" );
+            setDaemon( true );
+        }
+
+        @Override
+        public void run()
+        {
+            while ( true )
+            {
+                Document document;
+                try
+                {
+                    document = queue.take();
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                    writeFailed( e );
+                    return;
+                }
+                if ( document == STOP )
+                {
+                    return;
+                }
+                try
+                {
+                    writer.addDocument( document );
+                }
+                catch ( Throwable e )
+                {
+                    log.log( Level.WARNING, "Unable to write " + document + " to " + identifier, e );
+                    writeFailed( e );
+                }
+                finally
+                {
+                    documentWritten();
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops the writers once they've written the queued documents. Any writer
+     * may take any {@link #STOP}, so one per writer is queued before joining
+     * any of them. An interrupt doesn't keep the writers from being stopped,
+     * but is kept.
+     */
+    private void stopDocumentWriters()
+    {
+        if ( documentWriters == null )
+        {
+            return;
+        }
+        boolean interrupted = false;
+        for ( int i = 0; i < documentWriters.length; i++ )
+        {
+            boolean queued = false;
+            // Writers stopped by an interrupt won't make room in the queue
+            while ( !queued && anyDocumentWriterAlive() )
+            {
+                try
+                {
+                    queued = queue.offer( STOP, 100, TimeUnit.MILLISECONDS );
+                }
+                catch ( InterruptedException e )
+                {
+                    interrupted = true;
+                }
+            }
+        }
+        for ( DocumentWriter documentWriter : documentWriters )
+        {
+            while ( documentWriter.isAlive() )
+            {
+                try
+                {
+                    documentWriter.join();
+                }
+                catch ( InterruptedException e )
+                {
+                    interrupted = true;
+                }
+            }
+        }
+        if ( interrupted )
+        {
+            Thread.currentThread().interrupt();
+        }
+        checkWriteFailure();
+    }
+
+    private boolean anyDocumentWriterAlive()
+    {
+        for ( DocumentWriter documentWriter : documentWriters )
+        {
+            if ( documentWriter.isAlive() )
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void addSingleProperty( long entityId, Document document, String key, Object value ) {
         for ( Object oneValue : IoPrimitiveUtils.asArray(value) )
         {
@@ -183,6 +458,7 @@ class LuceneBatchInserterIndex implements BatchInserterIndex
     {
         try
         {
+            awaitQueuedDocuments();
             removeFromCache( entityId );
             writer.deleteDocuments( type.idTermQuery( entityId ) );
             add( entityId, properties );
@@ -235,6 +511,12 @@ class LuceneBatchInserterIndex implements BatchInserterIndex
         {
             IndexWriterConfig writerConfig = new IndexWriterConfig( LUCENE_VERSION, type.analyzer );
             writerConfig.setRAMBufferSizeMB( determineGoodBufferSize( writerConfig.getRAMBufferSizeMB() ) );
+            if ( mergeFactor > 0 )
+            {
+                LogByteSizeMergePolicy mergePolicy = new LogByteSizeMergePolicy();
+                mergePolicy.setMergeFactor( mergeFactor );
+                writerConfig.setMergePolicy( mergePolicy );
+            }
             IndexWriter writer = new IndexWriter( getDirectory( directory, identifier ), writerConfig );
             return writer;
         }
@@ -275,6 +557,7 @@ class LuceneBatchInserterIndex implements BatchInserterIndex
                     result.getIndexReader().close();
                     result.close();
                 }
+                awaitQueuedDocuments();
                 IndexReader newReader = IndexReader.open( writer, true );
                 result = new IndexSearcher( newReader );
                 writerModified = false;
@@ -295,9 +578,9 @@ class LuceneBatchInserterIndex implements BatchInserterIndex
     {
         try
         {
-            if ( this.writer != null )
+            if ( this.writer != null && shutdownMaxSegments > 0 )
             {
-                this.writer.optimize( true );
+                this.writer.optimize( shutdownMaxSegments, true );
             }
             LuceneUtil.close( this.writer );
         }
@@ -372,20 +655,28 @@ class LuceneBatchInserterIndex implements BatchInserterIndex
     public void shutdown()
     {
         closeSearcher();
-        closeWriter();
+        try
+        {
+            stopDocumentWriters();
+        }
+        finally
+        {
+            closeWriter();
+        }
+        if ( documentCount > 0 )
+        {
+            log.info( "Added " + documentCount + " documents to " + identifier + ", " +
+                    (long) documentsPerSecond() + " documents/s" );
+        }
     }
     
+    /**
+     * Makes the documents added so far visible to queries, they're
+     * committed on {@link #shutdown()}.
+     */
     public void flush()
     {
         writerModified = true;
-//        try
-//        {
-//            writer.commit();
-//        }
-//        catch ( IOException e )
-//        {
-//            throw new RuntimeException( e );
-//        }
     }
     
     public void setCacheCapacity( String key, int size )
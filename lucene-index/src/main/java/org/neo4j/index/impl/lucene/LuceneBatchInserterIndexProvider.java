@@ -45,7 +45,34 @@ import org.neo4j.kernel.impl.index.IndexStore;
  */
 public class LuceneBatchInserterIndexProvider implements BatchInserterIndexProvider
 {
+    /**
+     * The number of threads writing the documents of each index, each one
+     * filling its own segments. The default is 1, which means that documents
+     * are written by the thread adding them.
+     */
+    public static final String WRITER_THREADS = "writer_threads";
+
+    /**
+     * The number of documents which may be waiting for the writer threads of
+     * an index before adding more blocks. The default is 10000.
+     */
+    public static final String WRITER_QUEUE_SIZE = "writer_queue_size";
+
+    /**
+     * The number of segments of about the same size which get merged while
+     * inserting. A higher value defers more of the merging to shutdown.
+     * The default is the one of Lucene, 10.
+     */
+    public static final String MERGE_FACTOR = "merge_factor";
+
+    /**
+     * The number of segments an index is merged down to on shutdown, 0 for
+     * no merging at all. The default is 1, a fully optimized index.
+     */
+    public static final String SHUTDOWN_MAX_SEGMENTS = "shutdown_max_segments";
+
     private final BatchInserter inserter;
+    private final Map<String, String> config;
     private final Map<IndexIdentifier, LuceneBatchInserterIndex> indexes =
             new HashMap<IndexIdentifier, LuceneBatchInserterIndex>();
     final IndexStore indexStore;
@@ -53,8 +80,20 @@ public class LuceneBatchInserterIndexProvider implements BatchInserterIndexProvi
     final EntityType relationshipEntityType;
 
     public LuceneBatchInserterIndexProvider( final BatchInserter inserter )
+    {
+        this( inserter, new HashMap<String, String>() );
+    }
+
+    /**
+     * @param inserter the batch inserter the indexes are for.
+     * @param config how the indexes are written, see {@link #WRITER_THREADS},
+     * {@link #WRITER_QUEUE_SIZE}, {@link #MERGE_FACTOR} and
+     * {@link #SHUTDOWN_MAX_SEGMENTS}.
+     */
+    public LuceneBatchInserterIndexProvider( final BatchInserter inserter, Map<String, String> config )
     {
         this.inserter = inserter;
+        this.config = config;
         this.indexStore = ((BatchInserterImpl) inserter).getIndexStore();
         this.nodeEntityType = new EntityType()
         {
@@ -140,7 +179,7 @@ public class LuceneBatchInserterIndexProvider implements BatchInserterIndexProvi
         LuceneBatchInserterIndex index = indexes.get( identifier );
         if ( index == null )
         {
-            index = new LuceneBatchInserterIndex( this, inserter, identifier, config );
+            index = new LuceneBatchInserterIndex( this, inserter, identifier, config, this.config );
             indexes.put( identifier, index );
         }
         return index;
@@ -28,11 +28,16 @@ import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.lucene.analysis.Analyzer;
@@ -67,9 +72,9 @@ import org.neo4j.helpers.Pair;
 import org.neo4j.helpers.UTF8;
 import org.neo4j.helpers.collection.ClosableIterable;
 import org.neo4j.kernel.Config;
-import org.neo4j.kernel.impl.cache.LruCache;
 import org.neo4j.kernel.impl.index.IndexProviderStore;
 import org.neo4j.kernel.impl.index.IndexStore;
+import org.neo4j.kernel.impl.nioneo.store.CommonAbstractStore;
 import org.neo4j.kernel.impl.nioneo.store.FileSystemAbstraction;
 import org.neo4j.kernel.impl.transaction.xaframework.LogBackedXaDataSource;
 import org.neo4j.kernel.impl.transaction.xaframework.XaCommand;
@@ -90,6 +95,7 @@ public class LuceneDataSource extends LogBackedXaDataSource
     public static final Version LUCENE_VERSION = Version.LUCENE_31;
     public static final String DEFAULT_NAME = "lucene-index";
     public static final byte[] DEFAULT_BRANCH_ID = UTF8.encode( "162374" );
+    private static final int DEFAULT_LOOKUP_CACHE_AUTO_ENABLE = 1000;
 
     /**
      * Default {@link Analyzer} for fulltext parsing.
@@ -129,15 +135,32 @@ public class LuceneDataSource extends LogBackedXaDataSource
 
     private final IndexWriterLruCache indexWriters;
     private final IndexSearcherLruCache indexSearchers;
+    /**
+     * All writers not closed yet, also the ones evicted from
+     * {@link #indexWriters} while in use, see {@link #closeOrRetire(IndexWriter)}.
+     */
+    private final ConcurrentMap<IndexIdentifier, IndexWriter> openWriters =
+            new ConcurrentHashMap<IndexIdentifier, IndexWriter>();
+    private final Set<IndexWriter> retiredWriters =
+            Collections.newSetFromMap( new ConcurrentHashMap<IndexWriter, Boolean>() );
 
     private final XaContainer xaContainer;
     private final String baseStorePath;
-    private ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ConcurrentMap<IndexIdentifier, IndexLock> indexLocks =
+            new ConcurrentHashMap<IndexIdentifier, IndexLock>();
     final IndexStore indexStore;
     final IndexProviderStore providerStore;
     private final IndexTypeCache typeCache;
-    private boolean closed;
+    private volatile boolean closed;
     private final Cache caching;
+    /**
+     * Refreshes searchers in the background if a max staleness is configured,
+     * otherwise {@code null} and queries refresh stale searchers themselves.
+     */
+    private final SearcherRefresher searcherRefresher;
+    private final AtomicLong searcherReopens = new AtomicLong();
+    private final AtomicLong searcherReopenNanos = new AtomicLong();
+    private final AtomicLong maxSearcherReopenNanos = new AtomicLong();
     EntityType nodeEntityType;
     EntityType relationshipEntityType;
     final Map<IndexIdentifier, LuceneIndex<? extends PropertyContainer>> indexes =
@@ -158,8 +181,16 @@ public class LuceneDataSource extends LogBackedXaDataSource
         int searcherSize = parseInt( params, Config.LUCENE_SEARCHER_CACHE_SIZE );
         indexSearchers = new IndexSearcherLruCache( searcherSize );
         int writerSize = parseInt( params, Config.LUCENE_WRITER_CACHE_SIZE );
-        indexWriters = new IndexWriterLruCache( writerSize );
-        caching = new Cache();
+        indexWriters = new IndexWriterLruCache( writerSize )
+        {
+            @Override
+            public void elementCleaned( IndexWriter writer )
+            {
+                closeOrRetire( writer );
+            }
+        };
+        caching = new Cache( lookupCacheMemory( params ),
+                parseInt( params, Config.LUCENE_LOOKUP_CACHE_AUTO_ENABLE, DEFAULT_LOOKUP_CACHE_AUTO_ENABLE ) );
         String storeDir = (String) params.get( "store_dir" );
         this.baseStorePath = getStoreDir( storeDir ).first();
         cleanWriteLocks( baseStorePath );
@@ -223,6 +254,17 @@ public class LuceneDataSource extends LogBackedXaDataSource
             setKeepLogicalLogsIfSpecified( (String) params.get( Config.KEEP_LOGICAL_LOGS ), DEFAULT_NAME );
             setLogicalLogAtCreationTime( xaContainer.getLogicalLog() );
         }
+
+        int maxStaleness = parseInt( params, Config.LUCENE_SEARCHER_MAX_STALENESS, 0 );
+        if ( !isReadOnly && maxStaleness > 0 )
+        {
+            searcherRefresher = new SearcherRefresher( this, maxStaleness );
+            searcherRefresher.start();
+        }
+        else
+        {
+            searcherRefresher = null;
+        }
     }
 
     private boolean parseBoolean( Map<Object, Object> params, String key, boolean defaultValue )
@@ -233,10 +275,29 @@ public class LuceneDataSource extends LogBackedXaDataSource
                 defaultValue;
     }
 
+    private static long lookupCacheMemory( Map<Object, Object> params )
+    {
+        String memory = (String) params.get( Config.LUCENE_LOOKUP_CACHE_MEMORY );
+        if ( memory != null )
+        {
+            long bytes = CommonAbstractStore.parseMemorySize( memory.trim(), Config.LUCENE_LOOKUP_CACHE_MEMORY );
+            if ( bytes > 0 )
+            {
+                return bytes;
+            }
+        }
+        return Math.max( 1024 * 1024, Runtime.getRuntime().maxMemory() / 64 );
+    }
+
     private int parseInt( Map<Object, Object> params, String param )
+    {
+        return parseInt( params, param, Integer.MAX_VALUE );
+    }
+
+    private int parseInt( Map<Object, Object> params, String param, int defaultValue )
     {
         String searcherParam = (String) params.get( param );
-        return searcherParam != null ? Integer.parseInt( searcherParam ) : Integer.MAX_VALUE;
+        return searcherParam != null ? Integer.parseInt( searcherParam ) : defaultValue;
     }
 
     IndexType getType( IndexIdentifier identifier )
@@ -302,6 +363,12 @@ public class LuceneDataSource extends LogBackedXaDataSource
                 return;
             }
             closed = true;
+            // Returns when a refresh in progress is done, so that no reopen
+            // runs while the searchers and writers are closed below
+            if ( searcherRefresher != null )
+            {
+                searcherRefresher.shutdown();
+            }
             for ( Pair<IndexSearcherRef, AtomicBoolean> searcher : indexSearchers.values() )
             {
                 try
@@ -315,7 +382,7 @@ public class LuceneDataSource extends LogBackedXaDataSource
             }
             indexSearchers.clear();
 
-            for ( Map.Entry<IndexIdentifier, IndexWriter> entry : indexWriters.entrySet() )
+            for ( Map.Entry<IndexIdentifier, IndexWriter> entry : openWriters.entrySet() )
             {
                 try
                 {
@@ -326,6 +393,8 @@ public class LuceneDataSource extends LogBackedXaDataSource
                     throw new RuntimeException( "Unable to close index writer " + entry.getKey(), e );
                 }
             }
+            openWriters.clear();
+            retiredWriters.clear();
             indexWriters.clear();
         }
 
@@ -369,7 +438,7 @@ public class LuceneDataSource extends LogBackedXaDataSource
         @Override
         public void flushAll()
         {
-            for ( Map.Entry<IndexIdentifier, IndexWriter> entry : indexWriters.entrySet() )
+            for ( Map.Entry<IndexIdentifier, IndexWriter> entry : openWriters.entrySet() )
             {
                 try
                 {
@@ -401,24 +470,50 @@ public class LuceneDataSource extends LogBackedXaDataSource
         }
     }
 
-    void getReadLock()
+    /**
+     * The locking of one index. Its read/write lock is read locked by queries
+     * and write locked by commits, so that a commit only holds up queries on
+     * the indexes it changes. The monitor of the {@link IndexLock} itself
+     * guards creating and closing the writer and searcher of the index.
+     */
+    private static class IndexLock
+    {
+        private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+    }
+
+    private IndexLock lockFor( IndexIdentifier identifier )
     {
-        lock.readLock().lock();
+        IndexLock lock = indexLocks.get( identifier );
+        if ( lock == null )
+        {
+            IndexLock newLock = new IndexLock();
+            lock = indexLocks.putIfAbsent( identifier, newLock );
+            if ( lock == null )
+            {
+                lock = newLock;
+            }
+        }
+        return lock;
     }
 
-    void releaseReadLock()
+    void getReadLock( IndexIdentifier identifier )
     {
-        lock.readLock().unlock();
+        lockFor( identifier ).readWriteLock.readLock().lock();
     }
 
-    void getWriteLock()
+    void releaseReadLock( IndexIdentifier identifier )
     {
-        lock.writeLock().lock();
+        lockFor( identifier ).readWriteLock.readLock().unlock();
     }
 
-    void releaseWriteLock()
+    void getWriteLock( IndexIdentifier identifier )
     {
-        lock.writeLock().unlock();
+        lockFor( identifier ).readWriteLock.writeLock().lock();
+    }
+
+    void releaseWriteLock( IndexIdentifier identifier )
+    {
+        lockFor( identifier ).readWriteLock.writeLock().unlock();
     }
 
     /**
@@ -438,7 +533,9 @@ public class LuceneDataSource extends LogBackedXaDataSource
         try
         {
             IndexReader reader = searcher.first().getSearcher().getIndexReader();
+            long startTime = System.nanoTime();
             IndexReader reopened = reader.reopen();
+            recordSearcherReopen( System.nanoTime() - startTime );
             if ( reopened != reader )
             {
                 IndexSearcher newSearcher = new IndexSearcher( reopened );
@@ -453,6 +550,44 @@ public class LuceneDataSource extends LogBackedXaDataSource
         }
     }
 
+    private void recordSearcherReopen( long nanos )
+    {
+        searcherReopens.incrementAndGet();
+        searcherReopenNanos.addAndGet( nanos );
+        long max;
+        do
+        {
+            max = maxSearcherReopenNanos.get();
+        }
+        while ( nanos > max && !maxSearcherReopenNanos.compareAndSet( max, nanos ) );
+    }
+
+    /**
+     * @return the number of times a searcher has been reopened to see
+     * changes committed to its index.
+     */
+    public long getSearcherReopenCount()
+    {
+        return searcherReopens.get();
+    }
+
+    /**
+     * @return the total time, in nanoseconds, spent reopening searchers.
+     */
+    public long getSearcherReopenTimeNanos()
+    {
+        return searcherReopenNanos.get();
+    }
+
+    /**
+     * @return the longest time, in nanoseconds, a single searcher reopen
+     * has taken.
+     */
+    public long getMaxSearcherReopenTimeNanos()
+    {
+        return maxSearcherReopenNanos.get();
+    }
+
     static File getFileDirectory( String storeDir, byte entityType )
     {
         File path = new File( storeDir, "lucene" );
@@ -489,35 +624,158 @@ public class LuceneDataSource extends LogBackedXaDataSource
         return TopFieldCollector.create( sorting, n, false, true, false, true );
     }
 
-    synchronized IndexSearcherRef getIndexSearcher( IndexIdentifier identifier, boolean incRef )
+    IndexSearcherRef getIndexSearcher( IndexIdentifier identifier, boolean incRef )
     {
+        return getIndexSearcher( identifier, incRef, false );
+    }
+
+    /**
+     * Returns the searcher of an index without any locking as long as it's
+     * up to date, otherwise creates or refreshes it holding only the
+     * {@link IndexLock} of that index. Its read lock is held as well since
+     * both go through the writer of the index, see {@link #getIndexWriter}.
+     *
+     * @param allowStale whether or not a searcher which hasn't seen the
+     * latest commits may be returned, if there's a {@link SearcherRefresher}
+     * which will refresh it within the max staleness. Commits must always
+     * see the latest state of the index.
+     */
+    IndexSearcherRef getIndexSearcher( IndexIdentifier identifier, boolean incRef, boolean allowStale )
+    {
+        boolean refreshInline = !allowStale || searcherRefresher == null;
         try
         {
             Pair<IndexSearcherRef, AtomicBoolean> searcher = indexSearchers.get( identifier );
-            if ( searcher == null )
+            if ( searcher != null && ( !refreshInline || !searcher.other().get() ) &&
+                    ( !incRef || searcher.first().tryIncRef() ) )
+            {
+                return searcher.first();
+            }
+            IndexLock lock = lockFor( identifier );
+            lock.readWriteLock.readLock().lock();
+            try
+            {
+                synchronized ( lock )
+                {
+                    while ( true )
+                    {
+                        if ( closed ) throw new IllegalStateException( "Index has been shut down" );
+                        searcher = indexSearchers.get( identifier );
+                        if ( searcher == null )
+                        {
+                            IndexWriter writer = getIndexWriter( identifier );
+                            IndexReader reader = IndexReader.open( writer, true );
+                            IndexSearcher indexSearcher = new IndexSearcher( reader );
+                            searcher = Pair.of( new IndexSearcherRef( identifier, indexSearcher ), new AtomicBoolean() );
+                            indexSearchers.put( identifier, searcher );
+                        }
+                        else if ( refreshInline && searcher.other().compareAndSet( true, false ) )
+                        {
+                            Pair<IndexSearcherRef, AtomicBoolean> refreshed = refreshSearcher( searcher );
+                            if ( refreshed != null )
+                            {
+                                searcher = refreshed;
+                                indexSearchers.put( identifier, searcher );
+                            }
+                        }
+                        // Only fails if the searcher got evicted from the cache meanwhile
+                        if ( !incRef || searcher.first().tryIncRef() )
+                        {
+                            return searcher.first();
+                        }
+                    }
+                }
+            }
+            finally
             {
-                IndexWriter writer = getIndexWriter( identifier );
-                IndexReader reader = IndexReader.open( writer, true );
-                IndexSearcher indexSearcher = new IndexSearcher( reader );
-                searcher = Pair.of( new IndexSearcherRef( identifier, indexSearcher ), new AtomicBoolean() );
-                indexSearchers.put( identifier, searcher );
+                lock.readWriteLock.readLock().unlock();
             }
-            else
+        }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( e );
+        }
+    }
+
+    /**
+     * Refreshes the searchers which have had changes committed to them since
+     * they were last refreshed, one refresh covering all those commits.
+     * Called by the {@link SearcherRefresher}.
+     */
+    void refreshStaleSearchers()
+    {
+        List<Pair<IndexSearcherRef, AtomicBoolean>> staleSearchers =
+                new ArrayList<Pair<IndexSearcherRef, AtomicBoolean>>();
+        synchronized ( indexSearchers )
+        {
+            for ( Pair<IndexSearcherRef, AtomicBoolean> searcher : indexSearchers.values() )
+            {
+                if ( searcher.other().get() )
+                {
+                    staleSearchers.add( searcher );
+                }
+            }
+        }
+        for ( Pair<IndexSearcherRef, AtomicBoolean> searcher : staleSearchers )
+        {
+            IndexIdentifier identifier = searcher.first().getIdentifier();
+            IndexLock lock = lockFor( identifier );
+            // The reopen goes through the writer of the index, which the read
+            // lock keeps closeOrRetire from closing, see getIndexWriter
+            lock.readWriteLock.readLock().lock();
+            try
             {
-                if ( searcher.other().compareAndSet( true, false ) )
+                synchronized ( lock )
                 {
-                    searcher = refreshSearcher( searcher );
-                    if ( searcher != null )
+                    if ( closed )
                     {
-                        indexSearchers.put( identifier, searcher );
+                        return;
+                    }
+                    // Hold a reference so that an eviction can't close it under
+                    // our feet. Fails if it was refreshed or evicted meanwhile.
+                    if ( !tryIncRef( searcher.first() ) )
+                    {
+                        continue;
+                    }
+                    try
+                    {
+                        if ( searcher.other().compareAndSet( true, false ) )
+                        {
+                            Pair<IndexSearcherRef, AtomicBoolean> refreshed;
+                            try
+                            {
+                                refreshed = refreshSearcher( searcher );
+                            }
+                            catch ( RuntimeException e )
+                            {
+                                // Still stale, try again next time
+                                searcher.other().set( true );
+                                throw e;
+                            }
+                            if ( refreshed != null )
+                            {
+                                indexSearchers.put( identifier, refreshed );
+                            }
+                        }
+                    }
+                    finally
+                    {
+                        searcher.first().closeStrict();
                     }
                 }
             }
-            if ( incRef )
+            finally
             {
-                searcher.first().incRef();
+                lock.readWriteLock.readLock().unlock();
             }
-            return searcher.first();
+        }
+    }
+
+    private static boolean tryIncRef( IndexSearcherRef searcher )
+    {
+        try
+        {
+            return searcher.tryIncRef();
         }
         catch ( IOException e )
         {
@@ -531,7 +789,7 @@ public class LuceneDataSource extends LogBackedXaDataSource
         return new LuceneTransaction( identifier, logicalLog, this );
     }
 
-    synchronized void invalidateIndexSearcher( IndexIdentifier identifier )
+    void invalidateIndexSearcher( IndexIdentifier identifier )
     {
         Pair<IndexSearcherRef, AtomicBoolean> searcher = indexSearchers.get( identifier );
         if ( searcher != null )
@@ -577,7 +835,14 @@ public class LuceneDataSource extends LogBackedXaDataSource
         }
     }
 
-    synchronized IndexWriter getIndexWriter( IndexIdentifier identifier )
+    /**
+     * Returns the writer of an index. The caller must hold the read or write
+     * lock of the index for as long as it uses the writer, since a writer is
+     * only closed when evicted if its write lock can be taken, see
+     * {@link #closeOrRetire(IndexWriter)}. That is also what makes it safe
+     * to return a cached writer without further locking.
+     */
+    IndexWriter getIndexWriter( IndexIdentifier identifier )
     {
         if ( closed ) throw new IllegalStateException( "Index has been shut down" );
 
@@ -586,6 +851,28 @@ public class LuceneDataSource extends LogBackedXaDataSource
         {
             return writer;
         }
+        synchronized ( lockFor( identifier ) )
+        {
+            return getOrCreateIndexWriter( identifier );
+        }
+    }
+
+    private IndexWriter getOrCreateIndexWriter( IndexIdentifier identifier )
+    {
+        if ( closed ) throw new IllegalStateException( "Index has been shut down" );
+
+        IndexWriter writer = indexWriters.get( identifier );
+        if ( writer != null )
+        {
+            return writer;
+        }
+        writer = openWriters.get( identifier );
+        if ( writer != null )
+        {   // Evicted from the cache while in use and not closed yet, take it back
+            retiredWriters.remove( writer );
+            indexWriters.put( identifier, writer );
+            return writer;
+        }
 
         try
         {
@@ -606,6 +893,7 @@ public class LuceneDataSource extends LogBackedXaDataSource
             // reads/writes
 //            writer.setMergeFactor( 8 );
 
+            openWriters.put( identifier, indexWriter );
             indexWriters.put( identifier, indexWriter );
             return indexWriter;
         }
@@ -671,30 +959,133 @@ public class LuceneDataSource extends LogBackedXaDataSource
         }
     }
 
-    private synchronized void closeWriter( IndexIdentifier identifier )
+    private void closeWriter( IndexIdentifier identifier )
     {
-        try
+        synchronized ( lockFor( identifier ) )
         {
-            Pair<IndexSearcherRef, AtomicBoolean> searcher = indexSearchers.remove( identifier );
-            IndexWriter writer = indexWriters.remove( identifier );
-            if ( searcher != null )
+            try
             {
-                searcher.first().dispose();
+                indexWriters.remove( identifier );
+                IndexWriter writer = openWriters.remove( identifier );
+                closeSearcher( identifier );
+                if ( writer != null )
+                {
+                    retiredWriters.remove( writer );
+                    writer.close();
+                }
             }
-            if ( writer != null )
+            catch ( IOException e )
             {
-                writer.close();
+                throw new RuntimeException( "Unable to close lucene writer " + identifier, e );
             }
         }
-        catch ( IOException e )
+    }
+
+    /**
+     * Removes the searcher of an index whose writer is being closed, since
+     * it was opened from that writer and can't be refreshed without it.
+     * Queries still using it keep it open until they're done.
+     */
+    private void closeSearcher( IndexIdentifier identifier ) throws IOException
+    {
+        Pair<IndexSearcherRef, AtomicBoolean> searcher = indexSearchers.remove( identifier );
+        if ( searcher != null )
         {
-            throw new RuntimeException( "Unable to close lucene writer " + identifier, e );
+            searcher.first().detachOrClose();
         }
     }
 
-    LruCache<String,Collection<Long>> getFromCache( IndexIdentifier identifier, String key )
+    /**
+     * Called for a writer evicted from {@link #indexWriters}. It's closed
+     * right away unless a commit or query on its index is running, in which
+     * case it's left open until {@link #closeRetiredWriters()} gets to it,
+     * or taken back if the index is used again before that. Anyone using
+     * the writer holds a lock of its index, so taking the write lock here
+     * means no one is.
+     */
+    private void closeOrRetire( IndexWriter writer )
     {
-        return caching.get( identifier, key );
+        IndexIdentifier identifier = identifierOf( writer );
+        if ( identifier == null )
+        {
+            return;
+        }
+        ReentrantReadWriteLock lock = lockFor( identifier ).readWriteLock;
+        if ( lock.writeLock().tryLock() )
+        {
+            try
+            {
+                openWriters.remove( identifier );
+                closeSearcher( identifier );
+                writer.close( true );
+            }
+            catch ( IOException e )
+            {
+                throw new RuntimeException( "Unable to close lucene writer " + identifier, e );
+            }
+            finally
+            {
+                lock.writeLock().unlock();
+            }
+        }
+        else
+        {
+            retiredWriters.add( writer );
+        }
+    }
+
+    private IndexIdentifier identifierOf( IndexWriter writer )
+    {
+        for ( Map.Entry<IndexIdentifier, IndexWriter> entry : openWriters.entrySet() )
+        {
+            if ( entry.getValue() == writer )
+            {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Closes writers evicted from the cache while in use, see
+     * {@link #closeOrRetire(IndexWriter)}. Called after each commit, without
+     * holding any index lock.
+     */
+    void closeRetiredWriters()
+    {
+        if ( retiredWriters.isEmpty() )
+        {
+            return;
+        }
+        for ( Map.Entry<IndexIdentifier, IndexWriter> entry : openWriters.entrySet() )
+        {
+            if ( !retiredWriters.contains( entry.getValue() ) )
+            {
+                continue;
+            }
+            IndexLock lock = lockFor( entry.getKey() );
+            lock.readWriteLock.writeLock().lock();
+            try
+            {
+                synchronized ( lock )
+                {
+                    // Could have been taken back while waiting for the lock
+                    if ( retiredWriters.contains( entry.getValue() ) )
+                    {
+                        closeWriter( entry.getKey() );
+                    }
+                }
+            }
+            finally
+            {
+                lock.readWriteLock.writeLock().unlock();
+            }
+        }
+    }
+
+    Cache getCache()
+    {
+        return caching;
     }
 
     void setCacheCapacity( IndexIdentifier identifier, String key, int maxNumberOfCachedEntries )
@@ -704,17 +1095,12 @@ public class LuceneDataSource extends LogBackedXaDataSource
 
     Integer getCacheCapacity( IndexIdentifier identifier, String key )
     {
-        LruCache<String,Collection<Long>> cache = this.caching.get( identifier, key );
-        return cache != null ? cache.maxSize() : null;
+        return this.caching.getCapacity( identifier, key );
     }
 
     void invalidateCache( IndexIdentifier identifier, String key, Object value )
     {
-        LruCache<String, Collection<Long>> cache = caching.get( identifier, key );
-        if ( cache != null )
-        {
-            cache.remove( value.toString() );
-        }
+        caching.invalidate( identifier, key, value );
     }
 
     void invalidateCache( IndexIdentifier identifier )
@@ -764,7 +1150,7 @@ public class LuceneDataSource extends LogBackedXaDataSource
         final Collection<File> files = new ArrayList<File>();
         final Collection<SnapshotDeletionPolicy> snapshots = new ArrayList<SnapshotDeletionPolicy>();
         makeSureAllIndexesAreInstantiated();
-        for ( Map.Entry<IndexIdentifier, IndexWriter> writer : indexWriters.entrySet() )
+        for ( Map.Entry<IndexIdentifier, IndexWriter> writer : openWriters.entrySet() )
         {
             SnapshotDeletionPolicy deletionPolicy = (SnapshotDeletionPolicy)
                     writer.getValue().getConfig().getIndexDeletionPolicy();
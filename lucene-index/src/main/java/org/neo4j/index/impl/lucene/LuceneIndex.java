@@ -41,7 +41,6 @@ import org.neo4j.graphdb.Relationship;
 import org.neo4j.graphdb.index.Index;
 import org.neo4j.graphdb.index.IndexHits;
 import org.neo4j.index.lucene.QueryContext;
-import org.neo4j.kernel.impl.cache.LruCache;
 import org.neo4j.kernel.impl.core.ReadOnlyDbException;
 import org.neo4j.kernel.impl.util.IoPrimitiveUtils;
 
@@ -234,53 +233,49 @@ public abstract class LuceneIndex<T extends PropertyContainer> implements Index<
             }
             else
             {
-                additionsSearcher = luceneTx.getAdditionsAsSearcher( this, additionalParametersOrNull );
+                Collection<Long> addedIds = luceneTx.getAddedIdsWithoutSearcher( this, query,
+                        additionalParametersOrNull );
+                if ( addedIds != null )
+                {
+                    ids.addAll( addedIds );
+                }
+                else
+                {
+                    additionsSearcher = luceneTx.getAdditionsAsSearcher( this, additionalParametersOrNull );
+                }
             }
             removedIds = keyForDirectLookup != null ?
                     luceneTx.getRemovedIds( this, keyForDirectLookup, valueForDirectLookup ) :
                     luceneTx.getRemovedIds( this, query );
         }
-        service.dataSource().getReadLock();
+        Cache cache = service.dataSource().getCache();
+        service.dataSource().getReadLock( identifier );
         IndexHits<Long> idIterator = null;
-        IndexSearcherRef searcher = null;
         try
         {
-            searcher = service.dataSource().getIndexSearcher( identifier, true );
-            if ( searcher != null )
+            String valueAsString = keyForDirectLookup != null ? valueForDirectLookup.toString() : null;
+            long[] cachedIds = keyForDirectLookup != null ?
+                    cache.get( identifier, keyForDirectLookup, valueAsString ) : null;
+            if ( cachedIds != null )
             {
-                boolean foundInCache = false;
-                LruCache<String, Collection<Long>> cachedIdsMap = null;
-                if ( keyForDirectLookup != null )
-                {
-                    cachedIdsMap = service.dataSource().getFromCache(
-                            identifier, keyForDirectLookup );
-                    foundInCache = fillFromCache( cachedIdsMap, ids,
-                            keyForDirectLookup, valueForDirectLookup.toString(), removedIds );
-                }
-
-                if ( !foundInCache )
-                {
-                    DocToIdIterator searchedIds = new DocToIdIterator( search( searcher,
-                            query, additionalParametersOrNull, additionsSearcher, removedIds ), removedIds, searcher );
-                    if ( ids.isEmpty() )
-                    {
-                        idIterator = searchedIds;
-                    }
-                    else
-                    {
-                        Collection<IndexHits<Long>> iterators = new ArrayList<IndexHits<Long>>();
-                        iterators.add( searchedIds );
-                        iterators.add( new ConstantScoreIterator<Long>( ids, Float.NaN ) );
-                        idIterator = new CombinedIndexHits<Long>( iterators );
-                    }
-                }
+                addIds( ids, cachedIds, removedIds );
+            }
+            else if ( keyForDirectLookup != null && cache.isEnabled( identifier, keyForDirectLookup ) )
+            {
+                idIterator = searchAndCache( cache, query, keyForDirectLookup, valueAsString, ids, removedIds );
+            }
+            else
+            {
+                IndexSearcherRef searcher = service.dataSource().getIndexSearcher( identifier, true, true );
+                idIterator = withAddedIds( search( searcher, query, additionalParametersOrNull,
+                        additionsSearcher, removedIds ), searcher, removedIds, ids );
             }
         }
         finally
         {
             // The DocToIdIterator closes the IndexSearchRef instance anyways,
             // or the LazyIterator if it's a lazy one. So no need here.
-            service.dataSource().releaseReadLock();
+            service.dataSource().releaseReadLock( identifier );
         }
 
         idIterator = idIterator == null ? new ConstantScoreIterator<Long>( ids, 0 ) : idIterator;
@@ -311,28 +306,72 @@ public abstract class LuceneIndex<T extends PropertyContainer> implements Index<
         };
     }
 
-    private boolean fillFromCache(
-            LruCache<String, Collection<Long>> cachedNodesMap,
-            List<Long> ids, String key, String valueAsString,
-            Collection<Long> deletedNodes )
+    private IndexHits<Long> withAddedIds( IndexHits<Document> documents, IndexSearcherRef searcher,
+            Collection<Long> removedIds, List<Long> ids )
     {
-        boolean found = false;
-        if ( cachedNodesMap != null )
+        DocToIdIterator searchedIds = new DocToIdIterator( documents, removedIds, searcher );
+        if ( ids.isEmpty() )
         {
-            Collection<Long> cachedNodes = cachedNodesMap.get( valueAsString );
-            if ( cachedNodes != null )
+            return searchedIds;
+        }
+        Collection<IndexHits<Long>> iterators = new ArrayList<IndexHits<Long>>();
+        iterators.add( searchedIds );
+        iterators.add( new ConstantScoreIterator<Long>( ids, Float.NaN ) );
+        return new CombinedIndexHits<Long>( iterators );
+    }
+
+    /**
+     * Reads all ids of a direct lookup up front, so that they can be cached.
+     * The searcher must have seen all commits for that and the read lock
+     * of the index keeps new commits from invalidating the ids before
+     * they're cached. Results too big to cache are returned lazily instead.
+     *
+     * @return the found ids, or {@code null} if they were added to {@code ids}.
+     */
+    private IndexHits<Long> searchAndCache( Cache cache, Query query, String key, String valueAsString,
+            List<Long> ids, Collection<Long> removedIds )
+    {
+        IndexSearcherRef searcher = service.dataSource().getIndexSearcher( identifier, true, false );
+        boolean lazy = false;
+        try
+        {
+            Hits hits = new Hits( searcher.getSearcher(), query, null );
+            if ( !cache.fits( hits.length() ) )
             {
-                found = true;
-                for ( Long cachedNodeId : cachedNodes )
-                {
-                    if ( !deletedNodes.contains( cachedNodeId ) )
-                    {
-                        ids.add( cachedNodeId );
-                    }
-                }
+                lazy = true;
+                return withAddedIds( new HitsIterator( hits ), searcher, removedIds, ids );
+            }
+            long[] foundIds = new long[hits.length()];
+            for ( int i = 0; i < foundIds.length; i++ )
+            {
+                foundIds[i] = Long.parseLong( hits.doc( i ).get( KEY_DOC_ID ) );
+            }
+            cache.put( identifier, key, valueAsString, foundIds );
+            addIds( ids, foundIds, removedIds );
+            return null;
+        }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( "Unable to query " + this + " with " + query, e );
+        }
+        finally
+        {
+            if ( !lazy )
+            {
+                searcher.closeStrict();
+            }
+        }
+    }
+
+    private static void addIds( List<Long> ids, long[] foundIds, Collection<Long> removedIds )
+    {
+        for ( long id : foundIds )
+        {
+            if ( !removedIds.contains( id ) )
+            {
+                ids.add( id );
             }
         }
-        return found;
     }
 
     private IndexHits<Document> search( IndexSearcherRef searcherRef, Query query,
@@ -393,6 +432,24 @@ public abstract class LuceneIndex<T extends PropertyContainer> implements Index<
         return service.dataSource().getCacheCapacity( identifier, key );
     }
 
+    /**
+     * @return the number of lookups in this index which found the ids
+     * in the cache, see {@link #setCacheCapacity(String, int)}.
+     */
+    public long getCacheHits()
+    {
+        return service.dataSource().getCache().hitCount( identifier );
+    }
+
+    /**
+     * @return the number of lookups of cached keys in this index which
+     * didn't find the ids in the cache.
+     */
+    public long getCacheMisses()
+    {
+        return service.dataSource().getCache().missCount( identifier );
+    }
+
     protected abstract T getById( long id );
 
     protected abstract long getEntityId( T entity );
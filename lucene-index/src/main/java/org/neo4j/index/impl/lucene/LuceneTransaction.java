@@ -238,7 +238,6 @@ class LuceneTransaction extends XaTransaction
     @Override
     protected void doCommit()
     {
-        dataSource.getWriteLock();
         try
         {
             for ( Map.Entry<IndexIdentifier, CommandList> entry :
@@ -251,18 +250,33 @@ class LuceneTransaction extends XaTransaction
                 
                 IndexIdentifier identifier = entry.getKey();
                 CommandList commandList = entry.getValue();
-                IndexType type = identifier == LuceneCommand.CreateIndexCommand.FAKE_IDENTIFIER || !commandList.containsWrites() ? null :
-                    dataSource.getType( identifier );
-                CommitContext context = new CommitContext( dataSource, identifier, type, commandList );
-                for ( LuceneCommand command : commandList.commands )
+                // Commits are serialized by the resource manager, so the
+                // lock only keeps queries on this index out meanwhile
+                dataSource.getWriteLock( identifier );
+                CommitContext context = null;
+                try
                 {
-                    command.perform( context );
+                    IndexType type = identifier == LuceneCommand.CreateIndexCommand.FAKE_IDENTIFIER || !commandList.containsWrites() ? null :
+                        dataSource.getType( identifier );
+                    context = new CommitContext( dataSource, identifier, type, commandList );
+                    for ( LuceneCommand command : commandList.commands )
+                    {
+                        command.perform( context );
+                    }
+                    
+                    applyDocuments( context.writer, type, context.documents );
+                    if ( context.writer != null )
+                    {
+                        dataSource.invalidateIndexSearcher( identifier );
+                    }
                 }
-                
-                applyDocuments( context.writer, type, context.documents );
-                if ( context.writer != null )
+                finally
                 {
-                    dataSource.invalidateIndexSearcher( identifier );
+                    if ( context != null )
+                    {
+                        context.close();
+                    }
+                    dataSource.releaseWriteLock( identifier );
                 }
             }
             
@@ -273,10 +287,7 @@ class LuceneTransaction extends XaTransaction
         {
             throw new RuntimeException( e );
         }
-        finally
-        {
-            dataSource.releaseWriteLock();
-        }
+        dataSource.closeRetiredWriters();
     }
 
     private void applyDocuments( IndexWriter writer, IndexType type,
@@ -495,6 +506,22 @@ class LuceneTransaction extends XaTransaction
         queueCommand( new CreateIndexCommand( entityTypeByte, name, config ) );
     }
 
+    /**
+     * @return the ids added in this transaction which match {@code query},
+     * or {@code null} if they can only be found through
+     * {@link #getAdditionsAsSearcher(LuceneIndex, QueryContext)}.
+     */
+    <T extends PropertyContainer> Collection<Long> getAddedIdsWithoutSearcher( LuceneIndex<T> index,
+            Query query, QueryContext contextOrNull )
+    {
+        TxDataHolder added = addedTxDataOrNull( index );
+        if ( added == null )
+        {
+            return Collections.emptySet();
+        }
+        return added.queryWithoutSearcher( query, contextOrNull );
+    }
+
     <T extends PropertyContainer> IndexSearcher getAdditionsAsSearcher( LuceneIndex<T> index,
             QueryContext context )
     {
@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.lucene;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Background thread that refreshes the searchers of indexes which have had
+ * changes committed to them, so that queries don't have to. A searcher is
+ * refreshed once for all commits since its last refresh, within the max
+ * staleness given to the {@link LuceneDataSource}.
+ */
+class SearcherRefresher extends Thread
+{
+    private static Logger log = Logger.getLogger( SearcherRefresher.class.getName() );
+
+    private final LuceneDataSource dataSource;
+    private final long intervalMillis;
+    private final Object sleepLock = new Object();
+    private volatile boolean running = true;
+
+    SearcherRefresher( LuceneDataSource dataSource, long maxStalenessMillis )
+    {
+        super( "Lucene searcher refresher" );
+        this.dataSource = dataSource;
+        // Half of the max staleness leaves the other half for the reopen itself
+        this.intervalMillis = Math.max( 1, maxStalenessMillis / 2 );
+        setDaemon( true );
+    }
+
+    @Override
+    public void run()
+    {
+        while ( running )
+        {
+            try
+            {
+                dataSource.refreshStaleSearchers();
+            }
+            catch ( RuntimeException e )
+            {
+                log.log( Level.WARNING, "Unable to refresh index searchers", e );
+            }
+            synchronized ( sleepLock )
+            {
+                try
+                {
+                    if ( running )
+                    {
+                        sleepLock.wait( intervalMillis );
+                    }
+                }
+                catch ( InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops this refresher and waits for a refresh in progress to finish.
+     * It's woken up rather than interrupted, since interrupting a reopen
+     * would close the channels of the index files it reads.
+     */
+    void shutdown()
+    {
+        synchronized ( sleepLock )
+        {
+            running = false;
+            sleepLock.notifyAll();
+        }
+        boolean interrupted = false;
+        while ( isAlive() )
+        {
+            try
+            {
+                join();
+            }
+            catch ( InterruptedException e )
+            {
+                interrupted = true;
+            }
+        }
+        if ( interrupted )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -40,6 +40,16 @@ abstract class TxData
 
     abstract Collection<Long> query( TxDataHolder holder, Query query, QueryContext contextOrNull );
 
+    /**
+     * @return the ids of the entities matching {@code query} if they can be
+     * found without a Lucene searcher, otherwise {@code null}, in which case
+     * {@link #asSearcher(TxDataHolder, QueryContext)} should be used.
+     */
+    Collection<Long> queryWithoutSearcher( Query query, QueryContext contextOrNull )
+    {
+        return null;
+    }
+
     abstract Collection<Long> get( TxDataHolder holder, String key, Object value );
     
     abstract Collection<Long> getOrphans( String key );
@@ -0,0 +1,304 @@
+/**
+ * Copyright (c) 2002-2011 "Neo Technology,"
+ * Network Engine for Objects in Lund AB [http://neotechnology.com]
+ *
+ * This file is part of Neo4j.
+ *
+ * Neo4j is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.neo4j.index.impl.lucene;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Fieldable;
+import org.apache.lucene.document.NumericField;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.PrefixQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+
+/**
+ * An in-memory inverted index of the key/value pairs added to an index in a
+ * transaction. The entities and values are turned into terms the same way as
+ * when they are written to the Lucene index, so that term, prefix and numeric range
+ * queries, and boolean combinations of those, can be answered without
+ * building a {@link FullTxData} with its own Lucene index.
+ */
+class TxTermIndex
+{
+    private final LuceneIndex<?> index;
+    private final Map<String, TreeMap<String, Set<Object>>> terms =
+            new HashMap<String, TreeMap<String, Set<Object>>>();
+    private final Map<String, Map<Number, Set<Object>>> numbers =
+            new HashMap<String, Map<Number, Set<Object>>>();
+
+    TxTermIndex( LuceneIndex<?> index )
+    {
+        this.index = index;
+    }
+
+    void add( Object entityId, String key, Object value )
+    {
+        // Includes the fields of the entity itself, like the start and end
+        // nodes of relationships, which queries may be combined with
+        Document document = index.getIdentifier().entityType.newDocument( entityId );
+        index.type.addToDocument( document, key, value );
+        add( entityId, document );
+    }
+
+    /**
+     * Adds only the fields of the entity itself, for entities whose key/value
+     * pairs have been removed, since their documents stay in Lucene as long
+     * as they have such fields, see {@link LuceneDataSource#documentIsEmpty(Document)}.
+     */
+    void addEntity( Object entityId )
+    {
+        add( entityId, index.getIdentifier().entityType.newDocument( entityId ) );
+    }
+
+    private void add( Object entityId, Document document )
+    {
+        for ( Fieldable field : document.getFields() )
+        {
+            if ( field instanceof NumericField )
+            {
+                Number number = ((NumericField) field).getNumericValue();
+                ids( numbersFor( field.name() ), number ).add( entityId );
+            }
+            else if ( field.isTokenized() )
+            {
+                for ( String token : tokenize( field.name(), field.stringValue() ) )
+                {
+                    ids( termsFor( field.name() ), token ).add( entityId );
+                }
+            }
+            else
+            {
+                ids( termsFor( field.name() ), field.stringValue() ).add( entityId );
+            }
+        }
+    }
+
+    private Set<String> tokenize( String field, String value )
+    {
+        Set<String> tokens = new HashSet<String>();
+        try
+        {
+            TokenStream stream = index.type.analyzer.tokenStream( field, new StringReader( value ) );
+            CharTermAttribute term = stream.addAttribute( CharTermAttribute.class );
+            stream.reset();
+            while ( stream.incrementToken() )
+            {
+                tokens.add( term.toString() );
+            }
+            stream.end();
+            stream.close();
+        }
+        catch ( IOException e )
+        {
+            throw new RuntimeException( e );
+        }
+        return tokens;
+    }
+
+    private TreeMap<String, Set<Object>> termsFor( String field )
+    {
+        TreeMap<String, Set<Object>> map = terms.get( field );
+        if ( map == null )
+        {
+            map = new TreeMap<String, Set<Object>>();
+            terms.put( field, map );
+        }
+        return map;
+    }
+
+    private Map<Number, Set<Object>> numbersFor( String field )
+    {
+        Map<Number, Set<Object>> map = numbers.get( field );
+        if ( map == null )
+        {
+            map = new HashMap<Number, Set<Object>>();
+            numbers.put( field, map );
+        }
+        return map;
+    }
+
+    private static <K> Set<Object> ids( Map<K, Set<Object>> map, K key )
+    {
+        Set<Object> ids = map.get( key );
+        if ( ids == null )
+        {
+            ids = new HashSet<Object>();
+            map.put( key, ids );
+        }
+        return ids;
+    }
+
+    /**
+     * @return the ids of the entities matching {@code query}, or {@code null}
+     * if the query is of a type which can't be answered here.
+     */
+    Set<Object> query( Query query )
+    {
+        if ( query instanceof TermQuery )
+        {
+            Term term = ((TermQuery) query).getTerm();
+            Set<Object> result = new HashSet<Object>();
+            Map<String, Set<Object>> map = terms.get( term.field() );
+            if ( map != null && map.containsKey( term.text() ) )
+            {
+                result.addAll( map.get( term.text() ) );
+            }
+            return result;
+        }
+        else if ( query instanceof PrefixQuery )
+        {
+            Term prefix = ((PrefixQuery) query).getPrefix();
+            Set<Object> result = new HashSet<Object>();
+            TreeMap<String, Set<Object>> map = terms.get( prefix.field() );
+            if ( map != null )
+            {
+                for ( Map.Entry<String, Set<Object>> entry : map.tailMap( prefix.text() ).entrySet() )
+                {
+                    if ( !entry.getKey().startsWith( prefix.text() ) )
+                    {
+                        break;
+                    }
+                    result.addAll( entry.getValue() );
+                }
+            }
+            return result;
+        }
+        else if ( query instanceof NumericRangeQuery )
+        {
+            return numericRange( (NumericRangeQuery<?>) query );
+        }
+        else if ( query instanceof BooleanQuery )
+        {
+            return bool( (BooleanQuery) query );
+        }
+        return null;
+    }
+
+    private Set<Object> numericRange( NumericRangeQuery<?> query )
+    {
+        Number min = query.getMin();
+        Number max = query.getMax();
+        if ( min == null && max == null )
+        {
+            // Can't tell which numeric type it's for
+            return null;
+        }
+        Class<?> numberType = (min != null ? min : max).getClass();
+        Set<Object> result = new HashSet<Object>();
+        Map<Number, Set<Object>> map = numbers.get( query.getField() );
+        if ( map == null )
+        {
+            return result;
+        }
+        for ( Map.Entry<Number, Set<Object>> entry : map.entrySet() )
+        {
+            // Values indexed as another numeric type are encoded differently
+            // and won't match in Lucene either
+            Number value = entry.getKey();
+            if ( value.getClass() != numberType )
+            {
+                continue;
+            }
+            if ( min != null )
+            {
+                int comparison = compare( value, min );
+                if ( comparison < 0 || (comparison == 0 && !query.includesMin()) )
+                {
+                    continue;
+                }
+            }
+            if ( max != null )
+            {
+                int comparison = compare( value, max );
+                if ( comparison > 0 || (comparison == 0 && !query.includesMax()) )
+                {
+                    continue;
+                }
+            }
+            result.addAll( entry.getValue() );
+        }
+        return result;
+    }
+
+    private static int compare( Number value, Number other )
+    {
+        if ( value instanceof Float || value instanceof Double )
+        {
+            return Double.compare( value.doubleValue(), other.doubleValue() );
+        }
+        long longValue = value.longValue();
+        long otherLongValue = other.longValue();
+        return longValue < otherLongValue ? -1 : (longValue == otherLongValue ? 0 : 1);
+    }
+
+    private Set<Object> bool( BooleanQuery query )
+    {
+        if ( query.getMinimumNumberShouldMatch() > 0 )
+        {
+            return null;
+        }
+        Set<Object> must = null;
+        Set<Object> should = new HashSet<Object>();
+        Set<Object> mustNot = new HashSet<Object>();
+        for ( BooleanClause clause : query.clauses() )
+        {
+            Set<Object> ids = query( clause.getQuery() );
+            if ( ids == null )
+            {
+                return null;
+            }
+            switch ( clause.getOccur() )
+            {
+            case MUST:
+                if ( must == null )
+                {
+                    must = ids;
+                }
+                else
+                {
+                    must.retainAll( ids );
+                }
+                break;
+            case SHOULD:
+                should.addAll( ids );
+                break;
+            default:
+                mustNot.addAll( ids );
+                break;
+            }
+        }
+        // With required clauses the optional ones only affect the scoring
+        Set<Object> result = must != null ? must : should;
+        result.removeAll( mustNot );
+        return result;
+    }
+}
@@ -26,6 +26,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.neo4j.helpers.collection.MapUtil.map;
 import static org.neo4j.helpers.collection.MapUtil.stringMap;
 import static org.neo4j.index.Neo4jTestCase.assertContains;
@@ -350,6 +351,123 @@ public class TestLuceneBatchInsert
         provider.shutdown();
         inserter.shutdown();
     }
+
+    @Test
+    public void addWithSeveralWriterThreads() throws Exception
+    {
+        String path = new File( PATH, "10" ).getAbsolutePath();
+        BatchInserter inserter = new BatchInserterImpl( path );
+        BatchInserterIndexProvider provider = new LuceneBatchInserterIndexProvider( inserter,
+                stringMap( LuceneBatchInserterIndexProvider.WRITER_THREADS, "4",
+                        LuceneBatchInserterIndexProvider.WRITER_QUEUE_SIZE, "100",
+                        LuceneBatchInserterIndexProvider.SHUTDOWN_MAX_SEGMENTS, "0" ) );
+        BatchInserterIndex index = provider.nodeIndex( "users", EXACT_CONFIG );
+        Map<Integer, Long> ids = new HashMap<Integer, Long>();
+        int count = 2000;
+        for ( int i = 0; i < count; i++ )
+        {
+            long id = inserter.createNode( null );
+            index.add( id, map( "name", "Joe" + i, "other", "Schmoe" ) );
+            ids.put( i, id );
+        }
+        index.flush();
+        for ( int i = 0; i < count; i += 100 )
+        {
+            assertContains( index.get( "name", "Joe" + i ), ids.get( i ) );
+        }
+        assertEquals( count, index.query( "other", "Schmoe" ).size() );
+
+        index.updateOrAdd( ids.get( 0 ), map( "name", "Jack" ) );
+        index.flush();
+        assertContains( index.get( "name", "Jack" ), ids.get( 0 ) );
+        assertEquals( 0, index.get( "name", "Joe0" ).size() );
+        provider.shutdown();
+        inserter.shutdown();
+
+        GraphDatabaseService db = new EmbeddedGraphDatabase( path );
+        Index<Node> dbIndex = db.index().forNodes( "users" );
+        assertContains( dbIndex.get( "name", "Jack" ), db.getNodeById( ids.get( 0 ) ) );
+        assertContains( dbIndex.get( "name", "Joe" + (count - 1) ),
+                db.getNodeById( ids.get( count - 1 ) ) );
+        assertEquals( count - 1, dbIndex.query( "other", "Schmoe" ).size() );
+        db.shutdown();
+    }
+
+    @Test( timeout = 120000 )
+    public void shutdownStopsAllWriterThreads() throws Exception
+    {
+        String path = new File( PATH, "12" ).getAbsolutePath();
+        BatchInserter inserter = new BatchInserterImpl( path );
+        // Any writer may take any of the stop signals, which has to be
+        // tried many times to catch a shutdown waiting on a writer without one
+        for ( int round = 0; round < 200; round++ )
+        {
+            BatchInserterIndexProvider provider = new LuceneBatchInserterIndexProvider( inserter,
+                    stringMap( LuceneBatchInserterIndexProvider.WRITER_THREADS, "4",
+                            LuceneBatchInserterIndexProvider.WRITER_QUEUE_SIZE, "10",
+                            LuceneBatchInserterIndexProvider.SHUTDOWN_MAX_SEGMENTS, "0" ) );
+            BatchInserterIndex index = provider.nodeIndex( "users" + round, EXACT_CONFIG );
+            for ( int i = 0; i < 20; i++ )
+            {
+                index.add( inserter.createNode( null ), map( "name", "Joe" + i ) );
+            }
+            provider.shutdown();
+        }
+        for ( Thread thread : Thread.getAllStackTraces().keySet() )
+        {
+            assertFalse( thread.getName(), thread.getName().startsWith( "Batch index writer[" ) );
+        }
+        inserter.shutdown();
+    }
+
+    @Test
+    public void interruptedWriterThreadsFailAddsAndShutdown() throws Exception
+    {
+        String path = new File( PATH, "11" ).getAbsolutePath();
+        BatchInserter inserter = new BatchInserterImpl( path );
+        BatchInserterIndexProvider provider = new LuceneBatchInserterIndexProvider( inserter,
+                stringMap( LuceneBatchInserterIndexProvider.WRITER_THREADS, "2",
+                        LuceneBatchInserterIndexProvider.WRITER_QUEUE_SIZE, "10" ) );
+        BatchInserterIndex index = provider.nodeIndex( "users", EXACT_CONFIG );
+        index.add( inserter.createNode( null ), map( "name", "Joe" ) );
+        Collection<Thread> writers = new ArrayList<Thread>();
+        for ( Thread thread : Thread.getAllStackTraces().keySet() )
+        {
+            if ( thread.getName().startsWith( "Batch index writer[" ) )
+            {
+                writers.add( thread );
+            }
+        }
+        assertEquals( 2, writers.size() );
+        for ( Thread writer : writers )
+        {
+            writer.interrupt();
+            writer.join();
+        }
+
+        try
+        {
+            // More than fit in the queue, so that nothing could take them
+            for ( int i = 0; i < 20; i++ )
+            {
+                index.add( inserter.createNode( null ), map( "name", "Joe" + i ) );
+            }
+            fail( "Adds should fail once the writers have stopped" );
+        }
+        catch ( RuntimeException e )
+        {   // Good
+        }
+        try
+        {
+            provider.shutdown();
+            fail( "Shutdown should report that the writers failed" );
+        }
+        catch ( RuntimeException e )
+        {   // Good
+        }
+        inserter.shutdown();
+    }
+
     private enum EdgeType implements RelationshipType
     {
         KNOWS
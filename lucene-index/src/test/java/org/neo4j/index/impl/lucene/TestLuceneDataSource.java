@@ -25,6 +25,12 @@ import static org.neo4j.kernel.CommonFactories.defaultFileSystemAbstraction;
 import java.io.File;
 import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterAccessor;
@@ -173,6 +179,97 @@ public class TestLuceneDataSource
         assertFalse( IndexWriterAccessor.isClosed( newFooIndexWriter ) );
     }
 
+    @Test
+    public void testEvictedWriterInUseIsClosedWhenItsIndexIsReleased() throws InstantiationException
+    {
+        addIndex( "bar" );
+        Map config = config();
+        config.put( Config.LUCENE_WRITER_CACHE_SIZE, "1");
+        dataSource = new LuceneDataSource( config );
+        IndexIdentifier fooIdentifier = identifier( "foo" );
+        IndexIdentifier barIdentifier = identifier( "bar" );
+        dataSource.getReadLock( fooIdentifier );
+        IndexWriter fooIndexWriter = dataSource.getIndexWriter( fooIdentifier );
+        dataSource.getIndexWriter( barIdentifier );
+        assertFalse( IndexWriterAccessor.isClosed( fooIndexWriter ) );
+        dataSource.releaseReadLock( fooIdentifier );
+        dataSource.closeRetiredWriters();
+        assertTrue( IndexWriterAccessor.isClosed( fooIndexWriter ) );
+    }
+
+    @Test
+    public void testSearcherIsRecreatedWhenItsWriterHasBeenEvicted() throws Exception
+    {
+        addIndex( "bar" );
+        Map config = config();
+        config.put( Config.LUCENE_WRITER_CACHE_SIZE, "1");
+        dataSource = new LuceneDataSource( config );
+        IndexIdentifier fooIdentifier = identifier( "foo" );
+        IndexSearcherRef oldSearcher = dataSource.getIndexSearcher( fooIdentifier, false );
+        dataSource.getIndexWriter( identifier( "bar" ) );
+        assertTrue( oldSearcher.isClosed() );
+        dataSource.invalidateIndexSearcher( fooIdentifier );
+        IndexSearcherRef newSearcher = dataSource.getIndexSearcher( fooIdentifier, false );
+        assertNotSame( oldSearcher, newSearcher );
+        assertFalse( newSearcher.isClosed() );
+    }
+
+    @Test
+    public void testWritersEvictedWhileSearchersAreOpenedFromThemAreNotClosedUnderneath() throws Exception
+    {
+        addIndex( "bar" );
+        Map config = config();
+        config.put( Config.LUCENE_WRITER_CACHE_SIZE, "1");
+        dataSource = new LuceneDataSource( config );
+        final IndexIdentifier fooIdentifier = identifier( "foo" );
+        final IndexIdentifier barIdentifier = identifier( "bar" );
+        final AtomicBoolean done = new AtomicBoolean();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            // Keeps evicting the writer of foo while searchers are opened from it
+            Future<Integer> evictions = executor.submit( new Callable<Integer>()
+            {
+                public Integer call()
+                {
+                    int count = 0;
+                    while ( !done.get() )
+                    {
+                        dataSource.getReadLock( barIdentifier );
+                        try
+                        {
+                            dataSource.getIndexWriter( barIdentifier );
+                        }
+                        finally
+                        {
+                            dataSource.releaseReadLock( barIdentifier );
+                        }
+                        dataSource.closeRetiredWriters();
+                        count++;
+                    }
+                    return count;
+                }
+            } );
+            try
+            {
+                for ( int i = 0; i < 500; i++ )
+                {
+                    dataSource.invalidateIndexSearcher( fooIdentifier );
+                    dataSource.getIndexSearcher( fooIdentifier, true ).closeStrict();
+                }
+            }
+            finally
+            {
+                done.set( true );
+            }
+            assertTrue( evictions.get( 10, TimeUnit.SECONDS ) > 0 );
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
     @Test
     public void testInvalidatingSearcherCreatesANewOne() throws InstantiationException
     {
@@ -187,6 +284,190 @@ public class TestLuceneDataSource
         assertNotSame( oldSearcher.getSearcher(), newSearcher.getSearcher() );
     }
 
+    @Test
+    public void testSearcherInUseIsClosedWhenReleasedAfterBeingReplaced() throws Exception
+    {
+        dataSource = new LuceneDataSource( config() );
+        IndexIdentifier identifier = identifier( "foo" );
+        IndexSearcherRef oldSearcher = dataSource.getIndexSearcher( identifier, true );
+        dataSource.invalidateIndexSearcher( identifier );
+        IndexSearcherRef newSearcher = dataSource.getIndexSearcher( identifier, true );
+        assertNotSame( oldSearcher, newSearcher );
+        assertFalse( oldSearcher.isClosed() );
+        assertTrue( oldSearcher.close() );
+        assertTrue( oldSearcher.isClosed() );
+        assertFalse( newSearcher.isClosed() );
+    }
+
+    @Test
+    public void testWriteLockedIndexDoesNotBlockQueriesOnOtherIndexes() throws Exception
+    {
+        addIndex( "bar" );
+        dataSource = new LuceneDataSource( config() );
+        IndexIdentifier fooIdentifier = identifier( "foo" );
+        final IndexIdentifier barIdentifier = identifier( "bar" );
+        dataSource.getWriteLock( fooIdentifier );
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try
+        {
+            Future<IndexSearcherRef> searcher = executor.submit( new Callable<IndexSearcherRef>()
+            {
+                public IndexSearcherRef call()
+                {
+                    dataSource.getReadLock( barIdentifier );
+                    try
+                    {
+                        return dataSource.getIndexSearcher( barIdentifier, true );
+                    }
+                    finally
+                    {
+                        dataSource.releaseReadLock( barIdentifier );
+                    }
+                }
+            } );
+            assertFalse( searcher.get( 10, TimeUnit.SECONDS ).isClosed() );
+        }
+        finally
+        {
+            dataSource.releaseWriteLock( fooIdentifier );
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testStaleSearcherIsRefreshedInBackgroundWhenMaxStalenessIsConfigured() throws Exception
+    {
+        Map<Object, Object> config = config();
+        config.put( Config.LUCENE_SEARCHER_MAX_STALENESS, "20" );
+        dataSource = new LuceneDataSource( config );
+        IndexIdentifier identifier = identifier( "foo" );
+        IndexSearcherRef oldSearcher = dataSource.getIndexSearcher( identifier, false, true );
+        dataSource.getIndexWriter( identifier ).addDocument( IndexType.newBaseDocument( 1L ) );
+        dataSource.invalidateIndexSearcher( identifier );
+        assertSame( oldSearcher, dataSource.getIndexSearcher( identifier, false, true ) );
+
+        long endTime = System.currentTimeMillis() + 10000;
+        while ( dataSource.getIndexSearcher( identifier, false, true ) == oldSearcher &&
+                System.currentTimeMillis() < endTime )
+        {
+            Thread.sleep( 10 );
+        }
+        IndexSearcherRef newSearcher = dataSource.getIndexSearcher( identifier, false, true );
+        assertNotSame( oldSearcher, newSearcher );
+        assertEquals( 1, newSearcher.getSearcher().getIndexReader().numDocs() );
+        assertTrue( oldSearcher.isClosed() );
+        assertEquals( 1, dataSource.getSearcherReopenCount() );
+    }
+
+    @Test
+    public void testCommitSeesLatestChangesEvenIfQueriesMayBeStale() throws Exception
+    {
+        Map<Object, Object> config = config();
+        config.put( Config.LUCENE_SEARCHER_MAX_STALENESS, "60000" );
+        dataSource = new LuceneDataSource( config );
+        IndexIdentifier identifier = identifier( "foo" );
+        IndexSearcherRef oldSearcher = dataSource.getIndexSearcher( identifier, false, true );
+        dataSource.getIndexWriter( identifier ).addDocument( IndexType.newBaseDocument( 1L ) );
+        dataSource.invalidateIndexSearcher( identifier );
+        assertSame( oldSearcher, dataSource.getIndexSearcher( identifier, false, true ) );
+        assertNotSame( oldSearcher, dataSource.getIndexSearcher( identifier, false ) );
+        assertTrue( dataSource.getSearcherReopenCount() > 0 );
+        assertTrue( dataSource.getMaxSearcherReopenTimeNanos() <= dataSource.getSearcherReopenTimeNanos() );
+    }
+
+    @Test
+    public void testBackgroundRefreshesDoNotRaceWithWriterEviction() throws Exception
+    {
+        addIndex( "bar" );
+        Map<Object, Object> config = config();
+        // The refresher thread stays idle, refreshes are run by the test instead
+        config.put( Config.LUCENE_SEARCHER_MAX_STALENESS, "600000" );
+        config.put( Config.LUCENE_WRITER_CACHE_SIZE, "1" );
+        dataSource = new LuceneDataSource( config );
+        final IndexIdentifier fooIdentifier = identifier( "foo" );
+        IndexIdentifier barIdentifier = identifier( "bar" );
+        final AtomicBoolean done = new AtomicBoolean();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        int documents = 500;
+        try
+        {
+            Future<Integer> refreshes = executor.submit( new Callable<Integer>()
+            {
+                public Integer call()
+                {
+                    int count = 0;
+                    while ( !done.get() )
+                    {
+                        dataSource.refreshStaleSearchers();
+                        count++;
+                    }
+                    return count;
+                }
+            } );
+            try
+            {
+                for ( int i = 0; i < documents; i++ )
+                {
+                    dataSource.getIndexSearcher( fooIdentifier, false, true );
+                    dataSource.getWriteLock( fooIdentifier );
+                    try
+                    {
+                        dataSource.getIndexWriter( fooIdentifier ).addDocument(
+                                IndexType.newBaseDocument( (long) i ) );
+                        dataSource.invalidateIndexSearcher( fooIdentifier );
+                    }
+                    finally
+                    {
+                        dataSource.releaseWriteLock( fooIdentifier );
+                    }
+                    // Evicts the writer of foo, maybe while a refresh reopens from it
+                    dataSource.getReadLock( barIdentifier );
+                    try
+                    {
+                        dataSource.getIndexWriter( barIdentifier );
+                    }
+                    finally
+                    {
+                        dataSource.releaseReadLock( barIdentifier );
+                    }
+                    dataSource.closeRetiredWriters();
+                }
+            }
+            finally
+            {
+                done.set( true );
+            }
+            assertTrue( refreshes.get( 10, TimeUnit.SECONDS ) > 0 );
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+        assertEquals( documents, dataSource.getIndexSearcher( fooIdentifier, false ).getSearcher()
+                .getIndexReader().numDocs() );
+    }
+
+    @Test
+    public void testRefresherIsStoppedWhenTheDataSourceIsClosed() throws Exception
+    {
+        Map<Object, Object> config = config();
+        config.put( Config.LUCENE_SEARCHER_MAX_STALENESS, "1" );
+        dataSource = new LuceneDataSource( config );
+        IndexIdentifier identifier = identifier( "foo" );
+        dataSource.getIndexSearcher( identifier, false, true );
+        Thread refresher = null;
+        for ( Thread thread : Thread.getAllStackTraces().keySet() )
+        {
+            if ( thread instanceof SearcherRefresher )
+            {
+                refresher = thread;
+            }
+        }
+        assertNotNull( refresher );
+        dataSource.close();
+        assertFalse( refresher.isAlive() );
+    }
+
     private Map<Object, Object> config()
     {
         return MapUtil.genericMap(
@@ -38,14 +38,26 @@ import static org.neo4j.index.lucene.QueryContext.numericRange;
 import static org.neo4j.index.lucene.ValueContext.numeric;
 
 import java.io.IOException;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryParser.QueryParser.Operator;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.DefaultSimilarity;
 import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.TermQuery;
 import org.junit.Ignore;
@@ -371,6 +383,219 @@ public class TestLuceneIndex extends AbstractLuceneIndexTest
         index.delete();
     }
 
+    @Test
+    public void makeSureSimpleQueriesSeeUncommittedAdditionsAndRemovals()
+    {
+        Index<Node> index = nodeIndex( "simple-tx-queries", LuceneIndexImplementation.FULLTEXT_CONFIG );
+        Node neo = graphDb.createNode();
+        Node trinity = graphDb.createNode();
+        index.add( neo, "name", "Thomas Anderson" );
+        index.add( neo, "age", numeric( 37 ) );
+        index.add( trinity, "name", "Trinity" );
+        index.add( trinity, "age", numeric( 29 ) );
+
+        assertThat( index.query( "name", "thomas" ), contains( neo ) );
+        assertThat( index.query( "name", "t*" ), contains( neo, trinity ) );
+        assertThat( index.query( "name:t* AND NOT name:trinity" ), contains( neo ) );
+        assertThat( index.query( NumericRangeQuery.newIntRange( "age", 30, 40, true, true ) ), contains( neo ) );
+        assertThat( index.query( NumericRangeQuery.newLongRange( "age", 0L, 100L, true, true ) ), isEmpty() );
+
+        index.remove( neo, "name", "Thomas Anderson" );
+        index.add( neo, "name", "Neo" );
+        assertThat( index.query( "name", "thomas" ), isEmpty() );
+        assertThat( index.query( "name", "n*" ), contains( neo ) );
+        assertThat( index.query( "name:n* OR age:29" ), contains( neo ) );
+
+        restartTx();
+        assertThat( index.query( "name", "t*" ), contains( trinity ) );
+        assertThat( index.query( NumericRangeQuery.newIntRange( "age", 20, 40, true, true ) ), contains( neo, trinity ) );
+        index.delete();
+    }
+
+    @Test
+    public void makeSureSimpleTxQueriesMatchFullTxData()
+    {
+        for ( Map<String, String> config : new Map[] { LuceneIndexImplementation.EXACT_CONFIG,
+                LuceneIndexImplementation.FULLTEXT_CONFIG } )
+        {
+            LuceneIndex<Node> index = (LuceneIndex<Node>) nodeIndex(
+                    "tx-queries-" + config.get( "type" ), config );
+            ExactTxData txState = new ExactTxData( index );
+            FullTxData fullTxData = new FullTxData( index );
+            Object[][] additions = {
+                    { 1L, "name", "Thomas Anderson" },
+                    { 1L, "name", "Neo" },
+                    { 1L, "age", 37 },
+                    { 2L, "name", "Trinity" },
+                    { 2L, "age", 29 },
+                    { 3L, "name", "Agent Smith" },
+                    { 3L, "title", "The Agent" },
+                    { 3L, "age", 42L } };
+            for ( Object[] addition : additions )
+            {
+                txState.add( null, addition[0], (String) addition[1], addition[2] );
+                fullTxData.add( null, addition[0], (String) addition[1], addition[2] );
+            }
+            Query[] queries = {
+                    index.type.get( "name", "Neo" ),
+                    index.type.get( "name", "Thomas Anderson" ),
+                    index.type.query( "name", "thomas", null ),
+                    index.type.query( "name", "Thomas", null ),
+                    index.type.query( "name", "t*", null ),
+                    index.type.query( "name", "T*", null ),
+                    index.type.query( null, "name:t* AND NOT name:trinity", null ),
+                    index.type.query( null, "name:agent OR title:agent", null ),
+                    index.type.query( null, "name:neo title:agent", null ),
+                    newIntRange( "age", 30, 40, true, true ),
+                    newIntRange( "age", 29, 37, false, true ),
+                    newIntRange( "age", null, 40, true, false ),
+                    NumericRangeQuery.newLongRange( "age", 0L, 100L, true, true ) };
+            assertSameHits( txState, fullTxData, queries );
+
+            Object[][] removals = {
+                    { 1L, "name", "Thomas Anderson" },
+                    { 2L, "age", 29 },
+                    { 3L, "title", "The Agent" } };
+            for ( Object[] removal : removals )
+            {
+                txState.remove( null, removal[0], (String) removal[1], removal[2] );
+                fullTxData.remove( null, removal[0], (String) removal[1], removal[2] );
+            }
+            assertSameHits( txState, fullTxData, queries );
+            fullTxData.close();
+            index.delete();
+            restartTx();
+        }
+    }
+
+    @Test
+    public void makeSureSimpleTxQueriesOnRelationshipsMatchFullTxData()
+    {
+        LuceneIndex<Relationship> index = (LuceneIndex<Relationship>) relationshipIndex(
+                "tx-queries-relationships", LuceneIndexImplementation.EXACT_CONFIG );
+        ExactTxData txState = new ExactTxData( index );
+        FullTxData fullTxData = new FullTxData( index );
+        RelationshipId[] relationships = {
+                new RelationshipId( 1, 10, 11 ),
+                new RelationshipId( 2, 10, 12 ),
+                new RelationshipId( 3, 11, 12 ) };
+        for ( RelationshipId relationship : relationships )
+        {
+            txState.add( null, relationship, "name", "something" );
+            fullTxData.add( null, relationship, "name", "something" );
+        }
+        BooleanQuery fromAndTo = new BooleanQuery();
+        fromAndTo.add( new TermQuery( new Term( LuceneIndex.KEY_START_NODE_ID, "10" ) ), Occur.MUST );
+        fromAndTo.add( new TermQuery( new Term( LuceneIndex.KEY_END_NODE_ID, "12" ) ), Occur.MUST );
+        BooleanQuery somethingTo = new BooleanQuery();
+        somethingTo.add( index.type.get( "name", "something" ), Occur.MUST );
+        somethingTo.add( new TermQuery( new Term( LuceneIndex.KEY_END_NODE_ID, "12" ) ), Occur.MUST );
+        Query[] queries = { fromAndTo, somethingTo,
+                new TermQuery( new Term( LuceneIndex.KEY_START_NODE_ID, "11" ) ) };
+        assertSameHits( txState, fullTxData, queries );
+
+        txState.remove( null, relationships[1], "name", "something" );
+        fullTxData.remove( null, relationships[1], "name", "something" );
+        assertSameHits( txState, fullTxData, queries );
+        fullTxData.close();
+        index.delete();
+    }
+
+    private static void assertSameHits( ExactTxData txState, FullTxData fullTxData, Query... queries )
+    {
+        for ( Query query : queries )
+        {
+            Collection<Long> txHits = txState.queryWithoutSearcher( query, null );
+            assertNotNull( "Not answered from the tx state: " + query, txHits );
+            assertEquals( query.toString(), new HashSet<Long>( fullTxData.query( null, query, null ) ),
+                    new HashSet<Long>( txHits ) );
+        }
+    }
+
+    @Test
+    public void makeSureCachedLookupsSeeChanges()
+    {
+        LuceneIndex<Node> index = (LuceneIndex<Node>) nodeIndex( "cached-lookups",
+                LuceneIndexImplementation.EXACT_CONFIG );
+        index.setCacheCapacity( "name", 10 );
+        Node node1 = graphDb.createNode();
+        Node node2 = graphDb.createNode();
+        index.add( node1, "name", "Mattias" );
+        restartTx();
+
+        assertThat( index.get( "name", "Mattias" ), contains( node1 ) );
+        assertThat( index.get( "name", "Mattias" ), contains( node1 ) );
+        assertEquals( 1L, index.getCacheHits() );
+        assertEquals( 1L, index.getCacheMisses() );
+
+        index.add( node2, "name", "Mattias" );
+        assertThat( index.get( "name", "Mattias" ), contains( node1, node2 ) );
+        index.remove( node1, "name", "Mattias" );
+        assertThat( index.get( "name", "Mattias" ), contains( node2 ) );
+        restartTx();
+        assertThat( index.get( "name", "Mattias" ), contains( node2 ) );
+
+        index.remove( node2, "name" );
+        restartTx();
+        assertThat( index.get( "name", "Mattias" ), isEmpty() );
+        assertEquals( Integer.valueOf( 10 ), index.getCacheCapacity( "name" ) );
+        index.delete();
+    }
+
+    @Test
+    public void makeSureCommitsInvalidateCachedLookupsInProgress() throws Exception
+    {
+        final LuceneIndex<Node> index = (LuceneIndex<Node>) nodeIndex( "concurrent-cached-lookups",
+                LuceneIndexImplementation.EXACT_CONFIG );
+        index.setCacheCapacity( "name", 10 );
+        restartTx();
+        final AtomicInteger committed = new AtomicInteger();
+        final AtomicBoolean done = new AtomicBoolean();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        int commits = 300;
+        try
+        {
+            Future<Integer> lookups = executor.submit( new Callable<Integer>()
+            {
+                public Integer call()
+                {
+                    int count = 0;
+                    while ( !done.get() )
+                    {
+                        // Each lookup must see at least the commits done before it started
+                        int committedBefore = committed.get();
+                        int found = IteratorUtil.count( (Iterator<Node>) index.get( "name", "Mattias" ) );
+                        assertTrue( found + " < " + committedBefore, found >= committedBefore );
+                        count++;
+                    }
+                    return count;
+                }
+            } );
+            try
+            {
+                for ( int i = 0; i < commits; i++ )
+                {
+                    index.add( graphDb.createNode(), "name", "Mattias" );
+                    restartTx();
+                    committed.incrementAndGet();
+                }
+            }
+            finally
+            {
+                done.set( true );
+            }
+            assertTrue( lookups.get( 10, TimeUnit.SECONDS ) > 0 );
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+        // A stale entry cached after the last commit would still be there
+        assertEquals( commits, IteratorUtil.count( (Iterator<Node>) index.get( "name", "Mattias" ) ) );
+        assertTrue( index.getCacheHits() > 0 );
+        index.delete();
+    }
+
     @SuppressWarnings( "unchecked" )
     private <T extends PropertyContainer> void doSomeRandomUseCaseTestingWithExactIndex(
             Index<T> index, EntityCreator<T> creator )